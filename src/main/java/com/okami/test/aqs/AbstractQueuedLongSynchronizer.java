@@ -0,0 +1,538 @@
+package com.okami.test.aqs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+
+/**
+ * {@link AbstractQueuedSynchronizer} 的 long 状态版本：同步状态、获取与释放参数都是 long，
+ * 结构、属性和方法与 int 版本完全相同，排队机制同样来自 {@link QueuedSynchronizer}。
+ * 用于需要超过 int 范围的计数的同步器，例如按字节计数的信号量（见 {@link LongSemaphore}）。
+ */
+public abstract class AbstractQueuedLongSynchronizer extends QueuedSynchronizer {
+
+    private static final long serialVersionUID = 7373984972572414692L;
+
+    /**
+     * The synchronization state.
+     * 包级可见仅为了让 {@link Atomics} 在 JDK 8 上能创建字段更新器。
+     */
+    volatile long state;
+
+    protected AbstractQueuedLongSynchronizer() {
+    }
+
+    /**
+     * Returns the current value of synchronization state.
+     * This operation has memory semantics of a {@code volatile} read.
+     *
+     * @return current state value
+     */
+    protected final long getState() {
+        return state;
+    }
+
+    /**
+     * Sets the value of synchronization state.
+     * This operation has memory semantics of a {@code volatile} write.
+     *
+     * @param newState the new state value
+     */
+    protected final void setState(long newState) {
+        state = newState;
+    }
+
+    /**
+     * Atomically sets synchronization state to the given updated
+     * value if the current state value equals the expected value.
+     * This operation has memory semantics of a {@code volatile} read
+     * and write.
+     *
+     * @param expect the expected value
+     * @param update the new value
+     * @return {@code true} if successful. False return indicates that the actual
+     * value was not equal to the expected value.
+     */
+    protected final boolean compareAndSetState(long expect, long update) {
+        return Atomics.casState(this, expect, update);
+    }
+
+    /**
+     * Attempts to acquire in exclusive mode. This method should query
+     * if the state of the object permits it to be acquired in the
+     * exclusive mode, and if so to acquire it.
+     *
+     * <p>This method is always invoked by the thread performing
+     * acquire.  If this method reports failure, the acquire method
+     * may queue the thread, if it is not already queued, until it is
+     * signalled by a release from some other thread. This can be used
+     * to implement method {@link Lock#tryLock()}.
+     *
+     * <p>The default
+     * implementation throws {@link UnsupportedOperationException}.
+     *
+     * @param arg the acquire argument. This value is always the one
+     *            passed to an acquire method, or is the value saved on entry
+     *            to a condition wait.  The value is otherwise uninterpreted
+     *            and can represent anything you like.
+     * @return {@code true} if successful. Upon success, this object has
+     * been acquired.
+     * @throws IllegalMonitorStateException  if acquiring would place this
+     *                                       synchronizer in an illegal state. This exception must be
+     *                                       thrown in a consistent fashion for synchronization to work
+     *                                       correctly.
+     * @throws UnsupportedOperationException if exclusive mode is not supported
+     */
+    protected boolean tryAcquire(long arg) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Attempts to set the state to reflect a release in exclusive
+     * mode.
+     *
+     * <p>This method is always invoked by the thread performing release.
+     *
+     * <p>The default implementation throws
+     * {@link UnsupportedOperationException}.
+     *
+     * @param arg the release argument. This value is always the one
+     *            passed to a release method, or the current state value upon
+     *            entry to a condition wait.  The value is otherwise
+     *            uninterpreted and can represent anything you like.
+     * @return {@code true} if this object is now in a fully released
+     * state, so that any waiting threads may attempt to acquire;
+     * and {@code false} otherwise.
+     * @throws IllegalMonitorStateException  if releasing would place this
+     *                                       synchronizer in an illegal state. This exception must be
+     *                                       thrown in a consistent fashion for synchronization to work
+     *                                       correctly.
+     * @throws UnsupportedOperationException if exclusive mode is not supported
+     */
+    protected boolean tryRelease(long arg) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 直接交接（见 {@link #setHandoffThreshold}）的释放方，在 {@link #tryRelease} 之前调用：
+     * 如果这次释放会使同步器完全释放，就清除持有线程等记录，但让 state 保持已获取，返回 {@code true}，
+     * 随后持有权交给排队最久的等待者，由它在 {@link #onHandoff} 中接手；
+     * 否则不做任何修改并返回 {@code false}，照常调用 tryRelease。
+     * <p>
+     * 默认返回 {@code false}，即不支持直接交接。
+     *
+     * @param arg the release argument, as passed to {@link #tryRelease}
+     * @return {@code true} if the synchronizer is to be handed to a waiter
+     * @throws IllegalMonitorStateException if releasing would place this
+     *                                      synchronizer in an illegal state
+     */
+    protected boolean tryHandoff(long arg) {
+        return false;
+    }
+
+    /**
+     * 直接交接的接收方，在被交接的线程中调用，此时 state 仍是释放方留下的已获取状态。
+     * 子类按 arg 把它改成本线程的持有，例如改写 state、设置持有线程。默认什么都不做。
+     *
+     * @param arg the acquire argument this thread was queued with
+     */
+    protected void onHandoff(long arg) {
+    }
+
+    /**
+     * Attempts to acquire in shared mode. This method should query if
+     * the state of the object permits it to be acquired in the shared
+     * mode, and if so to acquire it.
+     *
+     * <p>This method is always invoked by the thread performing
+     * acquire.  If this method reports failure, the acquire method
+     * may queue the thread, if it is not already queued, until it is
+     * signalled by a release from some other thread.
+     *
+     * <p>The default implementation throws {@link
+     * UnsupportedOperationException}.
+     *
+     * @param arg the acquire argument. This value is always the one
+     *            passed to an acquire method, or is the value saved on entry
+     *            to a condition wait.  The value is otherwise uninterpreted
+     *            and can represent anything you like.
+     * @return a negative value on failure; zero if acquisition in shared
+     * mode succeeded but no subsequent shared-mode acquire can
+     * succeed; and a positive value if acquisition in shared
+     * mode succeeded and subsequent shared-mode acquires might
+     * also succeed, in which case a subsequent waiting thread
+     * must check availability. (Support for three different
+     * return values enables this method to be used in contexts
+     * where acquires only sometimes act exclusively.)  Upon
+     * success, this object has been acquired.
+     * @throws IllegalMonitorStateException  if acquiring would place this
+     *                                       synchronizer in an illegal state. This exception must be
+     *                                       thrown in a consistent fashion for synchronization to work
+     *                                       correctly.
+     * @throws UnsupportedOperationException if shared mode is not supported
+     */
+    protected int tryAcquireShared(long arg) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Attempts to set the state to reflect a release in shared mode.
+     *
+     * <p>This method is always invoked by the thread performing release.
+     *
+     * <p>The default implementation throws
+     * {@link UnsupportedOperationException}.
+     *
+     * @param arg the release argument. This value is always the one
+     *            passed to a release method, or the current state value upon
+     *            entry to a condition wait.  The value is otherwise
+     *            uninterpreted and can represent anything you like.
+     * @return {@code true} if this release of shared mode may permit a
+     * waiting acquire (shared or exclusive) to succeed; and
+     * {@code false} otherwise
+     * @throws IllegalMonitorStateException  if releasing would place this
+     *                                       synchronizer in an illegal state. This exception must be
+     *                                       thrown in a consistent fashion for synchronization to work
+     *                                       correctly.
+     * @throws UnsupportedOperationException if shared mode is not supported
+     */
+    protected boolean tryReleaseShared(long arg) {
+        throw new UnsupportedOperationException();
+    }
+
+    // Bridges for QueuedSynchronizer
+
+    @Override
+    final long getStateLong() {
+        return state;
+    }
+
+    @Override
+    final boolean tryAcquireLong(long arg) {
+        return tryAcquire(arg);
+    }
+
+    @Override
+    final int tryAcquireSharedLong(long arg) {
+        return tryAcquireShared(arg);
+    }
+
+    @Override
+    final boolean releaseLong(long arg) {
+        return release(arg);
+    }
+
+    @Override
+    final boolean releaseSharedLong(long arg) {
+        return releaseShared(arg);
+    }
+
+    @Override
+    final boolean tryHandoffLong(long arg) {
+        return tryHandoff(arg);
+    }
+
+    @Override
+    final void onHandoffLong(long arg) {
+        onHandoff(arg);
+    }
+
+    /**
+     * Acquires in exclusive mode, ignoring interrupts.  Implemented
+     * by invoking at least once {@link #tryAcquire},
+     * returning on success.  Otherwise the thread is queued, possibly
+     * repeatedly blocking and unblocking, invoking {@link
+     * #tryAcquire} until success.  This method can be used
+     * to implement method {@link Lock#lock}.
+     *
+     * @param arg the acquire argument.  This value is conveyed to
+     *            {@link #tryAcquire} but is otherwise uninterpreted and
+     *            can represent anything you like.
+     */
+    public final void acquire(long arg) {
+        if (tryAcquire(arg))
+            countAcquire(true);
+        else if (acquireQueued(addWaiter(Node.EXCLUSIVE), arg))
+            selfInterrupt();
+    }
+
+    /**
+     * Acquires in exclusive mode, aborting if interrupted.
+     * Implemented by first checking interrupt status, then invoking
+     * at least once {@link #tryAcquire}, returning on
+     * success.  Otherwise the thread is queued, possibly repeatedly
+     * blocking and unblocking, invoking {@link #tryAcquire}
+     * until success or the thread is interrupted.  This method can be
+     * used to implement method {@link Lock#lockInterruptibly}.
+     *
+     * @param arg the acquire argument.  This value is conveyed to
+     *            {@link #tryAcquire} but is otherwise uninterpreted and
+     *            can represent anything you like.
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public final void acquireInterruptibly(long arg)
+            throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (tryAcquire(arg))
+            countAcquire(true);
+        else
+            doAcquireInterruptibly(arg);
+    }
+
+    /**
+     * Attempts to acquire in exclusive mode, aborting if interrupted,
+     * and failing if the given timeout elapses.  Implemented by first
+     * checking interrupt status, then invoking at least once {@link
+     * #tryAcquire}, returning on success.  Otherwise, the thread is
+     * queued, possibly repeatedly blocking and unblocking, invoking
+     * {@link #tryAcquire} until success or the thread is interrupted
+     * or the timeout elapses.  This method can be used to implement
+     * method {@link Lock#tryLock(long, TimeUnit)}.
+     *
+     * @param arg          the acquire argument.  This value is conveyed to
+     *                     {@link #tryAcquire} but is otherwise uninterpreted and
+     *                     can represent anything you like.
+     * @param nanosTimeout the maximum number of nanoseconds to wait
+     * @return {@code true} if acquired; {@code false} if timed out
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public final boolean tryAcquireNanos(long arg, long nanosTimeout)
+            throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (tryAcquire(arg)) {
+            countAcquire(true);
+            return true;
+        }
+        return doAcquireNanos(arg, nanosTimeout);
+    }
+
+    /**
+     * 带优先级的 {@link #acquire(long)}：需要排队时按优先级排队，见 {@link #setPriorityLevels}。
+     * 没有开启优先级排队时与 {@link #acquire(long)} 相同。
+     *
+     * @param arg      the acquire argument
+     * @param priority the priority, larger values are woken first
+     */
+    public final void acquire(long arg, int priority) {
+        if (tryAcquire(arg))
+            countAcquire(true);
+        else
+            acquirePrioritized(arg, priority);
+    }
+
+    /**
+     * 带优先级的 {@link #acquireInterruptibly(long)}。
+     *
+     * @param arg      the acquire argument
+     * @param priority the priority, larger values are woken first
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public final void acquireInterruptibly(long arg, int priority)
+            throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (tryAcquire(arg))
+            countAcquire(true);
+        else
+            acquirePrioritizedInterruptibly(arg, priority);
+    }
+
+    /**
+     * 带优先级的 {@link #tryAcquireNanos(long, long)}。
+     *
+     * @param arg          the acquire argument
+     * @param priority     the priority, larger values are woken first
+     * @param nanosTimeout the maximum number of nanoseconds to wait
+     * @return {@code true} if acquired; {@code false} if timed out
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public final boolean tryAcquireNanos(long arg, int priority, long nanosTimeout)
+            throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (tryAcquire(arg)) {
+            countAcquire(true);
+            return true;
+        }
+        return tryAcquirePrioritizedNanos(arg, priority, nanosTimeout);
+    }
+
+    /**
+     * Releases in exclusive mode.  Implemented by unblocking one or
+     * more threads if {@link #tryRelease} returns true.
+     * This method can be used to implement method {@link Lock#unlock}.
+     *
+     * @param arg the release argument.  This value is conveyed to
+     *            {@link #tryRelease} but is otherwise uninterpreted and
+     *            can represent anything you like.
+     * @return the value returned from {@link #tryRelease}
+     */
+    public final boolean release(long arg) {
+        // 必须在 tryRelease 之前取出，之后这个字段就归下一个持有者了
+        long holdStart = takeHoldSample();
+        if (handOff(arg, holdStart))
+            return true;
+        if (tryRelease(arg)) {
+            signalAfterRelease(holdStart);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Acquires in shared mode, ignoring interrupts.  Implemented by
+     * first invoking at least once {@link #tryAcquireShared},
+     * returning on success.  Otherwise the thread is queued, possibly
+     * repeatedly blocking and unblocking, invoking {@link
+     * #tryAcquireShared} until success.
+     *
+     * @param arg the acquire argument.  This value is conveyed to
+     *            {@link #tryAcquireShared} but is otherwise uninterpreted
+     *            and can represent anything you like.
+     */
+    public final void acquireShared(long arg) {
+        if (tryAcquireShared(arg) >= 0)
+            countAcquire(false);
+        else
+            doAcquireShared(arg);
+    }
+
+    /**
+     * Acquires in shared mode, aborting if interrupted.  Implemented
+     * by first checking interrupt status, then invoking at least once
+     * {@link #tryAcquireShared}, returning on success.  Otherwise the
+     * thread is queued, possibly repeatedly blocking and unblocking,
+     * invoking {@link #tryAcquireShared} until success or the thread
+     * is interrupted.
+     *
+     * @param arg the acquire argument.
+     *            This value is conveyed to {@link #tryAcquireShared} but is
+     *            otherwise uninterpreted and can represent anything
+     *            you like.
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public final void acquireSharedInterruptibly(long arg)
+            throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (tryAcquireShared(arg) >= 0)
+            countAcquire(false);
+        else
+            doAcquireSharedInterruptibly(arg);
+    }
+
+    /**
+     * Attempts to acquire in shared mode, aborting if interrupted, and
+     * failing if the given timeout elapses.  Implemented by first
+     * checking interrupt status, then invoking at least once {@link
+     * #tryAcquireShared}, returning on success.  Otherwise, the
+     * thread is queued, possibly repeatedly blocking and unblocking,
+     * invoking {@link #tryAcquireShared} until success or the thread
+     * is interrupted or the timeout elapses.
+     *
+     * @param arg          the acquire argument.  This value is conveyed to
+     *                     {@link #tryAcquireShared} but is otherwise uninterpreted
+     *                     and can represent anything you like.
+     * @param nanosTimeout the maximum number of nanoseconds to wait
+     * @return {@code true} if acquired; {@code false} if timed out
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public final boolean tryAcquireSharedNanos(long arg, long nanosTimeout)
+            throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (tryAcquireShared(arg) >= 0) {
+            countAcquire(false);
+            return true;
+        }
+        return doAcquireSharedNanos(arg, nanosTimeout);
+    }
+
+    /**
+     * Releases in shared mode.  Implemented by unblocking one or more
+     * threads if {@link #tryReleaseShared} returns true.
+     *
+     * @param arg the release argument.  This value is conveyed to
+     *            {@link #tryReleaseShared} but is otherwise uninterpreted
+     *            and can represent anything you like.
+     * @return the value returned from {@link #tryReleaseShared}
+     */
+    public final boolean releaseShared(long arg) {
+        if (tryReleaseShared(arg)) {
+            doReleaseShared();
+            return true;
+        }
+        return false;
+    }
+
+    // Asynchronous acquires
+
+    /**
+     * 以独占模式异步获取，不阻塞调用线程，可以在 Netty 事件循环等不允许阻塞的线程上调用。
+     * <p>
+     * 先在调用线程上尝试一次 {@link #tryAcquire}，成功则返回已完成的 future；
+     * 否则与阻塞获取的线程排进同一个 FIFO 队列，节点上保存续体而不是线程，
+     * 轮到它时由 release 把重试提交到 {@link #getAsyncExecutor() 异步执行器}，
+     * 重试成功后在该执行器线程上完成 future。因此 {@link #tryAcquire} 可能在执行器线程上调用，
+     * 依赖当前线程身份的子类应覆盖 {@link #onAsyncAcquire}。
+     * <p>
+     * 取消返回的 future 会像超时的阻塞获取一样把节点移出队列；
+     * 如果取消时恰好已经获取成功，会立即以同样的 arg 调用 {@link #release}。
+     * Reactor 中可以用 {@code Mono.fromFuture} 包装。
+     *
+     * @param arg the acquire argument
+     * @return a future completed with {@code true} once acquired
+     */
+    public final CompletableFuture<Boolean> acquireAsync(long arg) {
+        return doAcquireAsync(arg, false, 0L);
+    }
+
+    /**
+     * 带超时的 {@link #acquireAsync}，超时后节点出队，future 以 {@code false} 完成。
+     *
+     * @param arg          the acquire argument
+     * @param nanosTimeout the maximum number of nanoseconds to wait
+     * @return a future completed with {@code true} if acquired or {@code false} if timed out
+     */
+    public final CompletableFuture<Boolean> tryAcquireAsync(long arg, long nanosTimeout) {
+        return doAcquireAsync(arg, false, nanosTimeout <= 0L ? -1L : nanosTimeout);
+    }
+
+    /**
+     * 以共享模式异步获取，语义同 {@link #acquireAsync}，取消时补偿调用 {@link #releaseShared}。
+     *
+     * @param arg the acquire argument
+     * @return a future completed with {@code true} once acquired
+     */
+    public final CompletableFuture<Boolean> acquireSharedAsync(long arg) {
+        return doAcquireAsync(arg, true, 0L);
+    }
+
+    /**
+     * 带超时的 {@link #acquireSharedAsync}。
+     *
+     * @param arg          the acquire argument
+     * @param nanosTimeout the maximum number of nanoseconds to wait
+     * @return a future completed with {@code true} if acquired or {@code false} if timed out
+     */
+    public final CompletableFuture<Boolean> tryAcquireSharedAsync(long arg, long nanosTimeout) {
+        return doAcquireAsync(arg, true, nanosTimeout <= 0L ? -1L : nanosTimeout);
+    }
+
+    /**
+     * 返回标识此同步器及其状态的字符串。
+     * 括号中的状态包括字符串"State ="后跟getState的当前值，
+     * 以及"nonempty"或"empty"具体取决于队列是否为空。
+     *
+     * @return a string identifying this synchronizer, as well as its state
+     */
+    public String toString() {
+        return super.toString()
+                + "[State = " + getState() + ", "
+                + (hasQueuedThreads() ? "non" : "") + "empty queue]";
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.okami.test.aqs;
+
+/**
+ * 按锁自学习的自旋策略。
+ * <p>
+ * 把“自旋多少次后拿到了锁”当作持锁者剩余持有时间的近似，维护其指数滑动平均，
+ * 预算取平均值的两倍并限制在 [minSpins, maxSpins] 内；自旋失败（最终仍需 park）时预算减半，
+ * 让持锁时间长的锁很快退化为直接 park。持锁线程不在运行时的提前退出由同步器负责。
+ * <p>
+ * 单核机器上自旋只会抢占持锁者的时间片，此时预算恒为 0。
+ */
+public class AdaptiveSpinPolicy implements SpinPolicy {
+
+    private static final boolean MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+
+    /**
+     * 默认的最小预算，保证长期失败后仍保留少量试探。
+     */
+    public static final int DEFAULT_MIN_SPINS = 16;
+
+    /**
+     * 默认的最大预算，约为几微秒到几十微秒，取决于 CPU 的 pause 指令延迟。
+     */
+    public static final int DEFAULT_MAX_SPINS = 1 << 10;
+
+    private final int minSpins;
+
+    private final int maxSpins;
+
+    /**
+     * 成功自旋次数的滑动平均，放大 8 倍保存以避免整数除法丢精度。
+     * 允许良性竞争，不需要 volatile。
+     */
+    private int avgSpinsX8;
+
+    private int limit;
+
+    public AdaptiveSpinPolicy() {
+        this(DEFAULT_MIN_SPINS, DEFAULT_MAX_SPINS);
+    }
+
+    /**
+     * @param minSpins lower bound of the spin budget
+     * @param maxSpins upper bound of the spin budget
+     * @throws IllegalArgumentException if the bounds are negative or inverted
+     */
+    public AdaptiveSpinPolicy(int minSpins, int maxSpins) {
+        if (minSpins < 0 || maxSpins < minSpins)
+            throw new IllegalArgumentException();
+        this.minSpins = minSpins;
+        this.maxSpins = maxSpins;
+        this.limit = maxSpins;
+    }
+
+    @Override
+    public int spinLimit() {
+        return MULTIPROCESSOR ? limit : 0;
+    }
+
+    @Override
+    public void record(int spins, boolean acquired) {
+        int l;
+        if (acquired) {
+            // avg += (spins - avg) / 8
+            int avg = avgSpinsX8 += spins - (avgSpinsX8 >> 3);
+            l = avg >> 2;
+        } else {
+            l = limit >> 1;
+        }
+        limit = Math.max(minSpins, Math.min(maxSpins, l));
+    }
+
+    public int getMinSpins() {
+        return minSpins;
+    }
+
+    public int getMaxSpins() {
+        return maxSpins;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[limit = " + limit + "]";
+    }
+}
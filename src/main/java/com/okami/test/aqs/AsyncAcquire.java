@@ -0,0 +1,143 @@
+package com.okami.test.aqs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 一次异步获取：既是返回给调用方的 future，也是排队节点上代替线程的续体。
+ * <p>
+ * 阻塞获取的线程被唤醒后在 acquire 循环里重试，异步获取则把同样的一步
+ * （{@link QueuedSynchronizer#driveAsync}）提交到执行器。
+ * 唤醒可能与正在执行的一步并发，所以用 {@link #wakeups} 计数串行化：
+ * 计数从 0 变为 1 的唤醒负责提交，执行期间到来的唤醒只加计数，由正在执行的任务补跑，
+ * 相当于 park/unpark 的许可。取消与超时也走同一条路径，节点只会被一个线程操作。
+ * <p>
+ * 成功获取时以 {@code true} 完成，超时以 {@code false} 完成；
+ * 调用方取消 future 时，节点在取消线程上像 cancelAcquire 一样出队，
+ * 如果与获取成功恰好同时发生，已获取的资源会被立即释放。
+ */
+final class AsyncAcquire extends CompletableFuture<Boolean> implements Runnable {
+
+    private static final AtomicIntegerFieldUpdater<AsyncAcquire> WAKEUPS =
+            AtomicIntegerFieldUpdater.newUpdater(AsyncAcquire.class, "wakeups");
+
+    final QueuedSynchronizer sync;
+
+    final long arg;
+
+    final boolean shared;
+
+    private final Executor executor;
+
+    /**
+     * 排队节点，获取结束（成功、超时或取消）后置 null，只在串行化的 run 中访问。
+     */
+    Node node;
+
+    /**
+     * 获取已经结束，之后的唤醒都是多余的。只在串行化的 run 中访问。
+     */
+    boolean finished;
+
+    volatile boolean timedOut;
+
+    private volatile int wakeups;
+
+    private volatile ScheduledFuture<?> timer;
+
+    private volatile TimingWheel.Timeout wheelTimeout;
+
+    AsyncAcquire(QueuedSynchronizer sync, long arg, boolean shared, Executor executor) {
+        this.sync = sync;
+        this.arg = arg;
+        this.shared = shared;
+        this.executor = executor;
+    }
+
+    /**
+     * 唤醒：相当于 unpark。
+     */
+    void signal() {
+        if (WAKEUPS.getAndIncrement(this) == 0) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // 执行器已关闭时就地执行，每一步都不会阻塞
+                run();
+            }
+        }
+    }
+
+    /**
+     * 在当前线程上执行一步（如果没有其他线程正在执行），用于入队后的第一步和取消。
+     * 每一步都不会阻塞，所以在调用方线程上执行是安全的。
+     */
+    void signalInline() {
+        if (WAKEUPS.getAndIncrement(this) == 0)
+            run();
+    }
+
+    @Override
+    public void run() {
+        int w = wakeups;
+        do {
+            sync.driveAsync(this);
+        } while ((w = WAKEUPS.addAndGet(this, -w)) != 0);
+    }
+
+    /**
+     * @param wheel 同步器配置的时间轮，null 时用共享的调度线程
+     */
+    void scheduleTimeout(long nanosTimeout, TimingWheel wheel) {
+        if (wheel != null && !wheel.isClosed())
+            wheelTimeout = wheel.schedule(this::timeout, System.nanoTime() + nanosTimeout);
+        else
+            timer = Timer.INSTANCE.schedule(this::timeout, nanosTimeout, TimeUnit.NANOSECONDS);
+    }
+
+    private void timeout() {
+        timedOut = true;
+        signal();
+    }
+
+    void cancelTimer() {
+        ScheduledFuture<?> t = timer;
+        if (t != null)
+            t.cancel(false);
+        TimingWheel.cancel(wheelTimeout);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled)
+            signalInline();
+        return cancelled;
+    }
+
+    /**
+     * 超时计时器，所有同步器共用一个守护线程，取消的任务立即移出队列。
+     */
+    static final class Timer {
+        static final ScheduledExecutorService INSTANCE;
+
+        static {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "aqs-async-timeout");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            INSTANCE = executor;
+        }
+
+        private Timer() {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.okami.test.aqs;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * aqs 包的原子操作后端（JDK 8 版本）。
+ * <p>
+ * 基于 {@link AtomicIntegerFieldUpdater}/{@link AtomicReferenceFieldUpdater} 实现，
+ * 字段更新器表达不了的内存屏障通过 sun.misc.Unsafe 完成；
+ * 在 JDK 9+ 上，多版本 jar 中 META-INF/versions/9 下的同名类会替换本类，改用 VarHandle。
+ * 两个版本必须保持相同的包级方法签名。
+ */
+final class Atomics {
+
+    private static final AtomicIntegerFieldUpdater<AbstractQueuedSynchronizer> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(AbstractQueuedSynchronizer.class, "state");
+    private static final AtomicLongFieldUpdater<AbstractQueuedLongSynchronizer> LONG_STATE =
+            AtomicLongFieldUpdater.newUpdater(AbstractQueuedLongSynchronizer.class, "state");
+    private static final AtomicReferenceFieldUpdater<QueuedSynchronizer, Node> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(QueuedSynchronizer.class, Node.class, "head");
+    private static final AtomicReferenceFieldUpdater<QueuedSynchronizer, Node> TAIL =
+            AtomicReferenceFieldUpdater.newUpdater(QueuedSynchronizer.class, Node.class, "tail");
+    private static final AtomicReferenceFieldUpdater<QueuedSynchronizer.TailField, Node> PADDED_TAIL =
+            AtomicReferenceFieldUpdater.newUpdater(QueuedSynchronizer.TailField.class, Node.class, "tail");
+    private static final AtomicIntegerFieldUpdater<QueuedSynchronizer> PINCOUNT =
+            AtomicIntegerFieldUpdater.newUpdater(QueuedSynchronizer.class, "pinCount");
+    private static final AtomicReferenceFieldUpdater<QueuedSynchronizer, QueuedSynchronizer.PinCell[]> PINCELLS =
+            AtomicReferenceFieldUpdater.newUpdater(QueuedSynchronizer.class, QueuedSynchronizer.PinCell[].class, "pinCells");
+    private static final AtomicIntegerFieldUpdater<QueuedSynchronizer.PinCellField> PINS =
+            AtomicIntegerFieldUpdater.newUpdater(QueuedSynchronizer.PinCellField.class, "pins");
+
+    private static final AtomicIntegerFieldUpdater<Node> WAITSTATUS =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "waitStatus");
+    private static final AtomicIntegerFieldUpdater<Node> HANDOFF =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "handoff");
+    private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+    private static final AtomicReferenceFieldUpdater<Node, Node> PREV =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "prev");
+    private static final AtomicReferenceFieldUpdater<Node, Thread> THREAD =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Thread.class, "thread");
+
+    /**
+     * sun.misc.Unsafe#loadFence，绑定到实例的 static final 句柄会被 JIT 内联成屏障指令。
+     * 用反射获取是因为 --release 8 编译时看不到 sun.misc 包。
+     */
+    private static final MethodHandle LOAD_FENCE;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            LOAD_FENCE = MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "loadFence", MethodType.methodType(void.class))
+                    .bindTo(f.get(null));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Atomics() {
+    }
+
+    static boolean casState(AbstractQueuedSynchronizer sync, int expect, int update) {
+        return STATE.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casState(AbstractQueuedLongSynchronizer sync, long expect, long update) {
+        return LONG_STATE.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casHead(QueuedSynchronizer sync, Node expect, Node update) {
+        return HEAD.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casTail(QueuedSynchronizer sync, Node expect, Node update) {
+        return TAIL.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casTail(QueuedSynchronizer.PaddedTail tail, Node expect, Node update) {
+        return PADDED_TAIL.compareAndSet(tail, expect, update);
+    }
+
+    static int getAndAddPinCount(QueuedSynchronizer sync, int delta) {
+        return PINCOUNT.getAndAdd(sync, delta);
+    }
+
+    static boolean casPinCount(QueuedSynchronizer sync, int expect, int update) {
+        return PINCOUNT.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casPinCells(QueuedSynchronizer sync, QueuedSynchronizer.PinCell[] expect,
+                               QueuedSynchronizer.PinCell[] update) {
+        return PINCELLS.compareAndSet(sync, expect, update);
+    }
+
+    static int getAndAddPins(QueuedSynchronizer.PinCell cell, int delta) {
+        return PINS.getAndAdd(cell, delta);
+    }
+
+    static boolean casWaitStatus(Node node, int expect, int update) {
+        return WAITSTATUS.compareAndSet(node, expect, update);
+    }
+
+    static boolean casNext(Node node, Node expect, Node update) {
+        return NEXT.compareAndSet(node, expect, update);
+    }
+
+    /**
+     * JDK 8 没有 plain 写语义，lazySet（release 写）是最接近的廉价写法。
+     */
+    static void setWaitStatusRelaxed(Node node, int waitStatus) {
+        WAITSTATUS.lazySet(node, waitStatus);
+    }
+
+    static boolean casHandoff(Node node, int expect, int update) {
+        return HANDOFF.compareAndSet(node, expect, update);
+    }
+
+    static void setHandoffRelaxed(Node node, int handoff) {
+        HANDOFF.lazySet(node, handoff);
+    }
+
+    static void setPrevRelaxed(Node node, Node p) {
+        PREV.lazySet(node, p);
+    }
+
+    static void setNextRelaxed(Node node, Node n) {
+        NEXT.lazySet(node, n);
+    }
+
+    static void setThreadRelaxed(Node node, Thread thread) {
+        THREAD.lazySet(node, thread);
+    }
+
+    /**
+     * 保证屏障之前的读不会重排到之后的读之后，供乐观读校验使用。
+     */
+    static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+    }
+
+    /**
+     * 自旋等待提示，JDK 8 没有 Thread.onSpinWait，这里为空操作。
+     */
+    static void onSpinWait() {
+    }
+}
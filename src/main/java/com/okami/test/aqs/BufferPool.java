@@ -0,0 +1,395 @@
+package com.okami.test.aqs;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按大小分级的 ByteBuffer 池，用来代替每条消息新建的 byte[]/ByteBuffer，减轻高 QPS 下的 GC 压力。
+ * <p>
+ * 容量按 2 的幂分级，从 minSize 到 maxSize，每级最多同时借出 buffersPerClass 个。
+ * 每级的借出额度是一个共享模式的 {@link AbstractQueuedSynchronizer}（state 是剩余额度，与信号量相同）：
+ * 额度用完时 {@link #borrow} 排队等待归还，{@link #tryBorrow} 立即失败。
+ * <p>
+ * 常用路径不加锁：借出只有额度上的一次 CAS，缓冲区先从当前线程的缓存取，其次是本级的无锁空闲栈，
+ * 都没有才新建（计为未命中）；归还先放回当前线程的缓存，满了再放回空闲栈。
+ * 所以同一个线程反复借还同一级的缓冲区时，既不分配也不与其他线程争用空闲栈。
+ * <p>
+ * 空闲的缓冲区（空闲栈与所有线程的缓存合计）每级同样最多 buffersPerClass 个，超出的归还直接丢弃交给 GC，
+ * 所以池占用的内存每级不超过 2 × buffersPerClass 个缓冲区，与线程数无关。
+ * 线程结束时缓存中的缓冲区交给 GC，占用的空闲名额在之后某次归还因名额用完而失败时收回。
+ * <p>
+ * 超过 maxSize 的请求不进池：直接按请求大小新建，归还时丢弃，也不受额度限制。
+ * <p>
+ * 借出的缓冲区 position 为 0、limit 为请求的大小，容量是所在级的大小；归还时必须是借出的那个对象，
+ * 不能是 slice/duplicate，归还后不能再使用，也不能重复归还（不做检查）。
+ */
+public final class BufferPool {
+
+    /**
+     * 每个线程每级最多缓存的缓冲区数。
+     */
+    static final int THREAD_CACHE_SIZE = 8;
+
+    /**
+     * 两次检查已结束线程的缓存之间的最短间隔。
+     */
+    static final long RECLAIM_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String name;
+
+    private final boolean direct;
+
+    private final int minShift;
+
+    private final int maxSize;
+
+    private final SizeClass[] classes;
+
+    private final ThreadLocal<ThreadCache> threadCache;
+
+    /**
+     * 所有线程的缓存，用来收回已结束线程占用的空闲名额。
+     */
+    private final ConcurrentLinkedQueue<ThreadCache> threadCaches = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong nextReclaim = new AtomicLong(System.nanoTime());
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder exhausted = new LongAdder();
+
+    private final LongAdder outstandingBytes = new LongAdder();
+
+    private BufferPool(String name, boolean direct, int minSize, int maxSize, int buffersPerClass) {
+        if (minSize <= 0 || maxSize < minSize || buffersPerClass <= 0)
+            throw new IllegalArgumentException();
+        this.name = name;
+        this.direct = direct;
+        this.minShift = 32 - Integer.numberOfLeadingZeros(minSize - 1);
+        int maxShift = 32 - Integer.numberOfLeadingZeros(maxSize - 1);
+        if (maxShift > 30)
+            throw new IllegalArgumentException("maxSize too large");
+        this.maxSize = 1 << maxShift;
+        this.classes = new SizeClass[maxShift - minShift + 1];
+        for (int i = 0; i < classes.length; i++)
+            classes[i] = new SizeClass(1 << (minShift + i), buffersPerClass);
+        this.threadCache = ThreadLocal.withInitial(() -> {
+            ThreadCache cache = new ThreadCache(Thread.currentThread(), classes.length);
+            threadCaches.add(cache);
+            return cache;
+        });
+    }
+
+    /**
+     * 堆内缓冲区池。
+     *
+     * @param name            池名，用于监控
+     * @param minSize         最小一级的容量，向上取整为 2 的幂
+     * @param maxSize         最大一级的容量，向上取整为 2 的幂
+     * @param buffersPerClass 每级最多同时借出的缓冲区数
+     */
+    public static BufferPool heap(String name, int minSize, int maxSize, int buffersPerClass) {
+        return new BufferPool(name, false, minSize, maxSize, buffersPerClass);
+    }
+
+    /**
+     * 直接内存缓冲区池，参数同 {@link #heap}。直接内存分配和回收都很贵，比堆内缓冲区更值得池化。
+     */
+    public static BufferPool direct(String name, int minSize, int maxSize, int buffersPerClass) {
+        return new BufferPool(name, true, minSize, maxSize, buffersPerClass);
+    }
+
+    /**
+     * 借出至少 size 字节的缓冲区，本级额度用完时等待归还，最多等待给定的时间。
+     *
+     * @param size the number of bytes needed
+     * @return a buffer with {@code limit() == size}, or {@code null} if the waiting time elapsed
+     * @throws InterruptedException     if interrupted while waiting
+     * @throws IllegalArgumentException if {@code size} is negative
+     */
+    public ByteBuffer borrow(int size, long timeout, TimeUnit unit) throws InterruptedException {
+        if (size < 0)
+            throw new IllegalArgumentException();
+        if (size > maxSize)
+            return allocateHuge(size);
+        SizeClass c = classes[classIndex(size)];
+        if (!c.tryAcquireSharedNanos(1, unit.toNanos(timeout))) {
+            exhausted.increment();
+            return null;
+        }
+        return take(c, size);
+    }
+
+    /**
+     * 借出至少 size 字节的缓冲区，本级额度用完时立即返回 null。
+     *
+     * @throws IllegalArgumentException if {@code size} is negative
+     */
+    public ByteBuffer tryBorrow(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException();
+        if (size > maxSize)
+            return allocateHuge(size);
+        SizeClass c = classes[classIndex(size)];
+        if (c.tryAcquireShared(1) < 0) {
+            exhausted.increment();
+            return null;
+        }
+        return take(c, size);
+    }
+
+    /**
+     * 归还借出的缓冲区。
+     *
+     * @throws IllegalArgumentException if the buffer was not borrowed from this pool
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (buffer.isDirect() != direct)
+            throw new IllegalArgumentException("Buffer not from this pool");
+        if (capacity > maxSize) {
+            outstandingBytes.add(-capacity);
+            return;
+        }
+        SizeClass c = classes[classIndex(capacity)];
+        if (c.size != capacity)
+            throw new IllegalArgumentException("Buffer not from this pool");
+        buffer.clear();
+        if (c.reserveIdle() || (reclaimDeadThreadCaches() && c.reserveIdle())) {
+            if (!threadCache.get().push(c.index, buffer))
+                c.free.offerFirst(buffer);
+        }
+        outstandingBytes.add(-capacity);
+        c.releaseShared(1);
+    }
+
+    private ByteBuffer take(SizeClass c, int size) {
+        ByteBuffer b = threadCache.get().pop(c.index);
+        if (b == null)
+            b = c.free.pollFirst();
+        if (b != null) {
+            c.idleCount.decrementAndGet();
+            hits.increment();
+        } else {
+            misses.increment();
+            b = allocate(c.size);
+        }
+        outstandingBytes.add(c.size);
+        b.limit(size);
+        return b;
+    }
+
+    /**
+     * 收回已结束线程的缓存占用的空闲名额，两次检查至少间隔 {@link #RECLAIM_INTERVAL_NANOS}。
+     *
+     * @return 是否收回了名额
+     */
+    private boolean reclaimDeadThreadCaches() {
+        long now = System.nanoTime();
+        long next = nextReclaim.get();
+        if (now - next < 0L || !nextReclaim.compareAndSet(next, now + RECLAIM_INTERVAL_NANOS))
+            return false;
+        boolean reclaimed = false;
+        for (Iterator<ThreadCache> it = threadCaches.iterator(); it.hasNext(); ) {
+            ThreadCache cache = it.next();
+            // isAlive() 返回 false 之后能看到所属线程对 counts 的全部写入
+            if (!cache.owner.isAlive()) {
+                it.remove();
+                for (int i = 0; i < classes.length; i++) {
+                    if (cache.counts[i] > 0) {
+                        classes[i].idleCount.addAndGet(-cache.counts[i]);
+                        reclaimed = true;
+                    }
+                }
+            }
+        }
+        return reclaimed;
+    }
+
+    private ByteBuffer allocateHuge(int size) {
+        misses.increment();
+        outstandingBytes.add(size);
+        return allocate(size);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private int classIndex(int size) {
+        if (size <= 1)
+            return 0;
+        return Math.max(0, 32 - Integer.numberOfLeadingZeros(size - 1) - minShift);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return 复用缓冲区的借出次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return 新建缓冲区的借出次数，包括超过 maxSize 的请求
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return 额度用完而超时或立即失败的借出次数
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * @return 已借出未归还的缓冲区的总容量
+     */
+    public long getOutstandingBytes() {
+        return outstandingBytes.sum();
+    }
+
+    /**
+     * @return 池中空闲的缓冲区（空闲栈与线程缓存合计）的总容量
+     */
+    public long getIdleBytes() {
+        long bytes = 0L;
+        for (SizeClass c : classes)
+            bytes += (long) c.idleCount.get() * c.size;
+        return bytes;
+    }
+
+    /**
+     * @return 给定大小所在级的剩余额度
+     */
+    public int getAvailable(int size) {
+        return classes[classIndex(Math.min(size, maxSize))].getState();
+    }
+
+    /**
+     * @return 在给定大小所在级上等待额度的线程数的估计值
+     */
+    public int getQueueLength(int size) {
+        return classes[classIndex(Math.min(size, maxSize))].getQueueLength();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool[" + name + (direct ? ", direct" : ", heap") + ", outstandingBytes="
+                + getOutstandingBytes() + "]";
+    }
+
+    /**
+     * 一级缓冲区：借出额度、空闲名额与空闲栈。
+     */
+    private final class SizeClass extends AbstractQueuedSynchronizer {
+
+        private static final long serialVersionUID = -1519383279408426256L;
+
+        final int size;
+
+        final int index;
+
+        final int buffers;
+
+        final ConcurrentLinkedDeque<ByteBuffer> free = new ConcurrentLinkedDeque<>();
+
+        /**
+         * 空闲缓冲区数，包括 free 和各线程缓存中的，不超过 buffers。
+         */
+        final AtomicInteger idleCount = new AtomicInteger();
+
+        SizeClass(int size, int buffers) {
+            this.size = size;
+            this.index = Integer.numberOfTrailingZeros(size) - minShift;
+            this.buffers = buffers;
+            setState(buffers);
+        }
+
+        /**
+         * 占一个空闲名额，名额用完时返回 false，调用方丢弃要归还的缓冲区。
+         */
+        boolean reserveIdle() {
+            for (; ; ) {
+                int n = idleCount.get();
+                if (n >= buffers)
+                    return false;
+                if (idleCount.compareAndSet(n, n + 1))
+                    return true;
+            }
+        }
+
+        @Override
+        protected int tryAcquireShared(int acquires) {
+            for (; ; ) {
+                int available = getState();
+                int remaining = available - acquires;
+                if (remaining < 0 || compareAndSetState(available, remaining))
+                    return remaining;
+            }
+        }
+
+        @Override
+        protected boolean tryReleaseShared(int releases) {
+            for (; ; ) {
+                int current = getState();
+                if (compareAndSetState(current, current + releases))
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * 当前线程每级缓存的空闲缓冲区，所属线程结束之前只由所属线程访问。
+     */
+    private static final class ThreadCache {
+
+        final Thread owner;
+
+        final ByteBuffer[][] buffers;
+
+        final int[] counts;
+
+        ThreadCache(Thread owner, int classes) {
+            this.owner = owner;
+            buffers = new ByteBuffer[classes][THREAD_CACHE_SIZE];
+            counts = new int[classes];
+        }
+
+        ByteBuffer pop(int index) {
+            int n = counts[index];
+            if (n == 0)
+                return null;
+            counts[index] = --n;
+            ByteBuffer b = buffers[index][n];
+            buffers[index][n] = null;
+            return b;
+        }
+
+        boolean push(int index, ByteBuffer b) {
+            int n = counts[index];
+            if (n == THREAD_CACHE_SIZE)
+                return false;
+            buffers[index][n] = b;
+            counts[index] = n + 1;
+            return true;
+        }
+    }
+}
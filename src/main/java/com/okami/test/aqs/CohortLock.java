@@ -0,0 +1,333 @@
+package com.okami.test.aqs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * NUMA 感知的 cohort 锁：每个节点一把本地锁（{@link ExclusiveLock}），节点之间共用一把全局锁。
+ * <p>
+ * 线程先获取所在节点的本地锁，再获取全局锁。释放时如果同一节点还有线程在本地锁上排队，
+ * 就把全局锁留给本节点（只释放本地锁），锁和临界区数据所在的缓存行留在本节点的缓存里，
+ * 不必在每次交接时跨节点迁移。连续在本节点内交接 {@code maxPasses} 次后必须释放全局锁，
+ * 让其他节点的线程有机会获取，不会被一个繁忙的节点饿死。
+ * <p>
+ * 全局锁不属于任何线程而属于节点（thread-oblivious）：由一个线程获取，可能由本节点的另一个线程释放。
+ * 本节点排队的线程在全局锁交接给本节点之后超时或被中断离开时，全局锁可能没有人接手，
+ * 离开的线程和交接的线程都会检查这种情况并代为释放，见 {@link #releaseIfOrphaned(Cohort)}。
+ * <p>
+ * 只有一个节点时（包括读不到拓扑的机器）多一层锁没有意义，直接退化为一把 {@link ExclusiveLock}。
+ * <p>
+ * 与 {@link ExclusiveLock} 一样可重入：持有锁的线程再次获取时只增加持有计数，不再经过本地锁和全局锁，
+ * 释放同样多次后才真正释放。多节点时不支持 {@link #newCondition()}。
+ */
+public class CohortLock implements Lock {
+
+    /**
+     * 默认最多连续在本节点内交接的次数。
+     */
+    public static final int DEFAULT_MAX_PASSES = 64;
+
+    private final NumaTopology topology;
+
+    private final int maxPasses;
+
+    /**
+     * 单节点时使用的锁，多节点时为 null。
+     */
+    private final ExclusiveLock flat;
+
+    private final Cohort[] cohorts;
+
+    private final GlobalSync global;
+
+    /**
+     * 持有锁的节点、线程与持有计数，只在持有锁期间由持有者读写。
+     * 记下节点是因为线程在持有期间可能迁移到其他节点，释放时要找到获取时的本地锁。
+     * 其他线程读 holder 只会读到 null 或别的线程，不会误以为自己持有锁。
+     */
+    private Cohort owner;
+
+    private Thread holder;
+
+    private int holds;
+
+    /**
+     * 使用本机的拓扑，默认的交接上限。
+     */
+    public CohortLock() {
+        this(NumaTopology.system(), DEFAULT_MAX_PASSES);
+    }
+
+    /**
+     * @param topology  节点拓扑，测试时可以用 {@link NumaTopology#simulated(int)}
+     * @param maxPasses 全局锁最多连续在一个节点内交接的次数，0 表示每次都释放全局锁
+     */
+    public CohortLock(NumaTopology topology, int maxPasses) {
+        if (maxPasses < 0)
+            throw new IllegalArgumentException();
+        this.topology = topology;
+        this.maxPasses = maxPasses;
+        int nodes = topology.nodeCount();
+        if (nodes == 1) {
+            flat = new ExclusiveLock();
+            cohorts = null;
+            global = null;
+        } else {
+            flat = null;
+            cohorts = new Cohort[nodes];
+            for (int i = 0; i < nodes; i++)
+                cohorts[i] = new Cohort();
+            global = new GlobalSync();
+        }
+    }
+
+    @Override
+    public void lock() {
+        if (flat != null) {
+            flat.lock();
+            return;
+        }
+        if (reenter())
+            return;
+        Cohort c = cohorts[topology.currentNode()];
+        c.local.lock();
+        if (!c.globalHeld) {
+            global.acquire(1);
+            c.globalHeld = true;
+        }
+        setOwner(c);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (flat != null) {
+            flat.lockInterruptibly();
+            return;
+        }
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (reenter())
+            return;
+        Cohort c = cohorts[topology.currentNode()];
+        try {
+            c.local.lockInterruptibly();
+        } catch (InterruptedException e) {
+            releaseIfOrphaned(c);
+            throw e;
+        }
+        if (!c.globalHeld) {
+            try {
+                global.acquireInterruptibly(1);
+            } catch (InterruptedException e) {
+                c.local.unlock();
+                throw e;
+            }
+            c.globalHeld = true;
+        }
+        setOwner(c);
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (flat != null)
+            return flat.tryLock();
+        if (reenter())
+            return true;
+        Cohort c = cohorts[topology.currentNode()];
+        if (!c.local.tryLock())
+            return false;
+        if (!c.globalHeld) {
+            if (!global.tryAcquire(1)) {
+                c.local.unlock();
+                return false;
+            }
+            c.globalHeld = true;
+        }
+        setOwner(c);
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (flat != null)
+            return flat.tryLock(time, unit);
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (reenter())
+            return true;
+        long nanosTimeout = unit.toNanos(time);
+        long deadline = System.nanoTime() + nanosTimeout;
+        Cohort c = cohorts[topology.currentNode()];
+        boolean locked;
+        try {
+            locked = c.local.tryLock(nanosTimeout, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            releaseIfOrphaned(c);
+            throw e;
+        }
+        if (!locked) {
+            releaseIfOrphaned(c);
+            return false;
+        }
+        if (!c.globalHeld) {
+            try {
+                locked = global.tryAcquireNanos(1, deadline - System.nanoTime());
+            } catch (InterruptedException e) {
+                c.local.unlock();
+                throw e;
+            }
+            if (!locked) {
+                c.local.unlock();
+                return false;
+            }
+            c.globalHeld = true;
+        }
+        setOwner(c);
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        if (flat != null) {
+            flat.unlock();
+            return;
+        }
+        if (holder != Thread.currentThread())
+            throw new IllegalMonitorStateException();
+        if (--holds > 0)
+            return;
+        Cohort c = owner;
+        owner = null;
+        holder = null;
+        boolean passed = c.passes < maxPasses && c.local.hasQueuedThreads();
+        if (passed) {
+            c.passes++;
+        } else {
+            c.passes = 0;
+            c.globalHeld = false;
+            global.release(1);
+        }
+        c.local.unlock();
+        if (passed)
+            releaseIfOrphaned(c);
+    }
+
+    /**
+     * 单节点时返回 {@link ExclusiveLock} 的 Condition。
+     *
+     * @throws UnsupportedOperationException 多节点时
+     */
+    @Override
+    public Condition newCondition() {
+        if (flat != null)
+            return flat.newCondition();
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return 当前线程的持有计数，未持有时为 0
+     */
+    public int getHoldCount() {
+        if (flat != null)
+            return flat.getHoldCount();
+        return holder == Thread.currentThread() ? holds : 0;
+    }
+
+    public boolean isLocked() {
+        if (flat != null)
+            return flat.isLocked();
+        return global.isHeld();
+    }
+
+    public NumaTopology getTopology() {
+        return topology;
+    }
+
+    public int getMaxPasses() {
+        return maxPasses;
+    }
+
+    private void setOwner(Cohort c) {
+        owner = c;
+        holder = Thread.currentThread();
+        holds = 1;
+    }
+
+    /**
+     * 当前线程已持有锁时增加持有计数。
+     *
+     * @return 是否是重入
+     */
+    private boolean reenter() {
+        if (holder != Thread.currentThread())
+            return false;
+        if (holds == Integer.MAX_VALUE)
+            throw new Error("Maximum lock count exceeded");
+        holds++;
+        return true;
+    }
+
+    /**
+     * 全局锁留给了本节点，但本节点已经没有线程接手（排队的线程超时或被中断离开了）时，代为释放全局锁。
+     * <p>
+     * 本节点在全局锁留给它期间获得本地锁的线程，释放时都会做出交接或释放的决定，
+     * 所以只要本地锁此时被占用或仍有人排队就不必处理；否则拿下本地锁，在锁内复查后释放。
+     */
+    private void releaseIfOrphaned(Cohort c) {
+        if (c.globalHeld && !c.local.hasQueuedThreads() && c.local.tryLock()) {
+            try {
+                if (c.globalHeld) {
+                    c.passes = 0;
+                    c.globalHeld = false;
+                    global.release(1);
+                }
+            } finally {
+                c.local.unlock();
+            }
+        }
+    }
+
+    /**
+     * 一个节点的本地锁与交接状态。
+     */
+    private static final class Cohort {
+
+        final ExclusiveLock local = new ExclusiveLock();
+
+        /**
+         * 全局锁当前是否归本节点，在本地锁内写；{@link #releaseIfOrphaned} 在锁外预读。
+         */
+        volatile boolean globalHeld;
+
+        /**
+         * 连续在本节点内交接的次数，在本地锁内读写。
+         */
+        int passes;
+    }
+
+    /**
+     * 不记录持有线程的全局锁，任何线程都可以释放。
+     */
+    private static final class GlobalSync extends AbstractQueuedSynchronizer {
+
+        private static final long serialVersionUID = 2563373142150720521L;
+
+        @Override
+        protected boolean tryAcquire(int arg) {
+            return getState() == 0 && compareAndSetState(0, 1);
+        }
+
+        @Override
+        protected boolean tryRelease(int arg) {
+            if (getState() == 0)
+                throw new IllegalMonitorStateException();
+            setState(0);
+            return true;
+        }
+
+        boolean isHeld() {
+            return getState() != 0;
+        }
+    }
+}
@@ -1,439 +1,563 @@
-//package com.okami.test.aqs;
-//
-//import java.util.concurrent.locks.Condition;
-//
-///**
-//     * 作为Lock实现基础的AbstractQueuedSynchronizer条件实现。
-//     * 此类的方法文档从锁定和条件用户的角度描述了机制，而不是行为规范。
-//     * 此类的导出版本通常需要随附描述依赖于关联AbstractQueuedSynchronizer条件语义的文档。
-//     * 此类是可序列化的，但所有字段都是瞬态的，因此反序列化的条件没有等待者。
-//     */
-//    public class ConditionObject implements Condition, java.io.Serializable {
-//        private static final long serialVersionUID = 1173984872572414699L;
-//        /**
-//         * Mode meaning to reinterrupt on exit from wait
-//         */
-//        private static final int REINTERRUPT = 1;
-//        /**
-//         * Mode meaning to throw InterruptedException on exit from wait
-//         */
-//        private static final int THROW_IE = -1;
-//        /**
-//         * First node of condition queue.
-//         */
-//        private transient Node firstWaiter;
-//
-//        // Internal methods
-//        /**
-//         * Last node of condition queue.
-//         */
-//        private transient Node lastWaiter;
-//
-//        /**
-//         * Creates a new {@code ConditionObject} instance.
-//         */
-//        public ConditionObject() {
-//        }
-//
-//        /**
-//         * Adds a new waiter to wait queue.
-//         *
-//         * @return its new wait node
-//         */
-//        private Node addConditionWaiter() {
-//            if (!isHeldExclusively())
-//                throw new IllegalMonitorStateException();
-//            Node t = lastWaiter;
-//            // If lastWaiter is cancelled, clean out.
-//            if (t != null && t.waitStatus != Node.CONDITION) {
-//                unlinkCancelledWaiters();
-//                t = lastWaiter;
-//            }
-//
-//            Node node = new Node(Node.CONDITION);
-//
-//            if (t == null)
-//                firstWaiter = node;
-//            else
-//                t.nextWaiter = node;
-//            lastWaiter = node;
-//            return node;
-//        }
-//
-//        /**
-//         * Removes and transfers nodes until hit non-cancelled one or
-//         * null. Split out from signal in part to encourage compilers
-//         * to inline the case of no waiters.
-//         *
-//         * @param first (non-null) the first node on condition queue
-//         */
-//        private void doSignal(Node first) {
-//            do {
-//                if ((firstWaiter = first.nextWaiter) == null)
-//                    lastWaiter = null;
-//                first.nextWaiter = null;
-//            } while (!transferForSignal(first) &&
-//                    (first = firstWaiter) != null);
-//        }
-//
-//        // public methods
-//
-//        /**
-//         * Removes and transfers all nodes.
-//         *
-//         * @param first (non-null) the first node on condition queue
-//         */
-//        private void doSignalAll(Node first) {
-//            lastWaiter = firstWaiter = null;
-//            do {
-//                Node next = first.nextWaiter;
-//                first.nextWaiter = null;
-//                transferForSignal(first);
-//                first = next;
-//            } while (first != null);
-//        }
-//
-//        /**
-//         * Unlinks cancelled waiter nodes from condition queue.
-//         * Called only while holding lock. This is called when
-//         * cancellation occurred during condition wait, and upon
-//         * insertion of a new waiter when lastWaiter is seen to have
-//         * been cancelled. This method is needed to avoid garbage
-//         * retention in the absence of signals. So even though it may
-//         * require a full traversal, it comes into play only when
-//         * timeouts or cancellations occur in the absence of
-//         * signals. It traverses all nodes rather than stopping at a
-//         * particular target to unlink all pointers to garbage nodes
-//         * without requiring many re-traversals during cancellation
-//         * storms.
-//         */
-//        private void unlinkCancelledWaiters() {
-//            Node t = firstWaiter;
-//            Node trail = null;
-//            while (t != null) {
-//                Node next = t.nextWaiter;
-//                if (t.waitStatus != Node.CONDITION) {
-//                    t.nextWaiter = null;
-//                    if (trail == null)
-//                        firstWaiter = next;
-//                    else
-//                        trail.nextWaiter = next;
-//                    if (next == null)
-//                        lastWaiter = trail;
-//                } else
-//                    trail = t;
-//                t = next;
-//            }
-//        }
-//
-//        /**
-//         * Moves the longest-waiting thread, if one exists, from the
-//         * wait queue for this condition to the wait queue for the
-//         * owning lock.
-//         *
-//         * @throws IllegalMonitorStateException if {@link #isHeldExclusively}
-//         *                                      returns {@code false}
-//         */
-//        public final void signal() {
-//            if (!isHeldExclusively())
-//                throw new IllegalMonitorStateException();
-//            Node first = firstWaiter;
-//            if (first != null)
-//                doSignal(first);
-//        }
-//
-//        /*
-//         * For interruptible waits, we need to track whether to throw
-//         * InterruptedException, if interrupted while blocked on
-//         * condition, versus reinterrupt current thread, if
-//         * interrupted while blocked waiting to re-acquire.
-//         */
-//
-//        /**
-//         * Moves all threads from the wait queue for this condition to
-//         * the wait queue for the owning lock.
-//         *
-//         * @throws IllegalMonitorStateException if {@link #isHeldExclusively}
-//         *                                      returns {@code false}
-//         */
-//        public final void signalAll() {
-//            if (!isHeldExclusively())
-//                throw new IllegalMonitorStateException();
-//            Node first = firstWaiter;
-//            if (first != null)
-//                doSignalAll(first);
-//        }
-//
-//        /**
-//         * Implements uninterruptible condition wait.
-//         * <ol>
-//         * <li>Save lock state returned by {@link #getState}.
-//         * <li>Invoke {@link #release} with saved state as argument,
-//         * throwing IllegalMonitorStateException if it fails.
-//         * <li>Block until signalled.
-//         * <li>Reacquire by invoking specialized version of
-//         * {@link #acquire} with saved state as argument.
-//         * </ol>
-//         */
-//        public final void awaitUninterruptibly() {
-//            Node node = addConditionWaiter();
-//            int savedState = fullyRelease(node);
-//            boolean interrupted = false;
-//            while (!isOnSyncQueue(node)) {
-//                LockSupport.park(this);
-//                if (Thread.interrupted())
-//                    interrupted = true;
-//            }
-//            if (acquireQueued(node, savedState) || interrupted)
-//                selfInterrupt();
-//        }
-//
-//        /**
-//         * Checks for interrupt, returning THROW_IE if interrupted
-//         * before signalled, REINTERRUPT if after signalled, or
-//         * 0 if not interrupted.
-//         */
-//        private int checkInterruptWhileWaiting(Node node) {
-//            return Thread.interrupted() ?
-//                    (transferAfterCancelledWait(node) ? THROW_IE : REINTERRUPT) :
-//                    0;
-//        }
-//
-//        /**
-//         * Throws InterruptedException, reinterrupts current thread, or
-//         * does nothing, depending on mode.
-//         */
-//        private void reportInterruptAfterWait(int interruptMode)
-//                throws InterruptedException {
-//            if (interruptMode == THROW_IE)
-//                throw new InterruptedException();
-//            else if (interruptMode == REINTERRUPT)
-//                selfInterrupt();
-//        }
-//
-//        /**
-//         * Implements interruptible condition wait.
-//         * <ol>
-//         * <li>If current thread is interrupted, throw InterruptedException.
-//         * <li>Save lock state returned by {@link #getState}.
-//         * <li>Invoke {@link #release} with saved state as argument,
-//         * throwing IllegalMonitorStateException if it fails.
-//         * <li>Block until signalled or interrupted.
-//         * <li>Reacquire by invoking specialized version of
-//         * {@link #acquire} with saved state as argument.
-//         * <li>If interrupted while blocked in step 4, throw InterruptedException.
-//         * </ol>
-//         */
-//        @Override
-//        public final void await() throws InterruptedException {
-//            if (Thread.interrupted())
-//                throw new InterruptedException();
-//            Node node = addConditionWaiter();
-//            int savedState = fullyRelease(node);
-//            int interruptMode = 0;
-//            while (!isOnSyncQueue(node)) {
-//                LockSupport.park(this);
-//                if ((interruptMode = checkInterruptWhileWaiting(node)) != 0)
-//                    break;
-//            }
-//            if (acquireQueued(node, savedState) && interruptMode != THROW_IE)
-//                interruptMode = REINTERRUPT;
-//            if (node.nextWaiter != null) // clean up if cancelled
-//                unlinkCancelledWaiters();
-//            if (interruptMode != 0)
-//                reportInterruptAfterWait(interruptMode);
-//        }
-//
-//        /**
-//         * 实现定时条件等待。
-//         *  1、如果当前线程被中断，则抛出 InterruptedException。
-//         *  2、保存由getState返回的锁状态。
-//         *  3、以保存的状态作为参数调用release ，如果失败则抛出 IllegalMonitorStateException。
-//         *  4、阻塞直到发出信号、中断或超时。
-//         *  5、通过以保存的状态作为参数调用特定版本的acquire 。
-//         *  6、如果在步骤 4 中被阻塞时被中断，则抛出 InterruptedException。
-//         */
-//        @Override
-//        public final long awaitNanos(long nanosTimeout)
-//                throws InterruptedException {
-//            if (Thread.interrupted())
-//                throw new InterruptedException();
-//            // We don't check for nanosTimeout <= 0L here, to allow
-//            // awaitNanos(0) as a way to "yield the lock".
-//            final long deadline = System.nanoTime() + nanosTimeout;
-//            long initialNanos = nanosTimeout;
-//            Node node = addConditionWaiter();
-//            int savedState = fullyRelease(node);
-//            int interruptMode = 0;
-//            while (!isOnSyncQueue(node)) {
-//                if (nanosTimeout <= 0L) {
-//                    transferAfterCancelledWait(node);
-//                    break;
-//                }
-//                if (nanosTimeout > SPIN_FOR_TIMEOUT_THRESHOLD)
-//                    LockSupport.parkNanos(this, nanosTimeout);
-//                if ((interruptMode = checkInterruptWhileWaiting(node)) != 0)
-//                    break;
-//                nanosTimeout = deadline - System.nanoTime();
-//            }
-//            if (acquireQueued(node, savedState) && interruptMode != THROW_IE)
-//                interruptMode = REINTERRUPT;
-//            if (node.nextWaiter != null)
-//                unlinkCancelledWaiters();
-//            if (interruptMode != 0)
-//                reportInterruptAfterWait(interruptMode);
-//            long remaining = deadline - System.nanoTime(); // avoid overflow
-//            return (remaining <= initialNanos) ? remaining : Long.MIN_VALUE;
-//        }
-//
-//        /**
-//         * 实现绝对定时条件等待。
-//         *  1、如果当前线程被中断，则抛出 InterruptedException。
-//         *  2、保存由getState返回的锁状态。
-//         *  3、以保存的状态作为参数调用release ，如果失败则抛出 IllegalMonitorStateException。
-//         *  4、阻塞直到发出信号、中断或超时。
-//         *  5、通过以保存的状态作为参数调用特定版本的acquire 。
-//         *  6、如果在步骤 4 中被阻塞时被中断，则抛出 InterruptedException。
-//         *  7、如果在步骤 4 中阻塞时超时，则返回 false，否则返回 true。
-//         */
-//        @Override
-//        public final boolean awaitUntil(Date deadline)
-//                throws InterruptedException {
-//            long abstime = deadline.getTime();
-//            if (Thread.interrupted())
-//                throw new InterruptedException();
-//            Node node = addConditionWaiter();
-//            int savedState = fullyRelease(node);
-//            boolean timedout = false;
-//            int interruptMode = 0;
-//            while (!isOnSyncQueue(node)) {
-//                if (System.currentTimeMillis() >= abstime) {
-//                    timedout = transferAfterCancelledWait(node);
-//                    break;
-//                }
-//                LockSupport.parkUntil(this, abstime);
-//                if ((interruptMode = checkInterruptWhileWaiting(node)) != 0)
-//                    break;
-//            }
-//            if (acquireQueued(node, savedState) && interruptMode != THROW_IE)
-//                interruptMode = REINTERRUPT;
-//            if (node.nextWaiter != null)
-//                unlinkCancelledWaiters();
-//            if (interruptMode != 0)
-//                reportInterruptAfterWait(interruptMode);
-//            return !timedout;
-//        }
-//
-//        /**
-//         * 实现定时条件等待。
-//         *  1、如果当前线程被中断，则抛出 InterruptedException。
-//         *  2、保存由getState返回的锁状态。
-//         *  3、以保存的状态作为参数调用release ，如果失败则抛出 IllegalMonitorStateException。
-//         *  4、阻塞直到发出信号、中断或超时。
-//         *  5、通过以保存的状态作为参数调用特定版本的acquire 。
-//         *  6、如果在步骤 4 中被阻塞时被中断，则抛出 InterruptedException。
-//         *  7、如果在步骤 4 中阻塞时超时，则返回 false，否则返回 true。
-//         */
-//        @Override
-//        public final boolean await(long time, TimeUnit unit)
-//                throws InterruptedException {
-//            long nanosTimeout = unit.toNanos(time);
-//            if (Thread.interrupted())
-//                throw new InterruptedException();
-//            // We don't check for nanosTimeout <= 0L here, to allow
-//            // await(0, unit) as a way to "yield the lock".
-//            final long deadline = System.nanoTime() + nanosTimeout;
-//            Node node = addConditionWaiter();
-//            int savedState = fullyRelease(node);
-//            boolean timedout = false;
-//            int interruptMode = 0;
-//            while (!isOnSyncQueue(node)) {
-//                if (nanosTimeout <= 0L) {
-//                    timedout = transferAfterCancelledWait(node);
-//                    break;
-//                }
-//                if (nanosTimeout > SPIN_FOR_TIMEOUT_THRESHOLD)
-//                    LockSupport.parkNanos(this, nanosTimeout);
-//                if ((interruptMode = checkInterruptWhileWaiting(node)) != 0)
-//                    break;
-//                nanosTimeout = deadline - System.nanoTime();
-//            }
-//            if (acquireQueued(node, savedState) && interruptMode != THROW_IE)
-//                interruptMode = REINTERRUPT;
-//            if (node.nextWaiter != null)
-//                unlinkCancelledWaiters();
-//            if (interruptMode != 0)
-//                reportInterruptAfterWait(interruptMode);
-//            return !timedout;
-//        }
-//
-//        //  support for instrumentation
-//
-//        /**
-//         * 如果此条件是由给定的同步对象创建的，则返回 true。
-//         *
-//         * @return {@code true} if owned
-//         */
-//        final boolean isOwnedBy(AbstractQueuedSynchronizer sync) {
-//            return sync == AbstractQueuedSynchronizer.this;
-//        }
-//
-//        /**
-//         * 查询是否有线程在此条件下等待。
-//         * 实现hasWaiters(AbstractQueuedSynchronizer.ConditionObject) 。
-//         *
-//         * @return {@code true} if there are any waiting threads
-//         * @throws IllegalMonitorStateException if {@link #isHeldExclusively}
-//         *                                      returns {@code false}
-//         */
-//        protected final boolean hasWaiters() {
-//            if (!isHeldExclusively())
-//                throw new IllegalMonitorStateException();
-//            for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
-//                if (w.waitStatus == Node.CONDITION)
-//                    return true;
-//            }
-//            return false;
-//        }
-//
-//        /**
-//         * 返回等待此条件的线程数的估计值。
-//         * 实现getWaitQueueLength(AbstractQueuedSynchronizer.ConditionObject) 。
-//         *
-//         * @return the estimated number of waiting threads
-//         * @throws IllegalMonitorStateException if {@link #isHeldExclusively}
-//         *                                      returns {@code false}
-//         */
-//        protected final int getWaitQueueLength() {
-//            if (!isHeldExclusively())
-//                throw new IllegalMonitorStateException();
-//            int n = 0;
-//            for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
-//                if (w.waitStatus == Node.CONDITION)
-//                    ++n;
-//            }
-//            return n;
-//        }
-//
-//        /**
-//         * 返回一个包含可能正在等待此 Condition 的线程的集合。
-//         * 实现getWaitingThreads(AbstractQueuedSynchronizer.ConditionObject) 。
-//         *
-//         * @return the collection of threads
-//         * @throws IllegalMonitorStateException if {@link #isHeldExclusively}
-//         *                                      returns {@code false}
-//         */
-//        protected final Collection<Thread> getWaitingThreads() {
-//            if (!isHeldExclusively())
-//                throw new IllegalMonitorStateException();
-//            ArrayList<Thread> list = new ArrayList<>();
-//            for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
-//                if (w.waitStatus == Node.CONDITION) {
-//                    Thread t = w.thread;
-//                    if (t != null)
-//                        list.add(t);
-//                }
-//            }
-//            return list;
-//        }
-//    }
\ No newline at end of file
+package com.okami.test.aqs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.okami.test.aqs.QueuedSynchronizer.SPIN_FOR_TIMEOUT_THRESHOLD;
+import static com.okami.test.aqs.QueuedSynchronizer.selfInterrupt;
+
+/**
+ * 作为Lock实现基础的AbstractQueuedSynchronizer条件实现。
+ * 此类的方法文档从锁定和条件用户的角度描述了机制，而不是行为规范。
+ * 此类的导出版本通常需要随附描述依赖于关联AbstractQueuedSynchronizer条件语义的文档。
+ * 此类是可序列化的，但所有字段都是瞬态的，因此反序列化的条件没有等待者。
+ * 原实现是 AbstractQueuedSynchronizer 的内部类，拆成顶层类后通过 sync 字段显式持有所属同步器。
+ */
+public class ConditionObject implements Condition, java.io.Serializable {
+    private static final long serialVersionUID = 1173984872572414699L;
+    /**
+     * Mode meaning to reinterrupt on exit from wait
+     */
+    private static final int REINTERRUPT = 1;
+    /**
+     * Mode meaning to throw InterruptedException on exit from wait
+     */
+    private static final int THROW_IE = -1;
+    /**
+     * First node of condition queue.
+     */
+    private transient Node firstWaiter;
+
+    // Internal methods
+    /**
+     * Last node of condition queue.
+     */
+    private transient Node lastWaiter;
+
+    /**
+     * 所属的同步器，等价于内部类写法中的 AbstractQueuedSynchronizer.this。
+     */
+    private final QueuedSynchronizer sync;
+
+    /**
+     * Creates a new {@code ConditionObject} instance.
+     *
+     * @param sync the owning synchronizer
+     */
+    public ConditionObject(QueuedSynchronizer sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Adds a new waiter to wait queue.
+     *
+     * @param tag the wait tag, or {@code null} for an untagged wait
+     * @return its new wait node
+     */
+    private Node addConditionWaiter(Object tag) {
+        if (!sync.isHeldExclusively())
+            throw new IllegalMonitorStateException();
+        Node t;
+        // If lastWaiter is cancelled, clean out.
+        while ((t = lastWaiter) != null && t.waitStatus != Node.CONDITION)
+            unlinkWaiter(t);
+
+        Node node = NodeCache.obtain(null, Node.CONDITION, sync.isContendedLayout());
+        node.tag = tag;
+
+        if (t == null)
+            firstWaiter = node;
+        else {
+            t.nextWaiter = node;
+            node.prevWaiter = t;
+        }
+        lastWaiter = node;
+        return node;
+    }
+
+    /**
+     * 按 FIFO 顺序从条件队列摘下至多 n 个匹配的节点，一次性接到同步队列（见
+     * {@link QueuedSynchronizer#transferForSignal}），沿途遇到的已取消节点顺便摘除。
+     * Split out from signal in part to encourage compilers
+     * to inline the case of no waiters.
+     *
+     * @param first  (non-null) the first node on condition queue
+     * @param tagged whether only waiters with an equal tag match
+     * @param tag    the tag to match when tagged
+     * @param n      maximum number of waiters to transfer, positive
+     * @return the number of waiters transferred
+     */
+    private int doSignal(Node first, boolean tagged, Object tag, int n) {
+        Node batchFirst = null, batchLast = null;
+        Node trail = null;
+        int moved = 0;
+        for (Node w = first; w != null && moved < n; ) {
+            Node next = w.nextWaiter;
+            boolean cancelled = w.waitStatus != Node.CONDITION;
+            if (cancelled || !tagged || Objects.equals(tag, w.tag)) {
+                if (trail == null)
+                    firstWaiter = next;
+                else
+                    trail.nextWaiter = next;
+                if (next == null)
+                    lastWaiter = trail;
+                else
+                    next.prevWaiter = trail;
+                w.nextWaiter = null;
+                w.prevWaiter = null;
+                // CAS 失败说明刚被取消，等待线程会自己入队
+                if (!cancelled && w.compareAndSetWaitStatus(Node.CONDITION, 0)) {
+                    if (batchLast == null)
+                        batchFirst = w;
+                    else
+                        w.setPrevRelaxed(batchLast);
+                    batchLast = w;
+                    moved++;
+                }
+            } else {
+                trail = w;
+            }
+            w = next;
+        }
+        if (batchFirst != null)
+            sync.transferForSignal(batchFirst, batchLast);
+        return moved;
+    }
+
+    // public methods
+
+    /**
+     * 把节点从条件队列摘除，只在持有锁时调用。
+     * 原实现在取消等待后遍历整个条件队列摘除所有已取消的节点，大量等待同时超时时是 O(n<sup>2</sup>)；
+     * 现在条件队列是双向的，每个取消等待的线程重新获取锁后只摘除自己，
+     * 尚未轮到重新获取锁的已取消节点由 signal 和 addConditionWaiter 途经时顺便摘除。
+     *
+     * @param node a node on this condition queue
+     */
+    private void unlinkWaiter(Node node) {
+        Node p = node.prevWaiter, n = node.nextWaiter;
+        if (p == null)
+            firstWaiter = n;
+        else
+            p.nextWaiter = n;
+        if (n == null)
+            lastWaiter = p;
+        else
+            n.prevWaiter = p;
+        node.nextWaiter = null;
+        node.prevWaiter = null;
+    }
+
+    /**
+     * 取消等待的线程重新获取锁后调用：节点如果还在条件队列中（没有被 signal 途经时摘除）就摘除它。
+     */
+    private void unlinkIfCancelled(Node node) {
+        if (node.prevWaiter != null || node == firstWaiter)
+            unlinkWaiter(node);
+    }
+
+    /**
+     * Moves the longest-waiting thread, if one exists, from the
+     * wait queue for this condition to the wait queue for the
+     * owning lock.
+     *
+     * @throws IllegalMonitorStateException if {@link QueuedSynchronizer#isHeldExclusively}
+     *                                      returns {@code false}
+     */
+    public final void signal() {
+        if (!sync.isHeldExclusively())
+            throw new IllegalMonitorStateException();
+        Node first = firstWaiter;
+        if (first != null)
+            doSignal(first, false, null, 1);
+    }
+
+    /**
+     * 按等待先后唤醒至多 n 个线程（不论标签），把它们一次性移到锁的等待队列。
+     * 生产者一次放入 n 个元素时用它代替 signalAll，其余等待线程不会被白白唤醒后再次 park。
+     *
+     * @param n 最多唤醒的线程数
+     * @return 实际唤醒的线程数
+     * @throws IllegalArgumentException     if {@code n} is negative
+     * @throws IllegalMonitorStateException if {@link QueuedSynchronizer#isHeldExclusively}
+     *                                      returns {@code false}
+     */
+    public final int signal(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException();
+        if (!sync.isHeldExclusively())
+            throw new IllegalMonitorStateException();
+        Node first = firstWaiter;
+        return first != null && n > 0 ? doSignal(first, false, null, n) : 0;
+    }
+
+    /**
+     * 按等待先后唤醒至多 n 个以 {@link #await(Object)} 等待、标签与 tag 相等（equals）的线程，
+     * 例如只唤醒等待某个分区的消费者。tag 为 null 时匹配不带标签的等待。
+     * <p>
+     * 没有单参数的 {@code signal(Object)}：否则 {@code signal(partition)} 这样的 int 实参
+     * 会静默地选中 {@link #signal(int)}。
+     *
+     * @param tag 要唤醒的标签
+     * @param n   最多唤醒的线程数
+     * @return 实际唤醒的线程数
+     * @throws IllegalArgumentException     if {@code n} is negative
+     * @throws IllegalMonitorStateException if {@link QueuedSynchronizer#isHeldExclusively}
+     *                                      returns {@code false}
+     */
+    public final int signal(Object tag, int n) {
+        if (n < 0)
+            throw new IllegalArgumentException();
+        if (!sync.isHeldExclusively())
+            throw new IllegalMonitorStateException();
+        Node first = firstWaiter;
+        return first != null && n > 0 ? doSignal(first, true, tag, n) : 0;
+    }
+
+    /*
+     * For interruptible waits, we need to track whether to throw
+     * InterruptedException, if interrupted while blocked on
+     * condition, versus reinterrupt current thread, if
+     * interrupted while blocked waiting to re-acquire.
+     */
+
+    /**
+     * Moves all threads from the wait queue for this condition to
+     * the wait queue for the owning lock.
+     *
+     * @throws IllegalMonitorStateException if {@link QueuedSynchronizer#isHeldExclusively}
+     *                                      returns {@code false}
+     */
+    public final void signalAll() {
+        if (!sync.isHeldExclusively())
+            throw new IllegalMonitorStateException();
+        Node first = firstWaiter;
+        if (first != null)
+            doSignal(first, false, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 唤醒所有标签与 tag 相等的等待线程，其他标签的等待线程留在条件队列中。
+     *
+     * @param tag 要唤醒的标签，null 匹配不带标签的等待
+     * @return 实际唤醒的线程数
+     * @throws IllegalMonitorStateException if {@link QueuedSynchronizer#isHeldExclusively}
+     *                                      returns {@code false}
+     */
+    public final int signalAll(Object tag) {
+        return signal(tag, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Implements uninterruptible condition wait.
+     * <ol>
+     * <li>Save lock state returned by {@link AbstractQueuedSynchronizer#getState}.
+     * <li>Invoke {@link AbstractQueuedSynchronizer#release} with saved state as argument,
+     * throwing IllegalMonitorStateException if it fails.
+     * <li>Block until signalled.
+     * <li>Reacquire by invoking specialized version of
+     * {@link AbstractQueuedSynchronizer#acquire} with saved state as argument.
+     * </ol>
+     */
+    public final void awaitUninterruptibly() {
+        Node node = addConditionWaiter(null);
+        long savedState = sync.fullyRelease(node);
+        boolean interrupted = false;
+        while (!sync.isOnSyncQueue(node)) {
+            LockSupport.park(this);
+            if (Thread.interrupted())
+                interrupted = true;
+        }
+        if (sync.acquireQueued(node, savedState) || interrupted)
+            selfInterrupt();
+    }
+
+    /**
+     * Checks for interrupt, returning THROW_IE if interrupted
+     * before signalled, REINTERRUPT if after signalled, or
+     * 0 if not interrupted.
+     */
+    private int checkInterruptWhileWaiting(Node node) {
+        return Thread.interrupted() ?
+                (sync.transferAfterCancelledWait(node) ? THROW_IE : REINTERRUPT) :
+                0;
+    }
+
+    /**
+     * Throws InterruptedException, reinterrupts current thread, or
+     * does nothing, depending on mode.
+     */
+    private void reportInterruptAfterWait(int interruptMode)
+            throws InterruptedException {
+        if (interruptMode == THROW_IE)
+            throw new InterruptedException();
+        else if (interruptMode == REINTERRUPT)
+            selfInterrupt();
+    }
+
+    /**
+     * Implements interruptible condition wait.
+     * <ol>
+     * <li>If current thread is interrupted, throw InterruptedException.
+     * <li>Save lock state returned by {@link AbstractQueuedSynchronizer#getState}.
+     * <li>Invoke {@link AbstractQueuedSynchronizer#release} with saved state as argument,
+     * throwing IllegalMonitorStateException if it fails.
+     * <li>Block until signalled or interrupted.
+     * <li>Reacquire by invoking specialized version of
+     * {@link AbstractQueuedSynchronizer#acquire} with saved state as argument.
+     * <li>If interrupted while blocked in step 4, throw InterruptedException.
+     * </ol>
+     */
+    @Override
+    public final void await() throws InterruptedException {
+        await(null);
+    }
+
+    /**
+     * 带标签的 {@link #await()}：只有 {@link #signal(Object, int)} / {@link #signalAll(Object)}
+     * 给出相等标签时，或者不区分标签的 signal/signalAll 时才被唤醒。
+     *
+     * @param tag 等待的标签，例如分区号；null 等同于 {@link #await()}
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public final void await(Object tag) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        Node node = addConditionWaiter(tag);
+        long savedState = sync.fullyRelease(node);
+        int interruptMode = 0;
+        while (!sync.isOnSyncQueue(node)) {
+            LockSupport.park(this);
+            if ((interruptMode = checkInterruptWhileWaiting(node)) != 0)
+                break;
+        }
+        if (sync.acquireQueued(node, savedState) && interruptMode != THROW_IE)
+            interruptMode = REINTERRUPT;
+        unlinkIfCancelled(node); // clean up if cancelled
+        if (interruptMode != 0)
+            reportInterruptAfterWait(interruptMode);
+    }
+
+    /**
+     * 实现定时条件等待。
+     *  1、如果当前线程被中断，则抛出 InterruptedException。
+     *  2、保存由getState返回的锁状态。
+     *  3、以保存的状态作为参数调用release ，如果失败则抛出 IllegalMonitorStateException。
+     *  4、阻塞直到发出信号、中断或超时。
+     *  5、通过以保存的状态作为参数调用特定版本的acquire 。
+     *  6、如果在步骤 4 中被阻塞时被中断，则抛出 InterruptedException。
+     */
+    @Override
+    public final long awaitNanos(long nanosTimeout)
+            throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        // We don't check for nanosTimeout <= 0L here, to allow
+        // awaitNanos(0) as a way to "yield the lock".
+        final long deadline = System.nanoTime() + nanosTimeout;
+        long initialNanos = nanosTimeout;
+        Node node = addConditionWaiter(null);
+        long savedState = sync.fullyRelease(node);
+        int interruptMode = 0;
+        TimingWheel.Timeout timeout = null;
+        while (!sync.isOnSyncQueue(node)) {
+            if (nanosTimeout <= 0L) {
+                sync.transferAfterCancelledWait(node);
+                break;
+            }
+            if (nanosTimeout > SPIN_FOR_TIMEOUT_THRESHOLD)
+                timeout = sync.timedPark(this, timeout, deadline, nanosTimeout);
+            if ((interruptMode = checkInterruptWhileWaiting(node)) != 0)
+                break;
+            nanosTimeout = deadline - System.nanoTime();
+        }
+        TimingWheel.cancel(timeout);
+        if (sync.acquireQueued(node, savedState) && interruptMode != THROW_IE)
+            interruptMode = REINTERRUPT;
+        unlinkIfCancelled(node);
+        if (interruptMode != 0)
+            reportInterruptAfterWait(interruptMode);
+        long remaining = deadline - System.nanoTime(); // avoid overflow
+        return (remaining <= initialNanos) ? remaining : Long.MIN_VALUE;
+    }
+
+    /**
+     * 实现绝对定时条件等待。
+     *  1、如果当前线程被中断，则抛出 InterruptedException。
+     *  2、保存由getState返回的锁状态。
+     *  3、以保存的状态作为参数调用release ，如果失败则抛出 IllegalMonitorStateException。
+     *  4、阻塞直到发出信号、中断或超时。
+     *  5、通过以保存的状态作为参数调用特定版本的acquire 。
+     *  6、如果在步骤 4 中被阻塞时被中断，则抛出 InterruptedException。
+     *  7、如果在步骤 4 中阻塞时超时，则返回 false，否则返回 true。
+     */
+    @Override
+    public final boolean awaitUntil(Date deadline)
+            throws InterruptedException {
+        long abstime = deadline.getTime();
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        Node node = addConditionWaiter(null);
+        long savedState = sync.fullyRelease(node);
+        boolean timedout = false;
+        int interruptMode = 0;
+        TimingWheel.Timeout timeout = null;
+        while (!sync.isOnSyncQueue(node)) {
+            long now = System.currentTimeMillis();
+            if (now >= abstime) {
+                timedout = sync.transferAfterCancelledWait(node);
+                break;
+            }
+            if (sync.getTimingWheel() == null) {
+                LockSupport.parkUntil(this, abstime);
+            } else {
+                // 时间轮按 nanoTime 计时，换算成相对时间；时钟被调整时循环会重新判断
+                long nanos = TimeUnit.MILLISECONDS.toNanos(abstime - now);
+                timeout = sync.timedPark(this, timeout, System.nanoTime() + nanos, nanos);
+            }
+            if ((interruptMode = checkInterruptWhileWaiting(node)) != 0)
+                break;
+        }
+        TimingWheel.cancel(timeout);
+        if (sync.acquireQueued(node, savedState) && interruptMode != THROW_IE)
+            interruptMode = REINTERRUPT;
+        unlinkIfCancelled(node);
+        if (interruptMode != 0)
+            reportInterruptAfterWait(interruptMode);
+        return !timedout;
+    }
+
+    /**
+     * 实现定时条件等待。
+     *  1、如果当前线程被中断，则抛出 InterruptedException。
+     *  2、保存由getState返回的锁状态。
+     *  3、以保存的状态作为参数调用release ，如果失败则抛出 IllegalMonitorStateException。
+     *  4、阻塞直到发出信号、中断或超时。
+     *  5、通过以保存的状态作为参数调用特定版本的acquire 。
+     *  6、如果在步骤 4 中被阻塞时被中断，则抛出 InterruptedException。
+     *  7、如果在步骤 4 中阻塞时超时，则返回 false，否则返回 true。
+     */
+    @Override
+    public final boolean await(long time, TimeUnit unit)
+            throws InterruptedException {
+        return await(null, time, unit);
+    }
+
+    /**
+     * 带标签的 {@link #await(long, TimeUnit)}，标签的含义见 {@link #await(Object)}。
+     *
+     * @param tag  等待的标签，null 表示不带标签
+     * @param time the maximum time to wait
+     * @param unit the time unit of the {@code time} argument
+     * @return {@code false} if the waiting time detectably elapsed
+     * before return from the method, else {@code true}
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public final boolean await(Object tag, long time, TimeUnit unit)
+            throws InterruptedException {
+        long nanosTimeout = unit.toNanos(time);
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        // We don't check for nanosTimeout <= 0L here, to allow
+        // await(0, unit) as a way to "yield the lock".
+        final long deadline = System.nanoTime() + nanosTimeout;
+        Node node = addConditionWaiter(tag);
+        long savedState = sync.fullyRelease(node);
+        boolean timedout = false;
+        int interruptMode = 0;
+        TimingWheel.Timeout timeout = null;
+        while (!sync.isOnSyncQueue(node)) {
+            if (nanosTimeout <= 0L) {
+                timedout = sync.transferAfterCancelledWait(node);
+                break;
+            }
+            if (nanosTimeout > SPIN_FOR_TIMEOUT_THRESHOLD)
+                timeout = sync.timedPark(this, timeout, deadline, nanosTimeout);
+            if ((interruptMode = checkInterruptWhileWaiting(node)) != 0)
+                break;
+            nanosTimeout = deadline - System.nanoTime();
+        }
+        TimingWheel.cancel(timeout);
+        if (sync.acquireQueued(node, savedState) && interruptMode != THROW_IE)
+            interruptMode = REINTERRUPT;
+        unlinkIfCancelled(node);
+        if (interruptMode != 0)
+            reportInterruptAfterWait(interruptMode);
+        return !timedout;
+    }
+
+    //  support for instrumentation
+
+    /**
+     * 如果此条件是由给定的同步对象创建的，则返回 true。
+     *
+     * @return {@code true} if owned
+     */
+    final boolean isOwnedBy(QueuedSynchronizer sync) {
+        return sync == this.sync;
+    }
+
+    /**
+     * 查询是否有线程在此条件下等待。
+     * 实现hasWaiters(AbstractQueuedSynchronizer.ConditionObject) 。
+     *
+     * @return {@code true} if there are any waiting threads
+     * @throws IllegalMonitorStateException if {@link QueuedSynchronizer#isHeldExclusively}
+     *                                      returns {@code false}
+     */
+    protected final boolean hasWaiters() {
+        if (!sync.isHeldExclusively())
+            throw new IllegalMonitorStateException();
+        for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
+            if (w.waitStatus == Node.CONDITION)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 返回等待此条件的线程数的估计值。
+     * 实现getWaitQueueLength(AbstractQueuedSynchronizer.ConditionObject) 。
+     *
+     * @return the estimated number of waiting threads
+     * @throws IllegalMonitorStateException if {@link QueuedSynchronizer#isHeldExclusively}
+     *                                      returns {@code false}
+     */
+    protected final int getWaitQueueLength() {
+        if (!sync.isHeldExclusively())
+            throw new IllegalMonitorStateException();
+        int n = 0;
+        for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
+            if (w.waitStatus == Node.CONDITION)
+                ++n;
+        }
+        return n;
+    }
+
+    /**
+     * 返回一个包含可能正在等待此 Condition 的线程的集合。
+     * 实现getWaitingThreads(AbstractQueuedSynchronizer.ConditionObject) 。
+     *
+     * @return the collection of threads
+     * @throws IllegalMonitorStateException if {@link QueuedSynchronizer#isHeldExclusively}
+     *                                      returns {@code false}
+     */
+    protected final Collection<Thread> getWaitingThreads() {
+        if (!sync.isHeldExclusively())
+            throw new IllegalMonitorStateException();
+        ArrayList<Thread> list = new ArrayList<>();
+        for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
+            if (w.waitStatus == Node.CONDITION) {
+                Thread t = w.thread;
+                if (t != null)
+                    list.add(t);
+            }
+        }
+        return list;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,329 @@
+package com.okami.test.aqs;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 同步器的竞争统计，通过 {@link AbstractQueuedSynchronizer#setContentionStats} 挂到同步器上，
+ * 按名字注册在全局表中供监控导出（见 {@link #named}、{@link #subscribe}、{@link #unsubscribe}）。
+ * <p>
+ * 统计项：
+ * <ul>
+ * <li>获取次数、其中需要排队的次数（竞争获取）、排队线程 park 的次数、取消（超时、中断、异步取消）的次数；</li>
+ * <li>当前排队数与历史最大排队深度，不必像 {@link AbstractQueuedSynchronizer#getQueueLength}
+ * 那样遍历队列。最大深度只在排队线程 park 前采样，入队本身只做一次 LongAdder 加一；</li>
+ * <li>排队等待时间的直方图，每次竞争获取都记录；</li>
+ * <li>独占模式持有时间的直方图，每 {@link #HOLD_SAMPLE_INTERVAL} 次获取采样一次。</li>
+ * </ul>
+ * 计数和直方图的每个桶都用 {@link LongAdder}，各线程落在不同的 cell 上，互不争用缓存行。
+ * 独占模式的获取连 LongAdder 也不碰：持有者在同步器自己的字段上做普通加一（见
+ * {@link AbstractQueuedSynchronizer#setContentionStats}），每 {@link #FLUSH_INTERVAL} 次批量计入一次。
+ * 所以无竞争的独占获取只多一次普通写，释放只多一次普通读，
+ * 代价是独占获取次数最多滞后 {@link #FLUSH_INTERVAL} - 1 次（每个同步器）。
+ * System.nanoTime() 只出现在排队路径和采样中。
+ * <p>
+ * 直方图按 2 的幂分桶，分位数精确到 2 倍以内。同名的同步器共用一个统计对象，例如一组分段锁。
+ * 统计对象注册后不会移除，名字应当来自有限的集合。
+ */
+public final class ContentionStats {
+
+    /**
+     * 独占获取批量计入的间隔，2 的幂。
+     */
+    static final int FLUSH_INTERVAL = 64;
+
+    /**
+     * 持有时间的采样间隔，2 的幂且是 {@link #FLUSH_INTERVAL} 的倍数。
+     * 一次采样要两次 System.nanoTime() 和一次直方图记录，间隔再短无竞争路径的开销就超过 5%。
+     */
+    static final int HOLD_SAMPLE_INTERVAL = 1024;
+
+    private static final AtomicLongFieldUpdater<ContentionStats> MAX_QUEUE_DEPTH =
+            AtomicLongFieldUpdater.newUpdater(ContentionStats.class, "maxQueueDepth");
+
+    private static final ConcurrentMap<String, ContentionStats> REGISTRY = new ConcurrentHashMap<>();
+
+    private static final CopyOnWriteArrayList<Consumer<? super ContentionStats>> LISTENERS =
+            new CopyOnWriteArrayList<>();
+
+    private final String name;
+
+    private final LongAdder acquisitions = new LongAdder();
+
+    private final LongAdder contendedAcquisitions = new LongAdder();
+
+    private final LongAdder parks = new LongAdder();
+
+    private final LongAdder cancellations = new LongAdder();
+
+    private final LongAdder waiting = new LongAdder();
+
+    private final Histogram waitTime = new Histogram();
+
+    private final Histogram holdTime = new Histogram();
+
+    private volatile long maxQueueDepth;
+
+    private ContentionStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 返回给定名字的统计对象，不存在时创建并通知 {@link #subscribe 订阅者}。
+     *
+     * @param name 锁的名字，用作监控指标的标签
+     * @return the stats registered under the name
+     */
+    public static ContentionStats named(String name) {
+        if (name == null)
+            throw new NullPointerException();
+        ContentionStats stats = REGISTRY.get(name);
+        if (stats != null)
+            return stats;
+        ContentionStats created = new ContentionStats(name);
+        if ((stats = REGISTRY.putIfAbsent(name, created)) != null)
+            return stats;
+        for (Consumer<? super ContentionStats> listener : LISTENERS)
+            listener.accept(created);
+        return created;
+    }
+
+    /**
+     * @return 所有已注册的统计对象
+     */
+    public static Collection<ContentionStats> registered() {
+        return Collections.unmodifiableCollection(REGISTRY.values());
+    }
+
+    /**
+     * 对已注册和之后注册的每个统计对象调用 listener。
+     * 与并发的注册交错时同一个对象可能被通知两次，listener 应当是幂等的。
+     *
+     * @param listener the listener, for example a metrics binder
+     */
+    public static void subscribe(Consumer<? super ContentionStats> listener) {
+        LISTENERS.add(listener);
+        for (ContentionStats stats : REGISTRY.values())
+            listener.accept(stats);
+    }
+
+    /**
+     * 取消 {@link #subscribe} 注册的 listener。正在进行的通知可能还会调用它一次。
+     *
+     * @param listener the listener passed to {@link #subscribe}
+     * @return {@code true} if the listener was subscribed
+     */
+    public static boolean unsubscribe(Consumer<? super ContentionStats> listener) {
+        return LISTENERS.remove(listener);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 成功获取的次数，包括直接获取和排队后获取；独占获取批量计入，可能略有滞后
+     */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * @return 排队后才获取成功的次数
+     */
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions.sum();
+    }
+
+    /**
+     * @return 排队线程在同步队列中 park 的次数
+     */
+    public long getParks() {
+        return parks.sum();
+    }
+
+    /**
+     * @return 排队后因超时、中断、异常或异步取消而放弃的次数
+     */
+    public long getCancellations() {
+        return cancellations.sum();
+    }
+
+    /**
+     * @return 当前排队的获取数（估计值）
+     */
+    public long getQueueDepth() {
+        return Math.max(waiting.sum(), 0L);
+    }
+
+    /**
+     * @return 历史最大排队深度（估计值）。在排队线程 park 前采样，只自旋就拿到锁的排队不计入
+     */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return 竞争获取在队列中的等待时间
+     */
+    public Histogram getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * @return 独占模式持有时间（采样）
+     */
+    public Histogram getHoldTime() {
+        return holdTime;
+    }
+
+    /**
+     * 共享模式下未排队直接获取成功。
+     */
+    void acquiredShared() {
+        acquisitions.increment();
+    }
+
+    /**
+     * 计入同步器上累积的独占获取次数。
+     */
+    void addAcquisitions(int n) {
+        acquisitions.add(n);
+    }
+
+    /**
+     * 开始排队。
+     *
+     * @return 排队开始的 System.nanoTime()，记在节点上
+     */
+    long beginWait() {
+        waiting.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * 排队后获取成功。独占模式的获取次数由同步器批量计入，这里不计。
+     */
+    void endWait(long start, boolean exclusive) {
+        waiting.decrement();
+        if (!exclusive)
+            acquisitions.increment();
+        contendedAcquisitions.increment();
+        waitTime.record(System.nanoTime() - start);
+    }
+
+    /**
+     * 排队后放弃。
+     */
+    void cancelled() {
+        waiting.decrement();
+        cancellations.increment();
+    }
+
+    /**
+     * 排队线程即将 park。park 本身要微秒级，在这里采样排队深度的代价可以忽略。
+     */
+    void parked() {
+        parks.increment();
+        long depth = waiting.sum();
+        long max;
+        while (depth > (max = maxQueueDepth) && !MAX_QUEUE_DEPTH.compareAndSet(this, max, depth))
+            ;
+    }
+
+    void released(long holdStart) {
+        holdTime.record(System.nanoTime() - holdStart);
+    }
+
+    @Override
+    public String toString() {
+        return "ContentionStats[" + name
+                + ", acquisitions=" + getAcquisitions()
+                + ", contended=" + getContendedAcquisitions()
+                + ", parks=" + getParks()
+                + ", cancellations=" + getCancellations()
+                + ", maxQueueDepth=" + getMaxQueueDepth() + "]";
+    }
+
+    /**
+     * 纳秒直方图，第 i 个桶统计 [2<sup>i-1</sup>, 2<sup>i</sup>) 纳秒的样本，第 0 个桶统计 0。
+     */
+    public static final class Histogram {
+
+        static final int BUCKETS = 64;
+
+        /**
+         * 等待时间集中在少数几个桶上，竞争获取都写同一个桶，所以每个桶各用一个 LongAdder
+         */
+        private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++)
+                counts[i] = new LongAdder();
+        }
+
+        static int bucketOf(long nanos) {
+            return nanos <= 0L ? 0 : Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+        }
+
+        void record(long nanos) {
+            if (nanos < 0L)
+                nanos = 0L;
+            counts[bucketOf(nanos)].increment();
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * 估计分位数，返回样本所在桶的上界。
+         *
+         * @param quantile 0 到 1 之间，例如 0.99
+         * @return 纳秒，没有样本时返回 0
+         */
+        public long valueAtQuantile(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0)
+                throw new IllegalArgumentException();
+            long[] snapshot = getBucketCounts();
+            long total = 0L;
+            for (long c : snapshot)
+                total += c;
+            if (total == 0L)
+                return 0L;
+            long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+            long seen = 0L;
+            for (int i = 0; i < snapshot.length; i++) {
+                if ((seen += snapshot[i]) >= rank)
+                    return i == 0 ? 0L : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * @return 各桶计数的快照
+         */
+        public long[] getBucketCounts() {
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+                snapshot[i] = counts[i].sum();
+            return snapshot;
+        }
+    }
+}
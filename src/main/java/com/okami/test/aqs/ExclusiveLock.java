@@ -1,78 +1,400 @@
-//package com.okami.test.aqs;
-//
-//import java.util.concurrent.TimeUnit;
-//import java.util.concurrent.locks.Condition;
-//import java.util.concurrent.locks.Lock;
-//
-///**
-// * 独占锁
-// */
-//
-//public class ExclusiveLock implements Lock {
-//
-//    private final Sync sync = new Sync();
-//
-//    @Override
-//    public void lock() {
-//        sync.acquire(1);
-//    }
-//
-//    @Override
-//    public void lockInterruptibly() throws InterruptedException {
-//        sync.acquireInterruptibly(1);
-//    }
-//
-//    @Override
-//    public boolean tryLock() {
-//        return sync.tryAcquire(1);
-//    }
-//
-//    @Override
-//    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
-//        return sync.tryAcquireNanos(1, unit.toNanos(time));
-//    }
-//
-//    @Override
-//    public void unlock() {
-//        sync.release(1);
-//    }
-//
-//    @Override
-//    public Condition newCondition() {
-//        return sync.newCondition();
-//    }
-//
-//    private final class Sync extends AbstractQueuedSynchronizer {
-//        @Override
-//        protected boolean tryAcquire(int arg) {
-//            if (compareAndSetState(0, 1)) {
-//                setExclusiveOwnerThread(Thread.currentThread());
-//                return true;
-//            }
-//            return false;
-//        }
-//
-//        @Override
-//        protected boolean tryRelease(int arg) {
-//            if (getState() == 0) {
-//                throw new UnsupportedOperationException();
-//            }
-//
-//            // 持有锁的线程设置为null
-//            setExclusiveOwnerThread(null);
-//            setState(0);
-//            return true;
-//        }
-//
-//        @Override
-//        protected boolean isHeldExclusively() {
-//            return getState() == 1;
-//        }
-//
-//        Condition newCondition() {
-//            return new ConditionObject();
-//        }
-//    }
-//
-//
-//}
+package com.okami.test.aqs;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+/**
+ * 独占锁，可重入：持有锁的线程再次获取时只增加持有计数，释放同样多次后才真正释放。
+ * <p>
+ * 无竞争的 {@link #lock()}/{@link #unlock()} 只有一次 CAS 或一次 volatile 写，
+ * 快速路径是 Sync 上的两个小的非虚方法，可以整个内联进调用方；
+ * 重入、排队、唤醒后继以及竞争统计、锁顺序记录都在不内联的慢速路径上。
+ */
+
+public class ExclusiveLock implements Lock {
+
+    /**
+     * {@link #combine(Runnable)} 的适配，不捕获变量，只有一个实例。
+     */
+    private static final Function<Runnable, Void> RUN = action -> {
+        action.run();
+        return null;
+    };
+
+    /**
+     * 异步获取的 acquire 参数：不属于任何线程，所以不重入，持有计数为 1。
+     * 否则持有锁的线程调用 lockAsync 会按重入立即成功，随后又被 onAsyncAcquire 抹掉持有线程。
+     */
+    private static final int ASYNC = -1;
+
+    private final Sync sync = new Sync();
+
+    private final FlatCombiner combiner = new FlatCombiner(sync);
+
+    /**
+     * 默认在 park 前按 {@link AdaptiveSpinPolicy} 自旋。
+     */
+    public ExclusiveLock() {
+        this(SpinPolicy.adaptive());
+    }
+
+    /**
+     * @param spinPolicy 排队线程 park 前的自旋策略，null 表示不自旋
+     */
+    public ExclusiveLock(SpinPolicy spinPolicy) {
+        sync.setSpinPolicy(spinPolicy);
+    }
+
+    @Override
+    public void lock() {
+        if (!sync.fastAcquire())
+            sync.acquire(1);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        sync.acquireInterruptibly(1);
+    }
+
+    @Override
+    public boolean tryLock() {
+        return sync.tryAcquire(1);
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireNanos(1, unit.toNanos(time));
+    }
+
+    /**
+     * 按优先级获取锁，需要排队时优先级高的先被唤醒，见 {@link #setPriorityLevels}。
+     * 例如请求线程用高优先级、批处理任务用低优先级，批处理任务大量排队时请求线程不必排在它们后面。
+     *
+     * @param priority 0 到 {@link #getPriorityLevels()} - 1，越大越优先
+     */
+    public void lock(int priority) {
+        sync.acquire(1, priority);
+    }
+
+    public void lockInterruptibly(int priority) throws InterruptedException {
+        sync.acquireInterruptibly(1, priority);
+    }
+
+    public boolean tryLock(int priority, long time, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireNanos(1, priority, unit.toNanos(time));
+    }
+
+    /**
+     * 异步获取锁，不阻塞调用线程，见 {@link AbstractQueuedSynchronizer#acquireAsync}。
+     * 异步获取的锁不属于任何线程：可以在续体运行的任意线程上 {@link #unlock()}，
+     * 但持有期间不能使用 Condition。取消返回的 future 即放弃排队。
+     *
+     * @return a future completed with {@code true} once the lock is held
+     */
+    public CompletableFuture<Boolean> lockAsync() {
+        return sync.acquireAsync(ASYNC);
+    }
+
+    /**
+     * 带超时的 {@link #lockAsync()}。
+     *
+     * @return a future completed with {@code true} if the lock was acquired,
+     * or {@code false} if the waiting time elapsed
+     */
+    public CompletableFuture<Boolean> tryLockAsync(long time, TimeUnit unit) {
+        return sync.tryAcquireAsync(ASYNC, unit.toNanos(time));
+    }
+
+    @Override
+    public void unlock() {
+        if (!sync.fastRelease())
+            sync.release(1);
+    }
+
+    /**
+     * 在持有锁的状态下执行 operation，可能由当前线程执行，也可能由其他正持有锁的线程代为执行。
+     * <p>
+     * 竞争激烈、临界区很小时，比 lock/unlock 的吞吐高得多：等待的线程只发布操作，
+     * 由拿到锁的线程（合并者）在一次持有期间批量执行，锁和数据所在的缓存行不必在每次操作之间迁移。
+     * 调用方在返回前一直等待，返回时操作已执行完毕，其效果对调用方可见。
+     * <p>
+     * operation 可能在其他线程中执行，不能依赖 ThreadLocal 或当前线程的身份，也不应阻塞；
+     * 抛出的异常会在调用方线程中重新抛出。当前线程已持有锁时直接执行。
+     *
+     * @param operation 临界区内的操作
+     * @param argument  传给 operation 的参数，可以让操作写成不捕获变量的 lambda
+     * @return operation 的返回值
+     */
+    public <T, R> R combine(Function<? super T, ? extends R> operation, T argument) {
+        return combiner.combine(Objects.requireNonNull(operation), argument);
+    }
+
+    /**
+     * 在持有锁的状态下执行 action，语义同 {@link #combine(Function, Object)}。
+     */
+    public void combine(Runnable action) {
+        combiner.combine(RUN, Objects.requireNonNull(action));
+    }
+
+    @Override
+    public Condition newCondition() {
+        return sync.newCondition();
+    }
+
+    public boolean isLocked() {
+        return sync.getState() != 0;
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return sync.isHeldExclusively();
+    }
+
+    /**
+     * @return 当前线程的持有计数，未持有时为 0
+     */
+    public int getHoldCount() {
+        return sync.isHeldExclusively() ? sync.getState() : 0;
+    }
+
+    public boolean hasQueuedThreads() {
+        return sync.hasQueuedThreads();
+    }
+
+    /**
+     * @return 排队等待的线程数与异步获取数之和的估计值
+     */
+    public int getQueueLength() {
+        return sync.getQueueLength();
+    }
+
+    public SpinPolicy getSpinPolicy() {
+        return sync.getSpinPolicy();
+    }
+
+    public void setSpinPolicy(SpinPolicy spinPolicy) {
+        sync.setSpinPolicy(spinPolicy);
+    }
+
+    public TimingWheel getTimingWheel() {
+        return sync.getTimingWheel();
+    }
+
+    /**
+     * @param timingWheel tryLock(long, TimeUnit) 与 Condition 限时等待使用的时间轮，null 表示各自 parkNanos
+     */
+    public void setTimingWheel(TimingWheel timingWheel) {
+        sync.setTimingWheel(timingWheel);
+    }
+
+    public Executor getAsyncExecutor() {
+        return sync.getAsyncExecutor();
+    }
+
+    /**
+     * @param executor {@link #lockAsync()} 的等待者被唤醒后执行的执行器，null 表示公共 ForkJoinPool
+     */
+    public void setAsyncExecutor(Executor executor) {
+        sync.setAsyncExecutor(executor);
+    }
+
+    public int getPriorityLevels() {
+        return sync.getPriorityLevels();
+    }
+
+    /**
+     * 开启优先级排队，只能在使用前设置一次，见 {@link AbstractQueuedSynchronizer#setPriorityLevels}。
+     * 不带优先级的 lock/tryLock 仍按 FIFO 排队。
+     *
+     * @param levels 优先级级数
+     * @param aging  等待者每等待这么久有效优先级升一级，0 表示不老化
+     */
+    public void setPriorityLevels(int levels, long aging, TimeUnit unit) {
+        sync.setPriorityLevels(levels, unit.toNanos(aging));
+    }
+
+    public ContentionStats getContentionStats() {
+        return sync.getContentionStats();
+    }
+
+    /**
+     * @param contentionStats 竞争统计，例如 {@code ContentionStats.named("order-lock")}，null 表示不统计。
+     *                        tryLock() 与 combine 的直接获取不计入
+     */
+    public void setContentionStats(ContentionStats contentionStats) {
+        sync.setContentionStats(contentionStats);
+        sync.updateSlowPathOnly();
+    }
+
+    public LockOrderMonitor getLockOrderMonitor() {
+        return sync.getLockOrderMonitor();
+    }
+
+    /**
+     * 把本锁的获取顺序记录到 monitor 中以发现潜在死锁，见 {@link LockOrderMonitor}。
+     * 包括 tryLock() 与 Condition 等待后的重新获取；异步获取的锁不属于任何线程，不记录。
+     *
+     * @param monitor 锁顺序监视器，null 表示不记录
+     * @param name    本锁在锁顺序图中的名字，同名的锁是同一个节点
+     */
+    public void setLockOrderMonitor(LockOrderMonitor monitor, String name) {
+        sync.setLockOrderMonitor(monitor, name);
+        sync.updateSlowPathOnly();
+    }
+
+    public long getHandoffThreshold(TimeUnit unit) {
+        return unit.convert(sync.getHandoffThreshold(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 排队超过 threshold 的等待者在释放时直接获得锁，不再与新来的线程竞争，
+     * 见 {@link AbstractQueuedSynchronizer#setHandoffThreshold}。默认 0，始终允许抢先。
+     * 开启后 lock/unlock 不走快速路径。
+     *
+     * @param threshold 排队时间阈值，0 表示不交接
+     */
+    public void setHandoffThreshold(long threshold, TimeUnit unit) {
+        sync.setHandoffThreshold(unit.toNanos(threshold));
+        sync.updateSlowPathOnly();
+    }
+
+    public boolean isContendedLayout() {
+        return sync.isContendedLayout();
+    }
+
+    /**
+     * 为大量线程频繁排队的锁开启竞争布局，必须在锁被使用之前调用，
+     * 见 {@link AbstractQueuedSynchronizer#enableContendedLayout()}。
+     */
+    public void enableContendedLayout() {
+        sync.enableContendedLayout();
+    }
+
+    private final class Sync extends AbstractQueuedSynchronizer {
+
+        private static final long serialVersionUID = -5179523762034025860L;
+
+        /**
+         * 挂了竞争统计或锁顺序监视器，或开启了直接交接。此时 lock/unlock 不走快速路径，
+         * 由 acquire/release 完成记录或交接，快速路径上只多读一个字段。
+         */
+        private volatile boolean slowPathOnly;
+
+        void updateSlowPathOnly() {
+            slowPathOnly = getContentionStats() != null || getLockOrderMonitor() != null
+                    || getHandoffThreshold() != 0L;
+        }
+
+        /**
+         * lock() 的快速路径，锁空闲时一次 CAS。失败（被占用、重入或需要记录）时由调用方走 acquire。
+         * <p>
+         * acquire 中的 tryAcquire 是虚调用，那个调用点被所有同步器子类共用，类型剖面是多态的，
+         * C2 只能真调用；这里直接调用 final 的 compareAndSetState，没有虚调用，字节码也在内联阈值以内。
+         */
+        boolean fastAcquire() {
+            if (getState() == 0 && !slowPathOnly && compareAndSetState(0, 1)) {
+                setExclusiveOwnerThread(Thread.currentThread());
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * unlock() 的快速路径：当前线程持有一次、不需要记录时直接释放，之后只在有等待者时才进入唤醒逻辑。
+         * 其余情况（重入的释放、异步获取的锁、非持有者释放）由调用方走 release。
+         */
+        boolean fastRelease() {
+            if (getState() != 1 || slowPathOnly || getExclusiveOwnerThread() != Thread.currentThread())
+                return false;
+            setExclusiveOwnerThread(null);
+            setState(0);
+            signalAfterRelease(0L);
+            combiner.signalWaiting();
+            return true;
+        }
+
+        @Override
+        protected boolean tryAcquire(int acquires) {
+            // 先读后 CAS，自旋重试时不反复抢占缓存行
+            int c = getState();
+            if (c == 0) {
+                if (compareAndSetState(0, acquires == ASYNC ? 1 : acquires)) {
+                    setExclusiveOwnerThread(Thread.currentThread());
+                    lockOrderAcquired();
+                    return true;
+                }
+            } else if (acquires != ASYNC && getExclusiveOwnerThread() == Thread.currentThread()) {
+                int next = c + acquires;
+                if (next < 0) // overflow
+                    throw new Error("Maximum lock count exceeded");
+                setState(next);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected boolean tryRelease(int releases) {
+            // 异步获取的锁没有持有线程，任何线程都可以释放
+            Thread owner = getExclusiveOwnerThread();
+            int c = getState();
+            if (c == 0 || (owner != null && owner != Thread.currentThread())) {
+                throw new IllegalMonitorStateException();
+            }
+            c -= releases == ASYNC ? 1 : releases;
+            if (c != 0) {
+                // 重入的释放只减计数
+                setState(c);
+                return false;
+            }
+
+            if (owner != null)
+                lockOrderReleased();
+            // 持有锁的线程设置为null
+            setExclusiveOwnerThread(null);
+            setState(0);
+            // 包括 Condition.await 在内的所有释放路径都要让 park 的 combine 调用方有机会接任
+            combiner.signalWaiting();
+            return true;
+        }
+
+        @Override
+        protected boolean tryHandoff(int releases) {
+            // 重入的释放、异步获取的锁不交接，非持有者的释放留给 tryRelease 抛异常
+            if (getExclusiveOwnerThread() != Thread.currentThread() || getState() != releases)
+                return false;
+            lockOrderReleased();
+            setExclusiveOwnerThread(null);
+            return true;
+        }
+
+        @Override
+        protected void onHandoff(int acquires) {
+            setState(acquires);
+            setExclusiveOwnerThread(Thread.currentThread());
+            lockOrderAcquired();
+        }
+
+        @Override
+        protected void onAsyncAcquire(long arg, boolean shared) {
+            setExclusiveOwnerThread(null);
+            lockOrderReleased();
+        }
+
+        @Override
+        protected boolean isHeldExclusively() {
+            // 只有持有锁的线程才算独占，ConditionObject 依赖这一点校验 await/signal 的调用方
+            return getExclusiveOwnerThread() == Thread.currentThread();
+        }
+
+        Condition newCondition() {
+            return new ConditionObject(this);
+        }
+    }
+
+
+}
@@ -0,0 +1,253 @@
+package com.okami.test.aqs;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * 平面合并（flat combining，Hendler 等，SPAA 2010），供 {@link ExclusiveLock#combine} 使用。
+ * <p>
+ * 每个线程在每把锁上有一个 {@link Slot}，挂在一条发布链表上。线程把要执行的操作写进自己的槽位，
+ * 然后尝试获取锁：
+ * <ul>
+ * <li>拿到锁的线程成为合并者，先执行自己的操作，再扫描链表，把其他线程发布的操作逐个执行完，
+ * 把结果写回各自的槽位后释放锁。</li>
+ * <li>没拿到锁的线程在自己的槽位上自旋，之后 park，直到操作被合并者执行完，
+ * 或者锁空闲下来、自己成为合并者。</li>
+ * </ul>
+ * 锁只在合并者之间交接一次就能完成一批操作，被保护的数据也一直留在合并者的缓存里。
+ * <p>
+ * 链表只有合并者（持有锁时）会摘除节点，其他线程只从头部 CAS 插入；
+ * 长时间没有发布操作的槽位会被摘除，下次发布时重新插入，这样已退出的线程不会让链表无限增长。
+ */
+final class FlatCombiner {
+
+    /**
+     * 槽位状态：空闲，在链表上。
+     */
+    static final int IDLE = 0;
+    /**
+     * 槽位状态：已发布操作，等待执行。
+     */
+    static final int PENDING = 1;
+    /**
+     * 槽位状态：操作已执行，结果待取。
+     */
+    static final int DONE = 2;
+    /**
+     * 槽位状态：不在链表上，发布前需要重新插入。
+     */
+    static final int REMOVED = 3;
+
+    /**
+     * 合并者每次最多扫描链表的轮数，后面几轮收集扫描期间新发布的操作。
+     */
+    static final int COMBINING_ROUNDS = 2;
+
+    /**
+     * 每隔多少次合并清理一次链表。
+     */
+    static final int CLEANUP_INTERVAL = 1024;
+
+    /**
+     * 槽位在这么多次合并中都没有发布过操作，清理时被摘除。
+     */
+    static final int MAX_IDLE_PASSES = 1024;
+
+    /**
+     * park 前自旋等待的次数，单核时自旋只会耽误合并者。
+     */
+    static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 256 : 0;
+
+    private static final AtomicReferenceFieldUpdater<FlatCombiner, Slot> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(FlatCombiner.class, Slot.class, "head");
+
+    private static final AtomicIntegerFieldUpdater<FlatCombiner> PARKED =
+            AtomicIntegerFieldUpdater.newUpdater(FlatCombiner.class, "parked");
+
+    private static final AtomicIntegerFieldUpdater<Slot> STATUS =
+            AtomicIntegerFieldUpdater.newUpdater(Slot.class, "status");
+
+    private final AbstractQueuedSynchronizer sync;
+
+    private final ThreadLocal<Slot> slots = ThreadLocal.withInitial(Slot::new);
+
+    /**
+     * 发布链表头。
+     */
+    private volatile Slot head;
+
+    /**
+     * 已经或即将 park 的等待线程数，释放锁时据此决定是否需要唤醒一个去接任合并者。
+     */
+    private volatile int parked;
+
+    /**
+     * 合并次数，只在持有锁时修改。
+     */
+    private int passes;
+
+    FlatCombiner(AbstractQueuedSynchronizer sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * 执行 operation.apply(argument)，执行时锁被持有（不一定由当前线程持有）。
+     */
+    @SuppressWarnings("unchecked")
+    <T, R> R combine(Function<? super T, ? extends R> operation, T argument) {
+        if (sync.isHeldExclusively())
+            return operation.apply(argument);
+        if (sync.getState() == 0 && sync.tryAcquire(1)) {
+            // 锁空闲时不发布，直接执行，顺便执行别人已发布的操作
+            try {
+                R result = operation.apply(argument);
+                combineLocked(null);
+                return result;
+            } finally {
+                sync.release(1);
+            }
+        }
+        Slot s = slots.get();
+        s.operation = (Function<Object, Object>) operation;
+        s.argument = argument;
+        if (!STATUS.compareAndSet(s, IDLE, PENDING)) {
+            // 已被合并者摘除（或从未插入），重新插入链表头
+            s.status = PENDING;
+            s.lastPass = passes;
+            Slot h;
+            do {
+                h = head;
+                s.next = h;
+            } while (!HEAD.compareAndSet(this, h, s));
+        }
+        for (int spins = 0; ; ) {
+            if (s.status == DONE)
+                return (R) s.take();
+            if (sync.getState() == 0 && sync.tryAcquire(1)) {
+                try {
+                    combineLocked(s);
+                } finally {
+                    sync.release(1);
+                }
+                return (R) s.take();
+            }
+            if (spins < SPINS) {
+                ++spins;
+                Atomics.onSpinWait();
+            } else {
+                // 先登记再检查锁和状态，与 signalWaiting/execute 中先写后读构成 Dekker 式的握手
+                s.parked = true;
+                PARKED.getAndIncrement(this);
+                if (s.status == PENDING && sync.getState() != 0)
+                    LockSupport.park(this);
+                PARKED.getAndDecrement(this);
+                s.parked = false;
+            }
+        }
+    }
+
+    /**
+     * 锁的 state 清零后由 tryRelease 调用，唤醒一个 park 中、操作还没完成的线程，让它接任合并者。
+     * 没有 park 的线程时只有一次 volatile 读。
+     */
+    void signalWaiting() {
+        if (parked == 0)
+            return;
+        for (Slot p = head; p != null; p = p.next) {
+            if (p.parked && p.status == PENDING) {
+                LockSupport.unpark(p.owner);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 持有锁时执行自己的操作和链表上所有已发布的操作。
+     */
+    private void combineLocked(Slot self) {
+        int pass = ++passes;
+        if (self != null && self.status == PENDING)
+            execute(self, pass);
+        for (int round = 0; round < COMBINING_ROUNDS; round++) {
+            int executed = 0;
+            for (Slot p = head; p != null; p = p.next) {
+                if (p.status == PENDING) {
+                    execute(p, pass);
+                    executed++;
+                }
+            }
+            if (executed == 0)
+                break;
+        }
+        if (pass % CLEANUP_INTERVAL == 0)
+            cleanUp(pass);
+    }
+
+    private static void execute(Slot p, int pass) {
+        try {
+            p.result = p.operation.apply(p.argument);
+        } catch (Throwable t) {
+            p.failure = t;
+        }
+        p.operation = null;
+        p.argument = null;
+        p.lastPass = pass;
+        p.status = DONE;
+        if (p.parked)
+            LockSupport.unpark(p.owner);
+    }
+
+    /**
+     * 摘除长时间空闲的槽位。头节点可能正被并发插入，不摘除。
+     */
+    private void cleanUp(int pass) {
+        Slot prev = head;
+        if (prev == null)
+            return;
+        for (Slot p = prev.next; p != null; ) {
+            // 先读 next：CAS 成功后属主线程可能立即把它重新插到链表头并改写 next
+            Slot next = p.next;
+            if (pass - p.lastPass > MAX_IDLE_PASSES && STATUS.compareAndSet(p, IDLE, REMOVED)) {
+                prev.next = next;
+            } else {
+                prev = p;
+            }
+            p = next;
+        }
+    }
+
+    /**
+     * 线程在一把锁上的发布槽位。操作与参数在 status 写为 PENDING 之前写入，
+     * 结果在 status 写为 DONE 之前写入，由 status 的 volatile 读写保证可见。
+     */
+    static final class Slot {
+        final Thread owner = Thread.currentThread();
+        volatile int status = REMOVED;
+        volatile boolean parked;
+        volatile Slot next;
+        Function<Object, Object> operation;
+        Object argument;
+        Object result;
+        Throwable failure;
+        int lastPass;
+
+        Object take() {
+            Object r = result;
+            Throwable f = failure;
+            result = null;
+            failure = null;
+            status = IDLE;
+            if (f != null) {
+                if (f instanceof RuntimeException)
+                    throw (RuntimeException) f;
+                if (f instanceof Error)
+                    throw (Error) f;
+                throw new UndeclaredThrowableException(f);
+            }
+            return r;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.okami.test.aqs;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * 按键加锁：同一个键（例如订单号）的操作串行执行，不同键之间并行。
+ * <pre> {@code
+ * KeyedLockManager<String> locks = KeyedLockManager.perKey();
+ * locks.lock(orderId);
+ * try {
+ *     process(message);
+ * } finally {
+ *     locks.unlock(orderId);
+ * }}</pre>
+ * 两种模式：
+ * <ul>
+ * <li>{@link #striped(int)}：固定数量的 {@link ExclusiveLock}，键按哈希映射到其中之一。
+ * 内存固定，加解锁不分配对象；代价是哈希到同一分段的不同键也会互相等待，
+ * 同一线程同时持有落在同一分段的两个键时按重入计数，各自解锁即可；但多个线程各自同时持有多个键时，
+ * 分段冲突会让按键看来顺序一致的加锁互相等待而死锁，应避免同时持有多个键。</li>
+ * <li>{@link #perKey()}：每个键一把独立的锁，保存在 ConcurrentHashMap 中，按引用计数管理。
+ * 正在持有或等待的键不会被移除；空闲的键在插入新键时被摊还地清理（时钟算法：
+ * 自上次清理以来没有被再次加锁的键即被移除，一次性的键活不过一轮），所以热点键常驻表中，
+ * 加解锁只有一次哈希查找和两次 CAS，不分配对象；表的大小不超过最近活跃键数的两倍左右。</li>
+ * </ul>
+ * 两种模式下的锁都与 {@link ExclusiveLock} 语义相同：可重入，只能由持有线程解锁。
+ *
+ * @param <K> 键的类型，需要正确实现 equals 与 hashCode
+ */
+public abstract class KeyedLockManager<K> {
+
+    KeyedLockManager() {
+    }
+
+    /**
+     * @param stripes 分段数，向上取整为 2 的幂；通常取并发处理线程数的若干倍
+     */
+    public static <K> KeyedLockManager<K> striped(int stripes) {
+        return new Striped<>(stripes);
+    }
+
+    /**
+     * 每个键一把锁，空闲的键自动移除。
+     */
+    public static <K> KeyedLockManager<K> perKey() {
+        return new PerKey<>(PerKey.MIN_SWEEP_THRESHOLD);
+    }
+
+    public abstract void lock(K key);
+
+    public abstract void lockInterruptibly(K key) throws InterruptedException;
+
+    public abstract boolean tryLock(K key);
+
+    public abstract boolean tryLock(K key, long time, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * @throws IllegalMonitorStateException if the current thread does not hold the lock for the key
+     */
+    public abstract void unlock(K key);
+
+    /**
+     * 返回键对应的 {@link Lock}。分段模式下就是分段的 {@link ExclusiveLock}；
+     * 按键模式下是一个轻量视图，每次 lock 都重新按键查找，所以视图可以长期持有，
+     * 但每次调用本方法会分配一个视图对象，热点路径上应直接用 {@link #lock}/{@link #unlock}。
+     * 两种模式都不支持 {@link Lock#newCondition()}。
+     */
+    public abstract Lock lockFor(K key);
+
+    /**
+     * 持有键的锁执行 action。
+     */
+    public <R> R withLock(K key, Supplier<? extends R> action) {
+        lock(key);
+        try {
+            return action.get();
+        } finally {
+            unlock(key);
+        }
+    }
+
+    /**
+     * @return 分段数，或按键模式下表中的键数（估计值）
+     */
+    public abstract int size();
+
+    /**
+     * 乘以黄金分割常数再折叠高位，避免 hashCode 低位规律性强（如连续的订单号）时集中到少数分段。
+     */
+    static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 固定分段模式。
+     */
+    static final class Striped<K> extends KeyedLockManager<K> {
+
+        private final ExclusiveLock[] stripes;
+
+        private final int mask;
+
+        Striped(int stripes) {
+            if (stripes <= 0)
+                throw new IllegalArgumentException();
+            int n = Integer.highestOneBit(stripes);
+            if (n < stripes)
+                n <<= 1;
+            this.stripes = new ExclusiveLock[n];
+            for (int i = 0; i < n; i++)
+                this.stripes[i] = new ExclusiveLock();
+            this.mask = n - 1;
+        }
+
+        private ExclusiveLock stripe(K key) {
+            return stripes[spread(key.hashCode()) & mask];
+        }
+
+        @Override
+        public void lock(K key) {
+            stripe(key).lock();
+        }
+
+        @Override
+        public void lockInterruptibly(K key) throws InterruptedException {
+            stripe(key).lockInterruptibly();
+        }
+
+        @Override
+        public boolean tryLock(K key) {
+            return stripe(key).tryLock();
+        }
+
+        @Override
+        public boolean tryLock(K key, long time, TimeUnit unit) throws InterruptedException {
+            return stripe(key).tryLock(time, unit);
+        }
+
+        @Override
+        public void unlock(K key) {
+            stripe(key).unlock();
+        }
+
+        @Override
+        public Lock lockFor(K key) {
+            return stripe(key);
+        }
+
+        @Override
+        public int size() {
+            return stripes.length;
+        }
+    }
+
+    /**
+     * 按键模式。
+     * <p>
+     * 每个表项有一个引用计数，持有和等待该键的线程各占一个引用。计数为 {@link Entry#DEAD} 的表项已被清理，
+     * 碰到它的线程先帮忙把它移出表再重试，所以同一时刻一个键在表中最多只有一个活的表项，
+     * 持有者解锁时按键查到的一定是自己加锁的那个表项。
+     * <p>
+     * 清理在插入新键时触发：表的大小超过阈值时，由一个线程扫描全表，
+     * 移除引用计数为 0 且自上次清理以来没有被使用过的表项，然后把阈值调整为剩余大小的两倍。
+     * 每次清理的代价由之前的插入摊还。
+     */
+    static final class PerKey<K> extends KeyedLockManager<K> {
+
+        /**
+         * 清理阈值的下限，表小于此时不清理。
+         */
+        static final int MIN_SWEEP_THRESHOLD = 1024;
+
+        /**
+         * 每插入这么多个新键才检查一次表的大小（2 的幂），mappingCount 要累加所有计数单元。
+         */
+        private static final int SWEEP_CHECK_INTERVAL = 64;
+
+        private final ConcurrentHashMap<K, Entry> entries = new ConcurrentHashMap<>();
+
+        private final LongAdder insertions = new LongAdder();
+
+        private final AtomicBoolean sweeping = new AtomicBoolean();
+
+        private final int minSweepThreshold;
+
+        private volatile long sweepThreshold;
+
+        PerKey(int minSweepThreshold) {
+            this.minSweepThreshold = minSweepThreshold;
+            this.sweepThreshold = minSweepThreshold;
+        }
+
+        /**
+         * 取得键的表项并占一个引用。
+         */
+        private Entry retain(K key) {
+            Objects.requireNonNull(key);
+            for (; ; ) {
+                Entry e = entries.get(key);
+                if (e == null) {
+                    Entry created = new Entry();
+                    if ((e = entries.putIfAbsent(key, created)) == null) {
+                        afterInsert();
+                        return created;
+                    }
+                }
+                if (e.retain()) {
+                    e.used = true;
+                    return e;
+                }
+                // 已被清理但还没移出表，帮忙移除后重试
+                entries.remove(key, e);
+            }
+        }
+
+        /**
+         * 释放一个引用。表项留在表中，由清理决定是否移除。
+         */
+        private static void release(Entry e) {
+            Entry.REFS.getAndDecrement(e);
+        }
+
+        private Entry held(K key) {
+            Entry e = entries.get(Objects.requireNonNull(key));
+            if (e == null)
+                throw new IllegalMonitorStateException();
+            return e;
+        }
+
+        private void afterInsert() {
+            insertions.increment();
+            if ((insertions.sum() & (SWEEP_CHECK_INTERVAL - 1)) == 0 &&
+                    entries.mappingCount() > sweepThreshold)
+                sweep();
+        }
+
+        /**
+         * 清理一遍空闲的键，已有线程在清理时直接返回。
+         */
+        void sweep() {
+            if (!sweeping.compareAndSet(false, true))
+                return;
+            try {
+                for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                    Entry e = it.next();
+                    if (e.used)
+                        e.used = false;
+                    else if (e.refs == 0 && Entry.REFS.compareAndSet(e, 0, Entry.DEAD))
+                        it.remove();
+                }
+                sweepThreshold = Math.max(minSweepThreshold, entries.mappingCount() * 2);
+            } finally {
+                sweeping.set(false);
+            }
+        }
+
+        @Override
+        public void lock(K key) {
+            Entry e = retain(key);
+            try {
+                e.lock();
+            } catch (Throwable t) {
+                release(e);
+                throw t;
+            }
+        }
+
+        @Override
+        public void lockInterruptibly(K key) throws InterruptedException {
+            Entry e = retain(key);
+            try {
+                e.lockInterruptibly();
+            } catch (Throwable t) {
+                release(e);
+                throw t;
+            }
+        }
+
+        @Override
+        public boolean tryLock(K key) {
+            Entry e = retain(key);
+            if (e.tryLock())
+                return true;
+            release(e);
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(K key, long time, TimeUnit unit) throws InterruptedException {
+            Entry e = retain(key);
+            boolean locked = false;
+            try {
+                locked = e.tryLock(time, unit);
+            } finally {
+                if (!locked)
+                    release(e);
+            }
+            return locked;
+        }
+
+        @Override
+        public void unlock(K key) {
+            Entry e = held(key);
+            e.unlock();
+            release(e);
+        }
+
+        @Override
+        public Lock lockFor(K key) {
+            return new KeyLock<>(this, Objects.requireNonNull(key));
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 按键模式的表项，本身就是那把锁。表项数量可能很多，不自旋，省掉每把锁一个自旋策略对象。
+     */
+    static final class Entry extends ExclusiveLock {
+
+        static final int DEAD = -1;
+
+        static final AtomicIntegerFieldUpdater<Entry> REFS =
+                AtomicIntegerFieldUpdater.newUpdater(Entry.class, "refs");
+
+        /**
+         * 持有和等待这把锁的线程数，{@link #DEAD} 表示已被清理。新建的表项属于创建它的线程。
+         */
+        volatile int refs = 1;
+
+        /**
+         * 自上次清理以来是否被再次加锁过，新建的表项为 false。
+         * 普通读写：丢失的更新最多让表项早或晚一轮被清理，被清理的键下次加锁时重新创建。
+         */
+        boolean used;
+
+        Entry() {
+            super(null);
+        }
+
+        boolean retain() {
+            for (int r; (r = refs) != DEAD; ) {
+                if (REFS.compareAndSet(this, r, r + 1))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 按键模式下 {@link #lockFor} 返回的视图。
+     */
+    static final class KeyLock<K> implements Lock {
+
+        private final KeyedLockManager<K> manager;
+
+        private final K key;
+
+        KeyLock(KeyedLockManager<K> manager, K key) {
+            this.manager = manager;
+            this.key = key;
+        }
+
+        @Override
+        public void lock() {
+            manager.lock(key);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            manager.lockInterruptibly(key);
+        }
+
+        @Override
+        public boolean tryLock() {
+            return manager.tryLock(key);
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return manager.tryLock(key, time, unit);
+        }
+
+        @Override
+        public void unlock() {
+            manager.unlock(key);
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package com.okami.test.aqs;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 锁顺序监视器：记录各线程获取锁的先后顺序，汇总成全局的锁顺序图，图中出现环时报告潜在死锁。
+ * 不必真的发生死锁，只要两个线程分别按 A→B 和 B→A 的顺序获取过就会报告，并附上每条边第一次出现时的调用栈。
+ * <p>
+ * 通过 {@link QueuedSynchronizer#setLockOrderMonitor} 挂到同步器上，同名的同步器算作图中的同一个节点，
+ * 例如一组分段锁；名字应当来自有限的集合。同一个节点的锁互相嵌套（如按顺序获取两个分段）不算作环。
+ * <p>
+ * 开销按能在预发环境常开设计：
+ * <ul>
+ * <li>每个线程维护自己持有的锁的栈，获取时压栈、释放时出栈，只有普通读写；</li>
+ * <li>已经持有其他锁时的获取才可能产生边，每 sampleInterval 次采样一次，
+ * 采样时查当前线程见过的边，只有第一次见到的边才取调用栈；</li>
+ * <li>新边放进当前线程的单生产者环形缓冲区，满了丢弃（计入 {@link #getDroppedEdges}，之后还会再采到）；</li>
+ * <li>后台线程定期取走所有缓冲区中的边并入全局图、查找环，获取锁的线程从不碰全局图。</li>
+ * </ul>
+ * 只跟踪线程持有的独占获取：共享获取不阻止同一节点上的其他共享获取，异步获取不属于任何线程，都不记录。
+ * 调用了 {@link QueuedSynchronizer#lockOrderAcquired} 与 {@link QueuedSynchronizer#lockOrderReleased}
+ * 的子类才会被跟踪，例如 {@link ExclusiveLock}。
+ */
+public final class LockOrderMonitor implements AutoCloseable {
+
+    /**
+     * 默认采样间隔。
+     */
+    static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+    /**
+     * 每个线程环形缓冲区的容量，2 的幂。新边只在程序刚开始跑各条路径时集中出现，很快就没有了。
+     */
+    static final int RING_SIZE = 256;
+
+    private static final AtomicInteger ANALYZER_COUNT = new AtomicInteger();
+
+    private final int sampleInterval;
+
+    private final Consumer<? super PotentialDeadlock> listener;
+
+    private final ConcurrentMap<String, Key> keys = new ConcurrentHashMap<>();
+
+    private final CopyOnWriteArrayList<ThreadState> threads = new CopyOnWriteArrayList<>();
+
+    private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(this::register);
+
+    private final LongAdder droppedEdges = new LongAdder();
+
+    private final ScheduledThreadPoolExecutor analyzer;
+
+    // 以下只在持有 this 的监视器锁时访问
+
+    private final Map<Key, Map<Key, Edge>> graph = new HashMap<>();
+
+    private final Set<List<Key>> reportedCycles = new HashSet<>();
+
+    private final List<PotentialDeadlock> potentialDeadlocks = new ArrayList<>();
+
+    private int edgeCount;
+
+    /**
+     * 默认每 {@link #DEFAULT_SAMPLE_INTERVAL} 次嵌套获取采样一次，每秒分析一次，潜在死锁打印到标准错误。
+     */
+    public LockOrderMonitor() {
+        this(DEFAULT_SAMPLE_INTERVAL, 1, TimeUnit.SECONDS, System.err::println);
+    }
+
+    /**
+     * @param sampleInterval 每多少次嵌套获取采样一次，1 表示每次都采样
+     * @param period         后台分析的间隔，0 表示不启动后台线程，只在调用 {@link #analyze()} 时分析
+     * @param listener       每个新发现的潜在死锁调用一次，在分析线程中执行
+     */
+    public LockOrderMonitor(int sampleInterval, long period, TimeUnit unit,
+                            Consumer<? super PotentialDeadlock> listener) {
+        if (sampleInterval <= 0 || period < 0L)
+            throw new IllegalArgumentException();
+        if (listener == null)
+            throw new NullPointerException();
+        this.sampleInterval = sampleInterval;
+        this.listener = listener;
+        if (period > 0L) {
+            String name = "aqs-lock-order-analyzer-" + ANALYZER_COUNT.incrementAndGet();
+            analyzer = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+            analyzer.scheduleWithFixedDelay(this::analyze, period, period, unit);
+        } else {
+            analyzer = null;
+        }
+    }
+
+    /**
+     * 取走所有线程缓冲区中的新边并入锁顺序图，对新出现的环调用 listener。后台线程定期调用，也可以手动调用。
+     *
+     * @return 本次新发现的潜在死锁数
+     */
+    public int analyze() {
+        List<PotentialDeadlock> found = new ArrayList<>();
+        synchronized (this) {
+            for (ThreadState s : threads) {
+                Edge e;
+                while ((e = s.poll()) != null)
+                    addEdge(e, found);
+                if (s.thread.get() == null && s.isEmpty())
+                    threads.remove(s);
+            }
+            potentialDeadlocks.addAll(found);
+        }
+        for (PotentialDeadlock d : found)
+            listener.accept(d);
+        return found.size();
+    }
+
+    /**
+     * @return 已经发现的潜在死锁
+     */
+    public synchronized List<PotentialDeadlock> getPotentialDeadlocks() {
+        return new ArrayList<>(potentialDeadlocks);
+    }
+
+    /**
+     * @return 锁顺序图中的边数
+     */
+    public synchronized int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return 因线程的环形缓冲区已满而丢弃的边数，被丢弃的边下次采到时还会重新提交
+     */
+    public long getDroppedEdges() {
+        return droppedEdges.sum();
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * 停止后台分析。已挂上的同步器仍会记录，但不再有人取走。
+     */
+    @Override
+    public void close() {
+        if (analyzer != null)
+            analyzer.shutdownNow();
+    }
+
+    /**
+     * @return 给定名字在图中的节点
+     */
+    Key key(String name) {
+        if (name == null)
+            throw new NullPointerException();
+        return keys.computeIfAbsent(name, n -> new Key(this, n));
+    }
+
+    /**
+     * 当前线程获取了 key 对应的锁。
+     */
+    void acquired(Key key) {
+        ThreadState s = threadState.get();
+        if (s.depth > 0 && --s.countdown <= 0) {
+            s.countdown = sampleInterval;
+            s.sample(key);
+        }
+        s.push(key);
+    }
+
+    /**
+     * 当前线程释放了 key 对应的锁。
+     */
+    void released(Key key) {
+        threadState.get().remove(key);
+    }
+
+    private ThreadState register() {
+        ThreadState s = new ThreadState(Thread.currentThread());
+        threads.add(s);
+        return s;
+    }
+
+    private void addEdge(Edge e, List<PotentialDeadlock> found) {
+        Map<Key, Edge> out = graph.computeIfAbsent(e.from, k -> new HashMap<>());
+        if (out.putIfAbsent(e.to, e) != null)
+            return;
+        edgeCount++;
+        List<Edge> path = findPath(e.to, e.from);
+        if (path == null)
+            return;
+        path.add(0, e);
+        List<Key> cycle = canonical(path);
+        if (reportedCycles.add(cycle))
+            found.add(new PotentialDeadlock(path));
+    }
+
+    /**
+     * 广度优先找一条 from 到 to 的最短路径。
+     */
+    private List<Edge> findPath(Key from, Key to) {
+        Map<Key, Edge> via = new HashMap<>();
+        ArrayDeque<Key> queue = new ArrayDeque<>();
+        queue.add(from);
+        via.put(from, null);
+        Key k;
+        while ((k = queue.poll()) != null) {
+            if (k == to) {
+                ArrayList<Edge> path = new ArrayList<>();
+                for (Edge e; (e = via.get(k)) != null; k = e.from)
+                    path.add(e);
+                Collections.reverse(path);
+                return path;
+            }
+            Map<Key, Edge> out = graph.get(k);
+            if (out == null)
+                continue;
+            for (Edge e : out.values()) {
+                if (!via.containsKey(e.to)) {
+                    via.put(e.to, e);
+                    queue.add(e.to);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 环上的节点从编号最小的开始排列，同一个环从不同的边发现时得到同一个结果。
+     */
+    private static List<Key> canonical(List<Edge> cycle) {
+        int n = cycle.size();
+        int start = 0;
+        for (int i = 1; i < n; i++)
+            if (cycle.get(i).from.id < cycle.get(start).from.id)
+                start = i;
+        List<Key> keys = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            keys.add(cycle.get((start + i) % n).from);
+        return keys;
+    }
+
+    /**
+     * 锁顺序图的节点，即一个锁名。
+     */
+    static final class Key {
+        private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+        final LockOrderMonitor monitor;
+
+        final String name;
+
+        final int id = NEXT_ID.getAndIncrement();
+
+        Key(LockOrderMonitor monitor, String name) {
+            this.monitor = monitor;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * 锁顺序图的一条边：某个线程在持有 from 时获取了 to。
+     */
+    public static final class Edge {
+        final Key from;
+
+        final Key to;
+
+        private final String threadName;
+
+        private final StackTraceElement[] stackTrace;
+
+        Edge(Key from, Key to, String threadName, StackTraceElement[] stackTrace) {
+            this.from = from;
+            this.to = to;
+            this.threadName = threadName;
+            this.stackTrace = stackTrace;
+        }
+
+        public String getFrom() {
+            return from.name;
+        }
+
+        public String getTo() {
+            return to.name;
+        }
+
+        /**
+         * @return 第一次采到这条边的线程名
+         */
+        public String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * @return 第一次采到这条边时获取 to 的调用栈
+         */
+        public StackTraceElement[] getStackTrace() {
+            return stackTrace.clone();
+        }
+
+        @Override
+        public String toString() {
+            return from.name + " -> " + to.name;
+        }
+    }
+
+    /**
+     * 锁顺序图中的一个环：沿着这些边各有线程按相反的顺序获取过锁，它们同时执行时可能互相等待。
+     */
+    public static final class PotentialDeadlock {
+        private final List<Edge> edges;
+
+        PotentialDeadlock(List<Edge> edges) {
+            this.edges = Collections.unmodifiableList(new ArrayList<>(edges));
+        }
+
+        /**
+         * @return 环上的边，首尾相接
+         */
+        public List<Edge> getEdges() {
+            return edges;
+        }
+
+        /**
+         * @return 环上的锁名，按获取顺序排列
+         */
+        public List<String> getLockNames() {
+            List<String> names = new ArrayList<>(edges.size());
+            for (Edge e : edges)
+                names.add(e.getFrom());
+            return names;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Potential deadlock: ");
+            for (Edge e : edges)
+                sb.append(e.getFrom()).append(" -> ");
+            sb.append(edges.get(0).getFrom());
+            for (Edge e : edges) {
+                sb.append("\n  ").append(e).append(" acquired by \"").append(e.threadName).append('"');
+                for (StackTraceElement frame : e.stackTrace)
+                    sb.append("\n\tat ").append(frame);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 一个线程持有的锁与待提交的边。持有栈与已见过的边只由所属线程访问；
+     * 环形缓冲区由所属线程写入、分析线程取出，两端各自只写自己的下标。
+     */
+    private final class ThreadState {
+        final WeakReference<Thread> thread;
+
+        Key[] held = new Key[8];
+
+        int depth;
+
+        int countdown = sampleInterval;
+
+        /**
+         * 已经提交过的边，from 与 to 的编号拼成一个 long。
+         */
+        final Set<Long> seen = new HashSet<>();
+
+        final Edge[] ring = new Edge[RING_SIZE];
+
+        volatile long head;
+
+        volatile long tail;
+
+        ThreadState(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+        }
+
+        void push(Key key) {
+            if (depth == held.length)
+                held = Arrays.copyOf(held, depth * 2);
+            held[depth++] = key;
+        }
+
+        /**
+         * 移除最近一次压入的 key，不一定在栈顶：锁不必按获取的相反顺序释放。
+         * 找不到时忽略，例如开启监视之前获取的锁。
+         */
+        void remove(Key key) {
+            for (int i = depth - 1; i >= 0; i--) {
+                if (held[i] == key) {
+                    System.arraycopy(held, i + 1, held, i, depth - i - 1);
+                    held[--depth] = null;
+                    return;
+                }
+            }
+        }
+
+        void sample(Key to) {
+            StackTraceElement[] trace = null;
+            for (int i = 0; i < depth; i++) {
+                Key from = held[i];
+                if (from == to)
+                    continue;
+                Long id = ((long) from.id << 32) | (to.id & 0xFFFFFFFFL);
+                if (!seen.add(id))
+                    continue;
+                if (trace == null)
+                    trace = captureStackTrace();
+                if (!offer(new Edge(from, to, Thread.currentThread().getName(), trace))) {
+                    droppedEdges.increment();
+                    seen.remove(id);
+                }
+            }
+        }
+
+        boolean offer(Edge e) {
+            long t = tail;
+            if (t - head == RING_SIZE)
+                return false;
+            ring[(int) t & (RING_SIZE - 1)] = e;
+            tail = t + 1;
+            return true;
+        }
+
+        Edge poll() {
+            long h = head;
+            if (h == tail)
+                return null;
+            int i = (int) h & (RING_SIZE - 1);
+            Edge e = ring[i];
+            ring[i] = null;
+            head = h + 1;
+            return e;
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+    }
+
+    /**
+     * @return 当前调用栈，去掉本类的帧
+     */
+    private static StackTraceElement[] captureStackTrace() {
+        StackTraceElement[] trace = new Throwable().getStackTrace();
+        int skip = 0;
+        while (skip < trace.length && trace[skip].getClassName().startsWith(LockOrderMonitor.class.getName()))
+            skip++;
+        return Arrays.copyOfRange(trace, skip, trace.length);
+    }
+}
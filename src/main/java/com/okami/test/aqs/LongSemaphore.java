@@ -0,0 +1,215 @@
+package com.okami.test.aqs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按权重获取的计数信号量，许可数是 long，可以直接按字节计数，例如限制在途消息的总字节数：
+ * <pre> {@code
+ * LongSemaphore inFlightBytes = new LongSemaphore(4L << 30); // 4 GB
+ *
+ * byte[] payload = message.getPayload();
+ * inFlightBytes.acquire(payload.length);
+ * try {
+ *     send(payload);
+ * } finally {
+ *     inFlightBytes.release(payload.length);
+ * }}</pre>
+ * <p>
+ * 获取严格按到达顺序满足：队列中有人等待时，新的获取（包括 {@link #tryAcquire(long)}）一律排队，
+ * 队首的请求得不到满足时，排在它后面的较小请求也不会越过它。
+ * 这样大请求不会被源源不断的小请求饿死，代价是队首的大请求等待期间，
+ * 即使剩余许可够小请求用，小请求也要等。不排队时的获取与非公平信号量一样只有一次 CAS。
+ * <p>
+ * 与 {@link java.util.concurrent.Semaphore} 一样，许可不属于任何线程，
+ * 释放不必由获取的线程调用，释放的数量也不检查是否超过获取的数量。
+ * 请求数超过信号量能达到的最大许可数时会一直等待。
+ */
+public class LongSemaphore implements java.io.Serializable {
+
+    private static final long serialVersionUID = -3222578661600680211L;
+
+    private final Sync sync;
+
+    /**
+     * @param permits 初始许可数，可以为负，此时要先释放才能获取
+     */
+    public LongSemaphore(long permits) {
+        sync = new Sync(permits);
+    }
+
+    /**
+     * 获取给定数量的许可，不够时排队等待，可被中断。
+     *
+     * @param permits the number of permits to acquire
+     * @throws InterruptedException     if the current thread is interrupted
+     * @throws IllegalArgumentException if {@code permits} is negative
+     */
+    public void acquire(long permits) throws InterruptedException {
+        if (permits < 0L)
+            throw new IllegalArgumentException();
+        sync.acquireSharedInterruptibly(permits);
+    }
+
+    /**
+     * 获取给定数量的许可，不够时排队等待，不响应中断。
+     *
+     * @param permits the number of permits to acquire
+     * @throws IllegalArgumentException if {@code permits} is negative
+     */
+    public void acquireUninterruptibly(long permits) {
+        if (permits < 0L)
+            throw new IllegalArgumentException();
+        sync.acquireShared(permits);
+    }
+
+    /**
+     * 许可足够且没有人在排队时获取。与 {@link java.util.concurrent.Semaphore#tryAcquire()} 不同，
+     * 不会越过排队的请求。
+     *
+     * @param permits the number of permits to acquire
+     * @return {@code true} if the permits were acquired
+     * @throws IllegalArgumentException if {@code permits} is negative
+     */
+    public boolean tryAcquire(long permits) {
+        if (permits < 0L)
+            throw new IllegalArgumentException();
+        return sync.tryAcquireShared(permits) >= 0;
+    }
+
+    /**
+     * 获取给定数量的许可，最多等待给定的时间。
+     *
+     * @param permits the number of permits to acquire
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the {@code timeout} argument
+     * @return {@code true} if the permits were acquired, {@code false} if the waiting time elapsed
+     * @throws InterruptedException     if the current thread is interrupted
+     * @throws IllegalArgumentException if {@code permits} is negative
+     */
+    public boolean tryAcquire(long permits, long timeout, TimeUnit unit) throws InterruptedException {
+        if (permits < 0L)
+            throw new IllegalArgumentException();
+        return sync.tryAcquireSharedNanos(permits, unit.toNanos(timeout));
+    }
+
+    /**
+     * 释放给定数量的许可。
+     *
+     * @param permits the number of permits to release
+     * @throws IllegalArgumentException if {@code permits} is negative
+     */
+    public void release(long permits) {
+        if (permits < 0L)
+            throw new IllegalArgumentException();
+        sync.releaseShared(permits);
+    }
+
+    public long availablePermits() {
+        return sync.getPermits();
+    }
+
+    /**
+     * 取走当前所有可用的许可。
+     *
+     * @return the number of permits acquired, or the (negative) deficit that was cleared
+     */
+    public long drainPermits() {
+        return sync.drainPermits();
+    }
+
+    /**
+     * 减少可用许可数，不阻塞，可以减到负数。用于运行期调低上限：
+     * 已经获取的许可照常释放，直到释放的数量补足减少的部分，新的获取才会成功。
+     *
+     * @param reduction the number of permits to remove
+     * @throws IllegalArgumentException if {@code reduction} is negative
+     */
+    public void reducePermits(long reduction) {
+        if (reduction < 0L)
+            throw new IllegalArgumentException();
+        sync.reducePermits(reduction);
+    }
+
+    public boolean hasQueuedThreads() {
+        return sync.hasQueuedThreads();
+    }
+
+    public int getQueueLength() {
+        return sync.getQueueLength();
+    }
+
+    public ContentionStats getContentionStats() {
+        return sync.getContentionStats();
+    }
+
+    /**
+     * @param contentionStats 竞争统计，例如 {@code ContentionStats.named("in-flight-bytes")}，null 表示不统计
+     */
+    public void setContentionStats(ContentionStats contentionStats) {
+        sync.setContentionStats(contentionStats);
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[Permits = " + sync.getPermits() + "]";
+    }
+
+    private static final class Sync extends AbstractQueuedLongSynchronizer {
+
+        private static final long serialVersionUID = 5270435417917208474L;
+
+        Sync(long permits) {
+            setState(permits);
+        }
+
+        long getPermits() {
+            return getState();
+        }
+
+        @Override
+        protected int tryAcquireShared(long acquires) {
+            for (; ; ) {
+                // 队首的请求自己不算前驱，所以它总能重试；其余的一律排在它后面
+                if (hasQueuedPredecessors())
+                    return -1;
+                long available = getState();
+                long remaining = available - acquires;
+                if (remaining < 0L)
+                    return -1;
+                if (compareAndSetState(available, remaining))
+                    return remaining > 0L ? 1 : 0;
+            }
+        }
+
+        @Override
+        protected boolean tryReleaseShared(long releases) {
+            for (; ; ) {
+                long current = getState();
+                long next = current + releases;
+                if (next < current) // overflow
+                    throw new Error("Maximum permit count exceeded");
+                if (compareAndSetState(current, next))
+                    return true;
+            }
+        }
+
+        void reducePermits(long reductions) {
+            for (; ; ) {
+                long current = getState();
+                long next = current - reductions;
+                if (next > current) // underflow
+                    throw new Error("Permit count underflow");
+                if (compareAndSetState(current, next))
+                    return;
+            }
+        }
+
+        long drainPermits() {
+            for (; ; ) {
+                long current = getState();
+                if (current == 0L || compareAndSetState(current, 0L))
+                    return current;
+            }
+        }
+    }
+}
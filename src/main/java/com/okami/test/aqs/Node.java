@@ -1,151 +1,238 @@
-//package com.okami.test.aqs;
-//
-//import java.lang.invoke.MethodHandles;
-//import java.lang.invoke.VarHandle;
-//
-//static final class Node {
-//        static final Node SHARED = new Node();
-//        static final Node EXCLUSIVE = null;
-//
-//        static final int CANCELLED = 1;
-//        static final int SIGNAL = -1;
-//        static final int CONDITION = -2;
-//        static final int PROPAGATE = -3;
-//        // VarHandle mechanics
-//        private static final VarHandle NEXT;
-//        private static final VarHandle PREV;
-//        private static final VarHandle THREAD;
-//        private static final VarHandle WAITSTATUS;
-//
-//        static {
-//            try {
-//                MethodHandles.Lookup l = MethodHandles.lookup();
-//                NEXT = l.findVarHandle(Node.class, "next", Node.class);
-//                PREV = l.findVarHandle(Node.class, "prev", Node.class);
-//                THREAD = l.findVarHandle(Node.class, "thread", Thread.class);
-//                WAITSTATUS = l.findVarHandle(Node.class, "waitStatus", int.class);
-//            } catch (ReflectiveOperationException e) {
-//                throw new ExceptionInInitializerError(e);
-//            }
-//        }
-//
-//        /**
-//         * 状态字段，仅取值：
-//         *      SIGNAL：此节点的后继节点被（或即将）阻塞（通过公园），
-//         *      因此当前节点在释放或取消时必须解除其后继节点的公园。
-//         *      为了避免竞争，获取方法必须首先表明它们需要一个信号，然后重试原子获取，然后在失败时阻塞。
-//         *
-//         *      CANCELLED：由于超时或中断，该节点被取消。 节点永远不会离开这个状态。
-//         *      特别是，取消节点的线程永远不会再次阻塞。 条件：该节点当前在条件队列中。
-//         *      它在传输之前不会用作同步队列节点，此时状态将设置为 0。
-//         *      （此处使用此值与该字段的其他用途无关，但简化了机制。）
-//         *
-//         *      PROPAGATE：A releaseShared 应该传播到其他节点。
-//         *      这在 doReleaseShared 中设置（仅适用于头节点）以确保传播继续，即使其他操作已经介入。
-//         *      0：以上都不是 为了简化使用，数值按数字排列。 非负值意味着节点不需要发出信号。
-//         *      因此，大多数代码不需要检查特定值，只需检查符号。
-//         *      对于普通同步节点，该字段被初始化为 0，对于条件节点，该字段被初始化为 CONDITION。
-//         *      它使用 CAS 修改（或在可能的情况下，无条件 volatile 写入）。
-//         */
-//        volatile int waitStatus;
-//
-//        /**
-//         * 链接到当前节点/线程依赖于检查 waitStatus 的前驱节点。
-//         * 在入队期间分配，并仅在出队时取消（为了 GC）。
-//         * 此外，在取消前任时，我们在找到一个未取消的时进行短路，这将始终存在，因为头节点永远不会被取消：只有成功获取的结果，节点才成为头。
-//         * 一个被取消的线程永远不会成功获取，并且一个线程只会取消自己，而不是任何其他节点。
-//         */
-//        volatile Node prev;
-//        /**
-//         * Link to the successor node that the current node/thread
-//         * unparks upon release. Assigned during enqueuing, adjusted
-//         * when bypassing cancelled predecessors, and nulled out (for
-//         * sake of GC) when dequeued.  The enq operation does not
-//         * assign next field of a predecessor until after attachment,
-//         * so seeing a null next field does not necessarily mean that
-//         * node is at end of queue. However, if a next field appears
-//         * to be null, we can scan prev's from the tail to
-//         * double-check.  The next field of cancelled nodes is set to
-//         * point to the node itself instead of null, to make life
-//         * easier for isOnSyncQueue.
-//         */
-//        volatile Node next;
-//        /**
-//         * The thread that enqueued this node.  Initialized on
-//         * construction and nulled out after use.
-//         */
-//        volatile Thread thread;
-//        /**
-//         * Link to next node waiting on condition, or the special
-//         * value SHARED.  Because condition queues are accessed only
-//         * when holding in exclusive mode, we just need a simple
-//         * linked queue to hold nodes while they are waiting on
-//         * conditions. They are then transferred to the queue to
-//         * re-acquire. And because conditions can only be exclusive,
-//         * we save a field by using special value to indicate shared
-//         * mode.
-//         */
-//        Node nextWaiter;
-//
-//        /**
-//         * Establishes initial head or SHARED marker.
-//         */
-//        Node() {
-//        }
-//
-//        /**
-//         * Constructor used by addWaiter.
-//         */
-//        Node(Node nextWaiter) {
-//            this.nextWaiter = nextWaiter;
-//            THREAD.set(this, Thread.currentThread());
-//        }
-//
-//        /**
-//         * Constructor used by addConditionWaiter.
-//         */
-//        Node(int waitStatus) {
-//            WAITSTATUS.set(this, waitStatus);
-//            THREAD.set(this, Thread.currentThread());
-//        }
-//
-//        /**
-//         * Returns true if node is waiting in shared mode.
-//         */
-//        final boolean isShared() {
-//            return nextWaiter == SHARED;
-//        }
-//
-//        /**
-//         * Returns previous node, or throws NullPointerException if null.
-//         * Use when predecessor cannot be null.  The null check could
-//         * be elided, but is present to help the VM.
-//         *
-//         * @return the predecessor of this node
-//         */
-//        final Node predecessor() {
-//            Node p = prev;
-//            if (p == null)
-//                throw new NullPointerException();
-//            else
-//                return p;
-//        }
-//
-//        /**
-//         * CASes waitStatus field.
-//         */
-//        final boolean compareAndSetWaitStatus(int expect, int update) {
-//            return WAITSTATUS.compareAndSet(this, expect, update);
-//        }
-//
-//        /**
-//         * CASes next field.
-//         */
-//        final boolean compareAndSetNext(Node expect, Node update) {
-//            return NEXT.compareAndSet(this, expect, update);
-//        }
-//
-//        final void setPrevRelaxed(Node p) {
-//            PREV.set(this, p);
-//        }
-//    }
+package com.okami.test.aqs;
+
+/**
+ * 同步队列与条件队列共用的等待节点，字段的原子操作统一委托给 {@link Atomics}。
+ * 竞争布局的同步器使用带填充的子类 {@link Padded}。
+ */
+class Node {
+    static final Node SHARED = new Node();
+    static final Node EXCLUSIVE = null;
+
+    static final int CANCELLED = 1;
+    static final int SIGNAL = -1;
+    static final int CONDITION = -2;
+    static final int PROPAGATE = -3;
+
+    /**
+     * {@link #handoff} 的取值：排队线程可以接受直接交接、释放方正在交接、已交接、排队线程已放弃。
+     */
+    static final int HANDOFF_ELIGIBLE = 1;
+    static final int HANDOFF_RESERVED = 2;
+    static final int HANDOFF_GRANTED = 3;
+    static final int HANDOFF_REFUSED = 4;
+
+    /**
+     * 状态字段，仅取值：
+     *      SIGNAL：此节点的后继节点被（或即将）阻塞（通过公园），
+     *      因此当前节点在释放或取消时必须解除其后继节点的公园。
+     *      为了避免竞争，获取方法必须首先表明它们需要一个信号，然后重试原子获取，然后在失败时阻塞。
+     *
+     *      CANCELLED：由于超时或中断，该节点被取消。 节点永远不会离开这个状态。
+     *      特别是，取消节点的线程永远不会再次阻塞。 条件：该节点当前在条件队列中。
+     *      它在传输之前不会用作同步队列节点，此时状态将设置为 0。
+     *      （此处使用此值与该字段的其他用途无关，但简化了机制。）
+     *
+     *      PROPAGATE：A releaseShared 应该传播到其他节点。
+     *      这在 doReleaseShared 中设置（仅适用于头节点）以确保传播继续，即使其他操作已经介入。
+     *      0：以上都不是 为了简化使用，数值按数字排列。 非负值意味着节点不需要发出信号。
+     *      因此，大多数代码不需要检查特定值，只需检查符号。
+     *      对于普通同步节点，该字段被初始化为 0，对于条件节点，该字段被初始化为 CONDITION。
+     *      它使用 CAS 修改（或在可能的情况下，无条件 volatile 写入）。
+     */
+    volatile int waitStatus;
+
+    /**
+     * 链接到当前节点/线程依赖于检查 waitStatus 的前驱节点。
+     * 在入队期间分配，并仅在出队时取消（为了 GC）。
+     * 此外，在取消前任时，我们在找到一个未取消的时进行短路，这将始终存在，因为头节点永远不会被取消：只有成功获取的结果，节点才成为头。
+     * 一个被取消的线程永远不会成功获取，并且一个线程只会取消自己，而不是任何其他节点。
+     */
+    volatile Node prev;
+    /**
+     * Link to the successor node that the current node/thread
+     * unparks upon release. Assigned during enqueuing, adjusted
+     * when bypassing cancelled predecessors, and nulled out (for
+     * sake of GC) when dequeued.  The enq operation does not
+     * assign next field of a predecessor until after attachment,
+     * so seeing a null next field does not necessarily mean that
+     * node is at end of queue. However, if a next field appears
+     * to be null, we can scan prev's from the tail to
+     * double-check.  Unlike the original AQS, a cancelled node keeps
+     * its next field rather than pointing it at itself: next links
+     * only ever skip over cancelled nodes, so liveSuccessor can walk
+     * forward through cancelled nodes and the first live node it
+     * reaches is the real successor.  Releasers may later CAS next
+     * past cancelled nodes (path halving) while pinned.  A non-null
+     * next therefore still means the node is or was linked into the
+     * sync queue, which is all isOnSyncQueue relies on; next is
+     * nulled only when the predecessor is dequeued as head.
+     */
+    volatile Node next;
+    /**
+     * The thread that enqueued this node.  Initialized on
+     * construction and nulled out after use.
+     */
+    volatile Thread thread;
+    /**
+     * Link to next node waiting on condition, or the special
+     * value SHARED.  Because condition queues are accessed only
+     * when holding in exclusive mode, we just need a simple
+     * linked queue to hold nodes while they are waiting on
+     * conditions. They are then transferred to the queue to
+     * re-acquire. And because conditions can only be exclusive,
+     * we save a field by using special value to indicate shared
+     * mode.
+     */
+    Node nextWaiter;
+    /**
+     * 条件队列中的前一个节点，只在持有锁时读写。有了它，取消等待的线程重新获取锁后
+     * 可以 O(1) 地把自己从条件队列摘除，不必每次取消都遍历整个条件队列。
+     */
+    Node prevWaiter;
+    /**
+     * 异步获取的节点没有线程（{@link #thread} 为 null），由这个续体代替：
+     * 唤醒节点就是把它的下一步提交到执行器。入队前写入，之后只读。
+     */
+    AsyncAcquire async;
+    /**
+     * 条件等待的标签（{@link ConditionObject#await(Object)}），null 表示不带标签。
+     * 只在持有锁时读写。
+     */
+    Object tag;
+    /**
+     * 开启竞争统计时，入队的 System.nanoTime()，0 表示不统计这次排队
+     * （见 {@link ContentionStats#beginWait}）。只由排队线程读写。
+     */
+    long waitStart;
+    /**
+     * 直接交接的状态（见 {@link QueuedSynchronizer#setHandoffThreshold}），0 表示不参与交接。
+     * 排队线程写入 {@link #queuedAt} 与 {@link #acquireArg} 后置为 HANDOFF_ELIGIBLE；
+     * 释放方 CAS 为 HANDOFF_RESERVED，交出持有权后写 HANDOFF_GRANTED；
+     * 排队线程放弃前 CAS 为 HANDOFF_REFUSED，遇到 HANDOFF_RESERVED 时等释放方做完决定。
+     */
+    volatile int handoff;
+    /**
+     * 开启直接交接时开始排队的 System.nanoTime()。
+     */
+    long queuedAt;
+    /**
+     * 开启直接交接时排队线程的 acquire 参数，被交接后按它持有。
+     */
+    long acquireArg;
+
+    /**
+     * Establishes initial head or SHARED marker.
+     */
+    Node() {
+    }
+
+    /**
+     * Constructor used by addWaiter.
+     */
+    Node(Node nextWaiter) {
+        this.nextWaiter = nextWaiter;
+        Atomics.setThreadRelaxed(this, Thread.currentThread());
+    }
+
+    /**
+     * Constructor used by acquireAsync.
+     */
+    Node(Node nextWaiter, AsyncAcquire async) {
+        this.nextWaiter = nextWaiter;
+        this.async = async;
+    }
+
+    /**
+     * Constructor used by addConditionWaiter.
+     */
+    Node(int waitStatus) {
+        Atomics.setWaitStatusRelaxed(this, waitStatus);
+        Atomics.setThreadRelaxed(this, Thread.currentThread());
+    }
+
+    /**
+     * 复用回收的节点时重新初始化，效果等同于新建节点（addWaiter 传 waitStatus 0，
+     * addConditionWaiter 传 CONDITION）。调用时节点尚未发布，普通写即可。
+     */
+    final void reset(Node nextWaiter, int waitStatus) {
+        this.nextWaiter = nextWaiter;
+        this.prevWaiter = null;
+        this.async = null;
+        this.tag = null;
+        this.waitStart = 0L;
+        if (handoff != 0)
+            Atomics.setHandoffRelaxed(this, 0);
+        Atomics.setWaitStatusRelaxed(this, waitStatus);
+        Atomics.setPrevRelaxed(this, null);
+        Atomics.setNextRelaxed(this, null);
+        Atomics.setThreadRelaxed(this, Thread.currentThread());
+    }
+
+    /**
+     * Returns true if node is waiting in shared mode.
+     */
+    final boolean isShared() {
+        return nextWaiter == SHARED;
+    }
+
+    /**
+     * Returns previous node, or throws NullPointerException if null.
+     * Use when predecessor cannot be null.  The null check could
+     * be elided, but is present to help the VM.
+     *
+     * @return the predecessor of this node
+     */
+    final Node predecessor() {
+        Node p = prev;
+        if (p == null)
+            throw new NullPointerException();
+        else
+            return p;
+    }
+
+    /**
+     * CASes waitStatus field.
+     */
+    final boolean compareAndSetWaitStatus(int expect, int update) {
+        return Atomics.casWaitStatus(this, expect, update);
+    }
+
+    /**
+     * CASes next field.
+     */
+    final boolean compareAndSetNext(Node expect, Node update) {
+        return Atomics.casNext(this, expect, update);
+    }
+
+    final void setPrevRelaxed(Node p) {
+        Atomics.setPrevRelaxed(this, p);
+    }
+
+    /**
+     * 尾部填充 64 字节的节点，见 {@link QueuedSynchronizer#enableContendedLayout()}。
+     * 同一线程先后分配的节点在内存中相邻，不填充时前驱的 waitStatus 与后继的字段常落在同一缓存行：
+     * 释放方 CAS 前驱的 waitStatus、取消方改写 next 时，会使在后继上自旋的线程缓存失效。
+     * 字段都在 Node 中，只需在尾部填充，前一个节点的填充把它与本节点隔开。
+     */
+    static final class Padded extends Node {
+        byte p000, p001, p002, p003, p004, p005, p006, p007;
+        byte p010, p011, p012, p013, p014, p015, p016, p017;
+        byte p020, p021, p022, p023, p024, p025, p026, p027;
+        byte p030, p031, p032, p033, p034, p035, p036, p037;
+        byte p040, p041, p042, p043, p044, p045, p046, p047;
+        byte p050, p051, p052, p053, p054, p055, p056, p057;
+        byte p060, p061, p062, p063, p064, p065, p066, p067;
+        byte p070, p071, p072, p073, p074, p075, p076, p077;
+
+        Padded() {
+        }
+
+        Padded(Node nextWaiter) {
+            super(nextWaiter);
+        }
+
+        Padded(int waitStatus) {
+            super(waitStatus);
+        }
+    }
+}
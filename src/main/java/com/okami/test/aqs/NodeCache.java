@@ -0,0 +1,71 @@
+package com.okami.test.aqs;
+
+/**
+ * 每个线程缓存一个可复用的等待节点，使竞争下的 acquire/release、await/signal 不再分配 Node。
+ * <p>
+ * 节点的流转沿用 CLH 锁的做法：线程获取成功、把前驱（旧 head）出队时，
+ * 由它“收养”这个旧 head 留作下一次入队使用，于是每次入队消耗一个节点、每次获取归还一个节点。
+ * <p>
+ * 安全性约束：
+ * <ul>
+ * <li>只回收正常出队的旧 head。被取消的节点仍可能被其他节点的 prev/next 指向，永不复用，交给 GC；
+ * head 永远不会是取消状态，所以收养到的节点不会是取消节点。</li>
+ * <li>出队时可能还有线程在 release/cancel/signal 路径上持有旧 head 的引用并准备 CAS，
+ * 这些路径都处在所属同步器的 pin 区间内。只有回收来源同步器没有线程处于 pin 区间时才复用，
+ * 否则这次照常新建节点，缓存留到下次再试。</li>
+ * <li>条件队列节点在 await 返回前一定已从条件队列摘除（见 ConditionObject），
+ * 所以出队的节点不会仍挂在某个条件队列上。</li>
+ * </ul>
+ */
+final class NodeCache {
+
+    private static final ThreadLocal<NodeCache> CACHE = ThreadLocal.withInitial(NodeCache::new);
+
+    /**
+     * 已出队、等待复用的节点。
+     */
+    private Node node;
+
+    /**
+     * node 从哪个同步器出队，复用前要检查它的 pin 区间。
+     */
+    private QueuedSynchronizer retiredFrom;
+
+    private NodeCache() {
+    }
+
+    /**
+     * 取一个当前线程可用的节点，优先复用缓存。
+     *
+     * @param nextWaiter mode marker or next condition waiter
+     * @param waitStatus initial wait status, 0 or {@link Node#CONDITION}
+     * @param padded     whether the node must be a {@link Node.Padded}
+     * @return a node owned by the current thread, not yet published
+     */
+    static Node obtain(Node nextWaiter, int waitStatus, boolean padded) {
+        NodeCache cache = CACHE.get();
+        Node n = cache.node;
+        // 填充节点可以用在紧凑布局的同步器上，反过来不行，留在缓存里给下一次
+        if (n != null && cache.retiredFrom.isUnpinned() && (!padded || n instanceof Node.Padded)) {
+            cache.node = null;
+            cache.retiredFrom = null;
+            n.reset(nextWaiter, waitStatus);
+            return n;
+        }
+        if (padded)
+            return waitStatus == 0 ? new Node.Padded(nextWaiter) : new Node.Padded(waitStatus);
+        return waitStatus == 0 ? new Node(nextWaiter) : new Node(waitStatus);
+    }
+
+    /**
+     * 收养刚刚出队的旧 head。
+     *
+     * @param sync the synchronizer the node was dequeued from
+     * @param node the former head
+     */
+    static void retire(QueuedSynchronizer sync, Node node) {
+        NodeCache cache = CACHE.get();
+        cache.node = node;
+        cache.retiredFrom = sync;
+    }
+}
@@ -0,0 +1,228 @@
+package com.okami.test.aqs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CPU 到 NUMA 节点的映射，供 {@link CohortLock} 判断当前线程在哪个节点上运行。
+ * <ul>
+ * <li>{@link #system()}：从 {@code /sys/devices/system/node/node*}{@code /cpulist} 读取，
+ * 当前线程所在的 CPU 从 {@code /proc/thread-self/stat} 读取。读文件要一次系统调用，
+ * 所以每个线程缓存结果，每 {@link #REFRESH_INTERVAL} 次查询才重读一次，跟上线程在节点间的迁移。
+ * 不是 Linux、读取失败或只有一个节点时退化为单节点。</li>
+ * <li>{@link #simulated(int)}：把线程轮流分配到给定数量的节点上，之后固定不变，相当于每个线程绑定在某个节点上。
+ * 用于在单节点的机器（如 CI）上测试和对比 cohort 的效果。</li>
+ * </ul>
+ */
+public abstract class NumaTopology {
+
+    /**
+     * 每个线程每查询这么多次才重新读取一次所在的 CPU（2 的幂）。
+     */
+    static final int REFRESH_INTERVAL = 4096;
+
+    private static final NumaTopology SINGLE = new Simulated(1);
+
+    NumaTopology() {
+    }
+
+    /**
+     * 本机的拓扑，首次调用时读取，之后共用。
+     */
+    public static NumaTopology system() {
+        return SystemHolder.INSTANCE;
+    }
+
+    /**
+     * @param nodes 模拟的节点数
+     */
+    public static NumaTopology simulated(int nodes) {
+        if (nodes <= 0)
+            throw new IllegalArgumentException();
+        return nodes == 1 ? SINGLE : new Simulated(nodes);
+    }
+
+    public static NumaTopology single() {
+        return SINGLE;
+    }
+
+    public abstract int nodeCount();
+
+    /**
+     * @return 当前线程所在的节点，0 到 {@link #nodeCount()} - 1
+     */
+    public abstract int currentNode();
+
+    /**
+     * 读取 sysfs 的节点目录，返回下标为 CPU 编号、值为节点编号（已重新编为从 0 开始连续）的数组，
+     * 没有找到节点或只有一个节点时返回 null。
+     *
+     * @param nodeDir 通常是 {@code /sys/devices/system/node}
+     */
+    static int[] readCpuToNode(Path nodeDir) throws IOException {
+        int[] cpuToNode = new int[0];
+        int nodes = 0;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(nodeDir, "node[0-9]*")) {
+            // 节点编号可能不连续（例如离线的节点），按目录名排序后重新编号
+            Path[] sorted = new Path[0];
+            for (Path d : dirs) {
+                sorted = Arrays.copyOf(sorted, sorted.length + 1);
+                sorted[sorted.length - 1] = d;
+            }
+            Arrays.sort(sorted, (a, b) -> Integer.compare(nodeId(a), nodeId(b)));
+            for (Path d : sorted) {
+                Path cpulist = d.resolve("cpulist");
+                if (!Files.isReadable(cpulist))
+                    continue;
+                String list = new String(Files.readAllBytes(cpulist), StandardCharsets.US_ASCII).trim();
+                if (list.isEmpty())
+                    continue; // 只有内存没有 CPU 的节点
+                for (int cpu : parseCpuList(list)) {
+                    if (cpu >= cpuToNode.length) {
+                        int old = cpuToNode.length;
+                        cpuToNode = Arrays.copyOf(cpuToNode, cpu + 1);
+                        Arrays.fill(cpuToNode, old, cpuToNode.length, -1);
+                    }
+                    cpuToNode[cpu] = nodes;
+                }
+                nodes++;
+            }
+        }
+        if (nodes <= 1)
+            return null;
+        for (int i = 0; i < cpuToNode.length; i++)
+            if (cpuToNode[i] < 0)
+                cpuToNode[i] = 0;
+        return cpuToNode;
+    }
+
+    private static int nodeId(Path dir) {
+        return Integer.parseInt(dir.getFileName().toString().substring(4));
+    }
+
+    /**
+     * 解析 cpulist 格式，如 {@code 0-3,8-11,16}。
+     */
+    static int[] parseCpuList(String list) {
+        int[] cpus = new int[0];
+        for (String part : list.split(",")) {
+            part = part.trim();
+            if (part.isEmpty())
+                continue;
+            int dash = part.indexOf('-');
+            int from = Integer.parseInt(dash < 0 ? part : part.substring(0, dash));
+            int to = dash < 0 ? from : Integer.parseInt(part.substring(dash + 1));
+            int n = cpus.length;
+            cpus = Arrays.copyOf(cpus, n + to - from + 1);
+            for (int cpu = from; cpu <= to; cpu++)
+                cpus[n++] = cpu;
+        }
+        return cpus;
+    }
+
+    /**
+     * 从 {@code /proc/thread-self/stat} 读取当前线程最近一次运行的 CPU（第 39 个字段）。
+     *
+     * @return the CPU, or -1 if unavailable
+     */
+    static int readCurrentCpu() {
+        try {
+            String stat = new String(Files.readAllBytes(Paths.get("/proc/thread-self/stat")),
+                    StandardCharsets.US_ASCII);
+            // 第 2 个字段是括号括起的线程名，可能含空格，从最后一个右括号之后数
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Integer.parseInt(fields[39 - 3]);
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 线程轮流分配到各节点，之后固定。
+     */
+    static final class Simulated extends NumaTopology {
+
+        private final int nodes;
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        private final ThreadLocal<Integer> node;
+
+        Simulated(int nodes) {
+            this.nodes = nodes;
+            this.node = ThreadLocal.withInitial(() -> Math.floorMod(next.getAndIncrement(), this.nodes));
+        }
+
+        @Override
+        public int nodeCount() {
+            return nodes;
+        }
+
+        @Override
+        public int currentNode() {
+            return nodes == 1 ? 0 : node.get();
+        }
+    }
+
+    /**
+     * 按 sysfs 读到的映射。
+     */
+    static final class Sysfs extends NumaTopology {
+
+        private final int[] cpuToNode;
+
+        private final int nodes;
+
+        /**
+         * 每个线程缓存的 {节点, 剩余查询次数}。
+         */
+        private final ThreadLocal<int[]> cached = ThreadLocal.withInitial(() -> new int[]{0, 0});
+
+        Sysfs(int[] cpuToNode) {
+            this.cpuToNode = cpuToNode;
+            int max = 0;
+            for (int n : cpuToNode)
+                max = Math.max(max, n);
+            this.nodes = max + 1;
+        }
+
+        @Override
+        public int nodeCount() {
+            return nodes;
+        }
+
+        @Override
+        public int currentNode() {
+            int[] c = cached.get();
+            if (--c[1] < 0) {
+                c[1] = REFRESH_INTERVAL - 1;
+                int cpu = readCurrentCpu();
+                // 读不到时按线程固定分配，至少让同一线程总在同一个节点上
+                c[0] = cpu >= 0 && cpu < cpuToNode.length ? cpuToNode[cpu]
+                        : (int) (Thread.currentThread().getId() % nodes);
+            }
+            return c[0];
+        }
+    }
+
+    private static final class SystemHolder {
+        static final NumaTopology INSTANCE = load();
+
+        private static NumaTopology load() {
+            try {
+                Path dir = Paths.get("/sys/devices/system/node");
+                int[] cpuToNode = Files.isDirectory(dir) ? readCpuToNode(dir) : null;
+                if (cpuToNode != null && readCurrentCpu() >= 0)
+                    return new Sysfs(cpuToNode);
+            } catch (IOException | RuntimeException ignored) {
+            }
+            return SINGLE;
+        }
+    }
+}
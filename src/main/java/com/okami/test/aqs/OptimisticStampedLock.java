@@ -0,0 +1,213 @@
+package com.okami.test.aqs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 支持乐观读的读写锁，用法与 {@link java.util.concurrent.locks.StampedLock} 相同：
+ * <pre> {@code
+ * long stamp = lock.tryOptimisticRead();
+ * double x = this.x, y = this.y;
+ * if (!lock.validate(stamp)) {
+ *     stamp = lock.readLock();
+ *     try {
+ *         x = this.x;
+ *         y = this.y;
+ *     } finally {
+ *         lock.unlockRead(stamp);
+ *     }
+ * }}</pre>
+ * <p>
+ * 与 StampedLock 把版本号和读写计数放在同一个字里不同，这里分成两部分：
+ * <ul>
+ * <li>AQS 的 state 管理悲观读（共享模式，state 为读者数）和写（独占模式，state 为 -1），
+ * 排队、阻塞、超时、中断都复用 AQS 的等待队列。</li>
+ * <li>一个单独的版本号 {@link #version}，写者获取写锁后加一（变为奇数），释放前再加一（变回偶数）。</li>
+ * </ul>
+ * 乐观读只读一次版本号，校验时先做一次读屏障再读一次版本号，全程不写共享内存，
+ * 读者之间没有缓存行争用。版本号为奇数时（写者正在修改数据）乐观读直接失败，返回 0。
+ * <p>
+ * 戳记（stamp）就是获取时的版本号：悲观读和乐观读的戳记为偶数，写戳记为奇数。
+ * 锁不可重入，不记录持有者，任何线程都可以用戳记释放；不支持 Condition。
+ */
+public class OptimisticStampedLock {
+
+    /**
+     * 初始版本号，保证有效戳记永远不为 0。
+     */
+    private static final long ORIGIN = 2L;
+
+    private static final AtomicLongFieldUpdater<OptimisticStampedLock> VERSION =
+            AtomicLongFieldUpdater.newUpdater(OptimisticStampedLock.class, "version");
+
+    private final Sync sync = new Sync();
+
+    /**
+     * 写锁版本号，奇数表示写者正在修改数据。
+     * 只在持有写锁时修改，用原子加而不是 volatile 写，
+     * 这样写者之后对数据的普通写不会被重排到版本号变为奇数之前。
+     */
+    private volatile long version = ORIGIN;
+
+    /**
+     * 获取乐观读戳记。
+     *
+     * @return 可供 {@link #validate} 校验的戳记；写锁正被持有时返回 0
+     */
+    public long tryOptimisticRead() {
+        long v = version;
+        return (v & 1L) == 0L ? v : 0L;
+    }
+
+    /**
+     * 判断从获取戳记以来是否没有写者修改过数据。
+     * 返回 {@code true} 时，调用前读到的数据是一致的快照。
+     *
+     * @param stamp 任意方式获取的戳记
+     * @return {@code true} if no write lock has been acquired since the stamp was issued
+     */
+    public boolean validate(long stamp) {
+        // 读屏障：保证调用方在此之前对数据的读不会被重排到下面的版本号读之后
+        Atomics.loadFence();
+        return stamp != 0L && version == stamp;
+    }
+
+    /**
+     * 获取悲观读锁，写锁被持有或有写者排在队首时阻塞。
+     *
+     * @return 读戳记，用于 {@link #unlockRead}
+     */
+    public long readLock() {
+        sync.acquireShared(1);
+        return version;
+    }
+
+    public long readLockInterruptibly() throws InterruptedException {
+        sync.acquireSharedInterruptibly(1);
+        return version;
+    }
+
+    /**
+     * @return 读戳记；无法立即获取时返回 0
+     */
+    public long tryReadLock() {
+        return sync.tryAcquireShared(1) >= 0 ? version : 0L;
+    }
+
+    /**
+     * @return 读戳记；超时返回 0
+     */
+    public long tryReadLock(long time, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireSharedNanos(1, unit.toNanos(time)) ? version : 0L;
+    }
+
+    public void unlockRead(long stamp) {
+        // 持有读锁期间版本号不会变化
+        if ((stamp & 1L) != 0L || stamp != version)
+            throw new IllegalMonitorStateException();
+        sync.releaseShared(1);
+    }
+
+    /**
+     * 获取写锁，之后签发的乐观读戳记均为 0，之前签发的全部失效。
+     *
+     * @return 写戳记，用于 {@link #unlockWrite}
+     */
+    public long writeLock() {
+        sync.acquire(1);
+        return VERSION.incrementAndGet(this);
+    }
+
+    public long writeLockInterruptibly() throws InterruptedException {
+        sync.acquireInterruptibly(1);
+        return VERSION.incrementAndGet(this);
+    }
+
+    /**
+     * @return 写戳记；无法立即获取时返回 0
+     */
+    public long tryWriteLock() {
+        return sync.tryAcquire(1) ? VERSION.incrementAndGet(this) : 0L;
+    }
+
+    /**
+     * @return 写戳记；超时返回 0
+     */
+    public long tryWriteLock(long time, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireNanos(1, unit.toNanos(time)) ? VERSION.incrementAndGet(this) : 0L;
+    }
+
+    public void unlockWrite(long stamp) {
+        if ((stamp & 1L) == 0L || stamp != version || !sync.isWriteLocked())
+            throw new IllegalMonitorStateException();
+        // 原子加是 release 语义，写者对数据的修改先于版本号变回偶数可见
+        VERSION.incrementAndGet(this);
+        sync.release(1);
+    }
+
+    public boolean isWriteLocked() {
+        return sync.isWriteLocked();
+    }
+
+    public boolean isReadLocked() {
+        return sync.getState() > 0;
+    }
+
+    public int getReadLockCount() {
+        return Math.max(sync.getState(), 0);
+    }
+
+    public boolean hasQueuedThreads() {
+        return sync.hasQueuedThreads();
+    }
+
+    private static final class Sync extends AbstractQueuedSynchronizer {
+
+        private static final long serialVersionUID = -1637483265519432781L;
+
+        @Override
+        protected boolean tryAcquire(int arg) {
+            return getState() == 0 && compareAndSetState(0, -1);
+        }
+
+        @Override
+        protected boolean tryRelease(int arg) {
+            if (getState() != -1)
+                throw new IllegalMonitorStateException();
+            setState(0);
+            return true;
+        }
+
+        @Override
+        protected int tryAcquireShared(int arg) {
+            for (; ; ) {
+                int c = getState();
+                // 有写者排在队首时让路，避免写者饥饿
+                if (c < 0 || apparentlyFirstQueuedIsExclusive())
+                    return -1;
+                if (compareAndSetState(c, c + 1))
+                    return 1;
+            }
+        }
+
+        @Override
+        protected boolean tryReleaseShared(int arg) {
+            for (; ; ) {
+                int c = getState();
+                if (c <= 0)
+                    throw new IllegalMonitorStateException();
+                if (compareAndSetState(c, c - 1))
+                    return c == 1;
+            }
+        }
+
+        @Override
+        protected boolean isHeldExclusively() {
+            return isWriteLocked();
+        }
+
+        boolean isWriteLocked() {
+            return getState() < 0;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.okami.test.aqs;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按优先级排队的独占等待者，见 {@link QueuedSynchronizer#setPriorityLevels}。
+ * <p>
+ * 每个优先级一个 FIFO 子队列。release 时比较各子队列队首的有效优先级，唤醒最高的一个：
+ * 有效优先级 = 优先级 + 已等待时间 / 老化周期，所以低优先级的等待者每等一个老化周期就升一级，
+ * 不会被源源不断的高优先级请求饿死。同一子队列内队首等得最久，有效优先级也最高，只比较队首即可，
+ * 每次唤醒是 O(级数)。
+ * <p>
+ * 与 CLH 队列一样，被唤醒的等待者只是获得一次重试 tryAcquire 的机会，新来的线程照常可以抢先（barging）；
+ * 重试失败的等待者回到本级子队列的队首，保留原来的入队时间。
+ * <p>
+ * 状态转换：{@link #WAITING} 的等待者在子队列中；唤醒方先把它移出子队列，再 CAS 为 {@link #SIGNALLED}；
+ * 等待者获取成功或放弃时 CAS 为 {@link #CANCELLED}，留在子队列中的由之后的唤醒途经时摘除。
+ * 放弃时如果已经是 SIGNALLED，说明它消耗了一次唤醒，要转交给下一个等待者。
+ * <p>
+ * 与 release 之间不会丢失唤醒：等待者先入队再重试 tryAcquire，release 先释放状态再检查子队列，
+ * 两边都是 volatile 读写，至少有一边能看到另一边。
+ */
+final class PriorityWaiters {
+
+    static final int WAITING = 0;
+
+    static final int SIGNALLED = 1;
+
+    static final int CANCELLED = 2;
+
+    private static final AtomicIntegerFieldUpdater<PriorityWaiters> QUEUED =
+            AtomicIntegerFieldUpdater.newUpdater(PriorityWaiters.class, "queued");
+
+    private final ConcurrentLinkedDeque<Waiter>[] levels;
+
+    /**
+     * 老化周期，0 表示不老化。
+     */
+    private final long agingNanos;
+
+    /**
+     * 子队列中的条目数（含已取消、尚未摘除的），release 在为 0 时直接返回。
+     */
+    private volatile int queued;
+
+    @SuppressWarnings("unchecked")
+    PriorityWaiters(int levels, long agingNanos) {
+        if (levels <= 0 || agingNanos < 0L)
+            throw new IllegalArgumentException();
+        this.levels = (ConcurrentLinkedDeque<Waiter>[]) new ConcurrentLinkedDeque<?>[levels];
+        for (int i = 0; i < levels; i++)
+            this.levels[i] = new ConcurrentLinkedDeque<>();
+        this.agingNanos = agingNanos;
+    }
+
+    int levels() {
+        return levels.length;
+    }
+
+    long agingNanos() {
+        return agingNanos;
+    }
+
+    /**
+     * 当前线程以给定优先级入队，超出范围的优先级按最近的一级处理。
+     */
+    Waiter enqueue(int priority) {
+        int level = Math.max(0, Math.min(priority, levels.length - 1));
+        Waiter w = new Waiter(Thread.currentThread(), level, System.nanoTime());
+        levels[level].offerLast(w);
+        QUEUED.incrementAndGet(this);
+        return w;
+    }
+
+    /**
+     * 被唤醒但没有获取成功的等待者回到本级子队列的队首。
+     */
+    void requeue(Waiter w) {
+        w.status = WAITING;
+        levels[w.level].offerFirst(w);
+        QUEUED.incrementAndGet(this);
+    }
+
+    /**
+     * 等待者放弃或获取成功，留在子队列中的条目由之后的唤醒摘除。
+     *
+     * @return {@code false} if the waiter had been signalled and must pass the signal on
+     */
+    static boolean cancel(Waiter w) {
+        for (int s; ; ) {
+            if ((s = w.status) == SIGNALLED) {
+                // 已被移出子队列，只有自己引用它
+                w.status = CANCELLED;
+                return false;
+            }
+            if (s == CANCELLED || Waiter.STATUS.compareAndSet(w, WAITING, CANCELLED))
+                return true;
+        }
+    }
+
+    /**
+     * 唤醒有效优先级最高的一个等待者，途经的已取消条目一并摘除。
+     */
+    void signal() {
+        while (queued > 0) {
+            Waiter best = null;
+            long bestRank = Long.MIN_VALUE;
+            long now = agingNanos != 0L ? System.nanoTime() : 0L;
+            // 从高到低，同等有效优先级时高优先级的子队列先于老化上来的
+            for (int i = levels.length - 1; i >= 0; i--) {
+                Waiter w = levels[i].peekFirst();
+                if (w == null)
+                    continue;
+                long rank = agingNanos != 0L ? i + (now - w.since) / agingNanos : i;
+                if (rank > bestRank) {
+                    best = w;
+                    bestRank = rank;
+                }
+            }
+            if (best == null)
+                return;
+            // 队首可能刚被其他唤醒方取走，重新选
+            if (!levels[best.level].removeFirstOccurrence(best))
+                continue;
+            QUEUED.decrementAndGet(this);
+            if (Waiter.STATUS.compareAndSet(best, WAITING, SIGNALLED)) {
+                LockSupport.unpark(best.thread);
+                return;
+            }
+        }
+    }
+
+    boolean hasWaiters() {
+        if (queued > 0) {
+            for (ConcurrentLinkedDeque<Waiter> q : levels)
+                for (Waiter w : q)
+                    if (w.status == WAITING)
+                        return true;
+        }
+        return false;
+    }
+
+    int size() {
+        int n = 0;
+        if (queued > 0) {
+            for (ConcurrentLinkedDeque<Waiter> q : levels)
+                for (Waiter w : q)
+                    if (w.status == WAITING)
+                        ++n;
+        }
+        return n;
+    }
+
+    static final class Waiter {
+
+        static final AtomicIntegerFieldUpdater<Waiter> STATUS =
+                AtomicIntegerFieldUpdater.newUpdater(Waiter.class, "status");
+
+        final Thread thread;
+
+        final int level;
+
+        /**
+         * 首次入队的 System.nanoTime()，重新入队时不变。
+         */
+        final long since;
+
+        volatile int status;
+
+        Waiter(Thread thread, int level, long since) {
+            this.thread = thread;
+            this.level = level;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,2062 @@
+package com.okami.test.aqs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.AbstractOwnableSynchronizer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link AbstractQueuedSynchronizer} 与 {@link AbstractQueuedLongSynchronizer} 共用的排队与阻塞机制：
+ * FIFO 等待队列、park/unpark、取消、共享传播、自旋、异步获取、时间轮、竞争统计和 {@link ConditionObject} 支持。
+ * <p>
+ * 两个子类只有状态的宽度不同。这里的排队代码一律以 long 传递获取/释放参数和保存的状态，
+ * 通过几个包级桥接方法（{@link #tryAcquireLong} 等）回调子类的 tryAcquire 系列方法；
+ * int 版本在桥接中截回 int。子类公开的 acquire/release 方法在调用线程上直接调用 tryAcquire，
+ * 只有排队之后的重试经过桥接，所以无竞争路径与拆分之前相同。
+ * <p>
+ * 构造器是包级的，只能通过上述两个类使用。
+ */
+public abstract class QueuedSynchronizer
+        extends AbstractOwnableSynchronizer
+        implements java.io.Serializable {
+
+    /**
+     * The number of nanoseconds for which it is faster to spin
+     * rather than to use timed park. A rough estimate suffices
+     * to improve responsiveness with very short timeouts.
+     */
+    static final long SPIN_FOR_TIMEOUT_THRESHOLD = 1000L;
+    /**
+     * 自旋期间每隔多少次检查一次持锁线程是否仍在运行、是否超时。
+     */
+    static final int SPIN_CHECK_INTERVAL = 32;
+    /**
+     * 分散 pin 计数的个数取不小于 CPU 数的 2 的幂，上限 MAX_PIN_CELLS。
+     */
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_PIN_CELLS = 64;
+    private static final long serialVersionUID = -3127541316374352478L;
+
+    static {
+        // Reduce the risk of rare disastrous classloading in first call to
+        // LockSupport.park: https://bugs.openjdk.java.net/browse/JDK-8074773
+        Class<?> ensureLoaded = LockSupport.class;
+    }
+
+    /**
+     * Head of the wait queue, lazily initialized.  Except for
+     * initialization, it is modified only via method setHead.  Note:
+     * If head exists, its waitStatus is guaranteed not to be
+     * CANCELLED.
+     * 包级可见仅为了让 {@link Atomics} 在 JDK 8 上能创建字段更新器。
+     */
+    transient volatile Node head;
+    /**
+     * Tail of the wait queue, lazily initialized.  Modified only via
+     * method enq to add new wait node.
+     * 开启竞争布局后不再使用，改用 {@link #paddedTail}，读取一律经由 {@link #tail()}。
+     */
+    transient volatile Node tail;
+    /**
+     * 竞争布局下独占缓存行的 tail，null 表示紧凑布局（默认），见 {@link #enableContendedLayout()}。
+     */
+    private transient volatile PaddedTail paddedTail;
+    /**
+     * 当前可能还持有已出队节点引用、并会对其写入的线程数（release/cancel/signal 路径）。
+     * {@link NodeCache} 只在没有线程处于 pin 区间时复用从本同步器回收的节点，避免这些线程的
+     * 过期 CAS 落到已被重新入队的节点上（ABA）。包级可见供 {@link Atomics} 使用。
+     * <p>
+     * 与 LongAdder 一样先在这个字段上计数，CAS 失败（多个线程同时 pin）后改为按线程分散到
+     * {@link #pinCells}，竞争下每个释放者只写自己的缓存行；是否有线程处于 pin 区间要把两处都看一遍。
+     */
+    transient volatile int pinCount;
+    /**
+     * 竞争时按线程分散的 pin 计数，null 表示还没有出现过竞争。
+     */
+    transient volatile PinCell[] pinCells;
+    /**
+     * 队首节点 park 前的自旋策略，null 表示不自旋（默认）。
+     */
+    private transient volatile SpinPolicy spinPolicy;
+    /**
+     * 异步获取被唤醒后执行下一步的执行器，null 表示 {@link ForkJoinPool#commonPool()}。
+     */
+    private transient volatile Executor asyncExecutor;
+    /**
+     * 限时等待的超时唤醒服务，null 表示每个线程各自 parkNanos（默认）。
+     */
+    private transient volatile TimingWheel timingWheel;
+    /**
+     * 竞争统计，null 表示不统计（默认）。
+     */
+    private transient volatile ContentionStats contentionStats;
+    /**
+     * 锁顺序图中代表本同步器的节点，null 表示不记录锁顺序（默认）。
+     */
+    private transient volatile LockOrderMonitor.Key lockOrderKey;
+    /**
+     * 排队超过这么久（纳秒）的独占等待者在释放时直接获得持有权，0 表示不交接（默认）。
+     */
+    private transient volatile long handoffNanos;
+    /**
+     * 按优先级排队的独占等待者，null 表示没有开启优先级排队（默认）。
+     */
+    private transient volatile PriorityWaiters priorityWaiters;
+    /**
+     * 开启竞争统计时的独占获取计数，低位是尚未计入统计的次数。
+     * 只由独占持有者用普通读写访问，前后两任持有者之间由 state 的 volatile 读写建立 happens-before。
+     */
+    private transient int exclusiveTicks;
+    /**
+     * 被采样的独占持有开始的 System.nanoTime()，0 表示本次持有没有被采样。只由独占持有者读写。
+     */
+    private transient long holdSampleStart;
+
+    // Queuing utilities
+
+    QueuedSynchronizer() {
+    }
+
+    // Bridges to the subclass, arguments widened to long
+
+    /**
+     * @return 当前状态，作为 {@link ConditionObject} 等待前完全释放时保存的值
+     */
+    abstract long getStateLong();
+
+    abstract boolean tryAcquireLong(long arg);
+
+    abstract int tryAcquireSharedLong(long arg);
+
+    /**
+     * 子类公开的 release，供 Condition 完全释放与异步获取的补偿释放调用。
+     */
+    abstract boolean releaseLong(long arg);
+
+    abstract boolean releaseSharedLong(long arg);
+
+    abstract boolean tryHandoffLong(long arg);
+
+    abstract void onHandoffLong(long arg);
+
+    /**
+     * Checks and updates status for a node that failed to acquire.
+     * Returns true if thread should block. This is the main signal
+     * control in all acquire loops.  Requires that pred == node.prev.
+     *
+     * @param pred node's predecessor holding status
+     * @param node the node
+     * @return {@code true} if thread should block
+     */
+    private static boolean shouldParkAfterFailedAcquire(Node pred, Node node) {
+        int ws = pred.waitStatus;
+        if (ws == Node.SIGNAL)
+            /*
+             * This node has already set status asking a release
+             * to signal it, so it can safely park.
+             */
+            return true;
+        if (ws > 0) {
+            /*
+             * Predecessor was cancelled. Skip over predecessors and
+             * indicate retry.
+             */
+            pred = skipCancelledPredecessors(node);
+            pred.next = node;
+        } else {
+            /*
+             * waitStatus must be 0 or PROPAGATE.  Indicate that we
+             * need a signal, but don't park yet.  Caller will need to
+             * retry to make sure it cannot acquire before parking.
+             */
+            pred.compareAndSetWaitStatus(ws, Node.SIGNAL);
+        }
+        return false;
+    }
+
+    /**
+     * 沿 prev 跳过已取消的前驱，返回第一个未取消的前驱并让 node.prev 指向它。
+     * <p>
+     * 每个已取消节点的 prev 只在它自己取消时跳过一次，之后前面的节点陆续取消，
+     * 同一段取消的节点可能被后面多个节点反复走过。这里顺带把途经的已取消节点的 prev
+     * 隔一个跳一个地折半（path halving），一段链被走过几次后就很短，大批超时时摊还接近 O(1)。
+     * 只写已取消节点的 prev，已取消的节点不会被复用，跳过的也只是已取消的节点，
+     * 所以不需要 pin，与其他线程并发折半的结果也都正确。
+     *
+     * @param node a node whose predecessor may be cancelled
+     * @return the first non-cancelled predecessor, never {@code null} since head is never cancelled
+     */
+    private static Node skipCancelledPredecessors(Node node) {
+        Node pred = node.prev;
+        while (pred.waitStatus > 0) {
+            Node p = pred.prev;
+            if (p.waitStatus > 0)
+                pred.prev = p = p.prev;
+            node.prev = pred = p;
+        }
+        return pred;
+    }
+
+    /**
+     * Convenience method to interrupt current thread.
+     */
+    static void selfInterrupt() {
+        Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Returns the spin policy used by queued threads before parking.
+     *
+     * @return the spin policy, or {@code null} if queued threads park at once
+     */
+    public final SpinPolicy getSpinPolicy() {
+        return spinPolicy;
+    }
+
+    /**
+     * 设置排队线程 park 前的自旋策略，可在运行期调整。
+     * 策略会按锁学习预算，不要在多个同步器之间共享同一个 {@link AdaptiveSpinPolicy} 实例。
+     *
+     * @param spinPolicy the spin policy, or {@code null} to park at once
+     */
+    public final void setSpinPolicy(SpinPolicy spinPolicy) {
+        this.spinPolicy = spinPolicy;
+    }
+
+    /**
+     * Returns the executor on which woken asynchronous acquires run.
+     *
+     * @return the executor, or {@code null} for the common pool
+     */
+    public final Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * 设置异步获取被唤醒后执行的执行器。release 只把唤醒提交过去，不在释放线程上执行后续获取，
+     * 所以 Netty 事件循环之类的线程可以安全地释放；但也不要传入直接在调用线程执行的执行器。
+     * 只影响之后发起的异步获取。
+     *
+     * @param executor the executor, or {@code null} for the common pool
+     */
+    public final void setAsyncExecutor(Executor executor) {
+        this.asyncExecutor = executor;
+    }
+
+    /**
+     * Returns the timing wheel used by timed waits.
+     *
+     * @return the timing wheel, or {@code null} if timed waits park with their own deadline
+     */
+    public final TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    /**
+     * 设置限时获取（tryAcquireNanos、tryAcquireSharedNanos、异步获取的超时）和
+     * 本同步器上 Condition 的限时等待（awaitNanos、awaitUntil、await(long, TimeUnit)）使用的时间轮。
+     * 大量线程同时限时等待时可以避免各自的内核定时器冲击调度器，代价是超时最多晚一个刻度。
+     * 只影响之后开始的等待。
+     *
+     * @param timingWheel the timing wheel, for example {@link TimingWheel#shared()},
+     *                    or {@code null} to park with per-thread deadlines
+     */
+    public final void setTimingWheel(TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * Returns the contention statistics of this synchronizer.
+     *
+     * @return the statistics, or {@code null} if not collected
+     */
+    public final ContentionStats getContentionStats() {
+        return contentionStats;
+    }
+
+    /**
+     * 设置竞争统计，通常传入 {@link ContentionStats#named} 得到的命名统计，可在运行期开启或关闭。
+     * 只统计经由本类 acquire/release 系列方法的获取与释放，子类直接调用 tryAcquire 的不计入；
+     * 开启之前已经在排队的获取不计入排队统计。
+     * <p>
+     * 独占获取的计数由持有者在本同步器的字段上普通加一、批量计入，
+     * 这依赖独占模式互斥；允许多个线程同时“独占”持有的子类计数会偏小。
+     *
+     * @param contentionStats the statistics, or {@code null} to stop collecting
+     */
+    public final void setContentionStats(ContentionStats contentionStats) {
+        this.contentionStats = contentionStats;
+    }
+
+    /**
+     * Returns the lock-order monitor this synchronizer reports to.
+     *
+     * @return the monitor, or {@code null} if lock order is not recorded
+     */
+    public final LockOrderMonitor getLockOrderMonitor() {
+        LockOrderMonitor.Key k = lockOrderKey;
+        return k != null ? k.monitor : null;
+    }
+
+    /**
+     * 把本同步器的独占获取顺序记录到 monitor 的锁顺序图中，用于发现潜在死锁。
+     * 同名的同步器是图中的同一个节点。应当在锁没有被任何线程持有时设置，
+     * 否则已持有者的释放与设置之前的获取对不上。
+     * <p>
+     * 本类的 acquire/release 系列方法不会自动记录：子类在 tryAcquire 成功、由当前线程持有后调用
+     * {@link #lockOrderAcquired}，在 tryRelease 完全释放时调用 {@link #lockOrderReleased}，
+     * 这样直接调用 tryAcquire 的获取（例如 tryLock()）和 Condition 等待前后的释放与重新获取也都能记录。
+     *
+     * @param monitor the monitor, or {@code null} to stop recording
+     * @param name    the name of this lock in the lock-order graph, ignored if {@code monitor} is null
+     */
+    public final void setLockOrderMonitor(LockOrderMonitor monitor, String name) {
+        this.lockOrderKey = monitor != null ? monitor.key(name) : null;
+    }
+
+    /**
+     * 当前线程已经独占持有本同步器，供子类在 tryAcquire 成功后调用。没有设置锁顺序监视器时只有一次 volatile 读。
+     */
+    protected final void lockOrderAcquired() {
+        LockOrderMonitor.Key k = lockOrderKey;
+        if (k != null)
+            k.monitor.acquired(k);
+    }
+
+    /**
+     * 当前线程不再持有本同步器，供子类在 tryRelease 完全释放时调用，
+     * 或在 {@link #onAsyncAcquire} 中撤销 tryAcquire 中的记录。
+     */
+    protected final void lockOrderReleased() {
+        LockOrderMonitor.Key k = lockOrderKey;
+        if (k != null)
+            k.monitor.released(k);
+    }
+
+    /**
+     * Returns the waiting time after which a queued exclusive acquire is
+     * handed the synchronizer directly on release.
+     *
+     * @return the threshold in nanoseconds, or 0 if direct handoff is disabled
+     */
+    public final long getHandoffThreshold() {
+        return handoffNanos;
+    }
+
+    /**
+     * 开启直接交接：独占释放时，如果队首的等待者已经排队超过 thresholdNanos，
+     * 不把同步器置为空闲再唤醒它去重试，而是把持有权直接交给它再唤醒。
+     * <p>
+     * 默认的抢先（barging）吞吐最高，但释放方常常立刻又抢回锁，被唤醒的等待者重试失败、再次 park，
+     * 负载高时形成护航（convoy），个别等待者的排队时间没有上限；公平模式则每次都交接，吞吐太低。
+     * 交接只发生在等待者已经等了足够久时，其余释放仍然抢先，兼顾吞吐与尾延迟。
+     * 被交接的线程醒来时已经持有，不再调用 tryAcquire；交接期间同步器一直处于已获取状态，新来的线程抢不到。
+     * <p>
+     * 需要子类实现 {@link AbstractQueuedSynchronizer#tryHandoff} 与 {@link AbstractQueuedSynchronizer#onHandoff}，
+     * 默认实现不支持交接，设置了也没有效果。只交接给 FIFO 队列中阻塞获取的线程
+     * （包括 Condition 等待后的重新获取），异步获取、带优先级排队的等待者与共享获取仍然按原方式唤醒。
+     * 可在运行期修改，已经在排队的等待者不受影响。
+     *
+     * @param thresholdNanos the queueing time after which a waiter is handed the
+     *                       synchronizer, or 0 to disable direct handoff
+     * @throws IllegalArgumentException if {@code thresholdNanos} is negative
+     */
+    public final void setHandoffThreshold(long thresholdNanos) {
+        if (thresholdNanos < 0L)
+            throw new IllegalArgumentException();
+        this.handoffNanos = thresholdNanos;
+    }
+
+    /**
+     * Returns the number of priority levels of prioritized exclusive acquires.
+     *
+     * @return the number of levels, or 0 if priority queueing is not enabled
+     */
+    public final int getPriorityLevels() {
+        PriorityWaiters pw = priorityWaiters;
+        return pw != null ? pw.levels() : 0;
+    }
+
+    /**
+     * 开启优先级排队：带优先级的独占获取（如 {@link AbstractQueuedSynchronizer#acquire(int, int)}）
+     * 不再进入 FIFO 队列，而是按优先级进入各自的子队列，release 时唤醒有效优先级最高的等待者。
+     * 优先级为 0 到 levels - 1，越大越优先，超出范围的按最近的一级处理。
+     * <p>
+     * 为避免低优先级的等待者饿死，等待者每等待一个老化周期，有效优先级升一级。
+     * 例如 4 级、老化周期 10ms 时，优先级 0 的等待者最多等约 30ms 就与新来的优先级 3 平级，
+     * 平级时仍先唤醒原本优先级高的。
+     * <p>
+     * 与 FIFO 队列一样不阻止抢先：没有排队者时的获取路径不变，被唤醒的等待者也可能输给新来的线程。
+     * 不带优先级的获取、共享获取、Condition 等待后的重新获取仍走 FIFO 队列；
+     * 两种等待者同时存在时，每次 release 各唤醒一个，由它们竞争。
+     * 只能在使用前设置一次。
+     *
+     * @param levels     the number of priority levels, at least 1
+     * @param agingNanos the waiting time after which a waiter is promoted by one level,
+     *                   or 0 to disable aging
+     * @throws IllegalStateException if priority queueing is already enabled
+     */
+    public final void setPriorityLevels(int levels, long agingNanos) {
+        PriorityWaiters pw = new PriorityWaiters(levels, agingNanos);
+        if (priorityWaiters != null)
+            throw new IllegalStateException("Priority levels already set");
+        priorityWaiters = pw;
+    }
+
+    /**
+     * 开启竞争布局：tail 移到单独分配、前后填充的对象上，排队节点也改用填充过的节点。
+     * <p>
+     * 紧凑布局下 state、head、tail 挨在同一个缓存行里：入队的线程 CAS tail，持有者 CAS state、写 head，
+     * 两组写互相使对方的缓存行失效。线程很多、入队频繁时，把 tail 挪到独立的缓存行上，
+     * 入队不再打扰持有者的获取与释放；填充节点则让相邻分配的节点不落在同一个缓存行里，
+     * 释放方写前驱节点的 waitStatus 时不会打扰自旋中的后继。代价是每个同步器多约 260 字节（填充的 tail 与队首哨兵）、
+     * 每个节点多 64 字节，以及读 tail 多一次间接访问，锁的数量很多且竞争不激烈时应保持默认。
+     * <p>
+     * 字段布局是类的属性，JVM 不能按实例选择，{@code @Contended} 也只在 -XX:-RestrictContended 时
+     * 对 JDK 以外的类生效，所以这里用手工填充的独立对象来实现按实例选择。
+     * <p>
+     * 必须在同步队列初始化之前（第一次排队之前）调用，通常紧接着构造。
+     *
+     * @throws IllegalStateException 同步队列已经初始化或已开启
+     */
+    public final void enableContendedLayout() {
+        PaddedTail t = new PaddedTail();
+        Node h = new Node.Padded();
+        t.tail = h;
+        // 抢先初始化队列：此后其他线程在 initializeSyncQueue 中 CAS head 都会失败，
+        // 只会在 tail() 上重读，直到看到 paddedTail，不会再写对象内的 tail
+        if (!Atomics.casHead(this, null, h))
+            throw new IllegalStateException("Sync queue already initialized");
+        paddedTail = t;
+    }
+
+    public final boolean isContendedLayout() {
+        return paddedTail != null;
+    }
+
+    /**
+     * 当前布局下的 tail。
+     */
+    final Node tail() {
+        PaddedTail t = paddedTail;
+        return t == null ? tail : t.tail;
+    }
+
+    /**
+     * 未排队直接获取成功后调用。
+     */
+    final void countAcquire(boolean exclusive) {
+        ContentionStats s = contentionStats;
+        if (s != null) {
+            if (!exclusive)
+                s.acquiredShared();
+            else if ((++exclusiveTicks & (ContentionStats.FLUSH_INTERVAL - 1)) == 0)
+                flushExclusive(s);
+        }
+    }
+
+    /**
+     * 独占获取由持有者在 {@link #exclusiveTicks} 上普通加一，每 {@link ContentionStats#FLUSH_INTERVAL} 次
+     * 调用一次本方法批量计入统计；每 {@link ContentionStats#HOLD_SAMPLE_INTERVAL} 次
+     * 再采样这次持有的时长（在 {@link #release} 中结束）。
+     * 单独成方法让无竞争路径保持短小、便于内联。
+     */
+    private void flushExclusive(ContentionStats s) {
+        s.addAcquisitions(ContentionStats.FLUSH_INTERVAL);
+        if ((exclusiveTicks & (ContentionStats.HOLD_SAMPLE_INTERVAL - 1)) == 0)
+            holdSampleStart = System.nanoTime();
+    }
+
+    /**
+     * 节点开始排队时调用，开启统计时记下入队时间。
+     */
+    private void beginWait(Node node) {
+        ContentionStats s = contentionStats;
+        node.waitStart = s != null ? s.beginWait() : 0L;
+    }
+
+    private void countPark() {
+        ContentionStats s = contentionStats;
+        if (s != null)
+            s.parked();
+    }
+
+    /**
+     * 独占释放的第一步，必须在 tryRelease 之前调用：取出并清除被采样的持有开始时间。
+     *
+     * @return the sampled hold start, or 0 if this hold was not sampled
+     */
+    final long takeHoldSample() {
+        long holdStart = holdSampleStart;
+        if (holdStart != 0L)
+            holdSampleStart = 0L;
+        return holdStart;
+    }
+
+    /**
+     * 独占释放成功（tryRelease 返回 true）之后调用：记录采样的持有时间，唤醒队首的后继。
+     *
+     * @param holdStart the value returned by {@link #takeHoldSample}
+     */
+    final void signalAfterRelease(long holdStart) {
+        ContentionStats cs;
+        if (holdStart != 0L && (cs = contentionStats) != null)
+            cs.released(holdStart);
+        Node h = head;
+        if (h != null && h.waitStatus != 0) {
+            // 先 pin 再重读 head，之前读到的 h 可能已经出队并被复用
+            Object s = null;
+            PinCell pinned = pin();
+            try {
+                if ((h = head) != null && h.waitStatus != 0)
+                    s = successorToWake(h);
+            } finally {
+                unpin(pinned);
+            }
+            wake(s);
+        }
+        PriorityWaiters pw = priorityWaiters;
+        if (pw != null)
+            pw.signal();
+    }
+
+    /**
+     * 独占释放的直接交接，在 tryRelease 之前调用：队首的等待者已经排队超过阈值，
+     * 并且子类的 tryHandoff 确认这次是完全释放时，把持有权交给它并唤醒。
+     *
+     * @param holdStart the value returned by {@link #takeHoldSample}
+     * @return {@code true} if handed off, in which case the release is complete
+     */
+    final boolean handOff(long arg, long holdStart) {
+        long threshold = handoffNanos;
+        Node h;
+        if (threshold == 0L || (h = head) == null || h.next == null)
+            return false;
+        Thread t;
+        PinCell pinned = pin();
+        try {
+            Node s;
+            if ((h = head) == null || (s = liveSuccessor(h, false)) == null ||
+                    s.handoff != Node.HANDOFF_ELIGIBLE ||
+                    System.nanoTime() - s.queuedAt < threshold ||
+                    !Atomics.casHandoff(s, Node.HANDOFF_ELIGIBLE, Node.HANDOFF_RESERVED))
+                return false;
+            // 预订期间等待者不会放弃，节点也不会出队
+            boolean released = false;
+            try {
+                released = tryHandoffLong(arg);
+            } finally {
+                if (!released)
+                    s.handoff = Node.HANDOFF_ELIGIBLE;
+            }
+            if (!released)
+                return false;
+            // 写 GRANTED 之后等待者可能立即出队并清空 thread
+            t = s.thread;
+            s.handoff = Node.HANDOFF_GRANTED;
+        } finally {
+            unpin(pinned);
+        }
+        ContentionStats cs;
+        if (holdStart != 0L && (cs = contentionStats) != null)
+            cs.released(holdStart);
+        LockSupport.unpark(t);
+        return true;
+    }
+
+    /**
+     * 开启直接交接时，把刚入队的阻塞获取登记为可以接受交接。
+     */
+    private void offerHandoff(Node node, long arg) {
+        if (handoffNanos != 0L) {
+            node.acquireArg = arg;
+            node.queuedAt = System.nanoTime();
+            node.handoff = Node.HANDOFF_ELIGIBLE;
+        }
+    }
+
+    /**
+     * 被交接的等待者接手持有：由子类改写 state 与持有线程，然后出队。
+     * 此时 node 之前只有已取消的节点，直接成为 head。
+     */
+    private void takeHandoff(Node node, long arg) {
+        onHandoffLong(arg);
+        setHead(node);
+    }
+
+    /**
+     * 等待者放弃（超时、中断或异常）之前调用，拒绝之后的交接。
+     *
+     * @return {@code false} if the synchronizer has already been handed to this waiter
+     */
+    private static boolean refuseHandoff(Node node) {
+        for (; ; ) {
+            int h = node.handoff;
+            if (h == Node.HANDOFF_GRANTED)
+                return false;
+            if (h == 0 || h == Node.HANDOFF_REFUSED)
+                return true;
+            if (h == Node.HANDOFF_RESERVED)
+                Atomics.onSpinWait();
+            else if (Atomics.casHandoff(node, h, Node.HANDOFF_REFUSED))
+                return true;
+        }
+    }
+
+    /**
+     * 排队的阻塞获取因异常放弃。如果放弃前已经被交接，接手后立即释放，交给下一个等待者。
+     */
+    private void cancelQueuedAcquire(Node node, long arg) {
+        boolean handedOff = !refuseHandoff(node);
+        cancelAcquire(node);
+        if (handedOff) {
+            onHandoffLong(arg);
+            releaseLong(arg);
+        }
+    }
+
+    /**
+     * Inserts node into queue, initializing if necessary. See picture above.
+     *
+     * @param node the node to insert
+     * @return node's predecessor
+     */
+    private Node enq(Node node) {
+        for (; ; ) {
+            Node oldTail = tail();
+            if (oldTail != null) {
+                node.setPrevRelaxed(oldTail);
+                if (compareAndSetTail(oldTail, node)) {
+                    oldTail.next = node;
+                    return oldTail;
+                }
+            } else {
+                initializeSyncQueue();
+            }
+        }
+    }
+
+    // Utilities for various versions of acquire
+
+    /**
+     * Creates and enqueues node for current thread and given mode.
+     *
+     * @param mode Node.EXCLUSIVE for exclusive, Node.SHARED for shared
+     * @return the new node
+     */
+    final Node addWaiter(Node mode) {
+        Node node = NodeCache.obtain(mode, 0, paddedTail != null);
+        beginWait(node);
+
+        for (; ; ) {
+            Node oldTail = tail();
+            if (oldTail != null) {
+                node.setPrevRelaxed(oldTail);
+                if (compareAndSetTail(oldTail, node)) {
+                    oldTail.next = node;
+                    return node;
+                }
+            } else {
+                initializeSyncQueue();
+            }
+        }
+    }
+
+    /**
+     * Sets head of queue to be node, thus dequeuing. Called only by
+     * acquire methods.  Also nulls out unused fields for sake of GC
+     * and to suppress unnecessary signals and traversals.
+     *
+     * @param node the node
+     */
+    private void setHead(Node node) {
+        head = node;
+        node.thread = null;
+        node.prev = null;
+        long start = node.waitStart;
+        if (start != 0L) {
+            node.waitStart = 0L;
+            endWait(start, !node.isShared());
+        }
+    }
+
+    /**
+     * 排队后获取成功，开启统计时计入等待时间。
+     *
+     * @param start the value returned by {@link ContentionStats#beginWait}
+     */
+    private void endWait(long start, boolean exclusive) {
+        ContentionStats s = contentionStats;
+        if (s != null) {
+            s.endWait(start, exclusive);
+            if (exclusive && (++exclusiveTicks & (ContentionStats.FLUSH_INTERVAL - 1)) == 0)
+                flushExclusive(s);
+        }
+    }
+
+    /**
+     * 进入可能写入已出队节点的区间，必须在读取 head/前驱之前调用，并与 {@link #unpin} 成对出现。
+     *
+     * @return the cell to pass to {@link #unpin}, or {@code null} if counted on {@link #pinCount}
+     */
+    private PinCell pin() {
+        PinCell[] cells = pinCells;
+        if (cells == null) {
+            int c = pinCount;
+            if (Atomics.casPinCount(this, c, c + 1))
+                return null;
+            cells = inflatePinCells();
+        }
+        int h = Thread.currentThread().hashCode();
+        PinCell cell = cells[(h ^ (h >>> 16)) & (cells.length - 1)];
+        Atomics.getAndAddPins(cell, 1);
+        return cell;
+    }
+
+    private void unpin(PinCell cell) {
+        if (cell == null)
+            Atomics.getAndAddPinCount(this, -1);
+        else
+            Atomics.getAndAddPins(cell, -1);
+    }
+
+    private PinCell[] inflatePinCells() {
+        PinCell[] cells;
+        while ((cells = pinCells) == null) {
+            int n = Integer.highestOneBit(Math.max(2, Math.min(MAX_PIN_CELLS, NCPU)) * 2 - 1);
+            PinCell[] created = new PinCell[n];
+            for (int i = 0; i < n; i++)
+                created[i] = new PinCell();
+            if (Atomics.casPinCells(this, null, created))
+                return created;
+        }
+        return cells;
+    }
+
+    /**
+     * 是否没有线程处于 pin 区间。依次读取各个计数：扫描开始前进入、尚未退出的线程
+     * 在它所用的计数上一定可见；扫描开始后才进入的线程在 pin 之后才读取 head，拿不到已出队的节点。
+     */
+    final boolean isUnpinned() {
+        if (pinCount != 0)
+            return false;
+        PinCell[] cells = pinCells;
+        if (cells != null) {
+            for (PinCell c : cells)
+                if (c.pins != 0)
+                    return false;
+        }
+        return true;
+    }
+
+    /**
+     * Wakes up node's successor, if one exists.
+     *
+     * @param node the node
+     */
+    private void unparkSuccessor(Node node) {
+        wake(successorToWake(node));
+    }
+
+    /**
+     * 唤醒 {@link #successorToWake} 找到的等待者：阻塞获取的线程被 unpark，
+     * 异步获取的续体被提交到执行器。
+     *
+     * @param waiter a thread, an {@link AsyncAcquire}, or {@code null}
+     */
+    private static void wake(Object waiter) {
+        if (waiter instanceof AsyncAcquire)
+            ((AsyncAcquire) waiter).signal();
+        else
+            LockSupport.unpark((Thread) waiter);
+    }
+
+    /**
+     * unparkSuccessor 的前半部分：清除 node 的信号位并找出需要唤醒的等待者，但不唤醒。
+     * pin 区间内的调用方在 unpin 之后再唤醒，避免被唤醒的线程在单核/抢占时
+     * 先于 unpin 运行，看到仍处于 pin 区间而无法复用节点。
+     * 返回线程或续体而不是节点本身，unpin 之后节点可能已被复用。
+     *
+     * @param node the node
+     * @return the successor's thread or async continuation, or {@code null} if none
+     */
+    private Object successorToWake(Node node) {
+        /*
+         * If status is negative (i.e., possibly needing signal) try
+         * to clear in anticipation of signalling.  It is OK if this
+         * fails or if status is changed by waiting thread.
+         */
+        int ws = node.waitStatus;
+        if (ws < 0)
+            node.compareAndSetWaitStatus(ws, 0);
+
+        /*
+         * Thread to unpark is held in successor, which is normally
+         * just the next node.  But if cancelled or apparently null,
+         * find the actual non-cancelled successor.
+         */
+        Node s = liveSuccessor(node, true);
+        if (s == null)
+            return null;
+        Thread t = s.thread;
+        return t != null ? t : s.async;
+    }
+
+    /**
+     * 返回 node 之后第一个未取消的节点。
+     * <p>
+     * 原实现在 node.next 为空或已取消时从 tail 向前遍历整个队列，等待者很多、
+     * 又有大批超时取消时每次释放都是 O(n)。这里先沿 next 向后跳过已取消的节点：
+     * next 链只会越过已取消的节点，取消的节点也保留自己的 next（见 cancelAcquire），
+     * 所以沿它找到的第一个未取消节点就是所求。只有 next 为空（入队的线程还没补上 next，
+     * 此时离 tail 很近）时才退回从 tail 向前找。
+     * <p>
+     * compress 为 true 时把 node.next 直接指向找到的节点，并把途经的已取消节点的 next 折半，
+     * 取消的节点不立即摘除，而是在之后的遍历中逐步压缩掉，摊还 O(1)。
+     * 只能在 pin 区间内压缩，否则 node 可能已被复用。
+     *
+     * @param node     the node, normally head or a node being cancelled
+     * @param compress whether to CAS node.next past the skipped cancelled nodes
+     * @return the successor, or {@code null} if none
+     */
+    private Node liveSuccessor(Node node, boolean compress) {
+        Node first = node.next, s = first;
+        while (s != null && s.waitStatus > 0) {
+            Node n = s.next;
+            if (compress && n != null && n.waitStatus > 0) {
+                Node m = n.next;
+                if (m != null && s.compareAndSetNext(n, m))
+                    n = m;
+            }
+            s = n;
+        }
+        if (s == null) {
+            for (Node p = tail(); p != node && p != null; p = p.prev)
+                if (p.waitStatus <= 0)
+                    s = p;
+        } else if (compress && s != first) {
+            node.compareAndSetNext(first, s);
+        }
+        return s;
+    }
+
+    /**
+     * Release action for shared mode -- signals successor and ensures
+     * propagation. (Note: For exclusive mode, release just amounts
+     * to calling unparkSuccessor of head if it needs signal.)
+     */
+    final void doReleaseShared() {
+        /*
+         * Ensure that a release propagates, even if there are other
+         * in-progress acquires/releases.  This proceeds in the usual
+         * way of trying to unparkSuccessor of head if it needs
+         * signal. But if it does not, status is set to PROPAGATE to
+         * ensure that upon release, propagation continues.
+         * Additionally, we must loop in case a new node is added
+         * while we are doing this. Also, unlike other uses of
+         * unparkSuccessor, we need to know if CAS to reset status
+         * fails, if so rechecking.
+         */
+        Node h0 = head;
+        if ((h0 == null || h0 == tail()) && h0 == head)
+            return;                          // nothing queued, skip the pin
+        PinCell pinned = pin();
+        try {
+            for (; ; ) {
+                Node h = head;
+                if (h != null && h != tail()) {
+                    int ws = h.waitStatus;
+                    if (ws == Node.SIGNAL) {
+                        if (!h.compareAndSetWaitStatus(Node.SIGNAL, 0))
+                            continue;            // loop to recheck cases
+                        unparkSuccessor(h);
+                    } else if (ws == 0 &&
+                            !h.compareAndSetWaitStatus(0, Node.PROPAGATE))
+                        continue;                // loop on failed CAS
+                }
+                if (h == head)                   // loop if head changed
+                    break;
+            }
+        } finally {
+            unpin(pinned);
+        }
+    }
+
+    /*
+     * Various flavors of acquire, varying in exclusive/shared and
+     * control modes.  Each is mostly the same, but annoyingly
+     * different.  Only a little bit of factoring is possible due to
+     * interactions of exception mechanics (including ensuring that we
+     * cancel if tryAcquire throws exception) and other control, at
+     * least not without hurting performance too much.
+     */
+
+    /**
+     * Sets head of queue, and checks if successor may be waiting
+     * in shared mode, if so propagating if either propagate > 0 or
+     * PROPAGATE status was set.
+     *
+     * @param node      the node
+     * @param propagate the return value from a tryAcquireShared
+     */
+    private void setHeadAndPropagate(Node node, int propagate) {
+        Node h = head; // Record old head for check below
+        setHead(node);
+        /*
+         * Try to signal next queued node if:
+         *   Propagation was indicated by caller,
+         *     or was recorded (as h.waitStatus either before
+         *     or after setHead) by a previous operation
+         *     (note: this uses sign-check of waitStatus because
+         *      PROPAGATE status may transition to SIGNAL.)
+         * and
+         *   The next node is waiting in shared mode,
+         *     or we don't know, because it appears null
+         *
+         * The conservatism in both of these checks may cause
+         * unnecessary wake-ups, but only when there are multiple
+         * racing acquires/releases, so most need signals now or soon
+         * anyway.
+         */
+        if (propagate > 0 || h == null || h.waitStatus < 0 ||
+                (h = head) == null || h.waitStatus < 0) {
+            Node s = node.next;
+            if (s == null || s.isShared())
+                doReleaseShared();
+        }
+    }
+
+    /**
+     * Cancels an ongoing attempt to acquire.
+     *
+     * @param node the node
+     */
+    private void cancelAcquire(Node node) {
+        // Ignore if node doesn't exist
+        if (node == null)
+            return;
+
+        if (node.waitStart != 0L) {
+            node.waitStart = 0L;
+            ContentionStats cs = contentionStats;
+            if (cs != null)
+                cs.cancelled();
+        }
+
+        // Writes below may hit pred after it has been dequeued by a
+        // concurrent acquire, so keep it from being recycled meanwhile.
+        Object s = null;
+        PinCell pinned = pin();
+        try {
+            node.thread = null;
+            node.async = null;
+
+            // Skip cancelled predecessors
+            Node pred = skipCancelledPredecessors(node);
+
+            // predNext is the apparent node to unsplice. CASes below will
+            // fail if not, in which case, we lost race vs another cancel
+            // or signal, so no further action is necessary, although with
+            // a possibility that a cancelled node may transiently remain
+            // reachable.
+            Node predNext = pred.next;
+
+            // Can use unconditional write instead of CAS here.
+            // After this atomic step, other Nodes can skip past us.
+            // Before, we are free of interference from other threads.
+            node.waitStatus = Node.CANCELLED;
+
+            // If we are the tail, remove ourselves.
+            if (node == tail() && compareAndSetTail(node, pred)) {
+                pred.compareAndSetNext(predNext, null);
+            } else {
+                // If successor needs signal, try to set pred's next-link
+                // so it will get one. Otherwise wake it up to propagate.
+                int ws;
+                if (pred != head &&
+                        ((ws = pred.waitStatus) == Node.SIGNAL ||
+                                (ws <= 0 && pred.compareAndSetWaitStatus(ws, Node.SIGNAL))) &&
+                        (pred.thread != null || pred.async != null)) {
+                    Node next = node.next;
+                    if (next != null && next.waitStatus <= 0)
+                        pred.compareAndSetNext(predNext, next);
+                } else {
+                    s = successorToWake(node);
+                }
+
+                // 不像原实现那样让 next 自指：保留它，之后从前面沿 next 找后继时可以穿过本节点，
+                // 不必因为断链而从 tail 向前遍历整个队列；途经时再由 liveSuccessor 压缩掉
+            }
+        } finally {
+            unpin(pinned);
+        }
+        wake(s);
+    }
+
+    /**
+     * Convenience method to park and then check if interrupted.
+     *
+     * @return {@code true} if interrupted
+     */
+    private final boolean parkAndCheckInterrupt() {
+        countPark();
+        LockSupport.park(this);
+        return Thread.interrupted();
+    }
+
+    /**
+     * 限时等待中的一次 park。没有时间轮、时间轮已关闭或剩余时间不足一个刻度时直接 parkNanos；
+     * 否则首次 park 时向时间轮注册超时（之后的 park 复用同一条目），然后不限时 park。
+     * 调用方在等待结束时用 {@link TimingWheel#cancel} 取消返回的条目。
+     *
+     * @param blocker      the park blocker
+     * @param timeout      the timeout registered by a previous call, or {@code null}
+     * @param deadline     {@code System.nanoTime()} deadline
+     * @param nanosTimeout remaining time
+     * @return the registered timeout, or {@code null} if none
+     */
+    final TimingWheel.Timeout timedPark(Object blocker, TimingWheel.Timeout timeout,
+                                        long deadline, long nanosTimeout) {
+        TimingWheel wheel = timingWheel;
+        if (wheel == null || wheel.isClosed() || nanosTimeout < wheel.getTickNanos()) {
+            LockSupport.parkNanos(blocker, nanosTimeout);
+            return timeout;
+        }
+        // 条目已到期而截止时间未到只在 awaitUntil 遇到时钟调整时发生，重新注册
+        if (timeout == null || !timeout.isWaiting())
+            timeout = wheel.schedule(Thread.currentThread(), deadline);
+        LockSupport.park(blocker);
+        return timeout;
+    }
+
+    /**
+     * 队首节点在 park 之前按 {@link SpinPolicy} 给出的预算自旋重试 tryAcquire。
+     * 只有前驱已经是 SIGNAL 时才自旋：此时放弃自旋去 park 一定能被 release 唤醒，
+     * 且每次 park 前最多只自旋一轮。持锁线程不处于 RUNNABLE（自己也在阻塞/等待）时
+     * 立即放弃，因为它不可能很快释放。
+     *
+     * @param p        the predecessor, known to be head
+     * @param arg      the acquire argument
+     * @param deadline {@code System.nanoTime()} deadline, or 0 if untimed
+     * @return {@code true} if acquired while spinning
+     */
+    private boolean spinForAcquire(Node p, long arg, long deadline) {
+        SpinPolicy policy = spinPolicy;
+        int limit;
+        if (policy == null || p.waitStatus != Node.SIGNAL ||
+                (limit = policy.spinLimit()) <= 0)
+            return false;
+        int spins = 0;
+        boolean acquired = false;
+        while (spins < limit) {
+            if ((spins & (SPIN_CHECK_INTERVAL - 1)) == 0) {
+                Thread owner = getExclusiveOwnerThread();
+                if ((owner != null && owner.getState() != Thread.State.RUNNABLE) ||
+                        (deadline != 0L && deadline - System.nanoTime() <= 0L))
+                    break;
+            }
+            Atomics.onSpinWait();
+            ++spins;
+            if (tryAcquireLong(arg)) {
+                acquired = true;
+                break;
+            }
+        }
+        policy.record(spins, acquired);
+        return acquired;
+    }
+
+    /**
+     * Acquires in exclusive uninterruptible mode for thread already in
+     * queue. Used by condition wait methods as well as acquire.
+     *
+     * @param node the node
+     * @param arg  the acquire argument
+     * @return {@code true} if interrupted while waiting
+     */
+    final boolean acquireQueued(final Node node, long arg) {
+        boolean interrupted = false;
+        try {
+            offerHandoff(node, arg);
+            for (; ; ) {
+                if (node.handoff == Node.HANDOFF_GRANTED) {
+                    takeHandoff(node, arg);
+                    return interrupted;
+                }
+                final Node p = node.predecessor();
+                if (p == head && (tryAcquireLong(arg) || spinForAcquire(p, arg, 0L))) {
+                    setHead(node);
+                    p.next = null; // help GC
+                    NodeCache.retire(this, p);
+                    return interrupted;
+                }
+                if (shouldParkAfterFailedAcquire(p, node))
+                    interrupted |= parkAndCheckInterrupt();
+            }
+        } catch (Throwable t) {
+            cancelQueuedAcquire(node, arg);
+            if (interrupted)
+                selfInterrupt();
+            throw t;
+        }
+    }
+
+    /**
+     * Acquires in exclusive interruptible mode.
+     *
+     * @param arg the acquire argument
+     */
+    final void doAcquireInterruptibly(long arg)
+            throws InterruptedException {
+        final Node node = addWaiter(Node.EXCLUSIVE);
+        try {
+            offerHandoff(node, arg);
+            for (; ; ) {
+                if (node.handoff == Node.HANDOFF_GRANTED) {
+                    takeHandoff(node, arg);
+                    return;
+                }
+                final Node p = node.predecessor();
+                if (p == head && (tryAcquireLong(arg) || spinForAcquire(p, arg, 0L))) {
+                    setHead(node);
+                    p.next = null; // help GC
+                    NodeCache.retire(this, p);
+                    return;
+                }
+                if (shouldParkAfterFailedAcquire(p, node) &&
+                        parkAndCheckInterrupt())
+                    throw new InterruptedException();
+            }
+        } catch (Throwable t) {
+            cancelQueuedAcquire(node, arg);
+            throw t;
+        }
+    }
+
+    /**
+     * Acquires in exclusive timed mode.
+     *
+     * @param arg          the acquire argument
+     * @param nanosTimeout max wait time
+     * @return {@code true} if acquired
+     */
+    final boolean doAcquireNanos(long arg, long nanosTimeout)
+            throws InterruptedException {
+        if (nanosTimeout <= 0L)
+            return false;
+        final long deadline = System.nanoTime() + nanosTimeout;
+        final Node node = addWaiter(Node.EXCLUSIVE);
+        TimingWheel.Timeout timeout = null;
+        try {
+            offerHandoff(node, arg);
+            for (; ; ) {
+                if (node.handoff == Node.HANDOFF_GRANTED) {
+                    takeHandoff(node, arg);
+                    return true;
+                }
+                final Node p = node.predecessor();
+                if (p == head && (tryAcquireLong(arg) || spinForAcquire(p, arg, deadline))) {
+                    setHead(node);
+                    p.next = null; // help GC
+                    NodeCache.retire(this, p);
+                    return true;
+                }
+                nanosTimeout = deadline - System.nanoTime();
+                if (nanosTimeout <= 0L) {
+                    if (!refuseHandoff(node)) {
+                        // 超时的同时被交接了，算作获取成功
+                        takeHandoff(node, arg);
+                        return true;
+                    }
+                    cancelAcquire(node);
+                    return false;
+                }
+                if (shouldParkAfterFailedAcquire(p, node) &&
+                        nanosTimeout > SPIN_FOR_TIMEOUT_THRESHOLD) {
+                    countPark();
+                    timeout = timedPark(this, timeout, deadline, nanosTimeout);
+                }
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        } catch (Throwable t) {
+            cancelQueuedAcquire(node, arg);
+            throw t;
+        } finally {
+            TimingWheel.cancel(timeout);
+        }
+    }
+
+    /**
+     * 带优先级的独占获取，不响应中断。没有开启优先级排队时进入 FIFO 队列。
+     *
+     * @param arg      the acquire argument
+     * @param priority the priority, see {@link #setPriorityLevels}
+     */
+    final void acquirePrioritized(long arg, int priority) {
+        PriorityWaiters pw = priorityWaiters;
+        if (pw == null) {
+            if (acquireQueued(addWaiter(Node.EXCLUSIVE), arg))
+                selfInterrupt();
+        } else {
+            doAcquirePrioritized(pw, arg, priority, false, -1L);
+        }
+    }
+
+    /**
+     * 带优先级的独占获取，可被中断。
+     */
+    final void acquirePrioritizedInterruptibly(long arg, int priority)
+            throws InterruptedException {
+        PriorityWaiters pw = priorityWaiters;
+        if (pw == null)
+            doAcquireInterruptibly(arg);
+        else if (doAcquirePrioritized(pw, arg, priority, true, -1L) < 0)
+            throw new InterruptedException();
+    }
+
+    /**
+     * 带优先级的限时独占获取，可被中断。
+     *
+     * @return {@code true} if acquired
+     */
+    final boolean tryAcquirePrioritizedNanos(long arg, int priority, long nanosTimeout)
+            throws InterruptedException {
+        PriorityWaiters pw = priorityWaiters;
+        if (pw == null)
+            return doAcquireNanos(arg, nanosTimeout);
+        if (nanosTimeout <= 0L)
+            return false;
+        int r = doAcquirePrioritized(pw, arg, priority, true, nanosTimeout);
+        if (r < 0)
+            throw new InterruptedException();
+        return r > 0;
+    }
+
+    /**
+     * 在优先级子队列中等待直到获取成功、超时或（interruptible 时）被中断，见 {@link PriorityWaiters}。
+     * 不响应中断时，等待期间的中断在返回前恢复。
+     *
+     * @param nanosTimeout max wait time, or negative to wait without timeout
+     * @return 1 if acquired, 0 if timed out, -1 if interrupted
+     */
+    private int doAcquirePrioritized(PriorityWaiters pw, long arg, int priority,
+                                     boolean interruptible, long nanosTimeout) {
+        final boolean timed = nanosTimeout >= 0L;
+        final long deadline = timed ? System.nanoTime() + nanosTimeout : 0L;
+        ContentionStats cs = contentionStats;
+        final long waitStart = cs != null ? cs.beginWait() : 0L;
+        final PriorityWaiters.Waiter w = pw.enqueue(priority);
+        TimingWheel.Timeout timeout = null;
+        boolean interrupted = false;
+        boolean acquired = false;
+        try {
+            for (; ; ) {
+                // 入队或重新入队之后再重试，与 release 之间不会丢失唤醒
+                if (tryAcquireLong(arg)) {
+                    acquired = true;
+                    PriorityWaiters.cancel(w);
+                    if (waitStart != 0L)
+                        endWait(waitStart, true);
+                    return 1;
+                }
+                if (w.status != PriorityWaiters.WAITING) {
+                    // 被唤醒但输给了抢先的线程
+                    pw.requeue(w);
+                    continue;
+                }
+                if (timed) {
+                    nanosTimeout = deadline - System.nanoTime();
+                    if (nanosTimeout <= 0L)
+                        return 0;
+                    countPark();
+                    timeout = timedPark(this, timeout, deadline, nanosTimeout);
+                } else {
+                    countPark();
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    if (interruptible)
+                        return -1;
+                    interrupted = true;
+                }
+            }
+        } finally {
+            TimingWheel.cancel(timeout);
+            if (!acquired) {
+                // 放弃时消耗了一次唤醒的话转交出去
+                if (!PriorityWaiters.cancel(w))
+                    pw.signal();
+                if (waitStart != 0L && (cs = contentionStats) != null)
+                    cs.cancelled();
+            }
+            if (interrupted)
+                selfInterrupt();
+        }
+    }
+
+    // Main exported methods
+
+    /**
+     * Acquires in shared uninterruptible mode.
+     *
+     * @param arg the acquire argument
+     */
+    final void doAcquireShared(long arg) {
+        final Node node = addWaiter(Node.SHARED);
+        boolean interrupted = false;
+        try {
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head) {
+                    int r = tryAcquireSharedLong(arg);
+                    if (r >= 0) {
+                        setHeadAndPropagate(node, r);
+                        p.next = null; // help GC
+                        NodeCache.retire(this, p);
+                        return;
+                    }
+                }
+                if (shouldParkAfterFailedAcquire(p, node))
+                    interrupted |= parkAndCheckInterrupt();
+            }
+        } catch (Throwable t) {
+            cancelAcquire(node);
+            throw t;
+        } finally {
+            if (interrupted)
+                selfInterrupt();
+        }
+    }
+
+    /**
+     * Acquires in shared interruptible mode.
+     *
+     * @param arg the acquire argument
+     */
+    final void doAcquireSharedInterruptibly(long arg)
+            throws InterruptedException {
+        final Node node = addWaiter(Node.SHARED);
+        try {
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head) {
+                    int r = tryAcquireSharedLong(arg);
+                    if (r >= 0) {
+                        setHeadAndPropagate(node, r);
+                        p.next = null; // help GC
+                        NodeCache.retire(this, p);
+                        return;
+                    }
+                }
+                if (shouldParkAfterFailedAcquire(p, node) &&
+                        parkAndCheckInterrupt())
+                    throw new InterruptedException();
+            }
+        } catch (Throwable t) {
+            cancelAcquire(node);
+            throw t;
+        }
+    }
+
+    /**
+     * Acquires in shared timed mode.
+     *
+     * @param arg          the acquire argument
+     * @param nanosTimeout max wait time
+     * @return {@code true} if acquired
+     */
+    final boolean doAcquireSharedNanos(long arg, long nanosTimeout)
+            throws InterruptedException {
+        if (nanosTimeout <= 0L)
+            return false;
+        final long deadline = System.nanoTime() + nanosTimeout;
+        final Node node = addWaiter(Node.SHARED);
+        TimingWheel.Timeout timeout = null;
+        try {
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head) {
+                    int r = tryAcquireSharedLong(arg);
+                    if (r >= 0) {
+                        setHeadAndPropagate(node, r);
+                        p.next = null; // help GC
+                        NodeCache.retire(this, p);
+                        return true;
+                    }
+                }
+                nanosTimeout = deadline - System.nanoTime();
+                if (nanosTimeout <= 0L) {
+                    cancelAcquire(node);
+                    return false;
+                }
+                if (shouldParkAfterFailedAcquire(p, node) &&
+                        nanosTimeout > SPIN_FOR_TIMEOUT_THRESHOLD) {
+                    countPark();
+                    timeout = timedPark(this, timeout, deadline, nanosTimeout);
+                }
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        } catch (Throwable t) {
+            cancelAcquire(node);
+            throw t;
+        } finally {
+            TimingWheel.cancel(timeout);
+        }
+    }
+
+    /**
+     * Returns {@code true} if synchronization is held exclusively with
+     * respect to the current (calling) thread.  This method is invoked
+     * upon each call to a {@link ConditionObject} method.
+     *
+     * <p>The default implementation throws {@link
+     * UnsupportedOperationException}. This method is invoked
+     * internally only within {@link ConditionObject} methods, so need
+     * not be defined if conditions are not used.
+     *
+     * @return {@code true} if synchronization is held exclusively;
+     * {@code false} otherwise
+     * @throws UnsupportedOperationException if conditions are not supported
+     */
+    protected boolean isHeldExclusively() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 异步获取成功后、future 完成前调用，调用线程可能是异步执行器线程，也可能是发起获取的线程。
+     * 独占模式下 tryAcquire 若记录了 {@link #setExclusiveOwnerThread 持有线程}，
+     * 那只是恰好执行这一步的线程，子类可以在这里清除或改写。默认什么都不做。
+     *
+     * @param arg    the acquire argument
+     * @param shared {@code true} if acquired in shared mode
+     */
+    protected void onAsyncAcquire(long arg, boolean shared) {
+    }
+
+    /**
+     * @param nanosTimeout 0 表示不限时，负数表示已经超时
+     */
+    final CompletableFuture<Boolean> doAcquireAsync(long arg, boolean shared, long nanosTimeout) {
+        if (shared ? tryAcquireSharedLong(arg) >= 0 : tryAcquireLong(arg)) {
+            countAcquire(!shared);
+            onAsyncAcquire(arg, shared);
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        if (nanosTimeout < 0L)
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        Executor executor = asyncExecutor;
+        AsyncAcquire a = new AsyncAcquire(this, arg, shared,
+                executor != null ? executor : ForkJoinPool.commonPool());
+        Node node = new Node(shared ? Node.SHARED : Node.EXCLUSIVE, a);
+        a.node = node;
+        beginWait(node);
+        enq(node);
+        if (nanosTimeout > 0L)
+            a.scheduleTimeout(nanosTimeout, timingWheel);
+        a.signalInline();
+        return a;
+    }
+
+    /**
+     * 异步获取的一步，相当于阻塞获取循环中两次 park 之间的部分：
+     * 在队首则重试获取，否则设置前驱的 SIGNAL 后返回，等待下一次唤醒。
+     * 由 {@link AsyncAcquire#run} 串行调用，同一节点不会并发执行。
+     *
+     * @param a the async acquire
+     */
+    final void driveAsync(AsyncAcquire a) {
+        if (a.finished)
+            return;
+        final Node node = a.node;
+        if (a.isDone() || a.timedOut) {
+            // 被调用方取消，或者超时
+            finishAsync(a);
+            cancelAcquire(node);
+            a.complete(Boolean.FALSE);
+            return;
+        }
+        try {
+            for (; ; ) {
+                final Node p = node.predecessor();
+                if (p == head) {
+                    int r = 0;
+                    if (a.shared ? (r = tryAcquireSharedLong(a.arg)) >= 0 : tryAcquireLong(a.arg)) {
+                        if (a.shared)
+                            setHeadAndPropagate(node, r);
+                        else
+                            setHead(node);
+                        node.async = null;
+                        p.next = null; // help GC
+                        NodeCache.retire(this, p);
+                        break;
+                    }
+                }
+                if (shouldParkAfterFailedAcquire(p, node))
+                    return;
+            }
+        } catch (Throwable t) {
+            finishAsync(a);
+            cancelAcquire(node);
+            a.completeExceptionally(t);
+            return;
+        }
+        finishAsync(a);
+        boolean completed;
+        try {
+            onAsyncAcquire(a.arg, a.shared);
+            completed = a.complete(Boolean.TRUE);
+        } catch (Throwable t) {
+            a.completeExceptionally(t);
+            completed = false;
+        }
+        if (!completed) {
+            // 与取消赛跑输了（或回调出错），没人会释放，立即归还
+            if (a.shared)
+                releaseSharedLong(a.arg);
+            else
+                releaseLong(a.arg);
+        }
+    }
+
+    private static void finishAsync(AsyncAcquire a) {
+        a.finished = true;
+        a.node = null;
+        a.cancelTimer();
+    }
+
+    /**
+     * Queries whether any threads are waiting to acquire. Note that
+     * because cancellations due to interrupts and timeouts may occur
+     * at any time, a {@code true} return does not guarantee that any
+     * other thread will ever acquire.
+     *
+     * @return {@code true} if there may be other threads waiting to acquire
+     */
+    public final boolean hasQueuedThreads() {
+        for (Node p = tail(), h = head; p != h && p != null; p = p.prev)
+            if (p.waitStatus <= 0)
+                return true;
+        PriorityWaiters pw = priorityWaiters;
+        return pw != null && pw.hasWaiters();
+    }
+
+    /**
+     * Queries whether any threads have ever contended to acquire this
+     * synchronizer; that is, if an acquire method has ever blocked.
+     *
+     * <p>In this implementation, this operation returns in
+     * constant time.
+     *
+     * @return {@code true} if there has ever been contention
+     */
+    public final boolean hasContended() {
+        return head != null;
+    }
+
+    /**
+     * Returns the first (longest-waiting) thread in the queue, or
+     * {@code null} if no threads are currently queued.
+     *
+     * <p>In this implementation, this operation normally returns in
+     * constant time, but may iterate upon contention if other threads are
+     * concurrently modifying the queue.
+     *
+     * @return the first (longest-waiting) thread in the queue, or
+     * {@code null} if no threads are currently queued
+     */
+    public final Thread getFirstQueuedThread() {
+        // handle only fast path, else relay
+        return (head == tail()) ? null : fullGetFirstQueuedThread();
+    }
+
+    /**
+     * Version of getFirstQueuedThread called when fastpath fails.
+     */
+    private Thread fullGetFirstQueuedThread() {
+        /*
+         * The first node is normally head.next. Try to get its
+         * thread field, ensuring consistent reads: If thread
+         * field is nulled out or s.prev is no longer head, then
+         * some other thread(s) concurrently performed setHead in
+         * between some of our reads. We try this twice before
+         * resorting to traversal.
+         */
+        Node h, s;
+        Thread st;
+        if (((h = head) != null && (s = h.next) != null &&
+                s.prev == head && (st = s.thread) != null) ||
+                ((h = head) != null && (s = h.next) != null &&
+                        s.prev == head && (st = s.thread) != null))
+            return st;
+
+        /*
+         * Head's next field might not have been set yet, or may have
+         * been unset after setHead. So we must check to see if tail
+         * is actually first node. If not, we continue on, safely
+         * traversing from tail back to head to find first,
+         * guaranteeing termination.
+         */
+
+        Thread firstThread = null;
+        for (Node p = tail(); p != null && p != head; p = p.prev) {
+            Thread t = p.thread;
+            if (t != null)
+                firstThread = t;
+        }
+        return firstThread;
+    }
+
+    // Instrumentation and monitoring methods
+
+    /**
+     * Returns true if the given thread is currently queued.
+     *
+     * <p>This implementation traverses the queue to determine
+     * presence of the given thread.
+     *
+     * @param thread the thread
+     * @return {@code true} if the given thread is on the queue
+     * @throws NullPointerException if the thread is null
+     */
+    public final boolean isQueued(Thread thread) {
+        if (thread == null)
+            throw new NullPointerException();
+        for (Node p = tail(); p != null; p = p.prev)
+            if (p.thread == thread)
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if the apparent first queued thread, if one
+     * exists, is waiting in exclusive mode.  If this method returns
+     * {@code true}, and the current thread is attempting to acquire in
+     * shared mode (that is, this method is invoked from {@link
+     * #tryAcquireShared}) then it is guaranteed that the current thread
+     * is not the first queued thread.  Used only as a heuristic in
+     * ReentrantReadWriteLock.
+     */
+    final boolean apparentlyFirstQueuedIsExclusive() {
+        Node h, s;
+        return (h = head) != null &&
+                (s = h.next) != null &&
+                !s.isShared() &&
+                (s.thread != null || s.async != null);
+    }
+
+    /**
+     * 查询是否有任何线程等待获取的时间比当前线程长。
+     * 调用此方法等效于（但可能比）：
+     *        getFirstQueuedThread() != Thread.currentThread()
+     *         && hasQueuedThreads()
+     * 需要注意的是，因为取消由于中断和超时可以发生在任何时间，一个true收益并不能保证其他线程将当前线程之前获得。
+     * 同样，有可能另一个线程赢得了比赛，入队后，这个方法返回false ，由于队列为空。
+     * 此方法被设计成由一个公平的同步器被用来避免闯入。
+     * 这种同步的tryAcquire方法应该返回false ，其tryAcquireShared方法应该返回一个负值，如果该方法返回true （除非这是一个折返获取）。
+     * 例如， tryAcquire一个公平，折返，独占模式同步方法可能是这样的：
+     *        protected boolean tryAcquire(int arg) {
+     *         if (isHeldExclusively()) {
+     *           // A reentrant acquire; increment hold count
+     *           return true;
+     *         } else if (hasQueuedPredecessors()) {
+     *           return false;
+     *         } else {
+     *           // try to acquire normally
+     *         }
+     *       }
+     *
+     * @return {@code true} 如果有当前线程前面的线程排队， {@code false}  如果当前线程是在队列的头部或队列为空
+     *
+     * @since 1.7
+     */
+    public final boolean hasQueuedPredecessors() {
+        Node h, s;
+        if ((h = head) != null) {
+            if ((s = h.next) == null || s.waitStatus > 0)
+                s = liveSuccessor(h, false); // skip concurrent cancellations
+            if (s != null && s.thread != Thread.currentThread())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 返回等待获取的线程数（包括异步获取）的估计值。
+     * 该值只是一个估计值，因为当此方法遍历内部数据结构时，线程数可能会动态变化。
+     * 该方法设计用于监视系统状态，而不是用于同步控制。
+     *
+     * @return the estimated number of threads waiting to acquire
+     */
+    public final int getQueueLength() {
+        int n = 0;
+        for (Node p = tail(); p != null; p = p.prev) {
+            if (p.thread != null || p.async != null)
+                ++n;
+        }
+        PriorityWaiters pw = priorityWaiters;
+        if (pw != null)
+            n += pw.size();
+        return n;
+    }
+
+    /**
+     * 返回一个包含可能正在等待获取的线程的集合。
+     * 由于在构造此结果时实际线程集可能会动态更改，因此返回的集合只是尽力而为的估计。
+     * 返回集合的元素没有特定的顺序。
+     * 此方法旨在促进子类的构建，以提供更广泛的监视设施。
+     *
+     * @return the collection of threads
+     */
+    public final Collection<Thread> getQueuedThreads() {
+        ArrayList<Thread> list = new ArrayList<>();
+        for (Node p = tail(); p != null; p = p.prev) {
+            Thread t = p.thread;
+            if (t != null)
+                list.add(t);
+        }
+        return list;
+    }
+
+
+    // Internal support methods for Conditions
+
+    /**
+     * 返回一个包含可能在独占模式下等待获取的线程的集合。
+     * 它与getQueuedThreads具有相同的属性，除了它只返回由于独占获取而等待的线程。
+     *
+     * @return the collection of threads
+     */
+    public final Collection<Thread> getExclusiveQueuedThreads() {
+        ArrayList<Thread> list = new ArrayList<>();
+        for (Node p = tail(); p != null; p = p.prev) {
+            if (!p.isShared()) {
+                Thread t = p.thread;
+                if (t != null)
+                    list.add(t);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns a collection containing threads that may be waiting to
+     * acquire in shared mode. This has the same properties
+     * as {@link #getQueuedThreads} except that it only returns
+     * those threads waiting due to a shared acquire.
+     *
+     * @return the collection of threads
+     */
+    public final Collection<Thread> getSharedQueuedThreads() {
+        ArrayList<Thread> list = new ArrayList<>();
+        for (Node p = tail(); p != null; p = p.prev) {
+            if (p.isShared()) {
+                Thread t = p.thread;
+                if (t != null)
+                    list.add(t);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 如果一个节点（始终是最初放置在条件队列中的节点）现在正在等待重新获取同步队列，则返回 true。
+     *
+     * @param node the node
+     * @return true if is reacquiring
+     */
+    final boolean isOnSyncQueue(Node node) {
+        if (node.waitStatus == Node.CONDITION || node.prev == null)
+            return false;
+        if (node.next != null) // If has successor, it must be on queue
+            return true;
+        /*
+         * node.prev can be non-null, but not yet on queue because
+         * the CAS to place it on queue can fail. So we have to
+         * traverse from tail to make sure it actually made it.  It
+         * will always be near the tail in calls to this method, and
+         * unless the CAS failed (which is unlikely), it will be
+         * there, so we hardly ever traverse much.
+         */
+        return findNodeFromTail(node);
+    }
+
+    /**
+     * 如果节点通过从尾部向后搜索在同步队列上，则返回 true。 仅在 isOnSyncQueue 需要时调用。
+     *
+     * @return true if present
+     */
+    private boolean findNodeFromTail(Node node) {
+        // We check for node first, since it's likely to be at or near tail.
+        // tail is known to be non-null, so we could re-order to "save"
+        // one null check, but we leave it this way to help the VM.
+        for (Node p = tail(); ; ) {
+            if (p == node)
+                return true;
+            if (p == null)
+                return false;
+            p = p.prev;
+        }
+    }
+
+    // Instrumentation methods for conditions
+
+    /**
+     * 将一批已从条件队列摘下的节点一次性接到同步队列尾部。
+     * <p>
+     * 调用方已把每个节点的 waitStatus 由 CONDITION CAS 为 0（抢在取消之前认领），
+     * 并用 prev 把它们从 first 到 last 串好（first.prev 为 null）。
+     * 批内除最后一个以外的节点都有后继在等，直接置为 SIGNAL；
+     * 然后只用一次 tail CAS 接入整批，再补 next 链接，这与 enq 先写 prev、CAS 后写 next 的顺序一致：
+     * 在 CAS 成功之前批内节点的 next 都为 null，isOnSyncQueue 会从 tail 查找而找不到它们，
+     * 被提前唤醒的等待线程不会误以为已经入队。
+     *
+     * @param first the first node of the batch
+     * @param last  the last node of the batch
+     */
+    final void transferForSignal(Node first, Node last) {
+        for (Node s = last, p; s != first; s = p) {
+            p = s.prev;
+            // 接入前尚未发布，由下面 tail 的 CAS 一并发布
+            Atomics.setWaitStatusRelaxed(p, Node.SIGNAL);
+        }
+
+        /*
+         * Splice onto queue and try to set waitStatus of predecessor to
+         * indicate that thread is (probably) waiting. If cancelled or
+         * attempt to set waitStatus fails, wake up to resync (in which
+         * case the waitStatus can be transiently and harmlessly wrong).
+         */
+        Thread t = null;
+        PinCell pinned = pin();
+        try {
+            Node oldTail;
+            for (; ; ) {
+                oldTail = tail();
+                if (oldTail != null) {
+                    first.setPrevRelaxed(oldTail);
+                    if (compareAndSetTail(oldTail, last))
+                        break;
+                } else {
+                    initializeSyncQueue();
+                }
+            }
+            for (Node s = last, p; s != first; s = p) {
+                p = s.prev;
+                p.next = s;
+            }
+            oldTail.next = first;
+            int ws = oldTail.waitStatus;
+            if (ws > 0 || !oldTail.compareAndSetWaitStatus(ws, Node.SIGNAL))
+                t = first.thread;
+        } finally {
+            unpin(pinned);
+        }
+        LockSupport.unpark(t);
+    }
+
+    /**
+     * Transfers node, if necessary, to sync queue after a cancelled wait.
+     * Returns true if thread was cancelled before being signalled.
+     *
+     * @param node the node
+     * @return true if cancelled before the node was signalled
+     */
+    final boolean transferAfterCancelledWait(Node node) {
+        if (node.compareAndSetWaitStatus(Node.CONDITION, 0)) {
+            enq(node);
+            return true;
+        }
+        /*
+         * If we lost out to a signal(), then we can't proceed
+         * until it finishes its enq().  Cancelling during an
+         * incomplete transfer is both rare and transient, so just
+         * spin.
+         */
+        while (!isOnSyncQueue(node))
+            Thread.yield();
+        return false;
+    }
+
+    /**
+     * Invokes release with current state value; returns saved state.
+     * Cancels node and throws exception on failure.
+     *
+     * @param node the condition node for this wait
+     * @return previous sync state
+     */
+    final long fullyRelease(Node node) {
+        try {
+            long savedState = getStateLong();
+            if (releaseLong(savedState))
+                return savedState;
+            throw new IllegalMonitorStateException();
+        } catch (Throwable t) {
+            node.waitStatus = Node.CANCELLED;
+            throw t;
+        }
+    }
+
+    /**
+     * Queries whether the given ConditionObject
+     * uses this synchronizer as its lock.
+     *
+     * @param condition the condition
+     * @return {@code true} if owned
+     * @throws NullPointerException if the condition is null
+     */
+    public final boolean owns(ConditionObject condition) {
+        return condition.isOwnedBy(this);
+    }
+
+    /**
+     * Queries whether any threads are waiting on the given condition
+     * associated with this synchronizer. Note that because timeouts
+     * and interrupts may occur at any time, a {@code true} return
+     * does not guarantee that a future {@code signal} will awaken
+     * any threads.  This method is designed primarily for use in
+     * monitoring of the system state.
+     *
+     * @param condition the condition
+     * @return {@code true} if there are any waiting threads
+     * @throws IllegalMonitorStateException if exclusive synchronization
+     *                                      is not held
+     * @throws IllegalArgumentException     if the given condition is
+     *                                      not associated with this synchronizer
+     * @throws NullPointerException         if the condition is null
+     */
+    public final boolean hasWaiters(ConditionObject condition) {
+        if (!owns(condition))
+            throw new IllegalArgumentException("Not owner");
+        return condition.hasWaiters();
+    }
+
+    /**
+     * Returns an estimate of the number of threads waiting on the
+     * given condition associated with this synchronizer. Note that
+     * because timeouts and interrupts may occur at any time, the
+     * estimate serves only as an upper bound on the actual number of
+     * waiters.  This method is designed for use in monitoring system
+     * state, not for synchronization control.
+     *
+     * @param condition the condition
+     * @return the estimated number of waiting threads
+     * @throws IllegalMonitorStateException if exclusive synchronization
+     *                                      is not held
+     * @throws IllegalArgumentException     if the given condition is
+     *                                      not associated with this synchronizer
+     * @throws NullPointerException         if the condition is null
+     */
+    public final int getWaitQueueLength(ConditionObject condition) {
+        if (!owns(condition))
+            throw new IllegalArgumentException("Not owner");
+        return condition.getWaitQueueLength();
+    }
+
+    /**
+     * Returns a collection containing those threads that may be
+     * waiting on the given condition associated with this
+     * synchronizer.  Because the actual set of threads may change
+     * dynamically while constructing this result, the returned
+     * collection is only a best-effort estimate. The elements of the
+     * returned collection are in no particular order.
+     *
+     * @param condition the condition
+     * @return the collection of threads
+     * @throws IllegalMonitorStateException if exclusive synchronization
+     *                                      is not held
+     * @throws IllegalArgumentException     if the given condition is
+     *                                      not associated with this synchronizer
+     * @throws NullPointerException         if the condition is null
+     */
+    public final Collection<Thread> getWaitingThreads(ConditionObject condition) {
+        if (!owns(condition))
+            throw new IllegalArgumentException("Not owner");
+        return condition.getWaitingThreads();
+    }
+
+    /**
+     * Initializes head and tail fields on first contention.
+     */
+    private final void initializeSyncQueue() {
+        Node h;
+        if (Atomics.casHead(this, null, (h = new Node())))
+            tail = h;
+    }
+
+    /**
+     * CASes tail field.
+     */
+    private final boolean compareAndSetTail(Node expect, Node update) {
+        PaddedTail t = paddedTail;
+        return t == null ? Atomics.casTail(this, expect, update) : Atomics.casTail(t, expect, update);
+    }
+
+    // 分散的 pin 计数，填充方式与下面的 tail 相同
+
+    abstract static class PinCellPad {
+        byte p000, p001, p002, p003, p004, p005, p006, p007;
+        byte p010, p011, p012, p013, p014, p015, p016, p017;
+        byte p020, p021, p022, p023, p024, p025, p026, p027;
+        byte p030, p031, p032, p033, p034, p035, p036, p037;
+        byte p040, p041, p042, p043, p044, p045, p046, p047;
+        byte p050, p051, p052, p053, p054, p055, p056, p057;
+        byte p060, p061, p062, p063, p064, p065, p066, p067;
+        byte p070, p071, p072, p073, p074, p075, p076, p077;
+    }
+
+    abstract static class PinCellField extends PinCellPad {
+        /**
+         * 包级可见仅为了让 {@link Atomics} 在 JDK 8 上能创建字段更新器。
+         */
+        volatile int pins;
+    }
+
+    static final class PinCell extends PinCellField {
+        byte p100, p101, p102, p103, p104, p105, p106, p107;
+        byte p110, p111, p112, p113, p114, p115, p116, p117;
+        byte p120, p121, p122, p123, p124, p125, p126, p127;
+        byte p130, p131, p132, p133, p134, p135, p136, p137;
+        byte p140, p141, p142, p143, p144, p145, p146, p147;
+        byte p150, p151, p152, p153, p154, p155, p156, p157;
+        byte p160, p161, p162, p163, p164, p165, p166, p167;
+        byte p170, p171, p172, p173, p174, p175, p176, p177;
+    }
+
+    // 竞争布局下的 tail。填充用 byte 而不是 long：JDK 15 起子类字段会填进父类字段间的空隙，
+    // 父类全是 long 时对象头后的 4 字节空隙会被 tail 占用，前面的填充就失效了
+
+    abstract static class TailPad {
+        byte p000, p001, p002, p003, p004, p005, p006, p007;
+        byte p010, p011, p012, p013, p014, p015, p016, p017;
+        byte p020, p021, p022, p023, p024, p025, p026, p027;
+        byte p030, p031, p032, p033, p034, p035, p036, p037;
+        byte p040, p041, p042, p043, p044, p045, p046, p047;
+        byte p050, p051, p052, p053, p054, p055, p056, p057;
+        byte p060, p061, p062, p063, p064, p065, p066, p067;
+        byte p070, p071, p072, p073, p074, p075, p076, p077;
+    }
+
+    abstract static class TailField extends TailPad {
+        /**
+         * 包级可见仅为了让 {@link Atomics} 在 JDK 8 上能创建字段更新器。
+         */
+        volatile Node tail;
+    }
+
+    static final class PaddedTail extends TailField {
+        byte p100, p101, p102, p103, p104, p105, p106, p107;
+        byte p110, p111, p112, p113, p114, p115, p116, p117;
+        byte p120, p121, p122, p123, p124, p125, p126, p127;
+        byte p130, p131, p132, p133, p134, p135, p136, p137;
+        byte p140, p141, p142, p143, p144, p145, p146, p147;
+        byte p150, p151, p152, p153, p154, p155, p156, p157;
+        byte p160, p161, p162, p163, p164, p165, p166, p167;
+        byte p170, p171, p172, p173, p174, p175, p176, p177;
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.okami.test.aqs;
+
+/**
+ * 排队线程在 park 之前的自旋策略。
+ * <p>
+ * 同步器只让队首（head 的后继）节点自旋：每次准备 park 前向策略询问本轮自旋上限，
+ * 自旋结束后把实际自旋次数和是否拿到锁反馈给策略，策略据此调整下一轮的预算。
+ * 实现应当是线程安全的，但允许良性数据竞争——预算只是启发式的估计值。
+ *
+ * @see AbstractQueuedSynchronizer#setSpinPolicy(SpinPolicy)
+ * @see AdaptiveSpinPolicy
+ */
+public interface SpinPolicy {
+
+    /**
+     * 返回本轮最多自旋的次数，0 表示直接 park。
+     *
+     * @return the spin budget for the next attempt
+     */
+    int spinLimit();
+
+    /**
+     * 反馈一轮自旋的结果。
+     *
+     * @param spins    actual number of spin iterations performed
+     * @param acquired {@code true} if the spin ended with a successful acquire
+     */
+    void record(int spins, boolean acquired);
+
+    /**
+     * 创建一个使用默认参数的自适应策略。每个同步器应当持有自己的实例，预算才是按锁学习的。
+     *
+     * @return a new adaptive policy
+     */
+    static SpinPolicy adaptive() {
+        return new AdaptiveSpinPolicy();
+    }
+}
@@ -0,0 +1,401 @@
+package com.okami.test.aqs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * 读偏向的读写锁，参考 BRAVO（Biased Locking for Reader-Writer Locks）。
+ * <p>
+ * 底层是一个 AQS 读写同步器：state 为正数表示慢路径读者数，-1 表示写锁被持有。
+ * 在其之上有一个读偏向标志 readBias 和一组按 CPU 数分条、各占独立缓存行的读者计数：
+ * <ul>
+ * <li>读偏向开启时，读者只在自己线程对应的分条上加一、再确认偏向仍开启即返回，不碰 state，
+ * 多核读者之间没有共享的缓存行写入。</li>
+ * <li>写者获取时先撤销偏向：关闭 readBias，之后到来的读者看到偏向已关闭，改走 AQS 共享模式排队；
+ * 只有所有分条都已归零、state 也为 0 时才取得写锁。分条不为零时 tryAcquire 立即失败，不在其中等待，
+ * lock 与限时 tryLock 照常在 AQS 队列中 park；偏向关闭期间最后离开的快路径读者唤醒队首。</li>
+ * <li>撤销有代价，所以撤销后在其耗时的 {@link #INHIBIT_MULTIPLIER} 倍时间内
+ * （至少 {@link #MIN_INHIBIT_NANOS}）不重新开启偏向；
+ * 过了这段时间，慢路径读者在持有读锁时重新打开偏向。</li>
+ * </ul>
+ * 读锁可重入，写锁不可重入，不支持持有写锁时再获取读锁（锁降级）；读锁不支持 Condition。
+ * 偏向期间已进入的读者未离开时，写锁的 tryLock() 返回 false，限时 tryLock 最多等到超时。
+ */
+public class StripedReadWriteLock implements ReadWriteLock {
+
+    /**
+     * 撤销偏向后，禁止重新偏向的时间相对撤销耗时的倍数（BRAVO 论文中的 N）。
+     */
+    static final int INHIBIT_MULTIPLIER = 9;
+
+    /**
+     * 禁止重新偏向的最短时间。无竞争的撤销只要几十纳秒，单按倍数算的窗口太短，
+     * 写比例稍高时会反复撤销；有了下限，写入比这更频繁的锁会稳定在非偏向模式。
+     */
+    static final long MIN_INHIBIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * 分条之间的间隔（long 个数），128 字节，避开相邻行预取造成的伪共享。
+     */
+    private static final int PAD = 16;
+
+    /**
+     * 慢路径读者每获取这么多次才检查一次是否可以重新偏向，省掉大部分 System.nanoTime() 调用。
+     */
+    private static final int RESTORE_CHECK_MASK = 63;
+
+    private final Sync sync = new Sync();
+
+    private final ReadLock readLock = new ReadLock();
+
+    private final WriteLock writeLock = new WriteLock();
+
+    /**
+     * 每个分条一个快路径读者计数。
+     */
+    private final AtomicLongArray indicators;
+
+    private final int stripeMask;
+
+    /**
+     * 当前线程在本锁上的读持有情况。
+     */
+    private final ThreadLocal<ReaderState> readers = ThreadLocal.withInitial(this::newReaderState);
+
+    private volatile boolean readBias = true;
+
+    /**
+     * System.nanoTime() 时刻，在此之前不重新开启读偏向。
+     */
+    private volatile long inhibitUntil;
+
+    /**
+     * 本轮撤销开始的 System.nanoTime()，写锁取得后据此计算禁止期；0 表示没有进行中的撤销。
+     */
+    private volatile long revokeStart;
+
+    public StripedReadWriteLock() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes 读者计数分条数，会向上取整为 2 的幂，通常取 CPU 数
+     */
+    public StripedReadWriteLock(int stripes) {
+        if (stripes <= 0)
+            throw new IllegalArgumentException();
+        int n = Integer.highestOneBit(stripes);
+        if (n < stripes)
+            n <<= 1;
+        this.stripeMask = n - 1;
+        this.indicators = new AtomicLongArray(n * PAD);
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    public boolean isWriteLocked() {
+        return sync.getState() < 0;
+    }
+
+    public boolean isReadBiased() {
+        return readBias;
+    }
+
+    private ReaderState newReaderState() {
+        // 与 Long.hashCode 相同的折叠，再用黄金分割乘法打散连续的线程 id
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return new ReaderState((h >>> 16) & stripeMask);
+    }
+
+    /**
+     * 偏向开启时尝试走快路径。
+     *
+     * @return {@code true} if the read lock was taken on the fast path
+     */
+    private boolean tryFastRead(ReaderState rs) {
+        if (!readBias)
+            return false;
+        int i = rs.stripe * PAD;
+        indicators.getAndIncrement(i);
+        // 先写分条再读 readBias，与写者先关偏向再读分条构成 Dekker 式的互斥
+        if (readBias)
+            return true;
+        // 撤销中的写者可能刚好看到这次加一而失败排队
+        leaveFastPath(rs);
+        return false;
+    }
+
+    /**
+     * 快路径读者离开。偏向已被撤销时可能有写者在等分条归零：先写分条再读 readBias，
+     * 与 tryAcquire 先关偏向再读分条配对，两边至少有一边看到另一边。
+     */
+    private void leaveFastPath(ReaderState rs) {
+        if (indicators.decrementAndGet(rs.stripe * PAD) == 0L && !readBias)
+            sync.signalAfterRelease(0L);
+    }
+
+    /**
+     * 慢路径读者持有读锁期间，如果禁止期已过则重新开启偏向。此时写锁不可能被持有。
+     */
+    private void maybeRestoreBias(ReaderState rs) {
+        if ((++rs.slowAcquires & RESTORE_CHECK_MASK) == 0 &&
+                !readBias && System.nanoTime() - inhibitUntil >= 0L)
+            readBias = true;
+    }
+
+    /**
+     * 关闭读偏向，不等待快路径读者离开。撤销进行期间至少 {@link #MIN_INHIBIT_NANOS} 内不重新偏向。
+     */
+    private void revokeBias() {
+        if (!readBias)
+            return;
+        long now = System.nanoTime();
+        inhibitUntil = now + MIN_INHIBIT_NANOS;
+        if (revokeStart == 0L)
+            revokeStart = now;
+        readBias = false;
+    }
+
+    /**
+     * 写锁取得后，按本轮撤销的耗时设置禁止重新偏向的时间。
+     */
+    private void finishRevoke() {
+        long start = revokeStart;
+        if (start != 0L) {
+            revokeStart = 0L;
+            long now = System.nanoTime();
+            inhibitUntil = now + Math.max((now - start) * INHIBIT_MULTIPLIER, MIN_INHIBIT_NANOS);
+        }
+    }
+
+    /**
+     * 先关偏向再读分条，与读者先写分条再读 readBias 构成 Dekker 式的互斥：读到全零时，之后的读者都会看到偏向已关闭。
+     *
+     * @return {@code true} if no reader is inside on the fast path
+     */
+    private boolean fastReadersDrained() {
+        for (int i = 0; i < indicators.length(); i += PAD) {
+            if (indicators.get(i) != 0L)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 当前线程的读持有计数，快路径与慢路径分开记，释放时据此选择路径。
+     */
+    static final class ReaderState {
+        final int stripe;
+        int fastHolds;
+        int slowHolds;
+        int slowAcquires;
+
+        ReaderState(int stripe) {
+            this.stripe = stripe;
+        }
+    }
+
+    private final class Sync extends AbstractQueuedSynchronizer {
+
+        private static final long serialVersionUID = 4982047310746195537L;
+
+        /**
+         * 不等待快路径读者：分条不为零时返回 false，排队的写者由最后离开的快路径读者唤醒（见 leaveFastPath）。
+         */
+        @Override
+        protected boolean tryAcquire(int arg) {
+            if (getState() != 0)
+                return false;
+            revokeBias();
+            if (!fastReadersDrained() || !compareAndSetState(0, -1))
+                return false;
+            // 检查分条与 CAS 之间，持有读锁的慢路径读者可能重新打开了偏向，放进来新的快路径读者
+            revokeBias();
+            if (!fastReadersDrained()) {
+                setState(0);
+                // 这段时间里看到 state 为 -1 而排队的线程不会再有人唤醒
+                signalAfterRelease(0L);
+                return false;
+            }
+            setExclusiveOwnerThread(Thread.currentThread());
+            finishRevoke();
+            return true;
+        }
+
+        @Override
+        protected boolean tryRelease(int arg) {
+            if (!isHeldExclusively())
+                throw new IllegalMonitorStateException();
+            setExclusiveOwnerThread(null);
+            setState(0);
+            return true;
+        }
+
+        @Override
+        protected int tryAcquireShared(int arg) {
+            for (; ; ) {
+                int c = getState();
+                // 有写者排在队首时让路，避免写者饥饿
+                if (c < 0 || apparentlyFirstQueuedIsExclusive())
+                    return -1;
+                if (compareAndSetState(c, c + 1))
+                    return 1;
+            }
+        }
+
+        @Override
+        protected boolean tryReleaseShared(int arg) {
+            for (; ; ) {
+                int c = getState();
+                if (c <= 0)
+                    throw new IllegalMonitorStateException();
+                if (compareAndSetState(c, c - 1))
+                    return c == 1;
+            }
+        }
+
+        @Override
+        protected boolean isHeldExclusively() {
+            return getExclusiveOwnerThread() == Thread.currentThread();
+        }
+
+        Condition newCondition() {
+            return new ConditionObject(this);
+        }
+    }
+
+    private final class ReadLock implements Lock {
+
+        @Override
+        public void lock() {
+            ReaderState rs = readers.get();
+            if (rs.fastHolds > 0) {
+                rs.fastHolds++;
+            } else if (rs.slowHolds > 0) {
+                rs.slowHolds++;
+            } else if (tryFastRead(rs)) {
+                rs.fastHolds = 1;
+            } else {
+                sync.acquireShared(1);
+                rs.slowHolds = 1;
+                maybeRestoreBias(rs);
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            ReaderState rs = readers.get();
+            if (rs.fastHolds > 0) {
+                rs.fastHolds++;
+            } else if (rs.slowHolds > 0) {
+                rs.slowHolds++;
+            } else if (tryFastRead(rs)) {
+                rs.fastHolds = 1;
+            } else {
+                sync.acquireSharedInterruptibly(1);
+                rs.slowHolds = 1;
+                maybeRestoreBias(rs);
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            ReaderState rs = readers.get();
+            if (rs.fastHolds > 0) {
+                rs.fastHolds++;
+            } else if (rs.slowHolds > 0) {
+                rs.slowHolds++;
+            } else if (tryFastRead(rs)) {
+                rs.fastHolds = 1;
+            } else if (sync.tryAcquireShared(1) >= 0) {
+                rs.slowHolds = 1;
+                maybeRestoreBias(rs);
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            ReaderState rs = readers.get();
+            if (rs.fastHolds > 0) {
+                rs.fastHolds++;
+            } else if (rs.slowHolds > 0) {
+                rs.slowHolds++;
+            } else if (tryFastRead(rs)) {
+                rs.fastHolds = 1;
+            } else if (sync.tryAcquireSharedNanos(1, unit.toNanos(time))) {
+                rs.slowHolds = 1;
+                maybeRestoreBias(rs);
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+            ReaderState rs = readers.get();
+            if (rs.fastHolds > 0) {
+                if (--rs.fastHolds == 0)
+                    leaveFastPath(rs);
+            } else if (rs.slowHolds > 0) {
+                if (--rs.slowHolds == 0)
+                    sync.releaseShared(1);
+            } else {
+                throw new IllegalMonitorStateException();
+            }
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final class WriteLock implements Lock {
+
+        @Override
+        public void lock() {
+            sync.acquire(1);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            sync.acquireInterruptibly(1);
+        }
+
+        @Override
+        public boolean tryLock() {
+            return sync.tryAcquire(1);
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return sync.tryAcquireNanos(1, unit.toNanos(time));
+        }
+
+        @Override
+        public void unlock() {
+            sync.release(1);
+        }
+
+        @Override
+        public Condition newCondition() {
+            return sync.newCondition();
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.okami.test.aqs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 分层时间轮，为限时等待提供统一的超时唤醒，见
+ * {@link AbstractQueuedSynchronizer#setTimingWheel}。
+ * <p>
+ * 默认情况下每个限时等待的线程各自 {@code LockSupport.parkNanos}，成千上万个线程同时限时等待时，
+ * 每个线程都在内核里挂一个高精度定时器，超时集中到来时调度器被大量唤醒冲击。
+ * 使用时间轮后，等待线程只做一次不限时的 park，超时由一个后台线程按刻度批量唤醒：
+ * <ul>
+ * <li>精度：到期时间向上取整到刻度，唤醒不早于截止时间，最多晚一个刻度（外加调度延迟）。
+ * 短于一个刻度的等待仍然直接 parkNanos。</li>
+ * <li>注册与取消都是 O(1)：注册只是把条目 CAS 压入待处理栈，取消只是 CAS 状态并压入取消栈，
+ * 由后台线程在下一个刻度挂入或摘出对应的槽位（双向链表）。</li>
+ * <li>分层：{@link #LEVELS} 层，每层 {@link #WHEEL_SIZE} 个槽位，
+ * 第 n 层一个槽位跨 64<sup>n</sup> 个刻度；远期条目放在高层，到期前逐层下沉。
+ * 超出最高层范围的条目放在最高层，下沉时重新计算。</li>
+ * </ul>
+ * 没有待处理条目时后台线程不限时 park，不产生空转唤醒。
+ * <p>
+ * 不再使用的时间轮用 {@link #close()} 停止后台线程。
+ */
+public final class TimingWheel implements AutoCloseable {
+
+    static final int WHEEL_BITS = 6;
+
+    static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    static final int LEVELS = 4;
+
+    /**
+     * 各层能表示的最大相对刻度数。
+     */
+    private static final long MAX_DELTA = 1L << (WHEEL_BITS * LEVELS);
+
+    private static final AtomicReferenceFieldUpdater<TimingWheel, Timeout> PENDING =
+            AtomicReferenceFieldUpdater.newUpdater(TimingWheel.class, Timeout.class, "pending");
+
+    private static final AtomicReferenceFieldUpdater<TimingWheel, Timeout> CANCELLED =
+            AtomicReferenceFieldUpdater.newUpdater(TimingWheel.class, Timeout.class, "cancelled");
+
+    private final long tickNanos;
+
+    /**
+     * 第 0 个刻度对应的 System.nanoTime()。
+     */
+    private final long origin;
+
+    /**
+     * buckets[level][slot] 是双向链表的哨兵头。
+     */
+    private final Timeout[][] buckets;
+
+    private final Thread ticker;
+
+    /**
+     * 新注册、尚未挂到槽位上的条目（Treiber 栈，经 {@link Timeout#nextPending} 链接）。
+     */
+    private volatile Timeout pending;
+
+    /**
+     * 已取消、需要从槽位摘除的条目（经 {@link Timeout#nextCancelled} 链接）。
+     */
+    private volatile Timeout cancelled;
+
+    /**
+     * 后台线程因为没有条目而不限时 park 时为 true。
+     */
+    private volatile boolean idle;
+
+    private volatile boolean closed;
+
+    /**
+     * 已处理到的刻度，只由后台线程访问。
+     */
+    private long currentTick;
+
+    /**
+     * 挂在槽位上的条目数，只由后台线程访问。
+     */
+    private int scheduled;
+
+    /**
+     * @param tick 刻度，即超时精度
+     * @param unit tick 的单位
+     */
+    public TimingWheel(long tick, TimeUnit unit) {
+        long nanos = unit.toNanos(tick);
+        if (nanos <= 0L)
+            throw new IllegalArgumentException();
+        this.tickNanos = nanos;
+        this.origin = System.nanoTime();
+        this.buckets = new Timeout[LEVELS][WHEEL_SIZE];
+        for (Timeout[] level : buckets) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                Timeout head = new Timeout(null, null, 0L);
+                head.prev = head.next = head;
+                level[i] = head;
+            }
+        }
+        this.ticker = new Thread(this::runTicker, "aqs-timing-wheel");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * 刻度为 1 毫秒的共享实例，首次使用时启动后台线程，不能关闭。
+     */
+    public static TimingWheel shared() {
+        return Shared.INSTANCE;
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * @return 是否已经 {@link #close()}，关闭后限时等待退回各自 parkNanos
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 停止后台线程。尚未到期的条目不会丢失：等待线程被唤醒后自行 parkNanos 到截止时间，
+     * 任务转给异步获取共用的超时计时器在原定时间执行。关闭之后注册的条目同样处理。
+     * 等待后台线程结束时被中断则不再等待，保留中断状态返回。
+     *
+     * @throws UnsupportedOperationException 关闭 {@link #shared()} 实例时
+     */
+    @Override
+    public void close() {
+        if (this == Shared.INSTANCE)
+            throw new UnsupportedOperationException();
+        closed = true;
+        LockSupport.unpark(ticker);
+        if (Thread.currentThread() != ticker) {
+            try {
+                ticker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 在 deadline（System.nanoTime() 时刻）到达后 unpark thread。
+     */
+    Timeout schedule(Thread thread, long deadline) {
+        return schedule(new Timeout(thread, null, deadline));
+    }
+
+    /**
+     * 在 deadline（System.nanoTime() 时刻）到达后在后台线程上执行 task，task 不应阻塞。
+     */
+    Timeout schedule(Runnable task, long deadline) {
+        return schedule(new Timeout(null, task, deadline));
+    }
+
+    private Timeout schedule(Timeout t) {
+        Timeout h;
+        do {
+            h = pending;
+            t.nextPending = h;
+        } while (!PENDING.compareAndSet(this, h, t));
+        // 先压栈再读 closed，与 close 中先写 closed 再取栈配对，关闭后压入的条目不会无人处理
+        if (closed)
+            abandonPending();
+        else if (idle)
+            LockSupport.unpark(ticker);
+        return t;
+    }
+
+    /**
+     * 取消超时，null 安全。已经到期的取消没有效果。
+     */
+    static void cancel(Timeout t) {
+        if (t != null && t.cancel()) {
+            TimingWheel wheel = t.wheel;
+            if (wheel != null)
+                wheel.pushCancelled(t);
+        }
+    }
+
+    private void abandonPending() {
+        for (Timeout t = PENDING.getAndSet(this, null); t != null; ) {
+            Timeout next = t.nextPending;
+            t.nextPending = null;
+            t.abandon();
+            t = next;
+        }
+    }
+
+    private void pushCancelled(Timeout t) {
+        Timeout h;
+        do {
+            h = cancelled;
+            t.nextCancelled = h;
+        } while (!CANCELLED.compareAndSet(this, h, t));
+    }
+
+    private long tickOf(long nanoTime) {
+        // 向上取整：到期刻度的起点不早于 deadline
+        long d = nanoTime - origin;
+        return d <= 0L ? 0L : (d + tickNanos - 1) / tickNanos;
+    }
+
+    private void runTicker() {
+        while (!closed) {
+            long target = (System.nanoTime() - origin) / tickNanos;
+            drainCancelled();
+            // 没有条目时直接跳到当前刻度，空闲之后注册的条目不必逐刻度追赶
+            if (scheduled == 0)
+                currentTick = Math.max(currentTick, target);
+            drainPending();
+            while (currentTick < target)
+                advance(++currentTick);
+            if (scheduled == 0 && pending == null) {
+                idle = true;
+                // 先声明空闲再复查，与 schedule 中先压栈再读 idle 配对
+                if (pending == null && !closed)
+                    LockSupport.park(this);
+                idle = false;
+            } else {
+                long next = origin + (currentTick + 1) * tickNanos - System.nanoTime();
+                if (next > 0L)
+                    LockSupport.parkNanos(this, next);
+            }
+        }
+        // 后台线程自己交出剩余条目，close 等待被中断也不会遗漏
+        for (Timeout[] level : buckets) {
+            for (Timeout head : level) {
+                for (Timeout t = head.next; t != head; ) {
+                    Timeout next = t.next;
+                    unlink(t);
+                    t.abandon();
+                    t = next;
+                }
+            }
+        }
+        abandonPending();
+    }
+
+    private void drainPending() {
+        Timeout t = PENDING.getAndSet(this, null);
+        while (t != null) {
+            Timeout next = t.nextPending;
+            t.nextPending = null;
+            if (t.state == Timeout.WAITING) {
+                t.wheel = this;
+                insert(t);
+                // 挂上槽位之前被取消的条目不会进取消栈，这里补摘
+                if (t.state != Timeout.WAITING && t.prev != null)
+                    unlink(t);
+            }
+            t = next;
+        }
+    }
+
+    private void drainCancelled() {
+        Timeout t = CANCELLED.getAndSet(this, null);
+        while (t != null) {
+            Timeout next = t.nextCancelled;
+            t.nextCancelled = null;
+            if (t.prev != null)
+                unlink(t);
+            t = next;
+        }
+    }
+
+    private void insert(Timeout t) {
+        long expiry = tickOf(t.deadline);
+        long delta = expiry - currentTick;
+        if (delta <= 0L) {
+            t.expire();
+            return;
+        }
+        if (delta >= MAX_DELTA)
+            expiry = currentTick + MAX_DELTA - 1;
+        int level = 0;
+        while (expiry - currentTick >= 1L << (WHEEL_BITS * (level + 1)))
+            level++;
+        int slot = (int) (expiry >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+        Timeout head = buckets[level][slot];
+        t.prev = head.prev;
+        t.next = head;
+        head.prev.next = t;
+        head.prev = t;
+        scheduled++;
+    }
+
+    private void unlink(Timeout t) {
+        t.prev.next = t.next;
+        t.next.prev = t.prev;
+        t.prev = t.next = null;
+        scheduled--;
+    }
+
+    /**
+     * 处理刻度 tick：低位全为 0 的层先把对应槽位下沉，再让第 0 层的槽位到期。
+     */
+    private void advance(long tick) {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) != 0L)
+                break;
+            cascade(buckets[level][(int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK]);
+        }
+        Timeout head = buckets[0][(int) tick & WHEEL_MASK];
+        for (Timeout t = head.next; t != head; ) {
+            Timeout next = t.next;
+            unlink(t);
+            if (tickOf(t.deadline) <= tick)
+                t.expire();
+            else
+                insert(t);     // 超出范围被截断的条目
+            t = next;
+        }
+    }
+
+    private void cascade(Timeout head) {
+        for (Timeout t = head.next; t != head; ) {
+            Timeout next = t.next;
+            unlink(t);
+            insert(t);
+            t = next;
+        }
+    }
+
+    /**
+     * 一个超时条目：到期时 unpark 线程或执行任务。
+     */
+    static final class Timeout {
+        static final int WAITING = 0;
+        static final int EXPIRED = 1;
+        static final int CANCELLED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        final Thread thread;
+        final Runnable task;
+        final long deadline;
+        volatile int state;
+        /**
+         * 挂上槽位后由后台线程写入，取消时据此找到要通知的时间轮。
+         */
+        volatile TimingWheel wheel;
+        Timeout prev;
+        Timeout next;
+        Timeout nextPending;
+        Timeout nextCancelled;
+
+        Timeout(Thread thread, Runnable task, long deadline) {
+            this.thread = thread;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        boolean isWaiting() {
+            return state == WAITING;
+        }
+
+        boolean cancel() {
+            return STATE.compareAndSet(this, WAITING, CANCELLED);
+        }
+
+        /**
+         * 到期。任务抛出的异常交给后台线程的 UncaughtExceptionHandler，后台线程继续运行。
+         */
+        void expire() {
+            if (STATE.compareAndSet(this, WAITING, EXPIRED)) {
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                } else {
+                    try {
+                        task.run();
+                    } catch (Throwable ex) {
+                        Thread t = Thread.currentThread();
+                        t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 时间轮关闭时处理未到期的条目：唤醒等待线程，任务转给 {@link AsyncAcquire.Timer}。
+         */
+        void abandon() {
+            if (thread != null) {
+                expire();
+            } else if (state == WAITING) {
+                long delay = Math.max(0L, deadline - System.nanoTime());
+                AsyncAcquire.Timer.INSTANCE.schedule(this::expire, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static final class Shared {
+        static final TimingWheel INSTANCE = new TimingWheel(1, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,634 @@
+package com.okami.test.aqs;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * 有界阻塞队列，结构与 {@link java.util.concurrent.LinkedBlockingQueue} 相同：链表加“两把锁”，
+ * 入队只用 putLock、出队只用 takeLock，生产者与消费者互不阻塞；两把锁都是 {@link ExclusiveLock}，
+ * 各带一个 {@link ConditionObject}（notFull、notEmpty）。
+ * <p>
+ * 在此之上增加了整批搬运：{@link #offerAll} 一次获取 putLock 放入一整批，
+ * {@link #drainTo(Collection, int, long, TimeUnit)} 等到有元素后一次获取 takeLock 取走一整批。
+ * 批量入队的节点在锁外预先串好，锁内只做一次拼接（空间不够整批时才需要在锁内数出前缀）。
+ * <p>
+ * 需要获取对方的锁去唤醒对方时只在状态转换时进行：入队只在队列由空变为非空时唤醒一个消费者，
+ * 出队只在队列由满变为不满时唤醒一个生产者。被唤醒的一方发现还有剩余（元素或空间）时，
+ * 在自己这一侧的锁内接着唤醒同侧的下一个等待者。整批搬运一次最多触发一次跨锁唤醒，
+ * 而不是像逐个 put/take 那样按元素计。
+ * <p>
+ * 迭代器是弱一致的，每一步都同时持有两把锁。
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public class TwoLockBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    /**
+     * Linked list node class.
+     */
+    static final class Node<E> {
+        E item;
+
+        /**
+         * One of:
+         * - the real successor Node
+         * - this Node, meaning the successor is head.next
+         * - null, meaning there is no successor (this is the last node)
+         */
+        Node<E> next;
+
+        Node(E x) {
+            item = x;
+        }
+    }
+
+    /**
+     * The capacity bound, or Integer.MAX_VALUE if none
+     */
+    private final int capacity;
+
+    /**
+     * Current number of elements
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Head of linked list.
+     * Invariant: head.item == null
+     */
+    private Node<E> head;
+
+    /**
+     * Tail of linked list.
+     * Invariant: last.next == null
+     */
+    private Node<E> last;
+
+    /**
+     * Lock held by take, poll, etc
+     */
+    private final ExclusiveLock takeLock = new ExclusiveLock();
+
+    /**
+     * Wait queue for waiting takes
+     */
+    private final Condition notEmpty = takeLock.newCondition();
+
+    /**
+     * Lock held by put, offer, etc
+     */
+    private final ExclusiveLock putLock = new ExclusiveLock();
+
+    /**
+     * Wait queue for waiting puts
+     */
+    private final Condition notFull = putLock.newCondition();
+
+    /**
+     * @param capacity the capacity of this queue
+     * @throws IllegalArgumentException if {@code capacity} is not greater than zero
+     */
+    public TwoLockBlockingQueue(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+        this.capacity = capacity;
+        last = head = new Node<>(null);
+    }
+
+    /**
+     * Signals a waiting take. Called only from put/offer (which do not
+     * otherwise ordinarily lock takeLock.)
+     */
+    private void signalNotEmpty() {
+        takeLock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * Signals a waiting put. Called only from take/poll.
+     */
+    private void signalNotFull() {
+        putLock.lock();
+        try {
+            notFull.signal();
+        } finally {
+            putLock.unlock();
+        }
+    }
+
+    /**
+     * Links node at end of queue.
+     *
+     * @param node the node
+     */
+    private void enqueue(Node<E> node) {
+        last = last.next = node;
+    }
+
+    /**
+     * Removes a node from head of queue.
+     *
+     * @return the node
+     */
+    private E dequeue() {
+        Node<E> h = head;
+        Node<E> first = h.next;
+        h.next = h; // help GC
+        head = first;
+        E x = first.item;
+        first.item = null;
+        return x;
+    }
+
+    /**
+     * Locks to prevent both puts and takes.
+     */
+    void fullyLock() {
+        putLock.lock();
+        takeLock.lock();
+    }
+
+    /**
+     * Unlocks to allow both puts and takes.
+     */
+    void fullyUnlock() {
+        takeLock.unlock();
+        putLock.unlock();
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - count.get();
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        if (e == null)
+            throw new NullPointerException();
+        final int c;
+        final Node<E> node = new Node<>(e);
+        putLock.lockInterruptibly();
+        try {
+            while (count.get() == capacity)
+                notFull.await();
+            enqueue(node);
+            c = count.getAndIncrement();
+            if (c + 1 < capacity)
+                notFull.signal();
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0)
+            signalNotEmpty();
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null)
+            throw new NullPointerException();
+        long nanos = unit.toNanos(timeout);
+        final int c;
+        putLock.lockInterruptibly();
+        try {
+            while (count.get() == capacity) {
+                if (nanos <= 0L)
+                    return false;
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(new Node<>(e));
+            c = count.getAndIncrement();
+            if (c + 1 < capacity)
+                notFull.signal();
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0)
+            signalNotEmpty();
+        return true;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        if (count.get() == capacity)
+            return false;
+        final int c;
+        final Node<E> node = new Node<>(e);
+        putLock.lock();
+        try {
+            if (count.get() == capacity)
+                return false;
+            enqueue(node);
+            c = count.getAndIncrement();
+            if (c + 1 < capacity)
+                notFull.signal();
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0)
+            signalNotEmpty();
+        return true;
+    }
+
+    /**
+     * 按迭代顺序放入 batch 中的元素，队列满时等待，最多等待给定的时间。
+     * <p>
+     * 每次获取 putLock 放入当前空间允许的最长前缀，整批放得下时只获取一次；
+     * 同一批的元素在队列中保持相邻（只要中途没有因队列满而等待）。超时返回时已放入的元素不会撤回。
+     *
+     * @param batch   the elements to add
+     * @param timeout how long to wait for space, in units of {@code unit}
+     * @param unit    a {@code TimeUnit} determining how to interpret the {@code timeout} parameter
+     * @return the number of elements added, {@code batch.size()} unless the waiting time elapsed
+     * @throws InterruptedException if interrupted while waiting; elements added before are kept
+     * @throws NullPointerException if the batch or any of its elements is null
+     */
+    public int offerAll(Collection<? extends E> batch, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (batch == this)
+            throw new IllegalArgumentException();
+        // 锁外串好节点，锁内只拼接
+        Node<E> first = null, tail = null;
+        int n = 0;
+        for (E e : batch) {
+            if (e == null)
+                throw new NullPointerException();
+            Node<E> node = new Node<>(e);
+            if (first == null)
+                first = node;
+            else
+                tail.next = node;
+            tail = node;
+            n++;
+        }
+        long nanos = unit.toNanos(timeout);
+        int added = 0;
+        while (added < n) {
+            final int c;
+            final int k;
+            putLock.lockInterruptibly();
+            try {
+                while (count.get() == capacity) {
+                    if (nanos <= 0L)
+                        return added;
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                int remaining = n - added;
+                k = Math.min(remaining, capacity - count.get());
+                Node<E> end = tail;
+                Node<E> rest = null;
+                if (k < remaining) {
+                    end = first;
+                    for (int i = 1; i < k; i++)
+                        end = end.next;
+                    rest = end.next;
+                    end.next = null;
+                }
+                last.next = first;
+                last = end;
+                first = rest;
+                c = count.getAndAdd(k);
+                if (c + k < capacity)
+                    notFull.signal();
+            } finally {
+                putLock.unlock();
+            }
+            added += k;
+            if (c == 0)
+                signalNotEmpty();
+        }
+        return added;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        final E x;
+        final int c;
+        takeLock.lockInterruptibly();
+        try {
+            while (count.get() == 0)
+                notEmpty.await();
+            x = dequeue();
+            c = count.getAndDecrement();
+            if (c > 1)
+                notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity)
+            signalNotFull();
+        return x;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        final E x;
+        final int c;
+        long nanos = unit.toNanos(timeout);
+        takeLock.lockInterruptibly();
+        try {
+            while (count.get() == 0) {
+                if (nanos <= 0L)
+                    return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            x = dequeue();
+            c = count.getAndDecrement();
+            if (c > 1)
+                notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity)
+            signalNotFull();
+        return x;
+    }
+
+    @Override
+    public E poll() {
+        if (count.get() == 0)
+            return null;
+        final E x;
+        final int c;
+        takeLock.lock();
+        try {
+            if (count.get() == 0)
+                return null;
+            x = dequeue();
+            c = count.getAndDecrement();
+            if (c > 1)
+                notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity)
+            signalNotFull();
+        return x;
+    }
+
+    @Override
+    public E peek() {
+        if (count.get() == 0)
+            return null;
+        takeLock.lock();
+        try {
+            return (count.get() > 0) ? head.next.item : null;
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * 等到队列非空，最多等待给定的时间，然后一次取走至多 maxElements 个元素加入 c。
+     * 取走后还有剩余时唤醒下一个等待的消费者；只有取走前队列是满的才唤醒生产者。
+     *
+     * @param c           the collection to transfer elements into
+     * @param maxElements the maximum number of elements to transfer
+     * @param timeout     how long to wait for the first element, in units of {@code unit}
+     * @param unit        a {@code TimeUnit} determining how to interpret the {@code timeout} parameter
+     * @return the number of elements transferred, 0 if the waiting time elapsed
+     * @throws InterruptedException     if interrupted while waiting
+     * @throws NullPointerException     if the specified collection is null
+     * @throws IllegalArgumentException if the specified collection is this queue
+     */
+    public int drainTo(Collection<? super E> c, int maxElements, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        if (maxElements <= 0)
+            return 0;
+        long nanos = unit.toNanos(timeout);
+        takeLock.lockInterruptibly();
+        boolean ready = false;
+        try {
+            while (count.get() == 0) {
+                if (nanos <= 0L)
+                    return 0;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            ready = true;
+        } finally {
+            if (!ready)
+                takeLock.unlock();
+        }
+        // 仍持有 takeLock，与 drainTo(Collection, int) 共用转移逻辑
+        return drainLocked(c, maxElements);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        if (maxElements <= 0)
+            return 0;
+        takeLock.lock();
+        return drainLocked(c, maxElements);
+    }
+
+    /**
+     * 调用方持有 takeLock，本方法负责释放。
+     */
+    private int drainLocked(Collection<? super E> c, int maxElements) {
+        boolean signalNotFull;
+        int i = 0;
+        try {
+            int n = Math.min(maxElements, count.get());
+            // count.get provides visibility to first n Nodes
+            Node<E> h = head;
+            try {
+                while (i < n) {
+                    Node<E> p = h.next;
+                    c.add(p.item);
+                    p.item = null;
+                    h.next = h;
+                    h = p;
+                    ++i;
+                }
+            } finally {
+                // Restore invariants even if c.add() threw
+                if (i > 0) {
+                    head = h;
+                    int before = count.getAndAdd(-i);
+                    signalNotFull = (before == capacity);
+                    if (before > i)
+                        notEmpty.signal();
+                } else {
+                    signalNotFull = false;
+                }
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (signalNotFull)
+            signalNotFull();
+        return i;
+    }
+
+    /**
+     * Unlinks interior Node p with predecessor pred.
+     */
+    private void unlink(Node<E> p, Node<E> pred) {
+        p.item = null;
+        pred.next = p.next;
+        if (last == p)
+            last = pred;
+        if (count.getAndDecrement() == capacity)
+            notFull.signal();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null)
+            return false;
+        fullyLock();
+        try {
+            for (Node<E> pred = head, p = pred.next; p != null; pred = p, p = p.next) {
+                if (o.equals(p.item)) {
+                    unlink(p, pred);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null)
+            return false;
+        fullyLock();
+        try {
+            for (Node<E> p = head.next; p != null; p = p.next)
+                if (o.equals(p.item))
+                    return true;
+            return false;
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        fullyLock();
+        try {
+            for (Node<E> p, h = head; (p = h.next) != null; h = p) {
+                h.next = h;
+                p.item = null;
+            }
+            head = last;
+            if (count.getAndSet(0) == capacity)
+                notFull.signal();
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    private class Itr implements Iterator<E> {
+
+        private Node<E> current;
+
+        private Node<E> lastRet;
+
+        private E currentElement;
+
+        Itr() {
+            fullyLock();
+            try {
+                current = head.next;
+                if (current != null)
+                    currentElement = current.item;
+            } finally {
+                fullyUnlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        /**
+         * Returns the next live successor of p, or null if no such.
+         * Unlike other traversal methods, iterators need to handle both:
+         * - dequeued nodes (p.next == p)
+         * - (possibly multiple) interior removed nodes (p.item == null)
+         */
+        private Node<E> nextNode(Node<E> p) {
+            for (; ; ) {
+                Node<E> s = p.next;
+                if (s == p)
+                    return head.next;
+                if (s == null || s.item != null)
+                    return s;
+                p = s;
+            }
+        }
+
+        @Override
+        public E next() {
+            fullyLock();
+            try {
+                if (current == null)
+                    throw new NoSuchElementException();
+                E x = currentElement;
+                lastRet = current;
+                current = nextNode(current);
+                currentElement = (current == null) ? null : current.item;
+                return x;
+            } finally {
+                fullyUnlock();
+            }
+        }
+
+        @Override
+        public void remove() {
+            if (lastRet == null)
+                throw new IllegalStateException();
+            fullyLock();
+            try {
+                Node<E> node = lastRet;
+                lastRet = null;
+                for (Node<E> pred = head, p = pred.next; p != null; pred = p, p = p.next) {
+                    if (p == node) {
+                        unlink(p, pred);
+                        break;
+                    }
+                }
+            } finally {
+                fullyUnlock();
+            }
+        }
+    }
+}
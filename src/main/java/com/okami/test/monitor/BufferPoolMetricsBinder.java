@@ -0,0 +1,54 @@
+package com.okami.test.monitor;
+
+import com.okami.test.aqs.BufferPool;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+
+/**
+ * 把每个 {@link BufferPool} 注册为一组以 pool 标签区分的指标，与 {@link LockMetricsBinder} 一样都是读取时才求值。
+ */
+public class BufferPoolMetricsBinder implements MeterBinder {
+
+    private final List<BufferPool> pools;
+
+    public BufferPoolMetricsBinder(List<BufferPool> pools) {
+        this.pools = pools;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (BufferPool pool : pools)
+            bind(registry, pool);
+    }
+
+    private static void bind(MeterRegistry registry, BufferPool pool) {
+        Tags tags = Tags.of("pool", pool.getName(), "type", pool.isDirect() ? "direct" : "heap");
+        FunctionCounter.builder("aqs.buffer.pool.hits", pool, BufferPool::getHits)
+                .tags(tags)
+                .description("Borrows served by a recycled buffer")
+                .register(registry);
+        FunctionCounter.builder("aqs.buffer.pool.misses", pool, BufferPool::getMisses)
+                .tags(tags)
+                .description("Borrows that allocated a new buffer")
+                .register(registry);
+        FunctionCounter.builder("aqs.buffer.pool.exhausted", pool, BufferPool::getExhausted)
+                .tags(tags)
+                .description("Borrows that timed out or failed fast because the size class was exhausted")
+                .register(registry);
+        Gauge.builder("aqs.buffer.pool.outstanding", pool, BufferPool::getOutstandingBytes)
+                .tags(tags)
+                .baseUnit("bytes")
+                .description("Capacity of buffers borrowed and not yet released")
+                .register(registry);
+        Gauge.builder("aqs.buffer.pool.idle", pool, BufferPool::getIdleBytes)
+                .tags(tags)
+                .baseUnit("bytes")
+                .description("Capacity of released buffers kept for reuse, thread caches included")
+                .register(registry);
+    }
+}
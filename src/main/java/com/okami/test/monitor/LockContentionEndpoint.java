@@ -0,0 +1,71 @@
+package com.okami.test.monitor;
+
+import com.okami.test.aqs.ContentionStats;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * /actuator/locks 列出所有命名锁的竞争统计，/actuator/locks/{name} 查看单个锁，包括直方图的各个桶。
+ */
+@Endpoint(id = "locks")
+public class LockContentionEndpoint {
+
+    @ReadOperation
+    public Map<String, Object> locks() {
+        Map<String, Object> locks = new TreeMap<>();
+        for (ContentionStats stats : ContentionStats.registered())
+            locks.put(stats.getName(), describe(stats, false));
+        return locks;
+    }
+
+    /**
+     * @return 统计信息，锁不存在时返回 null（响应 404）
+     */
+    @ReadOperation
+    public Map<String, Object> lock(@Selector String name) {
+        for (ContentionStats stats : ContentionStats.registered()) {
+            if (stats.getName().equals(name))
+                return describe(stats, true);
+        }
+        return null;
+    }
+
+    private static Map<String, Object> describe(ContentionStats stats, boolean buckets) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("acquisitions", stats.getAcquisitions());
+        m.put("contendedAcquisitions", stats.getContendedAcquisitions());
+        m.put("parks", stats.getParks());
+        m.put("cancellations", stats.getCancellations());
+        m.put("queueDepth", stats.getQueueDepth());
+        m.put("maxQueueDepth", stats.getMaxQueueDepth());
+        m.put("waitTime", describe(stats.getWaitTime(), buckets));
+        m.put("holdTime", describe(stats.getHoldTime(), buckets));
+        return m;
+    }
+
+    private static Map<String, Object> describe(ContentionStats.Histogram h, boolean buckets) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long count = h.getCount();
+        m.put("count", count);
+        m.put("meanNanos", count == 0L ? 0L : h.getTotalNanos() / count);
+        m.put("p50Nanos", h.valueAtQuantile(0.5));
+        m.put("p99Nanos", h.valueAtQuantile(0.99));
+        m.put("p999Nanos", h.valueAtQuantile(0.999));
+        if (buckets) {
+            // 键是桶的上界（纳秒），只列出非空的桶
+            Map<String, Long> b = new LinkedHashMap<>();
+            long[] counts = h.getBucketCounts();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0L)
+                    b.put(i == 0 ? "0" : i >= 63 ? "+Inf" : Long.toString((1L << i) - 1), counts[i]);
+            }
+            m.put("buckets", b);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,117 @@
+package com.okami.test.monitor;
+
+import com.okami.test.aqs.ContentionStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 把每个 {@link ContentionStats} 注册为一组以 lock 标签区分的指标，之后注册的锁也会补上。
+ * 指标都是读取时才从统计对象求值的函数式指标，不在加锁路径上产生任何开销。
+ * <p>
+ * 补注册靠 {@link ContentionStats#subscribe} 的全局订阅，订阅会引用 MeterRegistry。
+ * {@link #close()}（Spring 容器关闭时自动调用）取消本对象的全部订阅；
+ * 不经过 close 而单独关闭的 MeterRegistry，在下一次有锁注册时由订阅自己发现并退订。
+ */
+public class LockMetricsBinder implements MeterBinder, AutoCloseable {
+
+    /**
+     * 以 Gauge 导出的等待时间分位数。
+     */
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final List<Binding> bindings = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Binding binding = new Binding(registry);
+        bindings.add(binding);
+        // 同名同标签的指标重复注册时返回已有的，subscribe 的重复通知无害
+        ContentionStats.subscribe(binding);
+    }
+
+    /**
+     * 取消所有订阅，已注册的指标留在各自的 MeterRegistry 中。
+     */
+    @Override
+    public void close() {
+        for (Binding binding : bindings)
+            binding.unsubscribe();
+    }
+
+    private static void bind(MeterRegistry registry, ContentionStats stats) {
+        Tags tags = Tags.of("lock", stats.getName());
+        FunctionCounter.builder("aqs.lock.acquisitions", stats, ContentionStats::getAcquisitions)
+                .tags(tags)
+                .description("Successful acquisitions, exclusive ones counted in batches")
+                .register(registry);
+        FunctionCounter.builder("aqs.lock.acquisitions.contended", stats, ContentionStats::getContendedAcquisitions)
+                .tags(tags)
+                .description("Acquisitions that had to queue")
+                .register(registry);
+        FunctionCounter.builder("aqs.lock.parks", stats, ContentionStats::getParks)
+                .tags(tags)
+                .description("Times a queued thread parked")
+                .register(registry);
+        FunctionCounter.builder("aqs.lock.cancellations", stats, ContentionStats::getCancellations)
+                .tags(tags)
+                .description("Queued acquisitions abandoned by timeout, interrupt or cancellation")
+                .register(registry);
+        Gauge.builder("aqs.lock.queue.depth", stats, ContentionStats::getQueueDepth)
+                .tags(tags)
+                .description("Acquisitions currently queued")
+                .register(registry);
+        Gauge.builder("aqs.lock.queue.depth.max", stats, ContentionStats::getMaxQueueDepth)
+                .tags(tags)
+                .description("Largest queue depth observed")
+                .register(registry);
+        FunctionTimer.builder("aqs.lock.wait", stats,
+                s -> s.getWaitTime().getCount(), s -> s.getWaitTime().getTotalNanos(), TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .description("Time contended acquisitions spent queued")
+                .register(registry);
+        FunctionTimer.builder("aqs.lock.hold", stats,
+                s -> s.getHoldTime().getCount(), s -> s.getHoldTime().getTotalNanos(), TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .description("Sampled exclusive hold time")
+                .register(registry);
+        for (double q : QUANTILES) {
+            Gauge.builder("aqs.lock.wait.quantile", stats,
+                    s -> s.getWaitTime().valueAtQuantile(q) / 1e9)
+                    .tags(tags.and("quantile", Double.toString(q)))
+                    .baseUnit("seconds")
+                    .description("Upper bound of the power-of-two bucket holding the quantile")
+                    .register(registry);
+        }
+    }
+
+    private final class Binding implements Consumer<ContentionStats> {
+
+        private final MeterRegistry registry;
+
+        Binding(MeterRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public void accept(ContentionStats stats) {
+            if (registry.isClosed())
+                unsubscribe();
+            else
+                bind(registry, stats);
+        }
+
+        void unsubscribe() {
+            ContentionStats.unsubscribe(this);
+            bindings.remove(this);
+        }
+    }
+}
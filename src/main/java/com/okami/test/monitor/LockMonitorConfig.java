@@ -0,0 +1,33 @@
+package com.okami.test.monitor;
+
+import com.okami.test.aqs.BufferPool;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.stream.Collectors;
+
+/**
+ * 导出 aqs 包中命名锁的竞争统计：Micrometer 指标（aqs.lock.*，按 lock 标签区分）
+ * 与 actuator 端点 /actuator/locks。锁通过
+ * {@code lock.setContentionStats(ContentionStats.named("..."))} 开启统计后自动出现在两处。
+ * 容器中的 {@link BufferPool} 也导出为指标（aqs.buffer.pool.*，按 pool 标签区分）。
+ */
+@Configuration
+public class LockMonitorConfig {
+
+    @Bean
+    public LockMetricsBinder lockMetricsBinder() {
+        return new LockMetricsBinder();
+    }
+
+    @Bean
+    public BufferPoolMetricsBinder bufferPoolMetricsBinder(ObjectProvider<BufferPool> pools) {
+        return new BufferPoolMetricsBinder(pools.orderedStream().collect(Collectors.toList()));
+    }
+
+    @Bean
+    public LockContentionEndpoint lockContentionEndpoint() {
+        return new LockContentionEndpoint();
+    }
+}
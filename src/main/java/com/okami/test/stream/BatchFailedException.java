@@ -0,0 +1,23 @@
+package com.okami.test.stream;
+
+/**
+ * {@link BatchListener} 用来报告部分失败：只有 {@link #getFailedIndexes()} 中的消息需要重试，其余视为已处理。
+ */
+public class BatchFailedException extends RuntimeException {
+
+    private static final long serialVersionUID = 7184039826405118523L;
+
+    private final int[] failedIndexes;
+
+    /**
+     * @param failedIndexes 失败的消息在传给监听器的那一批中的下标
+     */
+    public BatchFailedException(String message, Throwable cause, int... failedIndexes) {
+        super(message, cause);
+        this.failedIndexes = failedIndexes.clone();
+    }
+
+    public int[] getFailedIndexes() {
+        return failedIndexes.clone();
+    }
+}
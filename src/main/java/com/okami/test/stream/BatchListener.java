@@ -0,0 +1,20 @@
+package com.okami.test.stream;
+
+import org.springframework.messaging.Message;
+
+import java.util.List;
+
+/**
+ * 批量消费回调，由 {@link BatchingMessageHandler} 在它自己的分发线程上调用，同一时刻只有一批在处理。
+ * <p>
+ * 正常返回表示整批成功，整批确认；抛出 {@link BatchFailedException} 表示只有其中列出的消息失败，
+ * 只重试这些；抛出其他异常表示整批失败。
+ */
+@FunctionalInterface
+public interface BatchListener {
+
+    /**
+     * @param batch 按到达顺序排列的消息，不可修改
+     */
+    void onBatch(List<Message<byte[]>> batch) throws Exception;
+}
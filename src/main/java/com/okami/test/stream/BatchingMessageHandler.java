@@ -0,0 +1,443 @@
+package com.okami.test.stream;
+
+import com.okami.test.aqs.ConditionObject;
+import com.okami.test.aqs.ExclusiveLock;
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.integration.acks.AcknowledgmentCallback;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.converter.MessageConversionException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * 把输入通道上逐条到达的消息攒成批交给 {@link BatchListener}。一批在以下任一条件满足时发出：
+ * 条数达到 maxCount；字节数达到 maxBytes（放不下下一条时也提前发出，单条超过 maxBytes 的消息单独成批）；
+ * 第一条到达后等待了 maxWait。
+ * <p>
+ * 确认按批进行。binder 的消费线程调用 {@link #handleMessage} 后阻塞到自己那条消息所在的批处理完成：
+ * 成功就正常返回，binder 确认；失败就抛出异常，binder 只重投这一条。消息带有
+ * {@link AcknowledgmentCallback}（手动确认的 binder）时不阻塞，批处理完成后逐条 ACCEPT 或 REQUEUE。
+ * 因此同时攒在一批里的消息数受 binder 消费线程数限制，consumer.concurrency 必须不小于 maxCount
+ * （见 {@link SinkBatchReceiver}）。等待的调用方以所在批的标记为标签等在条件上，一批完成只唤醒这一批的调用方。
+ * <p>
+ * 部分失败（监听器抛出 {@link BatchFailedException}）时，成功的消息立即确认，
+ * 失败的子集作为一个更小的批再交给监听器，最多重试 maxRetries 次，之后仍失败的才交还给 binder。
+ * <p>
+ * 待发的批受 maxCount 与 maxBytes 约束，放不下时调用方等待分发线程取走当前批，起背压作用。
+ */
+public class BatchingMessageHandler implements MessageHandler, AutoCloseable {
+
+    private static final class Entry {
+
+        final Message<byte[]> message;
+
+        final int size;
+
+        /**
+         * 手动确认的回调；为 null 时调用方在 handleMessage 中等待结果
+         */
+        final AcknowledgmentCallback callback;
+
+        /**
+         * 所在批的标记，调用方以它为标签等待
+         */
+        final Object batch;
+
+        /**
+         * 本轮失败的原因，分发线程独占
+         */
+        Throwable failure;
+
+        volatile boolean done;
+
+        Entry(Message<byte[]> message, AcknowledgmentCallback callback, Object batch) {
+            this.message = message;
+            this.size = message.getPayload().length;
+            this.callback = callback;
+            this.batch = batch;
+        }
+    }
+
+    private final String name;
+
+    private final BatchListener listener;
+
+    private final int maxCount;
+
+    private final long maxBytes;
+
+    private final long maxWaitNanos;
+
+    private final int maxRetries;
+
+    private final ExclusiveLock lock = new ExclusiveLock();
+
+    /**
+     * 分发线程等待批满或超时
+     */
+    private final Condition batchReady = lock.newCondition();
+
+    /**
+     * 调用方等待当前批被取走
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * 调用方等待自己的消息处理完成，以所在批的标记为标签
+     */
+    private final ConditionObject completed = (ConditionObject) lock.newCondition();
+
+    private List<Entry> pending = new ArrayList<>();
+
+    /**
+     * 当前批的标记，批被取走时换新
+     */
+    private Object pendingBatch = new Object();
+
+    private long pendingBytes;
+
+    /**
+     * 当前批第一条消息到达的时间
+     */
+    private long firstArrival;
+
+    /**
+     * 有调用方因为放不下而等待，当前批应立即发出
+     */
+    private boolean overflow;
+
+    private boolean closed;
+
+    private final Thread dispatcher;
+
+    // 统计，只由分发线程写入
+
+    private volatile long batchCount;
+
+    private volatile long messageCount;
+
+    private volatile long retryCount;
+
+    private volatile long failureCount;
+
+    /**
+     * @param name       名称，通常是绑定名，用于分发线程名与异常信息
+     * @param maxCount   一批的最大条数
+     * @param maxBytes   一批的最大载荷字节数
+     * @param maxWait    一批第一条消息到达后最多等待多久
+     * @param maxRetries 部分失败时失败子集的最大重试次数，0 表示不重试
+     * @throws IllegalArgumentException if maxCount or maxBytes is not positive, or maxWait or maxRetries is negative
+     */
+    public BatchingMessageHandler(String name, BatchListener listener, int maxCount, long maxBytes,
+                                  long maxWait, TimeUnit unit, int maxRetries) {
+        if (maxCount <= 0 || maxBytes <= 0 || maxWait < 0 || maxRetries < 0)
+            throw new IllegalArgumentException();
+        if (listener == null)
+            throw new NullPointerException();
+        this.name = name;
+        this.listener = listener;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.maxRetries = maxRetries;
+        this.dispatcher = new Thread(this::dispatchLoop, "stream-batch-" + name);
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public void handleMessage(Message<?> message) {
+        Message<byte[]> bytes = toBytes(message);
+        AcknowledgmentCallback callback = manualAcknowledgment(message);
+        Entry entry;
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            if ((entry = enqueue(bytes, callback)) == null) {
+                if (callback != null)
+                    callback.acknowledge(AcknowledgmentCallback.Status.REQUEUE);
+                throw new MessageDeliveryException(message, "Batching handler " + name + " is closed");
+            }
+            if (callback != null)
+                return;
+            while (!entry.done) {
+                try {
+                    completed.await(entry.batch);
+                } catch (InterruptedException e) {
+                    // 消息已交给分发线程，仍要等到结果再返回
+                    interrupted = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        if (entry.failure != null)
+            throw new MessageHandlingException(message, "Batch listener " + name + " failed", entry.failure);
+    }
+
+    /**
+     * 放入当前批，放不下时等待分发线程取走当前批。
+     *
+     * @return the entry, or {@code null} if closed
+     */
+    private Entry enqueue(Message<byte[]> message, AcknowledgmentCallback callback) {
+        int size = message.getPayload().length;
+        for (; ; ) {
+            if (closed)
+                return null;
+            if (pending.isEmpty())
+                break;
+            if (pending.size() < maxCount && pendingBytes + size <= maxBytes)
+                break;
+            overflow = true;
+            batchReady.signal();
+            notFull.awaitUninterruptibly();
+        }
+        if (pending.isEmpty()) {
+            firstArrival = System.nanoTime();
+            batchReady.signal();
+        }
+        Entry entry = new Entry(message, callback, pendingBatch);
+        pending.add(entry);
+        pendingBytes += entry.size;
+        if (pending.size() >= maxCount || pendingBytes >= maxBytes)
+            batchReady.signal();
+        return entry;
+    }
+
+    /**
+     * 关闭消息的自动确认，改为批处理完成后手动确认。
+     *
+     * @return null if the message has no callback or the callback cannot be acknowledged manually
+     */
+    private static AcknowledgmentCallback manualAcknowledgment(Message<?> message) {
+        AcknowledgmentCallback callback = StaticMessageHeaderAccessor.getAcknowledgmentCallback(message);
+        if (callback == null)
+            return null;
+        try {
+            callback.noAutoAck();
+            return callback;
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Message<byte[]> toBytes(Message<?> message) {
+        Object payload = message.getPayload();
+        if (payload instanceof byte[])
+            return (Message<byte[]>) message;
+        if (payload instanceof String)
+            return MessageBuilder.withPayload(((String) payload).getBytes(StandardCharsets.UTF_8))
+                    .copyHeaders(message.getHeaders())
+                    .build();
+        throw new MessageConversionException(message,
+                "Expected a byte[] or String payload but got " + payload.getClass().getName());
+    }
+
+    private void dispatchLoop() {
+        for (; ; ) {
+            List<Entry> batch;
+            lock.lock();
+            try {
+                batch = awaitBatch();
+            } finally {
+                lock.unlock();
+            }
+            if (batch == null)
+                return;
+            try {
+                dispatch(batch);
+            } catch (Throwable ex) {
+                // 兜底：分发线程退出后所有调用方都会永远等下去，确认回调的异常已在 complete 中逐条处理
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+            }
+        }
+    }
+
+    /**
+     * 等到当前批满足发出条件后取走它。
+     *
+     * @return null if closed and nothing is pending
+     */
+    private List<Entry> awaitBatch() {
+        for (; ; ) {
+            if (pending.isEmpty()) {
+                if (closed)
+                    return null;
+                batchReady.awaitUninterruptibly();
+                continue;
+            }
+            long remaining = firstArrival + maxWaitNanos - System.nanoTime();
+            if (!closed && !overflow && remaining > 0 && pending.size() < maxCount && pendingBytes < maxBytes) {
+                try {
+                    batchReady.awaitNanos(remaining);
+                } catch (InterruptedException ignored) {
+                }
+                continue;
+            }
+            List<Entry> batch = pending;
+            pending = new ArrayList<>(Math.min(maxCount, 1024));
+            pendingBatch = new Object();
+            pendingBytes = 0;
+            overflow = false;
+            notFull.signalAll();
+            return batch;
+        }
+    }
+
+    private void dispatch(List<Entry> batch) {
+        batchCount++;
+        messageCount += batch.size();
+        List<Entry> attempt = batch;
+        for (int retries = 0; ; retries++) {
+            invoke(attempt);
+            List<Entry> failed = new ArrayList<>();
+            List<Entry> succeeded = new ArrayList<>(attempt.size());
+            for (Entry e : attempt)
+                (e.failure == null ? succeeded : failed).add(e);
+            complete(succeeded);
+            if (failed.isEmpty())
+                return;
+            if (retries >= maxRetries) {
+                failureCount += failed.size();
+                complete(failed);
+                return;
+            }
+            retryCount += failed.size();
+            attempt = failed;
+        }
+    }
+
+    /**
+     * 调用监听器，把失败原因记在失败的消息上。
+     */
+    private void invoke(List<Entry> entries) {
+        List<Message<byte[]>> messages = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            e.failure = null;
+            messages.add(e.message);
+        }
+        try {
+            listener.onBatch(Collections.unmodifiableList(messages));
+        } catch (BatchFailedException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            int[] failedIndexes = ex.getFailedIndexes();
+            for (int i : failedIndexes) {
+                if (i < 0 || i >= entries.size()) {
+                    // 下标无效，无法知道哪些成功了，按整批失败处理
+                    for (Entry e : entries)
+                        e.failure = ex;
+                    return;
+                }
+            }
+            for (int i : failedIndexes)
+                entries.get(i).failure = cause;
+        } catch (Throwable ex) {
+            for (Entry e : entries)
+                e.failure = ex;
+        }
+    }
+
+    /**
+     * 确认异步的消息、标记同步的消息完成并唤醒其调用方。
+     * 一条消息的确认回调抛出异常只交给分发线程的 UncaughtExceptionHandler，不影响同一批的其他消息。
+     */
+    private void complete(List<Entry> entries) {
+        if (entries.isEmpty())
+            return;
+        boolean waiters = false;
+        try {
+            for (Entry e : entries) {
+                if (e.callback != null) {
+                    acknowledge(e);
+                } else {
+                    e.done = true;
+                    waiters = true;
+                }
+            }
+        } finally {
+            if (waiters) {
+                // 同一批的消息，重试的子集也是；只唤醒这一批的调用方，其他批的不受打扰
+                lock.lock();
+                try {
+                    completed.signalAll(entries.get(0).batch);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private static void acknowledge(Entry e) {
+        try {
+            e.callback.acknowledge(e.failure == null
+                    ? AcknowledgmentCallback.Status.ACCEPT
+                    : AcknowledgmentCallback.Status.REQUEUE);
+        } catch (Throwable ex) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+        }
+    }
+
+    /**
+     * 不再接收新消息，处理完已接收的消息后停止分发线程。等待时被中断则不再等待分发线程结束，保留中断状态返回。
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            batchReady.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 已发出的批数，不含重试。
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * 部分失败后重新交给监听器的消息数，每重试一次计一次。
+     */
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * 重试用尽后交还给 binder 的消息数。
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+}
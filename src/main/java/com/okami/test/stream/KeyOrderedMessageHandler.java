@@ -0,0 +1,387 @@
+package com.okami.test.stream;
+
+import com.okami.test.aqs.ExclusiveLock;
+import com.okami.test.aqs.TwoLockBlockingQueue;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.integration.acks.AcknowledgmentCallback;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.util.ErrorHandler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Function;
+
+/**
+ * 按消息键保序的并行消费：键的哈希决定消息进入 N 条通道中的哪一条，每条通道一个有界队列（{@link TwoLockBlockingQueue}）
+ * 加一个工作线程，按入队顺序把消息交给 delegate。同一个键总在同一条通道上，严格按到达顺序处理；
+ * 不同的键落在不同通道上时并行处理，一条慢消息只阻塞与它同通道的键。没有键的消息都进入第 0 条通道。
+ * <p>
+ * 通道队列满时 binder 的消费线程在 {@link #handleMessage} 中等待，起背压作用。
+ * <p>
+ * 处理失败的消息在通道上原地重试，最多 maxRetries 次，每次间隔 retryInterval，重试期间同一通道的后续消息等待，
+ * 所以重试成功时键内顺序不变。重试用尽仍失败的消息按下文交还 binder 重投或交给 errorHandler，
+ * 通道继续处理后续消息：重投的消息会排在同一个键的后续消息之后，这是为了不让一条毒消息永远卡住整条通道。
+ * 要求严格保序的绑定把 maxRetries 设为 -1，失败的消息一直重试到成功为止，关闭时也不放弃（close 等待超时返回）。
+ * <p>
+ * 消息带有 {@link AcknowledgmentCallback}（手动确认的 binder）时按提交顺序确认：消息到达时记入提交日志，
+ * 处理完成后只有它之前的消息都已完成才确认，成功 ACCEPT、失败 REQUEUE，与逐条顺序消费时 binder 看到的确认顺序相同。
+ * 已完成但还没轮到确认的消息数不超过 laneCount * queueCapacity，超过时消费线程同样等待。
+ * 没有回调的消息在 handleMessage 返回时就已被 binder 确认，binder 不会再重投，处理失败时交给 errorHandler，
+ * 通常是把 {@link org.springframework.messaging.support.ErrorMessage} 发到绑定错误通道的
+ * {@link org.springframework.integration.channel.MessagePublishingErrorHandler}（见 {@link SinkOrderedReceiver}），
+ * 由错误通道的订阅者重发或转入死信。
+ */
+public class KeyOrderedMessageHandler implements MessageHandler, AutoCloseable {
+
+    private static final class Entry {
+
+        final Message<?> message;
+
+        final AcknowledgmentCallback callback;
+
+        /**
+         * 以下两个字段在 commitLock 内读写
+         */
+        boolean done;
+
+        boolean failed;
+
+        Entry(Message<?> message, AcknowledgmentCallback callback) {
+            this.message = message;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * 关闭时放入每条通道，工作线程取到后退出
+     */
+    private static final Entry SHUTDOWN = new Entry(null, null);
+
+    /**
+     * {@link #close()} 等待工作线程结束的时间
+     */
+    static final long DEFAULT_CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final String name;
+
+    private final MessageHandler delegate;
+
+    private final Function<? super Message<?>, ?> keyExtractor;
+
+    private final ErrorHandler errorHandler;
+
+    private final List<TwoLockBlockingQueue<Entry>> lanes;
+
+    private final Thread[] workers;
+
+    private final int maxUncommitted;
+
+    private final ExclusiveLock commitLock = new ExclusiveLock();
+
+    /**
+     * 消费线程等待提交日志有空间
+     */
+    private final Condition commitLogNotFull = commitLock.newCondition();
+
+    /**
+     * 按到达顺序排列、尚未确认的手动确认消息
+     */
+    private final ArrayDeque<Entry> commitLog = new ArrayDeque<>();
+
+    private volatile boolean closed;
+
+    private final LongAdder processedCount = new LongAdder();
+
+    private final LongAdder retryCount = new LongAdder();
+
+    private final LongAdder failureCount = new LongAdder();
+
+    private final int maxRetries;
+
+    private final long retryIntervalNanos;
+
+    /**
+     * @param name          名称，通常是绑定名，用于工作线程名与异常信息
+     * @param delegate      逐条处理消息，在通道的工作线程上调用
+     * @param laneCount     通道数，即最大并行度
+     * @param queueCapacity 每条通道排队的消息数上限
+     * @param keyExtractor  从消息中取出键，返回 null 表示没有键
+     * @param errorHandler  没有确认回调的消息处理失败时调用，参数是带有原消息的 {@link MessageHandlingException}
+     * @param maxRetries    失败的消息在通道上原地重试的次数，0 表示不重试，-1 表示一直重试到成功
+     * @param retryInterval 两次重试之间的间隔
+     * @param unit          retryInterval 的单位
+     * @throws IllegalArgumentException if laneCount or queueCapacity is not positive,
+     *                                  or maxRetries is less than -1, or retryInterval is negative
+     */
+    public KeyOrderedMessageHandler(String name, MessageHandler delegate, int laneCount, int queueCapacity,
+                                    Function<? super Message<?>, ?> keyExtractor, ErrorHandler errorHandler,
+                                    int maxRetries, long retryInterval, TimeUnit unit) {
+        if (laneCount <= 0 || queueCapacity <= 0 || maxRetries < -1 || retryInterval < 0)
+            throw new IllegalArgumentException();
+        this.maxRetries = maxRetries;
+        this.retryIntervalNanos = unit.toNanos(retryInterval);
+        this.name = name;
+        this.delegate = Objects.requireNonNull(delegate);
+        this.keyExtractor = Objects.requireNonNull(keyExtractor);
+        this.errorHandler = Objects.requireNonNull(errorHandler);
+        this.maxUncommitted = (int) Math.min(Integer.MAX_VALUE, (long) laneCount * queueCapacity);
+        this.lanes = new ArrayList<>(laneCount);
+        this.workers = new Thread[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            TwoLockBlockingQueue<Entry> lane = new TwoLockBlockingQueue<>(queueCapacity);
+            lanes.add(lane);
+            workers[i] = new Thread(() -> runLane(lane), "stream-ordered-" + name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * 以指定消息头的值为键。
+     */
+    public static Function<Message<?>, Object> headerKey(String header) {
+        return message -> message.getHeaders().get(header);
+    }
+
+    /**
+     * 以 SpEL 表达式的值为键，根对象是消息，例如 {@code headers['tenant'] + ':' + headers['orderId']}。
+     */
+    public static Function<Message<?>, Object> expressionKey(String expression) {
+        Expression parsed = new SpelExpressionParser().parseExpression(expression);
+        return parsed::getValue;
+    }
+
+    @Override
+    public void handleMessage(Message<?> message) {
+        TwoLockBlockingQueue<Entry> lane = lanes.get(laneOf(keyExtractor.apply(message)));
+        Entry entry = new Entry(message, manualAcknowledgment(message));
+        if (entry.callback != null && !appendToCommitLog(entry)) {
+            entry.callback.acknowledge(AcknowledgmentCallback.Status.REQUEUE);
+            throw new MessageDeliveryException(message, "Interrupted while waiting for commits on " + name);
+        }
+        boolean enqueued = false;
+        try {
+            if (closed)
+                throw new MessageDeliveryException(message, "Key-ordered handler " + name + " is closed");
+            lane.put(entry);
+            enqueued = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageDeliveryException(message, "Interrupted while waiting for lane on " + name);
+        } finally {
+            if (!enqueued && entry.callback != null)
+                commit(entry, true);
+        }
+    }
+
+    int laneOf(Object key) {
+        if (key == null)
+            return 0;
+        int h = key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), lanes.size());
+    }
+
+    /**
+     * 关闭消息的自动确认，改为按提交顺序手动确认。
+     *
+     * @return null if the message has no callback or the callback cannot be acknowledged manually
+     */
+    private static AcknowledgmentCallback manualAcknowledgment(Message<?> message) {
+        AcknowledgmentCallback callback = StaticMessageHeaderAccessor.getAcknowledgmentCallback(message);
+        if (callback == null)
+            return null;
+        try {
+            callback.noAutoAck();
+            return callback;
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return false if interrupted while waiting for room
+     */
+    private boolean appendToCommitLog(Entry entry) {
+        commitLock.lock();
+        try {
+            while (commitLog.size() >= maxUncommitted) {
+                try {
+                    commitLogNotFull.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            commitLog.addLast(entry);
+            return true;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * 标记完成，并按到达顺序确认日志头部所有已完成的消息。
+     */
+    private void commit(Entry entry, boolean failed) {
+        commitLock.lock();
+        try {
+            entry.done = true;
+            entry.failed = failed;
+            Entry head;
+            boolean acknowledged = false;
+            while ((head = commitLog.peekFirst()) != null && head.done) {
+                commitLog.pollFirst();
+                head.callback.acknowledge(head.failed
+                        ? AcknowledgmentCallback.Status.REQUEUE
+                        : AcknowledgmentCallback.Status.ACCEPT);
+                acknowledged = true;
+            }
+            if (acknowledged)
+                commitLogNotFull.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void runLane(TwoLockBlockingQueue<Entry> lane) {
+        for (; ; ) {
+            Entry entry;
+            try {
+                entry = lane.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (entry == SHUTDOWN)
+                return;
+            Throwable failure = process(entry.message);
+            // 原地重试，同一通道的后续消息等待，键内顺序不变
+            for (int retries = 0; failure != null && (maxRetries < 0 || retries < maxRetries); retries++) {
+                retryCount.increment();
+                pause();
+                failure = process(entry.message);
+            }
+            if (failure != null)
+                failureCount.increment();
+            processedCount.increment();
+            try {
+                if (entry.callback != null)
+                    commit(entry, failure != null);
+                else if (failure != null)
+                    errorHandler.handleError(new MessageHandlingException(entry.message,
+                            "Key-ordered handler " + name + " failed", failure));
+            } catch (Throwable ex) {
+                // 确认回调或 errorHandler 抛出的异常不能让工作线程退出，否则这条通道上的键都会停下
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+            }
+        }
+    }
+
+    private Throwable process(Message<?> message) {
+        try {
+            delegate.handleMessage(message);
+            return null;
+        } catch (Throwable ex) {
+            return ex;
+        }
+    }
+
+    private void pause() {
+        try {
+            TimeUnit.NANOSECONDS.sleep(retryIntervalNanos);
+        } catch (InterruptedException ignored) {
+            // 与 take 一样不响应中断，工作线程只凭关闭标记退出
+        }
+    }
+
+    /**
+     * 最多等待 {@link #DEFAULT_CLOSE_TIMEOUT_SECONDS} 秒的 {@link #close(long, TimeUnit)}。
+     */
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 不再接收新消息，处理完已排队的消息后停止工作线程。应在绑定停止、不再有 handleMessage 调用之后调用。
+     * 超时或等待时被中断（保留中断状态）则不再等待；卡在某条消息上的工作线程继续运行，处理完已排队的消息后退出（守护线程）。
+     *
+     * @return 所有工作线程是否都已结束
+     */
+    public boolean close(long timeout, TimeUnit unit) {
+        closed = true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (TwoLockBlockingQueue<Entry> lane : lanes)
+                if (!lane.offer(SHUTDOWN, deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                    return false;
+            for (Thread worker : workers) {
+                TimeUnit.NANOSECONDS.timedJoin(worker, deadline - System.nanoTime());
+                if (worker.isAlive())
+                    return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * 各通道中排队等待处理的消息数之和。
+     */
+    public int getQueuedCount() {
+        int n = 0;
+        for (TwoLockBlockingQueue<Entry> lane : lanes)
+            n += lane.size();
+        return n;
+    }
+
+    /**
+     * 尚未确认的手动确认消息数，包括已处理完、在等更早的消息完成的。持续增长说明有一条消息很慢。
+     */
+    public int getUncommittedCount() {
+        commitLock.lock();
+        try {
+            return commitLog.size();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    public long getProcessedCount() {
+        return processedCount.sum();
+    }
+
+    /**
+     * @return 原地重试的次数
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * @return 重试用尽后仍失败的消息数
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+}
@@ -0,0 +1,44 @@
+package com.okami.test.stream;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.messaging.Message;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SinkReceiver} 的批量版本，okami.stream.bindings.input.batch.enabled=true 时代替它订阅 input 通道。
+ * <p>
+ * 没有手动确认回调时每条消息占住一个 binder 消费线程直到所在批处理完，一批最多攒到 consumer.concurrency 条，
+ * 所以 spring.cloud.stream.bindings.input.consumer.concurrency 小于 max-count 时启动失败，
+ * 而不是每批只有一两条、每条多等 max-wait。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "okami.stream.bindings.input.batch", name = "enabled", havingValue = "true")
+public class SinkBatchReceiver {
+
+    @Bean
+    @ServiceActivator(inputChannel = SinkReceiver.StreamInput.input)
+    public BatchingMessageHandler inputBatchHandler(StreamBindingProperties properties,
+                                                    BindingServiceProperties bindingServiceProperties) {
+        StreamBindingProperties.Batch batch = properties.getBinding(SinkReceiver.StreamInput.input).getBatch();
+        int concurrency = bindingServiceProperties.getConsumerProperties(SinkReceiver.StreamInput.input).getConcurrency();
+        if (concurrency < batch.getMaxCount())
+            throw new IllegalStateException("Binding " + SinkReceiver.StreamInput.input + " has consumer.concurrency "
+                    + concurrency + " but batch.max-count " + batch.getMaxCount()
+                    + "; a batch can hold at most one message per consumer thread");
+        return new BatchingMessageHandler(SinkReceiver.StreamInput.input, this::receive,
+                batch.getMaxCount(), batch.getMaxBytes().toBytes(),
+                batch.getMaxWait().toNanos(), TimeUnit.NANOSECONDS, batch.getMaxRetries());
+    }
+
+    public void receive(List<Message<byte[]>> batch) {
+        System.out.println("receive batch: " + batch.size());
+        for (Message<byte[]> message : batch)
+            System.out.println("receive: " + new String(message.getPayload()));
+    }
+}
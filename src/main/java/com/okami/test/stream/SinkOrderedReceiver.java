@@ -0,0 +1,67 @@
+package com.okami.test.stream;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.channel.MessagePublishingErrorHandler;
+import org.springframework.integration.context.IntegrationContextUtils;
+import org.springframework.integration.support.channel.BeanFactoryChannelResolver;
+import org.springframework.messaging.Message;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * {@link SinkReceiver} 的按键保序并行版本，okami.stream.bindings.input.ordered.enabled=true 时代替它订阅 input 通道。
+ * binder 仍以 concurrency 1 顺序投递，并行发生在 {@link KeyOrderedMessageHandler} 的通道上。
+ * <p>
+ * RocketMQ binder 不提供确认回调，消息交给通道时就已确认。处理失败的消息先在通道上原地重试，仍失败的以 ErrorMessage 发到绑定的错误通道
+ * {@code <destination>.<group>.errors}（Spring Cloud Stream 把它桥接到全局的 errorChannel），
+ * 没有配置 group 时直接发到 errorChannel；要重发或转入死信，在错误通道上订阅处理。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "okami.stream.bindings.input.ordered", name = "enabled", havingValue = "true")
+public class SinkOrderedReceiver {
+
+    @Bean
+    @ServiceActivator(inputChannel = SinkReceiver.StreamInput.input)
+    public KeyOrderedMessageHandler inputOrderedHandler(StreamBindingProperties properties,
+                                                        BindingServiceProperties bindingServiceProperties,
+                                                        BeanFactory beanFactory) {
+        StreamBindingProperties.Binding binding = properties.getBinding(SinkReceiver.StreamInput.input);
+        if (binding.getBatch().isEnabled())
+            throw new IllegalStateException("Binding " + SinkReceiver.StreamInput.input
+                    + " cannot enable both batch and ordered consumption");
+        StreamBindingProperties.Ordered ordered = binding.getOrdered();
+        Function<Message<?>, Object> keyExtractor = ordered.getKeyExpression() != null
+                ? KeyOrderedMessageHandler.expressionKey(ordered.getKeyExpression())
+                : KeyOrderedMessageHandler.headerKey(ordered.getKeyHeader());
+        return new KeyOrderedMessageHandler(SinkReceiver.StreamInput.input, this::receive,
+                ordered.getLaneCount(), ordered.getQueueCapacity(), keyExtractor,
+                bindingErrorHandler(bindingServiceProperties, beanFactory),
+                ordered.getMaxRetries(), ordered.getRetryInterval().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 错误通道在绑定时才由 binder 创建，按名字在出错时解析。
+     */
+    private static MessagePublishingErrorHandler bindingErrorHandler(BindingServiceProperties bindingServiceProperties,
+                                                                     BeanFactory beanFactory) {
+        String group = bindingServiceProperties.getGroup(SinkReceiver.StreamInput.input);
+        String destination = bindingServiceProperties.getBindingDestination(SinkReceiver.StreamInput.input);
+        MessagePublishingErrorHandler errorHandler =
+                new MessagePublishingErrorHandler(new BeanFactoryChannelResolver(beanFactory));
+        errorHandler.setDefaultErrorChannelName(group != null && destination != null
+                ? destination + "." + group + ".errors"
+                : IntegrationContextUtils.ERROR_CHANNEL_BEAN_NAME);
+        return errorHandler;
+    }
+
+    public void receive(Message<?> message) {
+        Object payload = message.getPayload();
+        System.out.println("receive: " + (payload instanceof byte[] ? new String((byte[]) payload) : payload));
+    }
+}
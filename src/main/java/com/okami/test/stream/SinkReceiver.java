@@ -1,15 +1,22 @@
 package com.okami.test.stream;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.NoneNestedConditions;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.Input;
 import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.messaging.SubscribableChannel;
 
 /**
  * @EnableBinding 该注解用来指定一个或多个定义了@Input或@Output注解的接口，以此实现对消息通道（Channel）的绑定
+ * <p>
+ * 逐条消费；开启批量消费时由 {@link SinkBatchReceiver} 代替，开启按键保序的并行消费时由 {@link SinkOrderedReceiver} 代替。
+ * 同一通道只能有一个订阅者，否则通道会在订阅者之间轮流分发。
  */
 //@EnableBinding(Sink.class)
 @EnableBinding(SinkReceiver.StreamInput.class)
+@Conditional(SinkReceiver.PerMessageCondition.class)
 public class SinkReceiver {
 
     @StreamListener(StreamInput.input)
@@ -18,6 +25,24 @@ public class SinkReceiver {
     }
 
 
+    /**
+     * 批量与按键保序都没有开启。
+     */
+    static class PerMessageCondition extends NoneNestedConditions {
+
+        PerMessageCondition() {
+            super(ConfigurationPhase.PARSE_CONFIGURATION);
+        }
+
+        @ConditionalOnProperty(prefix = "okami.stream.bindings.input.batch", name = "enabled", havingValue = "true")
+        static class Batch {
+        }
+
+        @ConditionalOnProperty(prefix = "okami.stream.bindings.input.ordered", name = "enabled", havingValue = "true")
+        static class Ordered {
+        }
+    }
+
     public interface StreamInput {
 
         String input = "input";
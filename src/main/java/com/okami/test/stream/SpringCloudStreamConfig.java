@@ -1,11 +1,23 @@
 package com.okami.test.stream;
 
+import com.okami.test.aqs.BufferPool;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @EnableBinding({SinkReceiver.StreamInput.class, SourceSender.StreamOutput.class})
 //@EnableBinding({StreamInput.class})
 //@EnableBinding({StreamOutput.class})
+@EnableConfigurationProperties(StreamBindingProperties.class)
 @Configuration
 public class SpringCloudStreamConfig {
+
+    /**
+     * 出站消息编码用的缓冲区，见 {@link StreamTestController}。
+     */
+    @Bean
+    public BufferPool encodeBufferPool() {
+        return BufferPool.heap("stream-encode", 256, 64 * 1024, 256);
+    }
 }
@@ -0,0 +1,213 @@
+package com.okami.test.stream;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按绑定名配置的消费方式，例如：
+ * <pre>
+ * okami.stream.bindings.input.batch.enabled=true
+ * okami.stream.bindings.input.batch.max-count=200
+ * okami.stream.bindings.input.ordered.enabled=true
+ * okami.stream.bindings.input.ordered.key-header=orderId
+ * </pre>
+ * 同一个绑定上批量与按键保序只能开启一个。
+ */
+@ConfigurationProperties("okami.stream")
+public class StreamBindingProperties {
+
+    private Map<String, Binding> bindings = new HashMap<>();
+
+    public Map<String, Binding> getBindings() {
+        return bindings;
+    }
+
+    public void setBindings(Map<String, Binding> bindings) {
+        this.bindings = bindings;
+    }
+
+    /**
+     * 没有配置过的绑定返回默认值。
+     */
+    public Binding getBinding(String name) {
+        return bindings.getOrDefault(name, new Binding());
+    }
+
+    public static class Binding {
+
+        private Batch batch = new Batch();
+
+        private Ordered ordered = new Ordered();
+
+        public Batch getBatch() {
+            return batch;
+        }
+
+        public void setBatch(Batch batch) {
+            this.batch = batch;
+        }
+
+        public Ordered getOrdered() {
+            return ordered;
+        }
+
+        public void setOrdered(Ordered ordered) {
+            this.ordered = ordered;
+        }
+    }
+
+    /**
+     * 见 {@link BatchingMessageHandler}。
+     */
+    public static class Batch {
+
+        /**
+         * 是否以批的方式消费，关闭时由逐条的 @StreamListener 消费
+         */
+        private boolean enabled;
+
+        private int maxCount = 100;
+
+        private DataSize maxBytes = DataSize.ofMegabytes(1);
+
+        private Duration maxWait = Duration.ofMillis(50);
+
+        /**
+         * 部分失败时失败子集在本地的重试次数，用尽后交还给 binder 重投
+         */
+        private int maxRetries = 2;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxCount() {
+            return maxCount;
+        }
+
+        public void setMaxCount(int maxCount) {
+            this.maxCount = maxCount;
+        }
+
+        public DataSize getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(DataSize maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+    }
+
+    /**
+     * 见 {@link KeyOrderedMessageHandler}。
+     */
+    public static class Ordered {
+
+        /**
+         * 是否按键分通道并行消费，关闭时由逐条的 @StreamListener 消费
+         */
+        private boolean enabled;
+
+        private int laneCount = Runtime.getRuntime().availableProcessors();
+
+        private int queueCapacity = 100;
+
+        /**
+         * 键所在的消息头
+         */
+        private String keyHeader = "key";
+
+        /**
+         * 计算键的 SpEL 表达式，根对象是消息；设置后忽略 keyHeader
+         */
+        private String keyExpression;
+
+        /**
+         * 失败的消息在通道上原地重试的次数，用尽后交还 binder 重投或发到错误通道，此时键内顺序不再保证；
+         * -1 表示一直重试到成功
+         */
+        private int maxRetries = 2;
+
+        private Duration retryInterval = Duration.ofSeconds(1);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getLaneCount() {
+            return laneCount;
+        }
+
+        public void setLaneCount(int laneCount) {
+            this.laneCount = laneCount;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public String getKeyHeader() {
+            return keyHeader;
+        }
+
+        public void setKeyHeader(String keyHeader) {
+            this.keyHeader = keyHeader;
+        }
+
+        public String getKeyExpression() {
+            return keyExpression;
+        }
+
+        public void setKeyExpression(String keyExpression) {
+            this.keyExpression = keyExpression;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public Duration getRetryInterval() {
+            return retryInterval;
+        }
+
+        public void setRetryInterval(Duration retryInterval) {
+            this.retryInterval = retryInterval;
+        }
+    }
+}
@@ -1,25 +1,64 @@
 package com.okami.test.stream;
 
 import com.google.common.base.Strings;
+import com.okami.test.aqs.BufferPool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
 @RestController
 public class StreamTestController {
 
+    /**
+     * 与 String.getBytes() 相同：平台默认字符集，无法编码的字符替换。
+     */
+    private static final ThreadLocal<CharsetEncoder> ENCODER = ThreadLocal.withInitial(() ->
+            Charset.defaultCharset().newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
     @Autowired
     private SourceSender.StreamOutput streamOutput;
 
+    @Autowired
+    private BufferPool encodeBufferPool;
+
     @GetMapping("/stream")
     public String test(@RequestParam("info") String info) {
         String message = Strings.isNullOrEmpty(info) ? "测试消息" : info;
-        MessageBuilder<byte[]> messageBuilder = MessageBuilder.withPayload(message.getBytes());
+        MessageBuilder<byte[]> messageBuilder = MessageBuilder.withPayload(encode(message));
         // 发送消息到通道
         streamOutput.output().send(messageBuilder.build());
         return message;
 //        streamInput.input()
     }
+
+    /**
+     * 等价于 message.getBytes()。getBytes 对非 Latin-1 字符串先按最坏情况分配一个临时数组、编码后再复制，
+     * 这里临时数组从池中借。载荷仍是新建的、长度恰好的数组：binder 可能异步发送，发送返回后还在引用它。
+     */
+    private byte[] encode(String message) {
+        CharsetEncoder encoder = ENCODER.get();
+        int maxBytes = (int) Math.ceil(message.length() * (double) encoder.maxBytesPerChar());
+        ByteBuffer buffer = encodeBufferPool.tryBorrow(maxBytes);
+        if (buffer == null)
+            return message.getBytes();
+        try {
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(message), buffer, true);
+            encoder.flush(buffer);
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        } finally {
+            encodeBufferPool.release(buffer);
+        }
+    }
 }
@@ -0,0 +1,130 @@
+package com.okami.test.aqs;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * aqs 包的原子操作后端（JDK 9+ 版本）。
+ * <p>
+ * 打包进多版本 jar 的 META-INF/versions/9，在 JDK 9+ 上替换 src/main/java 下基于字段更新器的版本。
+ * 两个版本必须保持相同的包级方法签名。
+ */
+final class Atomics {
+
+    // VarHandle mechanics
+    private static final VarHandle STATE;
+    private static final VarHandle LONG_STATE;
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+    private static final VarHandle PADDED_TAIL;
+    private static final VarHandle PINCOUNT;
+    private static final VarHandle PINCELLS;
+    private static final VarHandle PINS;
+
+    private static final VarHandle WAITSTATUS;
+    private static final VarHandle HANDOFF;
+    private static final VarHandle NEXT;
+    private static final VarHandle PREV;
+    private static final VarHandle THREAD;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            STATE = l.findVarHandle(AbstractQueuedSynchronizer.class, "state", int.class);
+            LONG_STATE = l.findVarHandle(AbstractQueuedLongSynchronizer.class, "state", long.class);
+            HEAD = l.findVarHandle(QueuedSynchronizer.class, "head", Node.class);
+            TAIL = l.findVarHandle(QueuedSynchronizer.class, "tail", Node.class);
+            PADDED_TAIL = l.findVarHandle(QueuedSynchronizer.TailField.class, "tail", Node.class);
+            PINCOUNT = l.findVarHandle(QueuedSynchronizer.class, "pinCount", int.class);
+            PINCELLS = l.findVarHandle(QueuedSynchronizer.class, "pinCells", QueuedSynchronizer.PinCell[].class);
+            PINS = l.findVarHandle(QueuedSynchronizer.PinCellField.class, "pins", int.class);
+            WAITSTATUS = l.findVarHandle(Node.class, "waitStatus", int.class);
+            HANDOFF = l.findVarHandle(Node.class, "handoff", int.class);
+            NEXT = l.findVarHandle(Node.class, "next", Node.class);
+            PREV = l.findVarHandle(Node.class, "prev", Node.class);
+            THREAD = l.findVarHandle(Node.class, "thread", Thread.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Atomics() {
+    }
+
+    static boolean casState(AbstractQueuedSynchronizer sync, int expect, int update) {
+        return STATE.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casState(AbstractQueuedLongSynchronizer sync, long expect, long update) {
+        return LONG_STATE.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casHead(QueuedSynchronizer sync, Node expect, Node update) {
+        return HEAD.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casTail(QueuedSynchronizer sync, Node expect, Node update) {
+        return TAIL.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casTail(QueuedSynchronizer.PaddedTail tail, Node expect, Node update) {
+        return PADDED_TAIL.compareAndSet(tail, expect, update);
+    }
+
+    static int getAndAddPinCount(QueuedSynchronizer sync, int delta) {
+        return (int) PINCOUNT.getAndAdd(sync, delta);
+    }
+
+    static boolean casPinCount(QueuedSynchronizer sync, int expect, int update) {
+        return PINCOUNT.compareAndSet(sync, expect, update);
+    }
+
+    static boolean casPinCells(QueuedSynchronizer sync, QueuedSynchronizer.PinCell[] expect,
+                               QueuedSynchronizer.PinCell[] update) {
+        return PINCELLS.compareAndSet(sync, expect, update);
+    }
+
+    static int getAndAddPins(QueuedSynchronizer.PinCell cell, int delta) {
+        return (int) PINS.getAndAdd(cell, delta);
+    }
+
+    static boolean casWaitStatus(Node node, int expect, int update) {
+        return WAITSTATUS.compareAndSet(node, expect, update);
+    }
+
+    static boolean casNext(Node node, Node expect, Node update) {
+        return NEXT.compareAndSet(node, expect, update);
+    }
+
+    static void setWaitStatusRelaxed(Node node, int waitStatus) {
+        WAITSTATUS.set(node, waitStatus);
+    }
+
+    static boolean casHandoff(Node node, int expect, int update) {
+        return HANDOFF.compareAndSet(node, expect, update);
+    }
+
+    static void setHandoffRelaxed(Node node, int handoff) {
+        HANDOFF.set(node, handoff);
+    }
+
+    static void setPrevRelaxed(Node node, Node p) {
+        PREV.set(node, p);
+    }
+
+    static void setNextRelaxed(Node node, Node n) {
+        NEXT.set(node, n);
+    }
+
+    static void setThreadRelaxed(Node node, Thread thread) {
+        THREAD.set(node, thread);
+    }
+
+    static void loadFence() {
+        VarHandle.acquireFence();
+    }
+
+    static void onSpinWait() {
+        Thread.onSpinWait();
+    }
+}
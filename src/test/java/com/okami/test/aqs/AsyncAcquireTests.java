@@ -0,0 +1,180 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncAcquireTests {
+
+    @Test
+    public void asyncAndBlockingWaitersShareOneFifo() throws Exception {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        List<String> order = new CopyOnWriteArrayList<>();
+        lock.lock();
+        Thread first = blockingWaiter(lock, order, "first");
+        awaitQueueLength(lock, 1);
+        CompletableFuture<Void> async = lock.lockAsync().thenAccept(acquired -> {
+            order.add("async");
+            lock.unlock();
+        });
+        awaitQueueLength(lock, 2);
+        Thread last = blockingWaiter(lock, order, "last");
+        awaitQueueLength(lock, 3);
+        lock.unlock();
+
+        first.join(10_000);
+        async.get(10, TimeUnit.SECONDS);
+        last.join(10_000);
+        assertEquals(asList("first", "async", "last"), order);
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    public void timeoutUnlinksNode() throws Exception {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.lock();
+        CompletableFuture<Boolean> timed = lock.tryLockAsync(20, TimeUnit.MILLISECONDS);
+        assertEquals(1, lock.getQueueLength());
+        assertFalse(timed.get(10, TimeUnit.SECONDS));
+        assertEquals(0, lock.getQueueLength());
+        lock.unlock();
+        assertTrue(lock.tryLock());
+        lock.unlock();
+    }
+
+    @Test
+    public void cancelUnlinksNodeAndLaterWaitersStillAcquire() throws Exception {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.lock();
+        CompletableFuture<Boolean> cancelled = lock.lockAsync();
+        CompletableFuture<Boolean> next = lock.lockAsync();
+        assertTrue(cancelled.cancel(true));
+        assertEquals(1, lock.getQueueLength());
+        lock.unlock();
+        assertTrue(next.get(10, TimeUnit.SECONDS));
+        assertTrue(lock.isLocked());
+        // 异步获取的锁不属于任何线程，由当前线程释放
+        lock.unlock();
+        assertFalse(lock.isLocked());
+    }
+
+    /**
+     * 成段取消（先取消每段的后一个再取消前一个，再从前往后取消段首），
+     * 剩下的等待者仍按入队顺序获取，队列最终为空。
+     */
+    @Test
+    public void cancellationInAnyOrderKeepsFifo() throws Exception {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        lock.lock();
+        int n = 3_000;
+        List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+        List<CompletableFuture<Void>> survivors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (i % 4 == 3) {
+                int id = i;
+                survivors.add(lock.lockAsync().thenAccept(acquired -> {
+                    order.add(id);
+                    lock.unlock();
+                }));
+            } else {
+                waiters.add(lock.tryLockAsync(1, TimeUnit.HOURS));
+            }
+        }
+        for (int j = 0; j < waiters.size(); j += 3) {
+            waiters.get(j + 2).cancel(false);
+            waiters.get(j + 1).cancel(false);
+        }
+        for (int j = 0; j < waiters.size(); j += 3)
+            waiters.get(j).cancel(false);
+        assertEquals(survivors.size(), lock.getQueueLength());
+        lock.unlock();
+        CompletableFuture.allOf(survivors.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        for (int i = 1; i < order.size(); i++)
+            assertTrue(order.get(i - 1) < order.get(i));
+        assertEquals(survivors.size(), order.size());
+        assertFalse(lock.hasQueuedThreads());
+    }
+
+    @Test
+    public void mixedAsyncAndBlockingMutualExclusion() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        lock.setAsyncExecutor(executor);
+        int[] counter = new int[1];
+        int threads = 4;
+        int rounds = 5_000;
+        AtomicInteger asyncDone = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads * 2);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < rounds; j++) {
+                    lock.lock();
+                    try {
+                        counter[0]++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+            // 每个异步链在上一次释放后再发起下一次获取
+            asyncLoop(lock, executor, counter, rounds, asyncDone, done);
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(threads * rounds * 2, counter[0]);
+        assertEquals(threads * rounds, asyncDone.get());
+        assertFalse(lock.isLocked());
+    }
+
+    private static void asyncLoop(ExclusiveLock lock, ExecutorService executor, int[] counter, int remaining,
+                                  AtomicInteger asyncDone, CountDownLatch done) {
+        if (remaining == 0) {
+            done.countDown();
+            return;
+        }
+        // 不竞争时 future 立即完成，用 thenRunAsync 避免递归加深调用栈
+        lock.lockAsync().thenRunAsync(() -> {
+            try {
+                counter[0]++;
+                asyncDone.incrementAndGet();
+            } finally {
+                lock.unlock();
+            }
+            asyncLoop(lock, executor, counter, remaining - 1, asyncDone, done);
+        }, executor);
+    }
+
+    private static Thread blockingWaiter(ExclusiveLock lock, List<String> order, String name) {
+        Thread t = new Thread(() -> {
+            lock.lock();
+            try {
+                order.add(name);
+            } finally {
+                lock.unlock();
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private static void awaitQueueLength(ExclusiveLock lock, int n) throws InterruptedException {
+        for (int i = 0; i < 10_000 && lock.getQueueLength() != n; i++)
+            Thread.sleep(1);
+        assertEquals(n, lock.getQueueLength());
+    }
+}
@@ -0,0 +1,82 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 4 个线程各自反复取得一个缓冲区、写满、丢弃或归还：每次新建（allocate/allocateDirect）与从池中借还（heapPool/directPool）。
+ * 加 -prof gc 可以看到池化后每次操作的分配字节数降到 0。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=BufferPoolBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class BufferPoolBenchmark {
+
+    @Param({"allocate", "allocateDirect", "heapPool", "directPool"})
+    public String mode;
+
+    @Param({"256", "4096", "65536"})
+    public int size;
+
+    private BufferPool pool;
+
+    @Setup
+    public void setUp() {
+        if ("heapPool".equals(mode))
+            pool = BufferPool.heap("bench", 256, 64 * 1024, 64);
+        else if ("directPool".equals(mode))
+            pool = BufferPool.direct("bench", 256, 64 * 1024, 64);
+    }
+
+    @Benchmark
+    public byte fill() throws InterruptedException {
+        ByteBuffer b;
+        switch (mode) {
+            case "allocate":
+                b = ByteBuffer.allocate(size);
+                break;
+            case "allocateDirect":
+                b = ByteBuffer.allocateDirect(size);
+                break;
+            default:
+                b = pool.borrow(size, 1, TimeUnit.SECONDS);
+        }
+        // 按 8 字节写，模拟编码消息
+        while (b.remaining() >= 8)
+            b.putLong(b.position());
+        byte last = b.get(size - 1);
+        if (pool != null)
+            pool.release(b);
+        return last;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BufferPoolBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,154 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTests {
+
+    @Test
+    public void roundsUpToSizeClassAndReuses() {
+        BufferPool pool = BufferPool.heap("test", 100, 4096, 4);
+        ByteBuffer b = pool.tryBorrow(300);
+        assertEquals(512, b.capacity());
+        assertEquals(0, b.position());
+        assertEquals(300, b.limit());
+        assertEquals(512, pool.getOutstandingBytes());
+        b.put((byte) 1);
+        pool.release(b);
+        assertEquals(0, pool.getOutstandingBytes());
+
+        ByteBuffer again = pool.tryBorrow(257);
+        assertSame(b, again);
+        assertEquals(0, again.position());
+        assertEquals(257, again.limit());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(128, pool.tryBorrow(0).capacity());
+    }
+
+    @Test
+    public void exhaustedClassFailsFastOrTimesOut() throws InterruptedException {
+        BufferPool pool = BufferPool.direct("test", 64, 1024, 2);
+        ByteBuffer a = pool.tryBorrow(64);
+        ByteBuffer b = pool.tryBorrow(64);
+        assertTrue(a.isDirect());
+        assertNull(pool.tryBorrow(64));
+        assertNull(pool.borrow(64, 10, TimeUnit.MILLISECONDS));
+        assertEquals(2, pool.getExhausted());
+        // 其他级不受影响
+        assertNotNull(pool.tryBorrow(128));
+        pool.release(a);
+        assertEquals(1, pool.getAvailable(64));
+        pool.release(b);
+    }
+
+    @Test
+    public void borrowWaitsForRelease() throws InterruptedException {
+        BufferPool pool = BufferPool.heap("test", 64, 1024, 1);
+        ByteBuffer held = pool.tryBorrow(64);
+        ByteBuffer[] got = new ByteBuffer[1];
+        Thread t = new Thread(() -> {
+            try {
+                got[0] = pool.borrow(64, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        t.start();
+        while (pool.getQueueLength(64) == 0)
+            Thread.sleep(1);
+        pool.release(held);
+        t.join(10_000);
+        assertNotNull(got[0]);
+        assertEquals(64, pool.getOutstandingBytes());
+    }
+
+    @Test
+    public void oversizedRequestsBypassPool() {
+        BufferPool pool = BufferPool.heap("test", 64, 1024, 1);
+        ByteBuffer big = pool.tryBorrow(5000);
+        assertEquals(5000, big.capacity());
+        assertNotNull(pool.tryBorrow(3000));
+        assertEquals(8000, pool.getOutstandingBytes());
+        pool.release(big);
+        assertEquals(3000, pool.getOutstandingBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsForeignBuffers() {
+        BufferPool pool = BufferPool.heap("test", 64, 1024, 1);
+        pool.release(ByteBuffer.allocate(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBuffersOfOtherKind() {
+        BufferPool pool = BufferPool.heap("test", 64, 1024, 1);
+        pool.release(ByteBuffer.allocateDirect(64));
+    }
+
+    @Test
+    public void concurrentBorrowersNeverShareBuffers() throws InterruptedException {
+        BufferPool pool = BufferPool.heap("test", 64, 4096, 4);
+        int threads = 8;
+        int rounds = 5_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        boolean[] failed = new boolean[1];
+        for (int i = 0; i < threads; i++) {
+            byte mark = (byte) i;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    for (int j = 0; j < rounds; j++) {
+                        ByteBuffer b = pool.borrow(random.nextInt(4096), 10, TimeUnit.SECONDS);
+                        while (b.hasRemaining())
+                            b.put(mark);
+                        Thread.yield();
+                        for (int k = 0; k < b.limit(); k++)
+                            if (b.get(k) != mark)
+                                failed[0] = true;
+                        pool.release(b);
+                    }
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertFalse(failed[0]);
+        assertEquals(0, pool.getOutstandingBytes());
+        assertEquals(threads * rounds, pool.getHits() + pool.getMisses());
+    }
+
+    @Test
+    public void idleBuffersBoundedAcrossThreads() throws InterruptedException {
+        BufferPool pool = BufferPool.heap("test", 64, 64, 2);
+        for (int i = 0; i < 20; i++) {
+            Thread t = new Thread(() -> pool.release(pool.tryBorrow(64)));
+            t.start();
+            t.join();
+            assertTrue(pool.getIdleBytes() <= 2 * 64);
+        }
+        assertEquals(2 * 64, pool.getIdleBytes());
+
+        // 缓存在已结束线程里的名额在归还失败时收回
+        TimeUnit.NANOSECONDS.sleep(BufferPool.RECLAIM_INTERVAL_NANOS);
+        ByteBuffer b = pool.tryBorrow(64);
+        assertEquals(2 * 64, pool.getIdleBytes());
+        pool.release(b);
+        assertEquals(64, pool.getIdleBytes());
+        assertSame(b, pool.tryBorrow(64));
+        assertEquals(0, pool.getIdleBytes());
+    }
+}
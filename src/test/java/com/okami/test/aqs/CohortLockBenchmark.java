@@ -0,0 +1,101 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 8 个线程竞争同一把锁，临界区读写一小块共享数据，比较 ExclusiveLock 与不同拓扑下的 CohortLock：
+ * <ul>
+ * <li>flat：ExclusiveLock。</li>
+ * <li>system：本机拓扑，单节点的机器上等同于 flat。</li>
+ * <li>sim2/sim4：线程轮流分到 2/4 个模拟节点，任何机器都能跑，看 cohort 交接本身的开销；
+ * 模拟节点共享同一组缓存，看不到跨节点迁移缓存行的节省，真实收益要在多节点的机器上用 system 测。</li>
+ * </ul>
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=CohortLockBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(8)
+public class CohortLockBenchmark {
+
+    @Param({"flat", "system", "sim2", "sim4"})
+    public String topology;
+
+    /**
+     * 临界区外的工作量。
+     */
+    @Param({"100"})
+    public int think;
+
+    private Lock lock;
+
+    /**
+     * 临界区内读写的共享数据，跨越多个缓存行。
+     */
+    private final long[] shared = new long[64];
+
+    @Setup
+    public void setUp() {
+        switch (topology) {
+            case "flat":
+                lock = new ExclusiveLock();
+                break;
+            case "system":
+                lock = new CohortLock();
+                break;
+            case "sim2":
+                lock = new CohortLock(NumaTopology.simulated(2), CohortLock.DEFAULT_MAX_PASSES);
+                break;
+            case "sim4":
+                lock = new CohortLock(NumaTopology.simulated(4), CohortLock.DEFAULT_MAX_PASSES);
+                break;
+            default:
+                throw new IllegalArgumentException(topology);
+        }
+    }
+
+    @Benchmark
+    public long lockUnlock() {
+        lock.lock();
+        long sum;
+        try {
+            sum = 0;
+            for (int i = 0; i < shared.length; i += 8)
+                sum += ++shared[i];
+        } finally {
+            lock.unlock();
+        }
+        Blackhole.consumeCPU(think);
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CohortLockBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
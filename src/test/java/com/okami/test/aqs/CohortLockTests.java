@@ -0,0 +1,221 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CohortLockTests {
+
+    @Test
+    public void mutualExclusionAcrossSimulatedNodes() throws InterruptedException {
+        CohortLock lock = new CohortLock(NumaTopology.simulated(4), 8);
+        int[] counter = new int[1];
+        int threads = 8;
+        int rounds = 20_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < rounds; j++) {
+                    lock.lock();
+                    try {
+                        counter[0]++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(threads * rounds, counter[0]);
+        assertFalse(lock.isLocked());
+    }
+
+    /**
+     * 排队的线程超时或被中断离开后，交接给本节点的全局锁不能被遗留。
+     */
+    @Test
+    public void abandonedHandoffsDoNotStrandGlobalLock() throws InterruptedException {
+        CohortLock lock = new CohortLock(NumaTopology.simulated(2), 4);
+        int[] counter = new int[1];
+        int threads = 8;
+        int rounds = 2_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < rounds; ) {
+                    try {
+                        switch (random.nextInt(3)) {
+                            case 0:
+                                lock.lock();
+                                break;
+                            case 1:
+                                if (!lock.tryLock(random.nextInt(50), TimeUnit.MICROSECONDS))
+                                    continue;
+                                break;
+                            default:
+                                lock.lockInterruptibly();
+                        }
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    try {
+                        counter[0]++;
+                        j++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            });
+            workers[i].start();
+        }
+        for (int i = 0; done.getCount() > 0 && i < 200; i++) {
+            workers[i % threads].interrupt();
+            Thread.sleep(1);
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(threads * rounds, counter[0]);
+        assertFalse(lock.isLocked());
+        assertTrue(lock.tryLock());
+        lock.unlock();
+    }
+
+    @Test
+    public void otherNodeWaitsForGlobalLock() throws InterruptedException {
+        CohortLock lock = new CohortLock(NumaTopology.simulated(2), 0);
+        // 线程按首次获取的顺序分到节点 0、1
+        lock.lock();
+        boolean[] acquired = new boolean[1];
+        Thread other = new Thread(() -> {
+            lock.lock();
+            acquired[0] = true;
+            lock.unlock();
+        });
+        other.start();
+        Thread.sleep(50);
+        assertFalse(acquired[0]);
+        lock.unlock();
+        other.join(10_000);
+        assertTrue(acquired[0]);
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    public void reentrantHoldKeepsOtherNodesOut() throws InterruptedException {
+        CohortLock lock = new CohortLock(NumaTopology.simulated(2), 0);
+        lock.lock();
+        assertTrue(lock.tryLock());
+        lock.lock();
+        assertEquals(3, lock.getHoldCount());
+        boolean[] acquired = new boolean[1];
+        Thread other = new Thread(() -> {
+            lock.lock();
+            acquired[0] = true;
+            lock.unlock();
+        });
+        other.start();
+        lock.unlock();
+        lock.unlock();
+        Thread.sleep(50);
+        assertFalse(acquired[0]);
+        assertEquals(1, lock.getHoldCount());
+        lock.unlock();
+        other.join(10_000);
+        assertTrue(acquired[0]);
+        assertEquals(0, lock.getHoldCount());
+        assertFalse(lock.isLocked());
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void unlockByNonOwnerThrows() throws InterruptedException {
+        CohortLock lock = new CohortLock(NumaTopology.simulated(2), 8);
+        lock.lock();
+        IllegalMonitorStateException[] thrown = new IllegalMonitorStateException[1];
+        Thread t = new Thread(() -> {
+            try {
+                lock.unlock();
+            } catch (IllegalMonitorStateException e) {
+                thrown[0] = e;
+            }
+        });
+        t.start();
+        t.join();
+        assertTrue(lock.isLocked());
+        lock.unlock();
+        throw thrown[0];
+    }
+
+    @Test
+    public void singleNodeFallsBackToExclusiveLock() throws InterruptedException {
+        CohortLock lock = new CohortLock(NumaTopology.simulated(1), 8);
+        lock.lock();
+        assertTrue(lock.isLocked());
+        // 单节点时支持 Condition
+        assertFalse(lock.newCondition().await(1, TimeUnit.MILLISECONDS));
+        lock.unlock();
+        assertFalse(lock.isLocked());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void multiNodeHasNoConditions() {
+        new CohortLock(NumaTopology.simulated(2), 8).newCondition();
+    }
+
+    @Test
+    public void parsesCpuLists() {
+        assertArrayEquals(new int[]{0, 1, 2, 3, 8, 10, 11}, NumaTopology.parseCpuList("0-3,8,10-11\n"));
+        assertArrayEquals(new int[0], NumaTopology.parseCpuList(""));
+    }
+
+    @Test
+    public void readsNodeDirectory() throws IOException {
+        Path dir = Files.createTempDirectory("numa");
+        try {
+            writeCpuList(dir, "node0", "0-1,4-5");
+            // 节点编号不连续，只有内存的节点没有 CPU
+            writeCpuList(dir, "node2", "2-3,6-7");
+            writeCpuList(dir, "node3", "");
+            Files.createDirectory(dir.resolve("power"));
+            assertArrayEquals(new int[]{0, 0, 1, 1, 0, 0, 1, 1}, NumaTopology.readCpuToNode(dir));
+
+            deleteRecursively(dir);
+            writeCpuList(Files.createDirectory(dir), "node0", "0-7");
+            assertNull(NumaTopology.readCpuToNode(dir));
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void systemTopologyIsUsable() {
+        NumaTopology topology = NumaTopology.system();
+        int node = topology.currentNode();
+        assertTrue(node >= 0 && node < topology.nodeCount());
+    }
+
+    private static void writeCpuList(Path dir, String node, String cpulist) throws IOException {
+        Path nodeDir = Files.createDirectory(dir.resolve(node));
+        Files.write(nodeDir.resolve("cpulist"), (cpulist + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.getNameCount() - a.getNameCount())
+                .forEach(p -> p.toFile().delete());
+    }
+}
@@ -0,0 +1,197 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConditionObjectTests {
+
+    private final ExclusiveLock lock = new ExclusiveLock();
+
+    private final ConditionObject cond = (ConditionObject) lock.newCondition();
+
+    private final List<Integer> woken = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * 依次启动等待线程，每个都确认进入条件队列后再启动下一个，保证等待顺序。
+     */
+    private List<Thread> startWaiters(Object... tags) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < tags.length; i++) {
+            int id = i;
+            Object tag = tags[i];
+            Thread t = new Thread(() -> {
+                lock.lock();
+                try {
+                    cond.await(tag);
+                    woken.add(id);
+                } catch (InterruptedException ignored) {
+                } finally {
+                    lock.unlock();
+                }
+            });
+            t.start();
+            threads.add(t);
+            awaitWaitQueueLength(i + 1);
+        }
+        return threads;
+    }
+
+    private void awaitWaitQueueLength(int n) throws InterruptedException {
+        for (long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10); ; ) {
+            lock.lock();
+            try {
+                if (cond.getWaitQueueLength() == n)
+                    return;
+            } finally {
+                lock.unlock();
+            }
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private int signal(int n) {
+        lock.lock();
+        try {
+            return cond.signal(n);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread t : threads) {
+            t.join(10_000);
+            assertFalse(t.isAlive());
+        }
+    }
+
+    @Test
+    public void signalNWakesOldestWaitersInOrder() throws InterruptedException {
+        List<Thread> threads = startWaiters(null, null, null, null, null);
+        assertEquals(3, signal(3));
+        joinAll(threads.subList(0, 3));
+        assertEquals(Arrays.asList(0, 1, 2), woken);
+        awaitWaitQueueLength(2);
+        assertEquals(2, signal(10));
+        joinAll(threads);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), woken);
+        assertEquals(0, signal(1));
+    }
+
+    @Test
+    public void taggedSignalWakesOnlyMatchingWaiters() throws InterruptedException {
+        List<Thread> threads = startWaiters(1, 2, 1, 2, 1);
+        lock.lock();
+        try {
+            assertEquals(3, cond.signalAll(1));
+            assertEquals(0, cond.signalAll(3));
+        } finally {
+            lock.unlock();
+        }
+        joinAll(Arrays.asList(threads.get(0), threads.get(2), threads.get(4)));
+        assertEquals(Arrays.asList(0, 2, 4), woken);
+        awaitWaitQueueLength(2);
+        lock.lock();
+        try {
+            assertEquals(1, cond.signal(2, 1));
+        } finally {
+            lock.unlock();
+        }
+        threads.get(1).join(10_000);
+        assertEquals(Arrays.asList(0, 2, 4, 1), woken);
+        // 不区分标签的 signal 也能唤醒带标签的等待
+        assertEquals(1, signal(1));
+        joinAll(threads);
+    }
+
+    @Test
+    public void nullTagMatchesUntaggedWaitersOnly() throws InterruptedException {
+        List<Thread> threads = startWaiters("a", null, "a");
+        lock.lock();
+        try {
+            assertEquals(1, cond.signal(null, 5));
+        } finally {
+            lock.unlock();
+        }
+        threads.get(1).join(10_000);
+        assertEquals(Collections.singletonList(1), woken);
+        lock.lock();
+        try {
+            cond.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        joinAll(threads);
+        assertEquals(Arrays.asList(1, 0, 2), woken);
+    }
+
+    @Test
+    public void cancelledWaitersAreSkipped() throws InterruptedException {
+        List<Thread> threads = startWaiters(null, null, null);
+        threads.get(1).interrupt();
+        threads.get(1).join(10_000);
+        assertEquals(2, signal(2));
+        joinAll(threads);
+        assertEquals(Arrays.asList(0, 2), woken);
+    }
+
+    /**
+     * 大量等待同时超时：每个线程只摘除自己，条件队列最终为空，且不影响之后的等待与唤醒。
+     */
+    @Test
+    public void massTimeoutsLeaveConditionQueueEmpty() throws InterruptedException {
+        int n = 200;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Thread t = new Thread(() -> {
+                lock.lock();
+                try {
+                    cond.awaitNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                } catch (InterruptedException ignored) {
+                } finally {
+                    lock.unlock();
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        joinAll(threads);
+        lock.lock();
+        try {
+            assertEquals(0, cond.getWaitQueueLength());
+            assertFalse(cond.hasWaiters());
+        } finally {
+            lock.unlock();
+        }
+        List<Thread> waiters = startWaiters(null, null);
+        assertEquals(2, signal(2));
+        joinAll(waiters);
+        assertEquals(Arrays.asList(0, 1), woken);
+    }
+
+    @Test
+    public void taggedTimedAwaitTimesOut() throws InterruptedException {
+        lock.lock();
+        try {
+            assertFalse(cond.await("x", 20, TimeUnit.MILLISECONDS));
+            assertEquals(0, cond.signalAll("x"));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void signalNWithoutLockFails() {
+        cond.signal(1);
+    }
+}
@@ -0,0 +1,53 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Mode;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.Signal;
+import org.openjdk.jcstress.annotations.State;
+
+import java.util.concurrent.locks.Condition;
+
+/**
+ * signal 与 await 的转移：等待者从条件队列转到同步队列，再被释放唤醒重新获取。
+ * 信号可能发生在等待者 await 之前、入条件队列之后 park 之前或 park 之后，任何一种都必须让等待者返回。
+ * 等待者卡住（信号丢失）时 jcstress 报告 STALE。
+ * <p>
+ * 运行：mvn -Pstress test-compile exec:exec -Dstress=ConditionSignalStress
+ */
+@JCStressTest(Mode.Termination)
+@Outcome(id = "TERMINATED", expect = Expect.ACCEPTABLE, desc = "Awaiter woke up")
+@Outcome(id = "STALE", expect = Expect.FORBIDDEN, desc = "Signal lost")
+@State
+public class ConditionSignalStress {
+
+    private final ExclusiveLock lock = new ExclusiveLock();
+
+    private final Condition ready = lock.newCondition();
+
+    private boolean signalled;
+
+    @Actor
+    public void awaiter() {
+        lock.lock();
+        try {
+            while (!signalled)
+                ready.awaitUninterruptibly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Signal
+    public void signal() {
+        lock.lock();
+        try {
+            signalled = true;
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大量线程反复排队、释放时，紧凑布局与竞争布局（{@link ExclusiveLock#enableContendedLayout()}）的吞吐。
+ * 锁不自旋，竞争的线程几乎每次都要入队，tail 的 CAS 与 state/head 的写入同时进行。
+ * 线程数要明显多于核数才能看出差别，可以用 -t 覆盖，例如 -t 64。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ContendedLayoutBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(32)
+public class ContendedLayoutBenchmark {
+
+    @Param({"compact", "contended"})
+    public String layout;
+
+    /**
+     * 临界区内的工作量。
+     */
+    @Param({"10"})
+    public int work;
+
+    private ExclusiveLock lock;
+
+    @Setup
+    public void setUp() {
+        lock = new ExclusiveLock(null);
+        if ("contended".equals(layout))
+            lock.enableContendedLayout();
+    }
+
+    @Benchmark
+    public void enqueueRelease() {
+        lock.lock();
+        try {
+            Blackhole.consumeCPU(work);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ContendedLayoutBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,132 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.FieldLayout;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContendedLayoutTests {
+
+    private static final int CACHE_LINE = 64;
+
+    private static FieldLayout field(ClassLayout layout, String name) {
+        for (FieldLayout f : layout.fields())
+            if (f.name().equals(name))
+                return f;
+        throw new AssertionError(name);
+    }
+
+    /**
+     * tail 前后各有至少一个缓存行的填充，无论相邻分配的是什么对象都不会与它共享缓存行。
+     */
+    @Test
+    public void paddedTailHasOwnCacheLine() {
+        ClassLayout layout = ClassLayout.parseClass(QueuedSynchronizer.PaddedTail.class);
+        FieldLayout tail = field(layout, "tail");
+        assertTrue(layout.toPrintable(), tail.offset() >= CACHE_LINE);
+        assertTrue(layout.toPrintable(), layout.instanceSize() - (tail.offset() + tail.size()) >= CACHE_LINE);
+    }
+
+    /**
+     * Node 的所有字段之后至少有一个缓存行的填充。
+     */
+    @Test
+    public void paddedNodeIsPaddedAfterNodeFields() {
+        ClassLayout node = ClassLayout.parseClass(Node.class);
+        ClassLayout padded = ClassLayout.parseClass(Node.Padded.class);
+        long end = 0;
+        for (FieldLayout f : node.fields())
+            end = Math.max(end, field(padded, f.name()).offset() + f.size());
+        assertTrue(padded.toPrintable(), padded.instanceSize() - end >= CACHE_LINE);
+    }
+
+    @Test
+    public void mutualExclusionWithContendedLayout() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.enableContendedLayout();
+        assertTrue(lock.isContendedLayout());
+        int[] counter = new int[1];
+        int threads = 8;
+        int rounds = 2_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < rounds; ) {
+                    try {
+                        if (random.nextBoolean()) {
+                            lock.lock();
+                        } else if (!lock.tryLock(random.nextInt(50), TimeUnit.MICROSECONDS)) {
+                            continue;
+                        }
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    try {
+                        counter[0]++;
+                        j++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(threads * rounds, counter[0]);
+        assertFalse(lock.hasQueuedThreads());
+    }
+
+    @Test
+    public void conditionsWorkWithContendedLayout() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        lock.enableContendedLayout();
+        Condition ready = lock.newCondition();
+        boolean[] signalled = new boolean[1];
+        Thread waiter = new Thread(() -> {
+            lock.lock();
+            try {
+                while (!signalled[0])
+                    ready.awaitUninterruptibly();
+            } finally {
+                lock.unlock();
+            }
+        });
+        waiter.start();
+        Thread.sleep(20);
+        lock.lock();
+        try {
+            signalled[0] = true;
+            ready.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        waiter.join(10_000);
+        assertFalse(waiter.isAlive());
+        assertFalse(lock.hasQueuedThreads());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void layoutCannotChangeAfterQueueIsInitialized() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.lock();
+        Thread t = new Thread(() -> {
+            lock.lock();
+            lock.unlock();
+        });
+        t.start();
+        while (!lock.hasQueuedThreads())
+            Thread.sleep(1);
+        lock.unlock();
+        t.join();
+        lock.enableContendedLayout();
+    }
+}
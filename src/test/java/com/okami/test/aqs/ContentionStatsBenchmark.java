@@ -0,0 +1,76 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 开启竞争统计对 ExclusiveLock 的开销，目标是无竞争时低于 5%。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ContentionStatsBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ContentionStatsBenchmark {
+
+    @Param({"off", "on"})
+    public String stats;
+
+    private ExclusiveLock lock;
+
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        lock = new ExclusiveLock();
+        if ("on".equals(stats))
+            lock.setContentionStats(ContentionStats.named("benchmark"));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long uncontended() {
+        return criticalSection();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long contended4() {
+        return criticalSection();
+    }
+
+    private long criticalSection() {
+        lock.lock();
+        try {
+            return ++counter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ContentionStatsBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContentionStatsTests {
+
+    @Test
+    public void uncontendedAcquisitionsAreCountedAndHoldTimeSampled() {
+        ExclusiveLock lock = new ExclusiveLock();
+        ContentionStats stats = ContentionStats.named("uncontended-" + System.nanoTime());
+        lock.setContentionStats(stats);
+        int rounds = ContentionStats.HOLD_SAMPLE_INTERVAL * 4;
+        for (int i = 0; i < rounds; i++) {
+            lock.lock();
+            lock.unlock();
+        }
+        assertEquals(rounds, stats.getAcquisitions());
+        assertEquals(0, stats.getContendedAcquisitions());
+        assertEquals(0, stats.getParks());
+        assertEquals(4, stats.getHoldTime().getCount());
+        assertEquals(0, stats.getWaitTime().getCount());
+    }
+
+    @Test
+    public void contendedAcquisitionsRecordWaitTimeAndQueueDepth() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        ContentionStats stats = ContentionStats.named("contended-" + System.nanoTime());
+        lock.setContentionStats(stats);
+        int waiters = 3;
+        CountDownLatch done = new CountDownLatch(waiters);
+        lock.lock();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < waiters; i++) {
+            Thread t = new Thread(() -> {
+                lock.lock();
+                lock.unlock();
+                done.countDown();
+            });
+            t.start();
+            threads.add(t);
+        }
+        while (stats.getQueueDepth() < waiters)
+            Thread.sleep(1);
+        Thread.sleep(20);
+        lock.unlock();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(waiters, stats.getContendedAcquisitions());
+        // 独占获取按 FLUSH_INTERVAL 批量计入，凑满一批后才可见
+        assertEquals(0, stats.getAcquisitions());
+        for (int i = waiters + 1; i < ContentionStats.FLUSH_INTERVAL; i++) {
+            lock.lock();
+            lock.unlock();
+        }
+        assertEquals(ContentionStats.FLUSH_INTERVAL, stats.getAcquisitions());
+        assertEquals(waiters, stats.getWaitTime().getCount());
+        assertEquals(waiters, stats.getMaxQueueDepth());
+        assertEquals(0, stats.getQueueDepth());
+        assertTrue(stats.getParks() >= waiters);
+        // 第一个等待者至少等了 20ms
+        assertTrue(stats.getWaitTime().valueAtQuantile(1.0) >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void timedOutAcquisitionsAreCancellations() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        ContentionStats stats = ContentionStats.named("timeout-" + System.nanoTime());
+        lock.setContentionStats(stats);
+        lock.lock();
+        Thread t = new Thread(() -> {
+            try {
+                assertFalse(lock.tryLock(10, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException ignored) {
+            }
+        });
+        t.start();
+        t.join();
+        lock.unlock();
+        assertEquals(1, stats.getCancellations());
+        assertEquals(0, stats.getContendedAcquisitions());
+        assertEquals(0, stats.getQueueDepth());
+        assertEquals(1, stats.getMaxQueueDepth());
+    }
+
+    @Test
+    public void namedStatsAreSharedAndPublished() {
+        String name = "named-" + System.nanoTime();
+        List<ContentionStats> seen = new ArrayList<>();
+        ContentionStats.subscribe(s -> {
+            if (s.getName().startsWith(name))
+                seen.add(s);
+        });
+        ContentionStats a = ContentionStats.named(name);
+        assertSame(a, ContentionStats.named(name));
+        assertTrue(ContentionStats.registered().contains(a));
+        assertEquals(1, seen.size());
+        assertSame(a, seen.get(0));
+    }
+
+    @Test
+    public void histogramQuantilesAreBucketUpperBounds() {
+        ContentionStats.Histogram h = new ContentionStats.Histogram();
+        assertEquals(0, h.valueAtQuantile(0.99));
+        for (int i = 0; i < 99; i++)
+            h.record(100);
+        h.record(10_000);
+        assertEquals(100, h.getCount());
+        assertEquals(99 * 100 + 10_000, h.getTotalNanos());
+        assertEquals(127, h.valueAtQuantile(0.5));
+        assertEquals(127, h.valueAtQuantile(0.99));
+        assertEquals(16383, h.valueAtQuantile(1.0));
+    }
+}
@@ -0,0 +1,86 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 8 个线程争用一把锁时单次 lock/unlock 的延迟分布：抢先（threshold 为 0）、
+ * 排队超过 50us/1ms 后直接交接，以及公平的 ReentrantLock（每次都交接）。
+ * 看 p0.99/p0.999/p1.0：抢先的平均值最好，但个别线程反复被释放方抢回锁，长尾很长；
+ * 交接把最长的排队时间压到阈值附近，平均值接近抢先；公平锁的尾部最短，但每次释放都要等被唤醒的线程上 CPU，平均值最差。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=DirectHandoffBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(8)
+public class DirectHandoffBenchmark {
+
+    /**
+     * 排队时间阈值（微秒），fair 表示公平的 ReentrantLock。
+     */
+    @Param({"0", "50", "1000", "fair"})
+    public String threshold;
+
+    /**
+     * 临界区内的工作量。
+     */
+    @Param({"100"})
+    public int insideWork;
+
+    private Lock lock;
+
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        if ("fair".equals(threshold)) {
+            lock = new ReentrantLock(true);
+        } else {
+            ExclusiveLock l = new ExclusiveLock();
+            l.setHandoffThreshold(Long.parseLong(threshold), TimeUnit.MICROSECONDS);
+            lock = l;
+        }
+    }
+
+    @Benchmark
+    public long lockUnlock() {
+        lock.lock();
+        try {
+            Blackhole.consumeCPU(insideWork);
+            return ++counter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DirectHandoffBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
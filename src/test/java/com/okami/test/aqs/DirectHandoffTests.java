@@ -0,0 +1,165 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DirectHandoffTests {
+
+    private static ExclusiveLock handoffLock() {
+        ExclusiveLock lock = new ExclusiveLock();
+        lock.setHandoffThreshold(1, TimeUnit.NANOSECONDS);
+        return lock;
+    }
+
+    private static void awaitQueued(ExclusiveLock lock, int n) throws InterruptedException {
+        while (lock.getQueueLength() < n)
+            Thread.sleep(1);
+        // 超过交接阈值
+        Thread.sleep(5);
+    }
+
+    @Test
+    public void releaseHandsLockToLongWaiter() throws InterruptedException {
+        ExclusiveLock lock = handoffLock();
+        CountDownLatch acquired = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        lock.lock();
+        Thread waiter = new Thread(() -> {
+            lock.lock();
+            acquired.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        });
+        waiter.start();
+        awaitQueued(lock, 1);
+        lock.unlock();
+        // 释放返回时锁已经属于等待者，释放方抢不回来
+        assertTrue(lock.isLocked());
+        assertFalse(lock.tryLock());
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        done.countDown();
+        waiter.join(10_000);
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    public void thresholdIsConfigurable() {
+        ExclusiveLock lock = handoffLock();
+        assertEquals(1, lock.getHandoffThreshold(TimeUnit.NANOSECONDS));
+        lock.setHandoffThreshold(0, TimeUnit.NANOSECONDS);
+        assertEquals(0, lock.getHandoffThreshold(TimeUnit.NANOSECONDS));
+        lock.lock();
+        lock.unlock();
+        assertFalse(lock.isLocked());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeThreshold() {
+        new ExclusiveLock().setHandoffThreshold(-1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void timedAndConditionWaitersReceiveHandoff() throws InterruptedException {
+        ExclusiveLock lock = handoffLock();
+        Condition ready = lock.newCondition();
+        int[] holds = new int[1];
+        CountDownLatch awaiting = new CountDownLatch(1);
+        Thread awaiter = new Thread(() -> {
+            lock.lock();
+            lock.lock();
+            try {
+                awaiting.countDown();
+                ready.awaitUninterruptibly();
+                holds[0] = lock.getHoldCount();
+            } finally {
+                lock.unlock();
+                lock.unlock();
+            }
+        });
+        awaiter.start();
+        awaiting.await();
+        lock.lock();
+        ready.signal();
+        boolean[] timed = new boolean[1];
+        Thread timedWaiter = new Thread(() -> {
+            try {
+                timed[0] = lock.tryLock(10, TimeUnit.SECONDS);
+                if (timed[0])
+                    lock.unlock();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        timedWaiter.start();
+        awaitQueued(lock, 2);
+        lock.unlock();
+        awaiter.join(10_000);
+        timedWaiter.join(10_000);
+        // Condition 等待者按保存的重入次数接手
+        assertEquals(2, holds[0]);
+        assertTrue(timed[0]);
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    public void mutualExclusionWithTimeoutsAndInterrupts() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        lock.setHandoffThreshold(20, TimeUnit.MICROSECONDS);
+        int[] counter = new int[1];
+        int[] acquired = new int[8];
+        Thread[] threads = new Thread[acquired.length];
+        CountDownLatch done = new CountDownLatch(acquired.length);
+        for (int i = 0; i < acquired.length; i++) {
+            int id = i;
+            threads[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 5_000; j++) {
+                    try {
+                        switch (j % 3) {
+                            case 0:
+                                lock.lock();
+                                break;
+                            case 1:
+                                lock.lockInterruptibly();
+                                break;
+                            default:
+                                if (!lock.tryLock(random.nextInt(50), TimeUnit.MICROSECONDS))
+                                    continue;
+                        }
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    try {
+                        counter[0]++;
+                        acquired[id]++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            });
+            threads[i].start();
+        }
+        while (done.getCount() > 0) {
+            threads[ThreadLocalRandom.current().nextInt(threads.length)].interrupt();
+            done.await(1, TimeUnit.MILLISECONDS);
+        }
+        int total = 0;
+        for (int n : acquired)
+            total += n;
+        assertEquals(total, counter[0]);
+        assertFalse(lock.isLocked());
+        assertFalse(lock.hasQueuedThreads());
+    }
+}
@@ -0,0 +1,96 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ExclusiveLock 与 ReentrantLock 在无竞争、2/8/32 线程竞争下的吞吐对比。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec，或直接执行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ExclusiveLockBenchmark {
+
+    @Param({"exclusive", "reentrant"})
+    public String lockType;
+
+    /**
+     * 临界区外的工作量，用来调节竞争强度。
+     */
+    @Param({"0", "50"})
+    public int outsideWork;
+
+    private Lock lock;
+
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        lock = "exclusive".equals(lockType) ? new ExclusiveLock() : new ReentrantLock();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long uncontended() {
+        return criticalSection();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public long contended2() {
+        return criticalSection();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long contended8() {
+        return criticalSection();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public long contended32() {
+        return criticalSection();
+    }
+
+    private long criticalSection() {
+        Blackhole.consumeCPU(outsideWork);
+        lock.lock();
+        try {
+            return ++counter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ExclusiveLockBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,120 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单线程无竞争的 lock/unlock：ExclusiveLock、ReentrantLock 与 synchronized。
+ * once 是一次获取与释放，nested 是持有期间再重入一次。
+ * <p>
+ * 查看 ExclusiveLock 的快速路径是否内联进了调用方：
+ * <pre>
+ * java -jar benchmarks.jar ExclusiveLockFastPathBenchmark.once -p lockType=exclusive -f 1 \
+ *     -jvmArgsAppend "-XX:+UnlockDiagnosticVMOptions -XX:+PrintInlining" | grep -E "ExclusiveLock|AbstractQueued"
+ * </pre>
+ * 应当看到 ExclusiveLock::lock、Sync::fastAcquire、ExclusiveLock::unlock、Sync::fastRelease 都是 inline (hot)，
+ * 而 AbstractQueuedSynchronizer::acquire/release 只作为不常走的分支出现。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ExclusiveLockFastPathBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ExclusiveLockFastPathBenchmark {
+
+    @Param({"exclusive", "reentrant", "synchronized"})
+    public String lockType;
+
+    private final ExclusiveLock exclusive = new ExclusiveLock();
+
+    private final ReentrantLock reentrant = new ReentrantLock();
+
+    private final Object monitor = new Object();
+
+    private long counter;
+
+    @Benchmark
+    public long once() {
+        switch (lockType) {
+            case "exclusive":
+                exclusive.lock();
+                try {
+                    return ++counter;
+                } finally {
+                    exclusive.unlock();
+                }
+            case "reentrant":
+                reentrant.lock();
+                try {
+                    return ++counter;
+                } finally {
+                    reentrant.unlock();
+                }
+            default:
+                synchronized (monitor) {
+                    return ++counter;
+                }
+        }
+    }
+
+    @Benchmark
+    public long nested() {
+        switch (lockType) {
+            case "exclusive":
+                exclusive.lock();
+                try {
+                    exclusive.lock();
+                    try {
+                        return ++counter;
+                    } finally {
+                        exclusive.unlock();
+                    }
+                } finally {
+                    exclusive.unlock();
+                }
+            case "reentrant":
+                reentrant.lock();
+                try {
+                    reentrant.lock();
+                    try {
+                        return ++counter;
+                    } finally {
+                        reentrant.unlock();
+                    }
+                } finally {
+                    reentrant.unlock();
+                }
+            default:
+                synchronized (monitor) {
+                    synchronized (monitor) {
+                        return ++counter;
+                    }
+                }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ExclusiveLockFastPathBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,373 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExclusiveLockTests {
+
+    @Test
+    public void mutualExclusion() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        int[] counter = new int[1];
+        int threads = 8;
+        int rounds = 10_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < rounds; j++) {
+                    lock.lock();
+                    try {
+                        counter[0]++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(threads * rounds, counter[0]);
+    }
+
+    @Test
+    public void tryLockTimesOutWhileHeldElsewhere() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread owner = new Thread(() -> {
+            lock.lock();
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        });
+        owner.start();
+        locked.await();
+        assertFalse(lock.tryLock());
+        assertFalse(lock.tryLock(10, TimeUnit.MILLISECONDS));
+        release.countDown();
+        owner.join();
+        assertTrue(lock.tryLock(1, TimeUnit.SECONDS));
+        lock.unlock();
+    }
+
+    /**
+     * 持有锁期间大量限时等待同时超时，之后排在它们前面的等待者仍能被唤醒。
+     */
+    @Test
+    public void massTimeoutsDoNotStrandWaiters() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        lock.lock();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread first = new Thread(() -> {
+            lock.lock();
+            lock.unlock();
+            acquired.countDown();
+        });
+        first.start();
+        while (!lock.hasQueuedThreads())
+            Thread.yield();
+        int n = 200;
+        CountDownLatch timedOut = new CountDownLatch(n);
+        for (int i = 0; i < n; i++) {
+            new Thread(() -> {
+                try {
+                    if (!lock.tryLock(50, TimeUnit.MILLISECONDS))
+                        timedOut.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            }).start();
+        }
+        assertTrue(timedOut.await(30, TimeUnit.SECONDS));
+        assertEquals(1, lock.getQueueLength());
+        lock.unlock();
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        assertFalse(lock.hasQueuedThreads());
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void unlockWithoutOwnershipFails() {
+        new ExclusiveLock().unlock();
+    }
+
+    @Test
+    public void conditionSignal() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        Condition ready = lock.newCondition();
+        boolean[] flag = new boolean[1];
+        Thread waiter = new Thread(() -> {
+            lock.lock();
+            try {
+                while (!flag[0]) {
+                    ready.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+        waiter.start();
+        lock.lock();
+        try {
+            flag[0] = true;
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+        waiter.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(waiter.isAlive());
+    }
+
+    /**
+     * 混合超时获取（会产生取消节点）与普通获取，覆盖节点复用与取消交错的路径。
+     */
+    @Test
+    public void mutualExclusionWithTimeouts() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        int[] counter = new int[1];
+        int[] acquired = new int[8];
+        CountDownLatch done = new CountDownLatch(acquired.length);
+        for (int i = 0; i < acquired.length; i++) {
+            int id = i;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 5_000; j++) {
+                    try {
+                        if ((j & 1) == 0) {
+                            lock.lock();
+                        } else if (!lock.tryLock(random.nextInt(20), TimeUnit.MICROSECONDS)) {
+                            continue;
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    try {
+                        counter[0]++;
+                        acquired[id]++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        int total = 0;
+        for (int n : acquired) {
+            total += n;
+        }
+        assertEquals(total, counter[0]);
+    }
+
+    /**
+     * 带超时的 await 与 signal 交替，等待节点在条件队列和同步队列之间反复流转。
+     */
+    @Test
+    public void conditionPingPongWithTimeouts() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        Condition turnChanged = lock.newCondition();
+        int rounds = 20_000;
+        int[] turn = new int[1];
+        CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            int me = i;
+            new Thread(() -> {
+                for (int j = 0; j < rounds; j++) {
+                    lock.lock();
+                    try {
+                        while (turn[0] % 2 != me) {
+                            turnChanged.await(50, TimeUnit.MICROSECONDS);
+                        }
+                        turn[0]++;
+                        turnChanged.signal();
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(2 * rounds, turn[0]);
+    }
+
+    @Test
+    public void combineMixedWithLockUnlock() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        long[] counter = new long[1];
+        int threads = 8;
+        int rounds = 20_000;
+        long[] sums = new long[threads];
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            int me = i;
+            new Thread(() -> {
+                for (int j = 0; j < rounds; j++) {
+                    if (me % 4 == 0) {
+                        // 少数线程走普通的 lock/unlock，验证合并者与普通持有者互斥
+                        lock.lock();
+                        try {
+                            sums[me] += ++counter[0];
+                        } finally {
+                            lock.unlock();
+                        }
+                    } else if (j % 2 == 0) {
+                        sums[me] += lock.combine(c -> ++c[0], counter);
+                    } else {
+                        lock.combine(() -> counter[0]++);
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(threads * rounds, counter[0]);
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    public void combinePropagatesFailureToCaller() {
+        ExclusiveLock lock = new ExclusiveLock();
+        try {
+            lock.combine(() -> {
+                throw new IllegalStateException("boom");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals("boom", expected.getMessage());
+        }
+        assertFalse(lock.isLocked());
+        // 持有锁时直接执行，不会自己等自己
+        lock.lock();
+        try {
+            assertEquals(Integer.valueOf(42), lock.combine(x -> x * 2, 21));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Test
+    public void combineWaitsForConditionAwaiter() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        Condition ready = lock.newCondition();
+        boolean[] flag = new boolean[1];
+        CountDownLatch awaiting = new CountDownLatch(1);
+        Thread awaiter = new Thread(() -> {
+            lock.lock();
+            try {
+                awaiting.countDown();
+                while (!flag[0])
+                    ready.await();
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        });
+        awaiter.start();
+        awaiting.await();
+        // await 释放锁后，combine 调用方必须能拿到锁执行
+        lock.combine(() -> {
+            flag[0] = true;
+            ready.signal();
+        });
+        awaiter.join(10_000);
+        assertFalse(awaiter.isAlive());
+    }
+
+    @Test
+    public void reentrantHoldsAreCounted() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        lock.lock();
+        lock.lock();
+        assertTrue(lock.tryLock());
+        assertTrue(lock.tryLock(1, TimeUnit.MILLISECONDS));
+        assertEquals(4, lock.getHoldCount());
+        assertTrue(lock.isHeldByCurrentThread());
+        for (int i = 0; i < 3; i++)
+            lock.unlock();
+        assertTrue(lock.isLocked());
+
+        // 仍持有一次，其他线程拿不到
+        boolean[] got = new boolean[1];
+        Thread other = new Thread(() -> got[0] = lock.tryLock());
+        other.start();
+        other.join();
+        assertFalse(got[0]);
+
+        lock.unlock();
+        assertFalse(lock.isLocked());
+        assertEquals(0, lock.getHoldCount());
+        try {
+            lock.unlock();
+            fail();
+        } catch (IllegalMonitorStateException expected) {
+        }
+    }
+
+    /**
+     * await 完全释放所有重入，唤醒后恢复原来的持有计数。
+     */
+    @Test
+    public void awaitRestoresHoldCount() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock();
+        Condition ready = lock.newCondition();
+        CountDownLatch awaiting = new CountDownLatch(1);
+        int[] holds = new int[1];
+        Thread awaiter = new Thread(() -> {
+            lock.lock();
+            lock.lock();
+            try {
+                awaiting.countDown();
+                ready.await();
+                holds[0] = lock.getHoldCount();
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+                lock.unlock();
+            }
+        });
+        awaiter.start();
+        awaiting.await();
+        lock.lock();
+        try {
+            assertEquals(1, lock.getHoldCount());
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+        awaiter.join(10_000);
+        assertEquals(2, holds[0]);
+        assertFalse(lock.isLocked());
+    }
+
+    /**
+     * 异步获取不属于任何线程，持有锁的线程调用 lockAsync 不算重入，要等它释放。
+     */
+    @Test
+    public void lockAsyncByHolderIsNotReentrant() {
+        ExclusiveLock lock = new ExclusiveLock();
+        lock.lock();
+        CompletableFuture<Boolean> f = lock.lockAsync();
+        assertFalse(f.isDone());
+        lock.unlock();
+        assertTrue(f.join());
+        assertFalse(lock.isHeldByCurrentThread());
+        assertEquals(0, lock.getHoldCount());
+        lock.unlock();
+        assertFalse(lock.isLocked());
+    }
+}
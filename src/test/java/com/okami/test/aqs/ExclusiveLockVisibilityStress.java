@@ -0,0 +1,90 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 获取与释放之间的可见性：写者在锁内把 x、y 都从 0 改为 1，读者在锁内按相反顺序读。
+ * 锁提供的 happens-before 保证读者要么看到两次写入之前，要么看到之后，不会看到一半。
+ * FastPath 走 lock/unlock 的 CAS 快速路径；SlowPath 开启直接交接，所有获取与释放都经过
+ * acquire/release，释放时遇到排队的读者还会把持有权直接交给它。
+ * <p>
+ * 运行：mvn -Pstress test-compile exec:exec -Dstress=ExclusiveLockVisibilityStress
+ */
+public class ExclusiveLockVisibilityStress {
+
+    static class Guarded {
+
+        final ExclusiveLock lock = new ExclusiveLock();
+
+        int x;
+
+        int y;
+
+        void write() {
+            lock.lock();
+            try {
+                x = 1;
+                y = 1;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void read(II_Result r) {
+            lock.lock();
+            try {
+                r.r1 = y;
+                r.r2 = x;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = "0, 0", expect = Expect.ACCEPTABLE, desc = "Reader ran first")
+    @Outcome(id = "1, 1", expect = Expect.ACCEPTABLE, desc = "Writer ran first")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Saw a partial update")
+    @State
+    public static class FastPath extends Guarded {
+
+        @Actor
+        public void writer() {
+            write();
+        }
+
+        @Actor
+        public void reader(II_Result r) {
+            read(r);
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = "0, 0", expect = Expect.ACCEPTABLE, desc = "Reader ran first")
+    @Outcome(id = "1, 1", expect = Expect.ACCEPTABLE, desc = "Writer ran first")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Saw a partial update")
+    @State
+    public static class SlowPath extends Guarded {
+
+        public SlowPath() {
+            lock.setHandoffThreshold(1, TimeUnit.NANOSECONDS);
+        }
+
+        @Actor
+        public void writer() {
+            write();
+        }
+
+        @Actor
+        public void reader(II_Result r) {
+            read(r);
+        }
+    }
+}
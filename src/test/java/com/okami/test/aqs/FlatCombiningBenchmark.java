@@ -0,0 +1,102 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 小临界区（共享计数器自增、HashMap 计数）下 ExclusiveLock 的 lock/unlock 与 combine 的吞吐对比。
+ * main 方法依次以 1、4、16、32、64 线程运行，平面合并的收益在 16 线程以上才明显。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlatCombiningBenchmark {
+
+    private static final int KEYS = 256;
+
+    @Param({"lock", "combine"})
+    public String mode;
+
+    private ExclusiveLock lock;
+
+    private long counter;
+
+    private final Map<Integer, Long> histogram = new HashMap<>();
+
+    private final Integer[] keys = new Integer[KEYS];
+
+    private boolean combining;
+
+    @Setup
+    public void setUp() {
+        lock = new ExclusiveLock();
+        combining = "combine".equals(mode);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = i;
+        }
+    }
+
+    @Benchmark
+    public long counter() {
+        if (combining)
+            return lock.combine(FlatCombiningBenchmark::increment, this);
+        lock.lock();
+        try {
+            return increment(this);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    public Long map() {
+        Integer key = keys[ThreadLocalRandom.current().nextInt(KEYS)];
+        if (combining)
+            return lock.combine(this::count, key);
+        lock.lock();
+        try {
+            return count(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long increment(FlatCombiningBenchmark b) {
+        return ++b.counter;
+    }
+
+    private Long count(Integer key) {
+        return histogram.merge(key, 1L, Long::sum);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 32, 64}) {
+            Options options = new OptionsBuilder()
+                    .include(FlatCombiningBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按键加锁：100 万个不同的键均匀访问（distinct），以及 64 个热点键（hot）。
+ * 对照组 chm 是常见的 {@code ConcurrentHashMap<K, ReentrantLock>} + computeIfAbsent，从不移除，
+ * 100 万个键时常驻约 100 万把锁；perKey 的表只保留最近活跃的键。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=KeyedLockManagerBenchmark，或直接执行 main 方法。
+ * 加 -prof gc 可以看到 hot 场景下 perKey 每次操作不分配对象。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class KeyedLockManagerBenchmark {
+
+    static final int DISTINCT_KEYS = 1_000_000;
+
+    static final int HOT_KEYS = 64;
+
+    @Param({"striped", "perKey", "chm"})
+    public String mode;
+
+    @Param({"distinct", "hot"})
+    public String keys;
+
+    private Long[] keySpace;
+
+    private KeyedLockManager<Long> manager;
+
+    private ConcurrentHashMap<Long, ReentrantLock> chm;
+
+    private long[] counters;
+
+    @Setup
+    public void setUp() {
+        int n = "hot".equals(keys) ? HOT_KEYS : DISTINCT_KEYS;
+        keySpace = new Long[n];
+        for (int i = 0; i < n; i++)
+            keySpace[i] = (long) i;
+        counters = new long[1024];
+        if ("striped".equals(mode))
+            manager = KeyedLockManager.striped(1024);
+        else if ("perKey".equals(mode))
+            manager = KeyedLockManager.perKey();
+        else
+            chm = new ConcurrentHashMap<>();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long single() {
+        return criticalSection();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long threads4() {
+        return criticalSection();
+    }
+
+    private long criticalSection() {
+        Long key = keySpace[ThreadLocalRandom.current().nextInt(keySpace.length)];
+        int slot = (int) (key & (counters.length - 1));
+        if (chm != null) {
+            ReentrantLock lock = chm.computeIfAbsent(key, k -> new ReentrantLock());
+            lock.lock();
+            try {
+                return ++counters[slot];
+            } finally {
+                lock.unlock();
+            }
+        }
+        manager.lock(key);
+        try {
+            return ++counters[slot];
+        } finally {
+            manager.unlock(key);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(KeyedLockManagerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
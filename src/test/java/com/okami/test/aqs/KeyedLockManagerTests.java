@@ -0,0 +1,138 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedLockManagerTests {
+
+    @Test
+    public void sameKeyExcludesDifferentKeysDoNot() throws InterruptedException {
+        KeyedLockManager<String> locks = KeyedLockManager.perKey();
+        locks.lock("a");
+        try {
+            assertTrue(runElsewhere(() -> locks.tryLock("b")));
+            assertFalse(runElsewhere(() -> locks.tryLock("a")));
+        } finally {
+            locks.unlock("a");
+        }
+        assertTrue(runElsewhere(() -> locks.tryLock("a")));
+    }
+
+    @Test
+    public void perKeyMutualExclusionUnderContention() throws InterruptedException {
+        KeyedLockManager<Integer> locks = new KeyedLockManager.PerKey<>(16);
+        int threads = 4;
+        int keys = 8;
+        int rounds = 20_000;
+        long[] counters = new long[keys];
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            new Thread(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    // 少量热点键夹杂大量一次性键，让清理和加锁交错
+                    Integer key = (i & 1) == 0 ? (i + seed) % keys : keys + seed * rounds + i;
+                    locks.lock(key);
+                    try {
+                        if (key < keys)
+                            counters[key]++;
+                    } finally {
+                        locks.unlock(key);
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        long total = 0;
+        for (long c : counters)
+            total += c;
+        assertEquals((long) threads * rounds / 2, total);
+    }
+
+    @Test
+    public void idleKeysAreEvicted() {
+        KeyedLockManager.PerKey<Integer> locks = new KeyedLockManager.PerKey<>(16);
+        for (int i = 0; i < 100_000; i++) {
+            locks.lock(i);
+            locks.unlock(i);
+        }
+        assertTrue(locks.size() < 1_000);
+        // 只加过一次锁的键一轮清理即移除
+        locks.sweep();
+        assertEquals(0, locks.size());
+    }
+
+    @Test
+    public void heldKeysSurviveSweeps() throws InterruptedException {
+        KeyedLockManager.PerKey<String> locks = new KeyedLockManager.PerKey<>(16);
+        locks.lock("held");
+        for (int i = 0; i < 3; i++)
+            locks.sweep();
+        assertFalse(runElsewhere(() -> locks.tryLock("held")));
+        locks.unlock("held");
+        assertTrue(runElsewhere(() -> locks.tryLock("held")));
+    }
+
+    @Test
+    public void failedTimedLockReleasesReference() throws InterruptedException {
+        KeyedLockManager.PerKey<String> locks = new KeyedLockManager.PerKey<>(16);
+        locks.lock("k");
+        assertFalse(runElsewhere(() -> locks.tryLock("k", 10, TimeUnit.MILLISECONDS)));
+        locks.unlock("k");
+        // 被再次加锁过的键第一轮只清除使用标记
+        locks.sweep();
+        assertEquals(1, locks.size());
+        locks.sweep();
+        assertEquals(0, locks.size());
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void unlockWithoutLockFails() {
+        KeyedLockManager.<String>perKey().unlock("k");
+    }
+
+    @Test
+    public void stripedMapsKeyToFixedLock() throws InterruptedException {
+        KeyedLockManager<Long> locks = KeyedLockManager.striped(10);
+        assertEquals(16, locks.size());
+        assertSame(locks.lockFor(42L), locks.lockFor(42L));
+        AtomicInteger seen = new AtomicInteger();
+        locks.withLock(42L, seen::incrementAndGet);
+        locks.lock(42L);
+        try {
+            assertFalse(runElsewhere(() -> locks.tryLock(42L)));
+        } finally {
+            locks.unlock(42L);
+        }
+        assertEquals(1, seen.get());
+    }
+
+    private interface Attempt {
+        boolean run() throws InterruptedException;
+    }
+
+    /**
+     * 在另一个线程中尝试加锁，成功时锁留给那个（已结束的）线程。
+     */
+    private static boolean runElsewhere(Attempt attempt) throws InterruptedException {
+        boolean[] result = new boolean[1];
+        Thread t = new Thread(() -> {
+            try {
+                result[0] = attempt.run();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        t.start();
+        t.join(10_000);
+        return result[0];
+    }
+}
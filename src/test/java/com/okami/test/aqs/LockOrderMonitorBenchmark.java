@@ -0,0 +1,107 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁顺序监视器的开销：无竞争地获取一把锁（single）与嵌套获取两把锁（nested）。
+ * <ul>
+ * <li>off：不挂监视器，只多一次 volatile 读；</li>
+ * <li>sampled：默认采样间隔，后台每秒分析一次，即预发环境常开的配置；</li>
+ * <li>every：每次嵌套获取都采样，边都见过之后只多查一次当前线程的集合。</li>
+ * </ul>
+ * 每个线程用自己的锁，测的是记录本身的开销而不是竞争。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=LockOrderMonitorBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LockOrderMonitorBenchmark {
+
+    @Param({"off", "sampled", "every"})
+    public String mode;
+
+    private LockOrderMonitor monitor;
+
+    private final ExclusiveLock outer = new ExclusiveLock();
+
+    private final ExclusiveLock inner = new ExclusiveLock();
+
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        switch (mode) {
+            case "off":
+                return;
+            case "sampled":
+                monitor = new LockOrderMonitor();
+                break;
+            case "every":
+                monitor = new LockOrderMonitor(1, 1, TimeUnit.SECONDS, System.err::println);
+                break;
+            default:
+                throw new IllegalArgumentException(mode);
+        }
+        outer.setLockOrderMonitor(monitor, "outer");
+        inner.setLockOrderMonitor(monitor, "inner");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (monitor != null)
+            monitor.close();
+    }
+
+    @Benchmark
+    public long single() {
+        outer.lock();
+        try {
+            return ++counter;
+        } finally {
+            outer.unlock();
+        }
+    }
+
+    @Benchmark
+    public long nested() {
+        outer.lock();
+        try {
+            inner.lock();
+            try {
+                return ++counter;
+            } finally {
+                inner.unlock();
+            }
+        } finally {
+            outer.unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LockOrderMonitorBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,177 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LockOrderMonitorTests {
+
+    private final List<LockOrderMonitor.PotentialDeadlock> reported = new CopyOnWriteArrayList<>();
+
+    private LockOrderMonitor monitor(int sampleInterval) {
+        return new LockOrderMonitor(sampleInterval, 0, TimeUnit.SECONDS, reported::add);
+    }
+
+    private static ExclusiveLock lock(LockOrderMonitor monitor, String name) {
+        ExclusiveLock lock = new ExclusiveLock();
+        lock.setLockOrderMonitor(monitor, name);
+        return lock;
+    }
+
+    private static void nested(ExclusiveLock... locks) {
+        for (ExclusiveLock l : locks)
+            l.lock();
+        for (int i = locks.length - 1; i >= 0; i--)
+            locks[i].unlock();
+    }
+
+    private static void inThread(Runnable r) throws InterruptedException {
+        Thread t = new Thread(r);
+        t.start();
+        t.join(10_000);
+    }
+
+    @Test
+    public void reportsInversionAcrossThreads() throws InterruptedException {
+        LockOrderMonitor monitor = monitor(1);
+        ExclusiveLock a = lock(monitor, "a");
+        ExclusiveLock b = lock(monitor, "b");
+        inThread(() -> nested(a, b));
+        inThread(() -> nested(b, a));
+
+        assertEquals(1, monitor.analyze());
+        LockOrderMonitor.PotentialDeadlock d = reported.get(0);
+        assertEquals(2, d.getEdges().size());
+        assertTrue(d.getLockNames().containsAll(Arrays.asList("a", "b")));
+        for (LockOrderMonitor.Edge e : d.getEdges()) {
+            assertEquals("LockOrderMonitorTests.java", findTestFrame(e.getStackTrace()));
+        }
+        assertTrue(d.toString().startsWith("Potential deadlock: "));
+        // 同一个环不重复报告
+        inThread(() -> nested(b, a));
+        assertEquals(0, monitor.analyze());
+        assertEquals(1, monitor.getPotentialDeadlocks().size());
+    }
+
+    private static String findTestFrame(StackTraceElement[] trace) {
+        for (StackTraceElement frame : trace)
+            if (frame.getClassName().equals(LockOrderMonitorTests.class.getName()))
+                return frame.getFileName();
+        return null;
+    }
+
+    @Test
+    public void consistentOrderIsNotReported() throws InterruptedException {
+        LockOrderMonitor monitor = monitor(1);
+        ExclusiveLock a = lock(monitor, "a");
+        ExclusiveLock b = lock(monitor, "b");
+        ExclusiveLock c = lock(monitor, "c");
+        for (int i = 0; i < 4; i++) {
+            inThread(() -> nested(a, b, c));
+            inThread(() -> nested(b, c));
+        }
+        assertEquals(0, monitor.analyze());
+        assertEquals(3, monitor.getEdgeCount());
+        assertTrue(reported.isEmpty());
+    }
+
+    @Test
+    public void reportsLongerCycle() {
+        LockOrderMonitor monitor = monitor(1);
+        ExclusiveLock a = lock(monitor, "a");
+        ExclusiveLock b = lock(monitor, "b");
+        ExclusiveLock c = lock(monitor, "c");
+        nested(a, b);
+        nested(b, c);
+        assertEquals(0, monitor.analyze());
+        nested(c, a);
+        assertEquals(1, monitor.analyze());
+        assertEquals(Arrays.asList("c", "a", "b"), reported.get(0).getLockNames());
+    }
+
+    @Test
+    public void sameNameNestingIsNotAnEdge() {
+        LockOrderMonitor monitor = monitor(1);
+        ExclusiveLock s1 = lock(monitor, "stripe");
+        ExclusiveLock s2 = lock(monitor, "stripe");
+        nested(s1, s2);
+        nested(s2, s1);
+        assertEquals(0, monitor.analyze());
+        assertEquals(0, monitor.getEdgeCount());
+    }
+
+    @Test
+    public void samplesEveryIntervalNestedAcquires() {
+        LockOrderMonitor monitor = monitor(4);
+        ExclusiveLock a = lock(monitor, "a");
+        ExclusiveLock b = lock(monitor, "b");
+        for (int i = 0; i < 3; i++)
+            nested(a, b);
+        monitor.analyze();
+        assertEquals(0, monitor.getEdgeCount());
+        nested(a, b);
+        monitor.analyze();
+        assertEquals(1, monitor.getEdgeCount());
+    }
+
+    @Test
+    public void tracksOutOfOrderReleaseTryLockAndConditions() throws InterruptedException {
+        LockOrderMonitor monitor = monitor(1);
+        ExclusiveLock a = lock(monitor, "a");
+        ExclusiveLock b = lock(monitor, "b");
+        ExclusiveLock c = lock(monitor, "c");
+        a.lock();
+        assertTrue(b.tryLock());
+        a.unlock();
+        c.lock();
+        c.unlock();
+        b.unlock();
+        monitor.analyze();
+        // a -> b、b -> c，a 已释放，没有 a -> c
+        assertEquals(2, monitor.getEdgeCount());
+
+        // await 前后的释放与重新获取成对记录，之后获取 d 时只持有 c
+        ExclusiveLock d = lock(monitor, "d");
+        c.lock();
+        a.lock();
+        a.newCondition().await(1, TimeUnit.MILLISECONDS);
+        a.unlock();
+        d.lock();
+        d.unlock();
+        c.unlock();
+        assertEquals(1, monitor.analyze());
+        assertEquals(4, monitor.getEdgeCount());
+    }
+
+    @Test
+    public void asyncAcquiresAreNotTracked() {
+        LockOrderMonitor monitor = monitor(1);
+        ExclusiveLock a = lock(monitor, "a");
+        ExclusiveLock b = lock(monitor, "b");
+        assertTrue(a.lockAsync().join());
+        b.lock();
+        b.unlock();
+        a.unlock();
+        monitor.analyze();
+        assertEquals(0, monitor.getEdgeCount());
+    }
+
+    @Test
+    public void backgroundAnalyzerReports() throws InterruptedException {
+        CountDownLatch found = new CountDownLatch(1);
+        try (LockOrderMonitor monitor = new LockOrderMonitor(1, 10, TimeUnit.MILLISECONDS, d -> found.countDown())) {
+            ExclusiveLock a = lock(monitor, "a");
+            ExclusiveLock b = lock(monitor, "b");
+            nested(a, b);
+            nested(b, a);
+            assertTrue(found.await(10, TimeUnit.SECONDS));
+        }
+    }
+}
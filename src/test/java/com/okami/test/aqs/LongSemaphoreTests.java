@@ -0,0 +1,113 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongSemaphoreTests {
+
+    private static final long GB = 1L << 30;
+
+    @Test
+    public void countsBeyondIntRange() throws InterruptedException {
+        LongSemaphore bytes = new LongSemaphore(8 * GB);
+        bytes.acquire(3 * GB);
+        assertTrue(bytes.tryAcquire(5 * GB));
+        assertEquals(0L, bytes.availablePermits());
+        assertFalse(bytes.tryAcquire(1L));
+        bytes.release(8 * GB);
+        assertEquals(8 * GB, bytes.availablePermits());
+    }
+
+    @Test
+    public void largeRequestIsNotOvertakenBySmallOnes() throws InterruptedException {
+        LongSemaphore sem = new LongSemaphore(100L);
+        sem.acquire(60L);
+        Thread large = start(sem, 100L);
+        awaitQueueLength(sem, 1);
+        // 剩余的 40 够小请求用，但队首的大请求在等，小请求不能越过它
+        assertFalse(sem.tryAcquire(10L));
+        Thread small = start(sem, 10L);
+        awaitQueueLength(sem, 2);
+        assertEquals(40L, sem.availablePermits());
+
+        sem.release(60L);
+        large.join(10_000);
+        assertFalse(large.isAlive());
+        assertTrue(small.isAlive());
+        assertEquals(0L, sem.availablePermits());
+
+        sem.release(100L);
+        small.join(10_000);
+        assertFalse(small.isAlive());
+        assertEquals(90L, sem.availablePermits());
+    }
+
+    @Test
+    public void releasePropagatesToSeveralSharedWaiters() throws InterruptedException {
+        LongSemaphore sem = new LongSemaphore(0L);
+        Thread[] waiters = new Thread[4];
+        for (int i = 0; i < waiters.length; i++) {
+            waiters[i] = start(sem, 5L);
+            awaitQueueLength(sem, i + 1);
+        }
+        sem.release(20L);
+        for (Thread t : waiters) {
+            t.join(10_000);
+            assertFalse(t.isAlive());
+        }
+        assertEquals(0L, sem.availablePermits());
+    }
+
+    @Test
+    public void timedOutLargeRequestUnblocksQueue() throws InterruptedException {
+        LongSemaphore sem = new LongSemaphore(10L);
+        assertFalse(sem.tryAcquire(11L, 20, TimeUnit.MILLISECONDS));
+        assertFalse(sem.hasQueuedThreads());
+        assertTrue(sem.tryAcquire(10L));
+    }
+
+    @Test
+    public void reduceAndDrainPermits() throws InterruptedException {
+        LongSemaphore sem = new LongSemaphore(10L);
+        sem.acquire(4L);
+        sem.reducePermits(8L);
+        assertEquals(-2L, sem.availablePermits());
+        assertFalse(sem.tryAcquire(0L));
+        sem.release(4L);
+        assertEquals(2L, sem.drainPermits());
+        assertEquals(0L, sem.availablePermits());
+    }
+
+    @Test(expected = Error.class)
+    public void releaseOverflowFails() {
+        new LongSemaphore(Long.MAX_VALUE).release(1L);
+    }
+
+    private static Thread start(LongSemaphore sem, long permits) {
+        CountDownLatch started = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            started.countDown();
+            sem.acquireUninterruptibly(permits);
+        });
+        t.start();
+        try {
+            started.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        return t;
+    }
+
+    private static void awaitQueueLength(LongSemaphore sem, int n) throws InterruptedException {
+        for (long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10); sem.getQueueLength() != n; ) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
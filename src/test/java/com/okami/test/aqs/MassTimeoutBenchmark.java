@@ -0,0 +1,126 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下游卡住时大量限时等待同时超时：锁被占住，排入 waiters 个等待者，
+ * 其中每 {@link #SURVIVOR_INTERVAL} 个有一个不限时（幸存者），其余在同一时刻超时，
+ * 全部超时后释放锁，幸存者依次获取、立即释放。
+ * <p>
+ * 等待者用异步获取排队，5 万个等待者不必各占一个线程，超时同样经由 cancelAcquire 出队。
+ * 每次操作的耗时是从排队到幸存者全部获取完毕；辅助计数按迭代累加：
+ * <ul>
+ * <li>stormCpuMillis：从排队到全部超时，整个进程消耗的 CPU 时间。</li>
+ * <li>survivorMicros：超时风暴之后释放锁，到最后一个幸存者获取成功的时间。</li>
+ * <li>storms：本迭代执行的次数，用来把前两项折算为每次的值。</li>
+ * </ul>
+ * 取消不是摊还 O(1) 时，两者都随等待者数平方增长。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=MassTimeoutBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MassTimeoutBenchmark {
+
+    private static final int SURVIVOR_INTERVAL = 1000;
+
+    /**
+     * 超时时间，要足够排完所有等待者。
+     */
+    private static final long TIMEOUT_MILLIS = 200;
+
+    @Param({"50000"})
+    public int waiters;
+
+    private ExecutorService executor;
+
+    private ExclusiveLock lock;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long stormCpuMillis;
+
+        public long survivorMicros;
+
+        public long storms;
+    }
+
+    @Setup(Level.Trial)
+    public void startExecutor() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopExecutor() {
+        executor.shutdown();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        lock = new ExclusiveLock(null);
+        lock.setAsyncExecutor(executor);
+    }
+
+    @Benchmark
+    public int timeoutStorm(Counters counters) {
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        List<CompletableFuture<Boolean>> timedOut = new ArrayList<>(waiters);
+        List<CompletableFuture<Void>> survivors = new ArrayList<>();
+        lock.lock();
+        long cpuStart = os.getProcessCpuTime();
+        for (int i = 0; i < waiters; i++) {
+            if (i % SURVIVOR_INTERVAL == 0) {
+                // 异步获取的锁不属于任何线程，可以在回调线程上释放
+                survivors.add(lock.lockAsync().thenAccept(locked -> lock.unlock()));
+            } else {
+                timedOut.add(lock.tryLockAsync(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            }
+        }
+        CompletableFuture.allOf(timedOut.toArray(new CompletableFuture<?>[0])).join();
+        counters.stormCpuMillis += TimeUnit.NANOSECONDS.toMillis(os.getProcessCpuTime() - cpuStart);
+        long releaseStart = System.nanoTime();
+        lock.unlock();
+        CompletableFuture.allOf(survivors.toArray(new CompletableFuture<?>[0])).join();
+        counters.survivorMicros += TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - releaseStart);
+        counters.storms++;
+        return survivors.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MassTimeoutBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
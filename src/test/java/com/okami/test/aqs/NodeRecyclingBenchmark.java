@@ -0,0 +1,92 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * 竞争下 acquire/release 与 await/signal 的分配量，配合 -prof gc 查看 gc.alloc.rate.norm，
+ * 节点复用生效时应接近 0 B/op。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeRecyclingBenchmark {
+
+    private final ExclusiveLock lock = new ExclusiveLock();
+
+    private final Condition turnChanged = lock.newCondition();
+
+    private int turn;
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public void acquireRelease() {
+        lock.lock();
+        try {
+            Blackhole.consumeCPU(20);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("pingPong")
+    @GroupThreads(1)
+    public void ping() throws InterruptedException {
+        handOff(0);
+    }
+
+    @Benchmark
+    @Group("pingPong")
+    @GroupThreads(1)
+    public void pong() throws InterruptedException {
+        handOff(1);
+    }
+
+    /**
+     * 等到轮到自己再交出。带超时是为了迭代结束时对端线程停止后不会永久阻塞。
+     */
+    private void handOff(int me) throws InterruptedException {
+        lock.lock();
+        try {
+            if (turn != me && !turnChanged.await(1, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            turn = 1 - me;
+            turnChanged.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(NodeRecyclingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,110 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * StampedLock 文档中的 Point 示例：3 个读线程乐观读坐标、失败后退回悲观读，1 个写线程移动坐标。
+ * 对比 OptimisticStampedLock 与 JDK StampedLock 在同样读写混合下的吞吐。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimisticStampedLockBenchmark {
+
+    private final OptimisticStampedLock optimistic = new OptimisticStampedLock();
+
+    private final StampedLock stamped = new StampedLock();
+
+    private double x;
+
+    private double y;
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(3)
+    public double optimisticRead() {
+        long stamp = optimistic.tryOptimisticRead();
+        double cx = x, cy = y;
+        if (!optimistic.validate(stamp)) {
+            stamp = optimistic.readLock();
+            try {
+                cx = x;
+                cy = y;
+            } finally {
+                optimistic.unlockRead(stamp);
+            }
+        }
+        return Math.sqrt(cx * cx + cy * cy);
+    }
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(1)
+    public void optimisticWrite() {
+        long stamp = optimistic.writeLock();
+        try {
+            x += 1.0;
+            y += 1.0;
+        } finally {
+            optimistic.unlockWrite(stamp);
+        }
+    }
+
+    @Benchmark
+    @Group("stamped")
+    @GroupThreads(3)
+    public double stampedRead() {
+        long stamp = stamped.tryOptimisticRead();
+        double cx = x, cy = y;
+        if (!stamped.validate(stamp)) {
+            stamp = stamped.readLock();
+            try {
+                cx = x;
+                cy = y;
+            } finally {
+                stamped.unlockRead(stamp);
+            }
+        }
+        return Math.sqrt(cx * cx + cy * cy);
+    }
+
+    @Benchmark
+    @Group("stamped")
+    @GroupThreads(1)
+    public void stampedWrite() {
+        long stamp = stamped.writeLock();
+        try {
+            x += 1.0;
+            y += 1.0;
+        } finally {
+            stamped.unlockWrite(stamp);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(OptimisticStampedLockBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,55 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+/**
+ * 验证 validate 中读屏障的作用：乐观读校验通过时，读到的两个字段必须来自同一次写入。
+ * 写者在写锁内把 x、y 都从 0 改为 1，读者读 x、y 后校验，校验失败记为 (-1, -1)。
+ * <p>
+ * 运行：mvn -Pstress test-compile exec:exec -Dstress=OptimisticStampedLockStress
+ */
+@JCStressTest
+@Outcome(id = "0, 0", expect = Expect.ACCEPTABLE, desc = "Validated read before the write")
+@Outcome(id = "1, 1", expect = Expect.ACCEPTABLE, desc = "Validated read after the write")
+@Outcome(id = "-1, -1", expect = Expect.ACCEPTABLE, desc = "Overlapped with the writer, validation failed")
+@Outcome(expect = Expect.FORBIDDEN, desc = "Torn snapshot passed validation")
+@State
+public class OptimisticStampedLockStress {
+
+    private final OptimisticStampedLock lock = new OptimisticStampedLock();
+
+    private int x;
+
+    private int y;
+
+    @Actor
+    public void writer() {
+        long stamp = lock.writeLock();
+        try {
+            x = 1;
+            y = 1;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Actor
+    public void reader(II_Result r) {
+        long stamp = lock.tryOptimisticRead();
+        // 与写入顺序相反地读，最容易暴露重排
+        int cy = y;
+        int cx = x;
+        if (lock.validate(stamp)) {
+            r.r1 = cx;
+            r.r2 = cy;
+        } else {
+            r.r1 = -1;
+            r.r2 = -1;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OptimisticStampedLockTests {
+
+    @Test
+    public void writeInvalidatesOptimisticStamps() {
+        OptimisticStampedLock lock = new OptimisticStampedLock();
+        long stamp = lock.tryOptimisticRead();
+        assertNotEquals(0L, stamp);
+        assertTrue(lock.validate(stamp));
+
+        long write = lock.writeLock();
+        assertTrue(lock.isWriteLocked());
+        assertEquals(0L, lock.tryOptimisticRead());
+        assertEquals(0L, lock.tryReadLock());
+        assertFalse(lock.validate(stamp));
+        lock.unlockWrite(write);
+
+        assertFalse(lock.validate(stamp));
+        assertTrue(lock.validate(lock.tryOptimisticRead()));
+        assertFalse(lock.validate(0L));
+    }
+
+    @Test
+    public void readLockBlocksWriterAndKeepsStampValid() throws InterruptedException {
+        OptimisticStampedLock lock = new OptimisticStampedLock();
+        long optimistic = lock.tryOptimisticRead();
+        long read = lock.readLock();
+        assertEquals(1, lock.getReadLockCount());
+        assertEquals(0L, lock.tryWriteLock());
+        assertEquals(0L, lock.tryWriteLock(10, TimeUnit.MILLISECONDS));
+        assertTrue(lock.validate(read));
+        assertTrue(lock.validate(optimistic));
+        lock.unlockRead(read);
+
+        long write = lock.tryWriteLock();
+        assertNotEquals(0L, write);
+        lock.unlockWrite(write);
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void unlockWithStaleStampFails() {
+        OptimisticStampedLock lock = new OptimisticStampedLock();
+        long write = lock.writeLock();
+        lock.unlockWrite(write);
+        lock.unlockWrite(write);
+    }
+
+    @Test
+    public void validatedOptimisticReadsAreConsistent() throws InterruptedException {
+        OptimisticStampedLock lock = new OptimisticStampedLock();
+        // 两个字段必须始终相等，校验通过却不相等说明乐观读失效
+        long[] pair = new long[2];
+        AtomicBoolean torn = new AtomicBoolean();
+        AtomicLong fallbacks = new AtomicLong();
+        int readers = 4;
+        CountDownLatch done = new CountDownLatch(readers + 1);
+        for (int i = 0; i < readers; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < 200_000; j++) {
+                    long stamp = lock.tryOptimisticRead();
+                    long a = pair[0], b = pair[1];
+                    if (!lock.validate(stamp)) {
+                        fallbacks.incrementAndGet();
+                        stamp = lock.readLock();
+                        try {
+                            a = pair[0];
+                            b = pair[1];
+                        } finally {
+                            lock.unlockRead(stamp);
+                        }
+                    }
+                    if (a != b)
+                        torn.set(true);
+                }
+                done.countDown();
+            }).start();
+        }
+        new Thread(() -> {
+            for (int j = 0; j < 20_000; j++) {
+                long stamp = lock.writeLock();
+                try {
+                    pair[0]++;
+                    pair[1]++;
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+            done.countDown();
+        }).start();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertFalse(torn.get());
+        assertEquals(20_000, pair[0]);
+        assertFalse(lock.isWriteLocked());
+        assertFalse(lock.hasQueuedThreads());
+    }
+}
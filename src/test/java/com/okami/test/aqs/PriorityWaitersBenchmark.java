@@ -0,0 +1,99 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 2 个请求线程与 6 个批处理线程竞争同一把 ExclusiveLock 时，各自的获取延迟分布（看 p0.99）：
+ * fifo 下所有线程都用 lock()，priority 下请求线程用最高优先级、批处理线程用最低优先级。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=PriorityWaitersBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PriorityWaitersBenchmark {
+
+    private static final int HIGH = 3;
+
+    private static final int LOW = 0;
+
+    @Param({"fifo", "priority"})
+    public String mode;
+
+    /**
+     * 临界区内的工作量。
+     */
+    @Param({"200"})
+    public int work;
+
+    private ExclusiveLock lock;
+
+    private boolean prioritized;
+
+    @Setup
+    public void setUp() {
+        lock = new ExclusiveLock();
+        prioritized = "priority".equals(mode);
+        if (prioritized)
+            lock.setPriorityLevels(4, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void request() {
+        if (prioritized)
+            lock.lock(HIGH);
+        else
+            lock.lock();
+        try {
+            Blackhole.consumeCPU(work);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public void batch() {
+        if (prioritized)
+            lock.lock(LOW);
+        else
+            lock.lock();
+        try {
+            Blackhole.consumeCPU(work);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PriorityWaitersBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
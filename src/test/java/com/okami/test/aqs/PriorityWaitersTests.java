@@ -0,0 +1,167 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PriorityWaitersTests {
+
+    private final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * 锁被当前线程持有时依次启动等待者，每个都确认排上队后再启动下一个。
+     * 编号接着已在排队的等待者往下编。
+     */
+    private List<Thread> startWaiters(ExclusiveLock lock, int... priorities) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        int queued = lock.getQueueLength();
+        for (int i = 0; i < priorities.length; i++) {
+            int id = queued + i;
+            int priority = priorities[i];
+            Thread t = new Thread(() -> {
+                lock.lock(priority);
+                try {
+                    order.add(id);
+                } finally {
+                    lock.unlock();
+                }
+            });
+            t.start();
+            threads.add(t);
+            awaitQueueLength(lock, id + 1);
+        }
+        return threads;
+    }
+
+    private static void awaitQueueLength(ExclusiveLock lock, int n) throws InterruptedException {
+        for (long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10); lock.getQueueLength() != n; ) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread t : threads) {
+            t.join(10_000);
+            assertFalse(t.isAlive());
+        }
+    }
+
+    @Test
+    public void higherPriorityIsWokenFirst() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.setPriorityLevels(4, 0, TimeUnit.MILLISECONDS);
+        lock.lock();
+        List<Thread> threads = startWaiters(lock, 0, 0, 3, 1, 3);
+        lock.unlock();
+        joinAll(threads);
+        // 同级内 FIFO
+        assertEquals(Arrays.asList(2, 4, 3, 0, 1), order);
+        assertFalse(lock.hasQueuedThreads());
+    }
+
+    @Test
+    public void agingPromotesLongWaiters() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.setPriorityLevels(4, 10, TimeUnit.MILLISECONDS);
+        lock.lock();
+        List<Thread> threads = startWaiters(lock, 0);
+        Thread.sleep(100);
+        threads.addAll(startWaiters(lock, 3));
+        lock.unlock();
+        joinAll(threads);
+        // 等了 10 个老化周期的 0 级等待者有效优先级已超过 3 级
+        assertEquals(Arrays.asList(0, 1), order);
+    }
+
+    @Test
+    public void timedOutWaitersDoNotLoseSignals() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.setPriorityLevels(4, 1, TimeUnit.MILLISECONDS);
+        int[] counter = new int[1];
+        int threads = 8;
+        int rounds = 2_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            int priority = i & 3;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < rounds; ) {
+                    try {
+                        if (random.nextBoolean()) {
+                            lock.lock(priority);
+                        } else if (!lock.tryLock(priority, random.nextInt(50), TimeUnit.MICROSECONDS)) {
+                            continue;
+                        }
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    try {
+                        counter[0]++;
+                        j++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(threads * rounds, counter[0]);
+        assertFalse(lock.hasQueuedThreads());
+    }
+
+    @Test
+    public void interruptCancelsPrioritizedWait() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.setPriorityLevels(2, 0, TimeUnit.MILLISECONDS);
+        lock.lock();
+        boolean[] interrupted = new boolean[1];
+        Thread t = new Thread(() -> {
+            try {
+                lock.lockInterruptibly(1);
+                lock.unlock();
+            } catch (InterruptedException e) {
+                interrupted[0] = true;
+            }
+        });
+        t.start();
+        awaitQueueLength(lock, 1);
+        t.interrupt();
+        t.join(10_000);
+        assertTrue(interrupted[0]);
+        assertEquals(0, lock.getQueueLength());
+        List<Thread> threads = startWaiters(lock, 0);
+        lock.unlock();
+        joinAll(threads);
+        assertEquals(Collections.singletonList(0), order);
+    }
+
+    @Test
+    public void withoutLevelsPriorityIsIgnored() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        assertEquals(0, lock.getPriorityLevels());
+        lock.lock();
+        List<Thread> threads = startWaiters(lock, 0, 5);
+        lock.unlock();
+        joinAll(threads);
+        assertEquals(Arrays.asList(0, 1), order);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void levelsCanOnlyBeSetOnce() {
+        ExclusiveLock lock = new ExclusiveLock();
+        lock.setPriorityLevels(2, 0, TimeUnit.MILLISECONDS);
+        lock.setPriorityLevels(4, 0, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,43 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Mode;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.Signal;
+import org.openjdk.jcstress.annotations.State;
+
+/**
+ * 共享模式的传播：两个线程各获取一个许可，两个线程几乎同时各释放一个。
+ * 第一个被唤醒的获取者必须把唤醒传播给第二个（PROPAGATE 状态），否则第二个获取者永远睡下去，
+ * 即 JDK-6801020 那样的丢失唤醒，jcstress 报告 STALE。
+ * <p>
+ * Termination 模式只有一个 actor 和一个 signal，另一个获取者与释放者由它们各自起一个线程。
+ * <p>
+ * 运行：mvn -Pstress test-compile exec:exec -Dstress=SharedPropagationStress
+ */
+@JCStressTest(Mode.Termination)
+@Outcome(id = "TERMINATED", expect = Expect.ACCEPTABLE, desc = "Both acquirers woke up")
+@Outcome(id = "STALE", expect = Expect.FORBIDDEN, desc = "Lost wakeup")
+@State
+public class SharedPropagationStress {
+
+    private final LongSemaphore semaphore = new LongSemaphore(0);
+
+    @Actor
+    public void acquirers() throws InterruptedException {
+        Thread other = new Thread(() -> semaphore.acquireUninterruptibly(1));
+        other.start();
+        semaphore.acquireUninterruptibly(1);
+        other.join();
+    }
+
+    @Signal
+    public void releasers() throws InterruptedException {
+        Thread other = new Thread(() -> semaphore.release(1));
+        other.start();
+        semaphore.release(1);
+        other.join();
+    }
+}
@@ -0,0 +1,68 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 短临界区下直接 park 与自适应自旋的获取延迟分布（SampleTime 模式输出 p50/p99）。
+ * 需要在多核机器上运行，单核时 {@link AdaptiveSpinPolicy} 的预算恒为 0。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class SpinPolicyBenchmark {
+
+    @Param({"park", "adaptive"})
+    public String spin;
+
+    /**
+     * 临界区内的工作量。
+     */
+    @Param({"10", "100"})
+    public int holdWork;
+
+    private ExclusiveLock lock;
+
+    @Setup
+    public void setUp() {
+        lock = new ExclusiveLock("adaptive".equals(spin) ? SpinPolicy.adaptive() : null);
+    }
+
+    @Benchmark
+    public void acquire() {
+        lock.lock();
+        try {
+            Blackhole.consumeCPU(holdWork);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SpinPolicyBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
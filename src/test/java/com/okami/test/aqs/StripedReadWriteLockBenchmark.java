@@ -0,0 +1,87 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 模拟读多写少的路由表：StripedReadWriteLock 与 ReentrantReadWriteLock 在 99/1、90/10 读写比下的吞吐。
+ * main 方法依次以 1~64 线程运行，也可以用 -t 指定线程数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StripedReadWriteLockBenchmark {
+
+    private static final int ROUTES = 1024;
+
+    @Param({"striped", "reentrant"})
+    public String lockType;
+
+    @Param({"99", "90"})
+    public int readPercent;
+
+    private ReadWriteLock lock;
+
+    private final Map<Integer, String> routes = new HashMap<>();
+
+    @Setup
+    public void setUp() {
+        lock = "striped".equals(lockType) ? new StripedReadWriteLock() : new ReentrantReadWriteLock();
+        for (int i = 0; i < ROUTES; i++) {
+            routes.put(i, "destination-" + i);
+        }
+    }
+
+    @Benchmark
+    public String route() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer key = random.nextInt(ROUTES);
+        if (random.nextInt(100) < readPercent) {
+            lock.readLock().lock();
+            try {
+                return routes.get(key);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            return routes.put(key, routes.get(key));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32, 64}) {
+            Options options = new OptionsBuilder()
+                    .include(StripedReadWriteLockBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StripedReadWriteLockTests {
+
+    @Test
+    public void writerRevokesBiasAndExcludesReaders() throws InterruptedException {
+        StripedReadWriteLock rw = new StripedReadWriteLock(4);
+        Lock read = rw.readLock();
+        Lock write = rw.writeLock();
+        // 两个字段必须始终相等，读者看到不相等就说明与写者并发了
+        long[] pair = new long[2];
+        AtomicBoolean torn = new AtomicBoolean();
+        int readers = 6;
+        CountDownLatch done = new CountDownLatch(readers + 2);
+        for (int i = 0; i < readers; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < 50_000; j++) {
+                    read.lock();
+                    try {
+                        if (pair[0] != pair[1])
+                            torn.set(true);
+                    } finally {
+                        read.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        for (int i = 0; i < 2; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < 5_000; j++) {
+                    write.lock();
+                    try {
+                        pair[0]++;
+                        pair[1]++;
+                    } finally {
+                        write.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertFalse(torn.get());
+        assertEquals(10_000, pair[0]);
+        assertFalse(rw.isWriteLocked());
+    }
+
+    @Test
+    public void readLockIsReentrantAcrossBiasRevocation() throws InterruptedException {
+        StripedReadWriteLock rw = new StripedReadWriteLock();
+        Lock read = rw.readLock();
+        read.lock();
+        read.lock();
+        Thread writer = new Thread(() -> {
+            rw.writeLock().lock();
+            rw.writeLock().unlock();
+        });
+        writer.start();
+        read.lock();
+        read.unlock();
+        read.unlock();
+        assertTrue(writer.isAlive());
+        read.unlock();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(writer.isAlive());
+        assertFalse(rw.isReadBiased());
+    }
+
+    @Test
+    public void writeTryLockDoesNotWaitForFastReaders() throws InterruptedException {
+        StripedReadWriteLock rw = new StripedReadWriteLock();
+        Lock read = rw.readLock();
+        read.lock();
+        assertTrue(rw.isReadBiased());
+        boolean[] results = new boolean[2];
+        long[] elapsed = new long[2];
+        Thread writer = new Thread(() -> {
+            long start = System.nanoTime();
+            results[0] = rw.writeLock().tryLock();
+            elapsed[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            try {
+                results[1] = rw.writeLock().tryLock(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            elapsed[1] = System.nanoTime() - start;
+        });
+        writer.start();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        read.unlock();
+        assertFalse(writer.isAlive());
+        assertFalse(results[0]);
+        assertFalse(results[1]);
+        assertTrue(elapsed[0] < TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(elapsed[1] >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(elapsed[1] < TimeUnit.SECONDS.toNanos(5));
+        assertFalse(rw.isWriteLocked());
+        assertTrue(rw.writeLock().tryLock());
+        rw.writeLock().unlock();
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void unlockWithoutReadHoldFails() {
+        new StripedReadWriteLock().readLock().unlock();
+    }
+}
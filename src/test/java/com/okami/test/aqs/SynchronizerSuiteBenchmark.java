@@ -0,0 +1,138 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回归用的固定场景集，每次改动 QueuedSynchronizer 之后跑一遍，与上一次的 JSON 结果对比：
+ * <ul>
+ * <li>exclusiveUncontended：单线程 lock/unlock，快速路径的吞吐量；</li>
+ * <li>exclusiveContended：4 个线程争用，入队、park 与唤醒的吞吐量；</li>
+ * <li>exclusiveLatency：同样的争用下单次 lock/unlock 的延迟分布，看尾部；</li>
+ * <li>handoff：容量为 1 的队列上一个生产者一个消费者，每次都经过 Condition 的 await 与 signal；</li>
+ * <li>sharedContended：4 个线程在 LongSemaphore 上获取与释放，共享模式的传播。</li>
+ * </ul>
+ * 其余基准各自关注一个特性的参数，这里只用默认配置，参数固定以便不同版本之间可比。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=SynchronizerSuiteBenchmark，或直接执行 main 方法。
+ * 结果写在 target/jmh-result.json。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SynchronizerSuiteBenchmark {
+
+    /**
+     * 临界区内的工作量。
+     */
+    private static final int INSIDE_WORK = 50;
+
+    @State(Scope.Thread)
+    public static class ThreadLock {
+
+        final ExclusiveLock lock = new ExclusiveLock();
+
+        long counter;
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedLock {
+
+        final ExclusiveLock lock = new ExclusiveLock();
+
+        long counter;
+    }
+
+    @State(Scope.Group)
+    public static class Handoff {
+
+        final TwoLockBlockingQueue<Integer> queue = new TwoLockBlockingQueue<>(1);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Permits {
+
+        final LongSemaphore semaphore = new LongSemaphore(2);
+    }
+
+    @Benchmark
+    public long exclusiveUncontended(ThreadLock s) {
+        s.lock.lock();
+        try {
+            return ++s.counter;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long exclusiveContended(SharedLock s) {
+        s.lock.lock();
+        try {
+            Blackhole.consumeCPU(INSIDE_WORK);
+            return ++s.counter;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.SampleTime)
+    public long exclusiveLatency(SharedLock s) {
+        return exclusiveContended(s);
+    }
+
+    // 带超时：一次迭代结束时对方可能已经停下，不能一直阻塞
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean handoffPut(Handoff s) throws InterruptedException {
+        return s.queue.offer(1, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public Integer handoffTake(Handoff s) throws InterruptedException {
+        return s.queue.poll(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void sharedContended(Permits s) throws InterruptedException {
+        s.semaphore.acquire(1);
+        try {
+            Blackhole.consumeCPU(INSIDE_WORK);
+        } finally {
+            s.semaphore.release(1);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SynchronizerSuiteBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
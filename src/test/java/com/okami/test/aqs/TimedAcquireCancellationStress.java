@@ -0,0 +1,66 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 取消与释放的竞争：两个线程用很短的超时 tryLock，超时的节点在释放方唤醒后继、另一个线程入队的同时出队。
+ * 无论谁拿到锁、谁超时，结束后锁必须空闲且队列中没有存活的节点，否则取消丢了唤醒或者漏了释放。
+ * <p>
+ * r1、r2 是两个线程是否拿到锁，r3 是结束时锁被占用或仍有排队者。
+ * <p>
+ * 运行：mvn -Pstress test-compile exec:exec -Dstress=TimedAcquireCancellationStress
+ */
+@JCStressTest
+@Outcome(id = {"1, 1, 0", "1, 0, 0", "0, 1, 0", "0, 0, 0"}, expect = Expect.ACCEPTABLE,
+        desc = "Lock released and queue drained")
+@Outcome(expect = Expect.FORBIDDEN, desc = "Lock or waiter left behind")
+@State
+public class TimedAcquireCancellationStress {
+
+    private final ExclusiveLock lock = new ExclusiveLock();
+
+    private int tryLockBriefly() {
+        try {
+            if (!lock.tryLock(1, TimeUnit.MICROSECONDS))
+                return 0;
+        } catch (InterruptedException e) {
+            return -1;
+        }
+        try {
+            // 持有一小会儿，让另一方入队
+            Thread.yield();
+            return 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Actor
+    public void first(III_Result r) {
+        r.r1 = tryLockBriefly();
+    }
+
+    @Actor
+    public void second(III_Result r) {
+        r.r2 = tryLockBriefly();
+    }
+
+    @Actor
+    public void holder() {
+        lock.lock();
+        lock.unlock();
+    }
+
+    @Arbiter
+    public void check(III_Result r) {
+        r.r3 = lock.isLocked() || lock.hasQueuedThreads() ? 1 : 0;
+    }
+}
@@ -0,0 +1,142 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模拟 broker 停顿：锁一直被持有，10k 个线程反复 tryLock(1~20ms) 超时。
+ * 度量同时运行的一个业务线程的吞吐（被超时唤醒风暴抢走的 CPU），
+ * 并在每轮结束时打印超时次数和超时的平均延后量（精度）。
+ * 对比每个线程各自 parkNanos 与使用 1ms 刻度时间轮。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss256k")
+@Threads(1)
+public class TimingWheelBenchmark {
+
+    @Param({"park", "wheel"})
+    public String timeouts;
+
+    @Param({"10000"})
+    public int waiters;
+
+    private final ExclusiveLock lock = new ExclusiveLock(null);
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private final LongAdder timedOut = new LongAdder();
+
+    private final LongAdder latenessNanos = new LongAdder();
+
+    private volatile boolean running;
+
+    private TimingWheel wheel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        if ("wheel".equals(timeouts))
+            lock.setTimingWheel(wheel = new TimingWheel(1, TimeUnit.MILLISECONDS));
+        running = true;
+        // 持有锁的线程直到结束才释放
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+                while (running)
+                    TimeUnit.MILLISECONDS.sleep(10);
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.setDaemon(true);
+        holder.start();
+        while (!lock.isLocked())
+            Thread.yield();
+        threads.add(holder);
+        for (int i = 0; i < waiters; i++) {
+            Thread t = new Thread(null, this::timedWaiter, "timed-waiter-" + i, 256 * 1024);
+            t.setDaemon(true);
+            t.start();
+            threads.add(t);
+        }
+    }
+
+    private void timedWaiter() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            long timeout = TimeUnit.MILLISECONDS.toNanos(1 + random.nextInt(20));
+            long start = System.nanoTime();
+            try {
+                if (lock.tryLock(timeout, TimeUnit.NANOSECONDS)) {
+                    lock.unlock();
+                } else {
+                    timedOut.increment();
+                    latenessNanos.add(System.nanoTime() - start - timeout);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounters() {
+        timedOut.reset();
+        latenessNanos.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        long n = timedOut.sum();
+        System.out.printf("  [%s] timeouts=%d, mean lateness=%.1f us%n",
+                timeouts, n, n == 0 ? 0.0 : latenessNanos.sum() / 1000.0 / n);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread t : threads)
+            t.join();
+        if (wheel != null)
+            wheel.close();
+    }
+
+    @Benchmark
+    public void businessWork() {
+        Blackhole.consumeCPU(1000);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TimingWheelBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
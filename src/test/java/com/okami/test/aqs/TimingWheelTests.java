@@ -0,0 +1,217 @@
+package com.okami.test.aqs;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTests {
+
+    private final List<TimingWheel> wheels = new ArrayList<>();
+
+    private TimingWheel newWheel(long tick, TimeUnit unit) {
+        TimingWheel wheel = new TimingWheel(tick, unit);
+        wheels.add(wheel);
+        return wheel;
+    }
+
+    private static long liveTickers() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("aqs-timing-wheel"))
+                .count();
+    }
+
+    @After
+    public void tearDown() {
+        for (TimingWheel wheel : wheels)
+            wheel.close();
+    }
+
+    @Test
+    public void timedWaitsExpireNoEarlierThanDeadline() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.setTimingWheel(newWheel(1, TimeUnit.MILLISECONDS));
+        Condition never = lock.newCondition();
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            assertTrue(never.awaitNanos(TimeUnit.MILLISECONDS.toNanos(30)) <= 0L);
+            assertFalse(never.await(30, TimeUnit.MILLISECONDS));
+            assertFalse(never.awaitUntil(new Date(System.currentTimeMillis() + 30)));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+        } finally {
+            lock.unlock();
+        }
+
+        lock.lock();
+        long[] waited = new long[1];
+        Thread t = new Thread(() -> {
+            long begin = System.nanoTime();
+            try {
+                assertFalse(lock.tryLock(50, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException ignored) {
+            }
+            waited[0] = System.nanoTime() - begin;
+        });
+        t.start();
+        t.join();
+        lock.unlock();
+        assertTrue(waited[0] >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertFalse(lock.hasQueuedThreads());
+    }
+
+    @Test
+    public void signalBeforeTimeoutCancelsEntry() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.setTimingWheel(TimingWheel.shared());
+        Condition ready = lock.newCondition();
+        CountDownLatch waiting = new CountDownLatch(1);
+        boolean[] signalled = new boolean[1];
+        Thread t = new Thread(() -> {
+            lock.lock();
+            try {
+                waiting.countDown();
+                signalled[0] = ready.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        });
+        t.start();
+        waiting.await();
+        lock.lock();
+        try {
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+        t.join(5_000);
+        assertFalse(t.isAlive());
+        assertTrue(signalled[0]);
+    }
+
+    @Test
+    public void manyTimedWaitersAllTimeOut() throws InterruptedException {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.setTimingWheel(newWheel(1, TimeUnit.MILLISECONDS));
+        int waiters = 500;
+        AtomicInteger timedOut = new AtomicInteger();
+        AtomicLong early = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(waiters);
+        lock.lock();
+        for (int i = 0; i < waiters; i++) {
+            long timeoutMillis = 5 + i % 50;
+            new Thread(() -> {
+                long begin = System.nanoTime();
+                try {
+                    if (!lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                        timedOut.incrementAndGet();
+                        if (System.nanoTime() - begin < TimeUnit.MILLISECONDS.toNanos(timeoutMillis))
+                            early.incrementAndGet();
+                    }
+                } catch (InterruptedException ignored) {
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        lock.unlock();
+        assertEquals(waiters, timedOut.get());
+        assertEquals(0, early.get());
+        assertFalse(lock.hasQueuedThreads());
+    }
+
+    @Test
+    public void asyncTimeoutUsesWheel() throws Exception {
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.setTimingWheel(TimingWheel.shared());
+        lock.lock();
+        assertFalse(lock.tryLockAsync(20, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS));
+        assertEquals(0, lock.getQueueLength());
+        lock.unlock();
+    }
+
+    @Test
+    public void entriesCascadeThroughLevels() throws InterruptedException {
+        // 100us 刻度：2ms 在第 0 层，20ms 在第 1 层，500ms 在第 2 层
+        TimingWheel wheel = newWheel(100, TimeUnit.MICROSECONDS);
+        long[] delays = {2, 20, 500};
+        long[] fired = new long[delays.length];
+        CountDownLatch done = new CountDownLatch(delays.length + 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < delays.length; i++) {
+            int index = i;
+            wheel.schedule(() -> {
+                fired[index] = System.nanoTime() - start;
+                done.countDown();
+            }, start + TimeUnit.MILLISECONDS.toNanos(delays[i]));
+        }
+        TimingWheel.Timeout cancelled = wheel.schedule(done::countDown, start + TimeUnit.MILLISECONDS.toNanos(5));
+        TimingWheel.cancel(cancelled);
+        assertFalse(done.await(2, TimeUnit.SECONDS));
+        assertEquals(1, done.getCount());
+        for (int i = 0; i < delays.length; i++) {
+            assertTrue(fired[i] >= TimeUnit.MILLISECONDS.toNanos(delays[i]));
+            assertTrue(fired[i] < TimeUnit.MILLISECONDS.toNanos(delays[i] + 200));
+        }
+    }
+
+    @Test
+    public void failingTaskDoesNotStopTicker() throws InterruptedException {
+        TimingWheel wheel = newWheel(1, TimeUnit.MILLISECONDS);
+        long now = System.nanoTime();
+        wheel.schedule(() -> {
+            throw new IllegalStateException("expected");
+        }, now + TimeUnit.MILLISECONDS.toNanos(2));
+        CountDownLatch fired = new CountDownLatch(1);
+        wheel.schedule(fired::countDown, now + TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void closeStopsTickerAndHandsOverPendingEntries() throws InterruptedException {
+        long tickers = liveTickers();
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        ExclusiveLock lock = new ExclusiveLock(null);
+        lock.setTimingWheel(wheel);
+        lock.lock();
+        boolean[] acquired = {true};
+        long[] waited = new long[1];
+        Thread t = new Thread(() -> {
+            long begin = System.nanoTime();
+            try {
+                acquired[0] = lock.tryLock(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            waited[0] = System.nanoTime() - begin;
+        });
+        t.start();
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(fired::countDown, start + TimeUnit.MILLISECONDS.toNanos(100));
+        while (!lock.hasQueuedThreads())
+            Thread.yield();
+        wheel.close();
+        assertTrue(wheel.isClosed());
+        assertEquals(1, fired.getCount());
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        t.join(5_000);
+        assertFalse(t.isAlive());
+        lock.unlock();
+        assertFalse(acquired[0]);
+        assertTrue(waited[0] >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(tickers, liveTickers());
+    }
+}
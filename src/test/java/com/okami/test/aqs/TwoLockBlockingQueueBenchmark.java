@@ -0,0 +1,144 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * binder 线程与工作线程之间按批交接消息：2 个生产者每次放入 batch 个元素，2 个消费者每次取走至多 batch 个。
+ * <ul>
+ * <li>abq/lbq：生产者逐个 offer（JDK 队列没有批量入队），消费者先 poll 等第一个元素，再 drainTo 取走其余。</li>
+ * <li>twoLock：{@link TwoLockBlockingQueue#offerAll} 与 {@link TwoLockBlockingQueue#drainTo(java.util.Collection, int, long, TimeUnit)}，
+ * 整批只获取一次锁。</li>
+ * </ul>
+ * 得分是批次数，辅助计数 produced/consumed 是元素数，比较不同 batch 时看后者。
+ * 所有阻塞操作都带超时，迭代结束时另一方停下不会把线程卡住。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=TwoLockBlockingQueueBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TwoLockBlockingQueueBenchmark {
+
+    private static final int CAPACITY = 1024;
+
+    private static final long TIMEOUT_MILLIS = 10;
+
+    private static final Object MESSAGE = new Object();
+
+    @Param({"abq", "lbq", "twoLock"})
+    public String queue;
+
+    @Param({"1", "4", "16", "64", "256"})
+    public int batch;
+
+    private BlockingQueue<Object> q;
+
+    private TwoLockBlockingQueue<Object> twoLock;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long produced;
+
+        public long consumed;
+    }
+
+    @State(Scope.Thread)
+    public static class Buffers {
+        List<Object> batch;
+
+        List<Object> drained;
+
+        @Setup(Level.Trial)
+        public void setUp(TwoLockBlockingQueueBenchmark benchmark) {
+            batch = new ArrayList<>(benchmark.batch);
+            for (int i = 0; i < benchmark.batch; i++)
+                batch.add(MESSAGE);
+            drained = new ArrayList<>(benchmark.batch);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (queue) {
+            case "abq":
+                q = new ArrayBlockingQueue<>(CAPACITY);
+                break;
+            case "lbq":
+                q = new LinkedBlockingQueue<>(CAPACITY);
+                break;
+            case "twoLock":
+                q = twoLock = new TwoLockBlockingQueue<>(CAPACITY);
+                break;
+            default:
+                throw new IllegalArgumentException(queue);
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(2)
+    public void produce(Buffers buffers, Counters counters) throws InterruptedException {
+        if (twoLock != null) {
+            counters.produced += twoLock.offerAll(buffers.batch, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            for (Object e : buffers.batch) {
+                if (!q.offer(e, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                    break;
+                counters.produced++;
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(2)
+    public void consume(Buffers buffers, Counters counters) throws InterruptedException {
+        List<Object> drained = buffers.drained;
+        drained.clear();
+        if (twoLock != null) {
+            counters.consumed += twoLock.drainTo(drained, batch, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            Object first = q.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (first != null) {
+                drained.add(first);
+                counters.consumed += 1 + q.drainTo(drained, batch - 1);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TwoLockBlockingQueueBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
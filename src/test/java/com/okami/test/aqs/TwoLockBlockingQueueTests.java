@@ -0,0 +1,161 @@
+package com.okami.test.aqs;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TwoLockBlockingQueueTests {
+
+    @Test
+    public void boundedFifo() throws InterruptedException {
+        TwoLockBlockingQueue<Integer> queue = new TwoLockBlockingQueue<>(2);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertFalse(queue.offer(3, 1, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals(Integer.valueOf(1), queue.peek());
+        assertEquals(Integer.valueOf(1), queue.take());
+        assertEquals(Integer.valueOf(2), queue.poll());
+        assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void offerAllAddsWhatFitsBeforeTimeout() throws InterruptedException {
+        TwoLockBlockingQueue<Integer> queue = new TwoLockBlockingQueue<>(3);
+        assertEquals(3, queue.offerAll(Arrays.asList(1, 2, 3, 4, 5), 1, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(queue));
+        assertEquals(0, queue.offerAll(Collections.singletonList(6), 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void offerAllWaitsForSpace() throws InterruptedException {
+        TwoLockBlockingQueue<Integer> queue = new TwoLockBlockingQueue<>(2);
+        List<Integer> drained = new ArrayList<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                while (drained.size() < 5)
+                    queue.drainTo(drained, 2, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        consumer.start();
+        assertEquals(5, queue.offerAll(Arrays.asList(1, 2, 3, 4, 5), 10, TimeUnit.SECONDS));
+        consumer.join(10_000);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), drained);
+    }
+
+    @Test
+    public void drainToWaitsForFirstElement() throws InterruptedException {
+        TwoLockBlockingQueue<Integer> queue = new TwoLockBlockingQueue<>(8);
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(0, queue.drainTo(drained, 4, 1, TimeUnit.MILLISECONDS));
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+                queue.offerAll(Arrays.asList(1, 2, 3, 4, 5, 6), 1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        producer.start();
+        assertTrue(queue.drainTo(drained, 4, 10, TimeUnit.SECONDS) > 0);
+        producer.join();
+        queue.drainTo(drained);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), drained);
+    }
+
+    @Test
+    public void iteratorRemove() {
+        TwoLockBlockingQueue<Integer> queue = new TwoLockBlockingQueue<>(4);
+        queue.addAll(Arrays.asList(1, 2, 3, 4));
+        for (Iterator<Integer> it = queue.iterator(); it.hasNext(); )
+            if (it.next() % 2 == 0)
+                it.remove();
+        assertEquals(Arrays.asList(1, 3), new ArrayList<>(queue));
+        assertTrue(queue.remove(3));
+        assertFalse(queue.contains(3));
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertTrue(queue.offer(5));
+    }
+
+    @Test
+    public void batchesAreNotLostUnderContention() throws InterruptedException {
+        TwoLockBlockingQueue<Integer> queue = new TwoLockBlockingQueue<>(16);
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 20_000;
+        int total = producers * perProducer;
+        long[] sums = new long[consumers];
+        int[] counts = new int[consumers];
+        CountDownLatch done = new CountDownLatch(producers + consumers);
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    for (int i = 0; i < perProducer; ) {
+                        int n = Math.min(1 + random.nextInt(40), perProducer - i);
+                        List<Integer> batch = new ArrayList<>(n);
+                        for (int j = 0; j < n; j++)
+                            batch.add(base + i + j);
+                        int added = queue.offerAll(batch, random.nextInt(100), TimeUnit.MICROSECONDS);
+                        // 超时时已放入的前缀不会撤回，从未放入的元素接着放
+                        i += added;
+                    }
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                done.countDown();
+            }).start();
+        }
+        CountDownLatch drainedAll = new CountDownLatch(1);
+        int[] remaining = {total};
+        for (int c = 0; c < consumers; c++) {
+            int id = c;
+            new Thread(() -> {
+                List<Integer> buffer = new ArrayList<>();
+                try {
+                    while (drainedAll.getCount() > 0) {
+                        buffer.clear();
+                        int n = queue.drainTo(buffer, 1 + id * 8, 1, TimeUnit.MILLISECONDS);
+                        for (int x : buffer)
+                            sums[id] += x;
+                        counts[id] += n;
+                        synchronized (remaining) {
+                            if ((remaining[0] -= n) == 0)
+                                drainedAll.countDown();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long sum = 0;
+        int count = 0;
+        for (int c = 0; c < consumers; c++) {
+            sum += sums[c];
+            count += counts[c];
+        }
+        assertEquals(total, count);
+        assertEquals((long) total * (total - 1) / 2, sum);
+        assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,99 @@
+package com.okami.test.monitor;
+
+import com.okami.test.aqs.ContentionStats;
+import com.okami.test.aqs.ExclusiveLock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.endpoint.EndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.endpoint.web.WebEndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementContextAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.web.servlet.ServletManagementContextAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 只加载 {@link LockMonitorConfig} 与 actuator、Spring MVC 的自动配置，不连接 RocketMQ。
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = LockMonitorConfig.class,
+        properties = "management.endpoints.web.exposure.include=locks")
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class,
+        DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class,
+        EndpointAutoConfiguration.class, WebEndpointAutoConfiguration.class,
+        ManagementContextAutoConfiguration.class, ServletManagementContextAutoConfiguration.class,
+        MetricsAutoConfiguration.class, SimpleMetricsExportAutoConfiguration.class})
+@AutoConfigureMockMvc
+public class LockMonitorConfigTests {
+
+    private static final String LOCK = "monitor-order-lock";
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private static void contend() {
+        ExclusiveLock lock = new ExclusiveLock();
+        lock.setContentionStats(ContentionStats.named(LOCK));
+        lock.lock();
+        lock.unlock();
+    }
+
+    @Test
+    public void locksEndpointListsNamedLocks() throws Exception {
+        contend();
+        mvc.perform(get("/actuator/locks"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['" + LOCK + "'].queueDepth").value(0))
+                .andExpect(jsonPath("$['" + LOCK + "'].waitTime.count").exists());
+        mvc.perform(get("/actuator/locks/" + LOCK))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.holdTime.buckets").exists());
+        mvc.perform(get("/actuator/locks/no-such-lock"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void namedLocksAreBoundAsMeters() {
+        contend();
+        assertNotNull(registry.find("aqs.lock.acquisitions").tag("lock", LOCK).functionCounter());
+        assertNotNull(registry.find("aqs.lock.queue.depth").tag("lock", LOCK).gauge());
+    }
+
+    @Test
+    public void closedBinderStopsBindingNewLocks() {
+        MeterRegistry bound = new SimpleMeterRegistry();
+        LockMetricsBinder binder = new LockMetricsBinder();
+        binder.bindTo(bound);
+        ContentionStats.named("monitor-before-close");
+        binder.close();
+        ContentionStats.named("monitor-after-close");
+        assertNotNull(bound.find("aqs.lock.acquisitions").tag("lock", "monitor-before-close").functionCounter());
+        assertNull(bound.find("aqs.lock.acquisitions").tag("lock", "monitor-after-close").functionCounter());
+
+        MeterRegistry closed = new SimpleMeterRegistry();
+        new LockMetricsBinder().bindTo(closed);
+        closed.close();
+        ContentionStats.named("monitor-after-registry-close");
+        assertNull(closed.find("aqs.lock.acquisitions").tag("lock", "monitor-after-registry-close").functionCounter());
+    }
+}
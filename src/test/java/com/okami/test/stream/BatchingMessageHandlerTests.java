@@ -0,0 +1,268 @@
+package com.okami.test.stream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.acks.AcknowledgmentCallback;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandlingException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchingMessageHandlerTests {
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    private BatchingMessageHandler handler;
+
+    @After
+    public void tearDown() {
+        if (handler != null)
+            handler.close();
+    }
+
+    private static Message<byte[]> message(String payload) {
+        return MessageBuilder.withPayload(payload.getBytes(StandardCharsets.UTF_8)).build();
+    }
+
+    private static List<String> payloads(List<Message<byte[]>> batch) {
+        List<String> result = new ArrayList<>();
+        for (Message<byte[]> m : batch)
+            result.add(new String(m.getPayload(), StandardCharsets.UTF_8));
+        return result;
+    }
+
+    /**
+     * 每条消息一个线程，模拟 binder 的消费线程；返回各条消息的异常（成功为 null）。
+     */
+    private Map<String, Throwable> sendConcurrently(String... payloads) throws InterruptedException {
+        Map<String, Throwable> errors = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(payloads.length);
+        for (String p : payloads) {
+            new Thread(() -> {
+                try {
+                    handler.handleMessage(message(p));
+                } catch (Throwable ex) {
+                    errors.put(p, ex);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return errors;
+    }
+
+    @Test
+    public void batchesUpToMaxCount() throws InterruptedException {
+        handler = new BatchingMessageHandler("test", b -> batches.add(payloads(b)), 4, 1024, 10, TimeUnit.SECONDS, 0);
+        assertTrue(sendConcurrently("a", "b", "c", "d", "e", "f", "g", "h").isEmpty());
+        assertEquals(2, batches.size());
+        for (List<String> b : batches)
+            assertEquals(4, b.size());
+        assertEquals(2, handler.getBatchCount());
+        assertEquals(8, handler.getMessageCount());
+    }
+
+    @Test
+    public void flushesAfterMaxWait() {
+        handler = new BatchingMessageHandler("test", b -> batches.add(payloads(b)), 100, 1024, 20, TimeUnit.MILLISECONDS, 0);
+        long start = System.nanoTime();
+        handler.handleMessage(MessageBuilder.withPayload("only").build());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1, batches.size());
+        assertEquals("only", batches.get(0).get(0));
+    }
+
+    @Test
+    public void batchesStayWithinMaxBytes() throws InterruptedException {
+        handler = new BatchingMessageHandler("test", b -> batches.add(payloads(b)), 100, 10, 50, TimeUnit.MILLISECONDS, 0);
+        assertTrue(sendConcurrently("aaaa", "bbbb", "cccc", "dddd", "eeee", "oversized-message").isEmpty());
+        int total = 0;
+        for (List<String> b : batches) {
+            int bytes = 0;
+            for (String p : b)
+                bytes += p.length();
+            assertTrue(b.toString(), bytes <= 10 || b.size() == 1);
+            total += b.size();
+        }
+        assertEquals(6, total);
+    }
+
+    @Test
+    public void retriesOnlyFailedSubset() throws InterruptedException {
+        handler = new BatchingMessageHandler("test", b -> {
+            List<String> p = payloads(b);
+            batches.add(p);
+            if (batches.size() == 1)
+                throw new BatchFailedException("write failed", new IllegalStateException(), p.indexOf("b"), p.indexOf("d"));
+        }, 4, 1024, 10, TimeUnit.SECONDS, 1);
+        assertTrue(sendConcurrently("a", "b", "c", "d").isEmpty());
+        assertEquals(2, batches.size());
+        assertEquals(4, batches.get(0).size());
+        assertEquals(2, batches.get(1).size());
+        assertTrue(batches.get(1).contains("b") && batches.get(1).contains("d"));
+        assertEquals(2, handler.getRetryCount());
+        assertEquals(0, handler.getFailureCount());
+    }
+
+    @Test
+    public void exhaustedRetriesFailOnlyFailedMessages() throws InterruptedException {
+        handler = new BatchingMessageHandler("test", b -> {
+            List<String> p = payloads(b);
+            batches.add(p);
+            if (p.contains("bad"))
+                throw new BatchFailedException("write failed", new IllegalStateException("bad row"), p.indexOf("bad"));
+        }, 3, 1024, 10, TimeUnit.SECONDS, 2);
+        Map<String, Throwable> errors = sendConcurrently("ok1", "bad", "ok2");
+        assertEquals(1, errors.size());
+        Throwable error = errors.get("bad");
+        assertTrue(error instanceof MessageHandlingException);
+        assertEquals("bad row", error.getCause().getMessage());
+        // 第一次整批，之后两次只有失败的那条
+        assertEquals(3, batches.size());
+        assertEquals(1, batches.get(2).size());
+        assertEquals(1, handler.getFailureCount());
+    }
+
+    @Test
+    public void acknowledgmentCallbackIsAcknowledgedPerMessage() throws InterruptedException {
+        handler = new BatchingMessageHandler("test", b -> {
+            if (payloads(b).contains("bad"))
+                throw new IllegalStateException();
+        }, 2, 1024, 10, TimeUnit.SECONDS, 0);
+        Map<String, AcknowledgmentCallback.Status> acks = new ConcurrentHashMap<>();
+        CountDownLatch acked = new CountDownLatch(4);
+        for (String p : new String[]{"a", "b", "bad", "c"}) {
+            AcknowledgmentCallback callback = new AcknowledgmentCallback() {
+                @Override
+                public void acknowledge(Status status) {
+                    acks.put(p, status);
+                    acked.countDown();
+                }
+
+                @Override
+                public void noAutoAck() {
+                }
+            };
+            // 手动确认时不阻塞调用方
+            handler.handleMessage(MessageBuilder.withPayload(p.getBytes(StandardCharsets.UTF_8))
+                    .setHeader(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK, callback)
+                    .build());
+        }
+        assertTrue(acked.await(10, TimeUnit.SECONDS));
+        assertEquals(AcknowledgmentCallback.Status.ACCEPT, acks.get("a"));
+        assertEquals(AcknowledgmentCallback.Status.ACCEPT, acks.get("b"));
+        // bad 与 c 同批，整批失败
+        assertEquals(AcknowledgmentCallback.Status.REQUEUE, acks.get("bad"));
+        assertEquals(AcknowledgmentCallback.Status.REQUEUE, acks.get("c"));
+    }
+
+    @Test
+    public void failingAcknowledgmentDoesNotStrandRestOfBatch() {
+        handler = new BatchingMessageHandler("test", b -> batches.add(payloads(b)), 3, 1024, 10, TimeUnit.SECONDS, 0);
+        List<AcknowledgmentCallback.Status> acks = new CopyOnWriteArrayList<>();
+        handler.handleMessage(withCallback("a", status -> {
+            throw new IllegalStateException("expected");
+        }));
+        handler.handleMessage(withCallback("b", acks::add));
+        // 同步的调用方在同一批中，确认 a 失败后仍然被唤醒
+        handler.handleMessage(message("c"));
+        assertEquals(1, batches.size());
+        assertEquals(1, acks.size());
+        assertEquals(AcknowledgmentCallback.Status.ACCEPT, acks.get(0));
+    }
+
+    private static Message<byte[]> withCallback(String payload, Consumer<AcknowledgmentCallback.Status> onAck) {
+        AcknowledgmentCallback callback = new AcknowledgmentCallback() {
+            @Override
+            public void acknowledge(Status status) {
+                onAck.accept(status);
+            }
+
+            @Override
+            public void noAutoAck() {
+            }
+        };
+        return MessageBuilder.withPayload(payload.getBytes(StandardCharsets.UTF_8))
+                .setHeader(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK, callback)
+                .build();
+    }
+
+    @Test
+    public void closeFlushesPendingAndRejectsNew() throws InterruptedException {
+        handler = new BatchingMessageHandler("test", b -> batches.add(payloads(b)), 100, 1024, 1, TimeUnit.HOURS, 0);
+        Thread sender = new Thread(() -> handler.handleMessage(message("pending")));
+        sender.start();
+        while (handler.getBatchCount() == 0 && sender.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        handler.close();
+        sender.join(10_000);
+        assertEquals(1, batches.size());
+        assertEquals("pending", batches.get(0).get(0));
+        try {
+            handler.handleMessage(message("late"));
+            fail();
+        } catch (MessageDeliveryException expected) {
+        }
+    }
+
+    @Test
+    public void interruptedCallerStillWaitsForItsBatch() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        handler = new BatchingMessageHandler("test", b -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+            batches.add(payloads(b));
+        }, 1, 1024, 0, TimeUnit.SECONDS, 0);
+        boolean[] interrupted = new boolean[1];
+        Thread sender = new Thread(() -> {
+            handler.handleMessage(message("a"));
+            interrupted[0] = Thread.currentThread().isInterrupted();
+        });
+        sender.start();
+        while (sender.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        sender.interrupt();
+        sender.join(100);
+        assertTrue(sender.isAlive());
+        release.countDown();
+        sender.join(10_000);
+        assertFalse(sender.isAlive());
+        assertEquals(1, batches.size());
+        assertTrue(interrupted[0]);
+    }
+
+    @Test
+    public void receiverRejectsConcurrencyBelowMaxCount() {
+        StreamBindingProperties properties = new StreamBindingProperties();
+        BindingServiceProperties bindingServiceProperties = new BindingServiceProperties();
+        bindingServiceProperties.getConsumerProperties(SinkReceiver.StreamInput.input).setConcurrency(10);
+        try {
+            new SinkBatchReceiver().inputBatchHandler(properties, bindingServiceProperties).close();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        bindingServiceProperties.getConsumerProperties(SinkReceiver.StreamInput.input)
+                .setConcurrency(properties.getBinding(SinkReceiver.StreamInput.input).getBatch().getMaxCount());
+        handler = new SinkBatchReceiver().inputBatchHandler(properties, bindingServiceProperties);
+    }
+}
@@ -0,0 +1,294 @@
+package com.okami.test.stream;
+
+import com.okami.test.aqs.ConditionObject;
+import com.okami.test.aqs.TwoLockBlockingQueue;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cloud.stream.config.BindingProperties;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.acks.AcknowledgmentCallback;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyOrderedMessageHandlerTests {
+
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+    private KeyOrderedMessageHandler handler;
+
+    @After
+    public void tearDown() {
+        if (handler != null)
+            handler.close();
+    }
+
+    private KeyOrderedMessageHandler handler(MessageHandler delegate, int lanes, int capacity) {
+        return handler(delegate, lanes, capacity, 0);
+    }
+
+    private KeyOrderedMessageHandler handler(MessageHandler delegate, int lanes, int capacity, int maxRetries) {
+        return new KeyOrderedMessageHandler("test", delegate, lanes, capacity,
+                KeyOrderedMessageHandler.headerKey("key"), errors::add, maxRetries, 1, TimeUnit.MILLISECONDS);
+    }
+
+    private static Message<String> message(String key, String payload) {
+        return MessageBuilder.withPayload(payload).setHeader("key", key).build();
+    }
+
+    private static Message<String> message(String key, String payload, AcknowledgmentCallback callback) {
+        return MessageBuilder.withPayload(payload)
+                .setHeader("key", key)
+                .setHeader(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK, callback)
+                .build();
+    }
+
+    private static AcknowledgmentCallback recordingCallback(String payload, List<String> acks) {
+        return new AcknowledgmentCallback() {
+            @Override
+            public void acknowledge(Status status) {
+                acks.add(payload + (status == Status.ACCEPT ? "" : ":" + status));
+            }
+
+            @Override
+            public void noAutoAck() {
+            }
+        };
+    }
+
+    /**
+     * 找一个与 key 落在不同通道上的键。
+     */
+    private String keyOnOtherLane(String key) {
+        for (int i = 0; ; i++) {
+            String other = "k" + i;
+            if (handler.laneOf(other) != handler.laneOf(key))
+                return other;
+        }
+    }
+
+    @Test
+    public void preservesOrderWithinKey() throws InterruptedException {
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        handler = handler(m -> {
+            if (ThreadLocalRandom.current().nextInt(8) == 0)
+                Thread.yield();
+            String[] parts = ((String) m.getPayload()).split(":");
+            seen.computeIfAbsent(parts[0], k -> new CopyOnWriteArrayList<>()).add(Integer.parseInt(parts[1]));
+        }, 4, 16);
+        for (int i = 0; i < 500; i++)
+            for (int k = 0; k < 8; k++)
+                handler.handleMessage(message("key" + k, "key" + k + ":" + i));
+        handler.close();
+        assertEquals(8, seen.size());
+        for (List<Integer> sequence : seen.values()) {
+            assertEquals(500, sequence.size());
+            for (int i = 0; i < sequence.size(); i++)
+                assertEquals(i, (int) sequence.get(i));
+        }
+        assertEquals(4000, handler.getProcessedCount());
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void slowKeyDoesNotBlockOtherLanes() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(3);
+        handler = handler(m -> {
+            if ("slow".equals(m.getPayload())) {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            } else {
+                fastDone.countDown();
+            }
+        }, 4, 16);
+        handler.handleMessage(message("a", "slow"));
+        String other = keyOnOtherLane("a");
+        for (int i = 0; i < 3; i++)
+            handler.handleMessage(message(other, "fast"));
+        assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void fullLaneBlocksSender() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        handler = handler(m -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        }, 2, 2);
+        Thread sender = new Thread(() -> {
+            // 一条在处理，两条排队，第四条等待
+            for (int i = 0; i < 4; i++)
+                handler.handleMessage(message("a", "m" + i));
+        });
+        try {
+            sender.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            // 通道的入队锁、出队锁上的短暂等待也是 WAITING，要等到发送方停在队列满的条件上
+            while (!(handler.getQueuedCount() == 2 && awaitingRoomInLane(sender)))
+                assertTrue(System.nanoTime() < deadline);
+            assertEquals(2, handler.getQueuedCount());
+        } finally {
+            release.countDown();
+        }
+        sender.join(10_000);
+        assertEquals(Thread.State.TERMINATED, sender.getState());
+    }
+
+    private static boolean awaitingRoomInLane(Thread sender) throws InterruptedException {
+        Thread.sleep(1);
+        boolean awaiting = false;
+        for (StackTraceElement frame : sender.getStackTrace()) {
+            if (frame.getMethodName().startsWith("await") && frame.getClassName().equals(ConditionObject.class.getName()))
+                awaiting = true;
+            else if (frame.getMethodName().equals("put") && frame.getClassName().equals(TwoLockBlockingQueue.class.getName()))
+                return awaiting;
+        }
+        return false;
+    }
+
+    @Test
+    public void acknowledgesInCommitOrder() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> acks = new CopyOnWriteArrayList<>();
+        handler = handler(m -> {
+            String payload = (String) m.getPayload();
+            if ("a1".equals(payload)) {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+            if ("b2".equals(payload))
+                throw new IllegalStateException();
+        }, 4, 16);
+        String b = keyOnOtherLane("a");
+        List<String> sent = new ArrayList<>();
+        for (String[] m : new String[][]{{"a", "a1"}, {b, "b1"}, {b, "b2"}, {"a", "a2"}, {b, "b3"}}) {
+            handler.handleMessage(message(m[0], m[1], recordingCallback(m[1], acks)));
+            sent.add(m[1]);
+        }
+        // b 通道先处理完，但要等 a1
+        while (handler.getProcessedCount() < 3)
+            Thread.sleep(1);
+        assertTrue(acks.isEmpty());
+        assertEquals(5, handler.getUncommittedCount());
+        release.countDown();
+        while (acks.size() < sent.size())
+            Thread.sleep(1);
+        assertEquals(Arrays.asList("a1", "b1", "b2:REQUEUE", "a2", "b3"), acks);
+        assertEquals(0, handler.getUncommittedCount());
+        assertEquals(1, handler.getFailureCount());
+    }
+
+    @Test
+    public void failuresWithoutCallbackGoToErrorHandler() throws InterruptedException {
+        handler = handler(m -> {
+            throw new IllegalStateException("boom");
+        }, 2, 4);
+        handler.handleMessage(message("a", "x"));
+        handler.close();
+        assertEquals(1, errors.size());
+        assertEquals("boom", errors.get(0).getCause().getMessage());
+    }
+
+    @Test
+    public void failedMessageIsRetriedBeforeLaterMessagesOfItsKey() throws InterruptedException {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        AtomicInteger attempts = new AtomicInteger();
+        handler = handler(m -> {
+            String payload = (String) m.getPayload();
+            seen.add(payload);
+            if ("a1".equals(payload) && attempts.incrementAndGet() < 3)
+                throw new IllegalStateException();
+        }, 2, 4, 2);
+        handler.handleMessage(message("a", "a1"));
+        handler.handleMessage(message("a", "a2"));
+        handler.close();
+        assertEquals(Arrays.asList("a1", "a1", "a1", "a2"), seen);
+        assertEquals(2, handler.getRetryCount());
+        assertEquals(0, handler.getFailureCount());
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void exhaustedRetriesGiveUpAndMoveOn() throws InterruptedException {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        handler = handler(m -> {
+            seen.add((String) m.getPayload());
+            if ("a1".equals(m.getPayload()))
+                throw new IllegalStateException();
+        }, 2, 4, 1);
+        handler.handleMessage(message("a", "a1"));
+        handler.handleMessage(message("a", "a2"));
+        handler.close();
+        assertEquals(Arrays.asList("a1", "a1", "a2"), seen);
+        assertEquals(1, handler.getFailureCount());
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void receiverPublishesFailuresToBindingErrorChannel() {
+        BindingProperties input = new BindingProperties();
+        input.setDestination("orders");
+        input.setGroup("billing");
+        BindingServiceProperties bindingServiceProperties = new BindingServiceProperties();
+        bindingServiceProperties.setBindings(Collections.singletonMap(SinkReceiver.StreamInput.input, input));
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        QueueChannel errorChannel = new QueueChannel();
+        beanFactory.registerSingleton("orders.billing.errors", errorChannel);
+        StreamBindingProperties properties = new StreamBindingProperties();
+        StreamBindingProperties.Binding binding = new StreamBindingProperties.Binding();
+        binding.getOrdered().setRetryInterval(Duration.ofMillis(1));
+        properties.setBindings(Collections.singletonMap(SinkReceiver.StreamInput.input, binding));
+        handler = new SinkOrderedReceiver() {
+            @Override
+            public void receive(Message<?> message) {
+                throw new IllegalStateException("boom");
+            }
+        }.inputOrderedHandler(properties, bindingServiceProperties, beanFactory);
+        Message<String> failed = message("a", "x");
+        handler.handleMessage(failed);
+        Message<?> error = errorChannel.receive(10_000);
+        assertNotNull(error);
+        assertTrue(error instanceof ErrorMessage);
+        assertEquals(failed, ((MessagingException) error.getPayload()).getFailedMessage());
+    }
+
+    @Test
+    public void keyFromExpression() {
+        Message<String> m = MessageBuilder.withPayload("p")
+                .setHeader("tenant", "t1")
+                .setHeader("orderId", 42)
+                .build();
+        assertEquals("t1:42", KeyOrderedMessageHandler.expressionKey("headers['tenant'] + ':' + headers['orderId']").apply(m));
+        assertEquals("t1", KeyOrderedMessageHandler.headerKey("tenant").apply(m));
+    }
+}
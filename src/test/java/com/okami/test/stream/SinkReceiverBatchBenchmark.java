@@ -0,0 +1,110 @@
+package com.okami.test.stream;
+
+import com.okami.test.aqs.LongSemaphore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 逐条消费（{@link SinkReceiver} 的方式）与批量消费（{@link BatchingMessageHandler}）的吞吐量对比。
+ * <p>
+ * 用一个进程内的 DirectChannel 代替 binder：16 个基准线程就是 binder 的 16 个消费线程，
+ * 各自把消息发到 input 通道并等待处理完成，与 binder 收到一条消息后同步调用通道相同。
+ * 下游是模拟的批量写库：最多 connections 个调用同时进行（连接池），每次调用固定一次往返
+ * （roundTripMicros，park 等待，不占 CPU），每行再加少量 CPU。
+ * 逐条消费每条消息占一个连接一次往返；批量消费只有一个分发线程，一批一次往返，批内条数受消费线程数限制。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=SinkReceiverBatchBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(16)
+public class SinkReceiverBatchBenchmark {
+
+    @Param({"single", "batch"})
+    public String mode;
+
+    /**
+     * 一次写库调用的往返时间（微秒）。
+     */
+    @Param({"200"})
+    public int roundTripMicros;
+
+    @Param({"4"})
+    public int connections;
+
+    private LongSemaphore pool;
+
+    private DirectChannel input;
+
+    private BatchingMessageHandler batchHandler;
+
+    private final Message<byte[]> message = MessageBuilder.withPayload(new byte[256]).build();
+
+    private void write(List<Message<byte[]>> rows) {
+        pool.acquireUninterruptibly(1);
+        try {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+            Blackhole.consumeCPU(100L * rows.size());
+        } finally {
+            pool.release(1);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        pool = new LongSemaphore(connections);
+        input = new DirectChannel();
+        if ("single".equals(mode)) {
+            input.subscribe(m -> write(Collections.singletonList(message)));
+        } else {
+            batchHandler = new BatchingMessageHandler("input", this::write, 16, 1024 * 1024, 1, TimeUnit.MILLISECONDS, 0);
+            input.subscribe(batchHandler);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (batchHandler != null)
+            batchHandler.close();
+    }
+
+    @Benchmark
+    public boolean receive() {
+        return input.send(message);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SinkReceiverBatchBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,175 @@
+package com.okami.test.aqs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10 万到 100 万个虚拟线程同时使用一把 ExclusiveLock 及其 ConditionObject：
+ * <ul>
+ * <li>lockHandoff：每个线程加解锁若干次，锁在大量等待者之间交接。</li>
+ * <li>conditionSignalAll：所有线程进入同一个条件队列，再一次 signalAll。</li>
+ * <li>timedAwaitTimeouts：所有线程在条件上限时等待并同时超时，每个超时都要把自己从条件队列摘除。</li>
+ * <li>lockTimeouts：锁被占住期间所有线程限时加锁并同时超时，每个超时都要取消同步队列中的节点。</li>
+ * </ul>
+ * 等待队列操作不是摊还 O(1) 时，后两项的耗时随线程数平方增长。
+ * 每次 fork 都带 -Djdk.tracePinnedThreads=short，虚拟线程在 aqs 包中钉住载体线程时会打印栈。
+ * 在 JDK 21.0.1 上从 10 万到 100 万线程，四项的耗时都大致随线程数线性增长（约 10 到 20 倍），没有打印钉住的栈。
+ * <p>
+ * 只在 JDK 21+ 上编译（jdk21 profile 自动激活）。
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark=VirtualThreadBenchmark，或直接执行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djdk.tracePinnedThreads=short")
+public class VirtualThreadBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int threads;
+
+    /**
+     * lockHandoff 中每个线程的加解锁次数。
+     */
+    private static final int ROUNDS = 4;
+
+    /**
+     * 超时场景的等待时间，要足够所有线程在超时前排上队。
+     */
+    private static final long TIMEOUT_MILLIS = 500;
+
+    private final ThreadFactory factory = Thread.ofVirtual().name("vt-", 0).factory();
+
+    private ExclusiveLock lock;
+
+    private ConditionObject cond;
+
+    private long counter;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        lock = new ExclusiveLock();
+        cond = (ConditionObject) lock.newCondition();
+        counter = 0;
+    }
+
+    @Benchmark
+    public long lockHandoff() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            factory.newThread(() -> {
+                for (int j = 0; j < ROUNDS; j++) {
+                    lock.lock();
+                    try {
+                        counter++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        return counter;
+    }
+
+    @Benchmark
+    public long conditionSignalAll() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            factory.newThread(() -> {
+                lock.lock();
+                try {
+                    counter++;
+                    cond.awaitUninterruptibly();
+                } finally {
+                    lock.unlock();
+                }
+                done.countDown();
+            }).start();
+        }
+        // counter 在锁内递增，等于线程数说明所有线程都已进入条件队列
+        for (; ; ) {
+            lock.lock();
+            try {
+                if (counter == threads) {
+                    cond.signalAll();
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+            Thread.sleep(1);
+        }
+        done.await();
+        return counter;
+    }
+
+    @Benchmark
+    public long timedAwaitTimeouts() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            factory.newThread(() -> {
+                lock.lock();
+                try {
+                    cond.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    counter++;
+                } catch (InterruptedException ignored) {
+                } finally {
+                    lock.unlock();
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        return counter;
+    }
+
+    @Benchmark
+    public long lockTimeouts() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(threads);
+        lock.lock();
+        try {
+            for (int i = 0; i < threads; i++) {
+                factory.newThread(() -> {
+                    try {
+                        if (lock.tryLock(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                            lock.unlock();
+                    } catch (InterruptedException ignored) {
+                    }
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+        } finally {
+            lock.unlock();
+        }
+        return done.getCount();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(VirtualThreadBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}